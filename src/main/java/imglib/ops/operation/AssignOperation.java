@@ -46,7 +46,6 @@ import java.util.Observable;
 import java.util.Observer;
 
 import mpicbg.imglib.cursor.LocalizableCursor;
-import mpicbg.imglib.cursor.special.RegionOfInterestCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.numeric.RealType;
 
@@ -190,7 +189,7 @@ public class AssignOperation<T extends RealType<T>>
 	{
 		cursor.initialize();
 
-		RegionOfInterestCursor<T>[] subCursors = cursor.getSubcursors();
+		LocalizableCursor<T>[] subCursors = cursor.getSubcursors();
 
 		outputVariable = subCursors[0].getType();
 
@@ -281,7 +280,7 @@ public class AssignOperation<T extends RealType<T>>
 			return false;
 	}
 
-	private T[] getInputVariables(RegionOfInterestCursor<T>[] cursors)
+	private T[] getInputVariables(LocalizableCursor<T>[] cursors)
 	{
 		T[] variables = outputVariable.createArray1D(imageCount-1);
 		
@@ -38,6 +38,8 @@
 package imglib.ops.operation;
 
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.cursor.link.MultiImageCursor;
 import mpicbg.imglib.cursor.special.RegionOfInterestCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.numeric.RealType;
@@ -57,7 +59,8 @@ public class MultiImageIterator<T extends RealType<T>>  // don't want to impleme
 	private Image<T>[] images;
 	private int[][] origins;
 	private int[][] spans;
-	private RegionOfInterestCursor<T>[] cursors;
+	private LocalizableCursor<T>[] cursors;
+	private MultiImageCursor<T> fusedCursor;
 	
 	// -----------------  public interface ------------------------------------------
 
@@ -72,7 +75,7 @@ public class MultiImageIterator<T extends RealType<T>>  // don't want to impleme
 			origins[i] = new int[images[i].getNumDimensions()];
 			spans[i] = images[i].getDimensions().clone();
 		}
-		cursors = new RegionOfInterestCursor[totalImages];
+		cursors = new LocalizableCursor[totalImages];
 	}
 
 	public void setRegion(int i, int[] origin, int[] span)
@@ -81,10 +84,17 @@ public class MultiImageIterator<T extends RealType<T>>  // don't want to impleme
 		spans[i] = span;
 	}
 	
-	public RegionOfInterestCursor<T>[] getSubcursors()
+	/** the cursors of the images, they must only be moved through this MultiImageIterator */
+	public LocalizableCursor<T>[] getSubcursors()
 	{
 		return cursors;
 	}
+	
+	/** true if all images are driven by a single index, see {@link MultiImageCursor} */
+	public boolean isFused()
+	{
+		return fusedCursor != null && fusedCursor.isFused();
+	}
 
 	/** call after subregions defined and before first hasNext() or fwd() call. tests that all subregions defined are compatible. */
 	void initialize()  // could call lazily in hasNext() or fwd() but a drag on performance
@@ -95,6 +105,18 @@ public class MultiImageIterator<T extends RealType<T>>  // don't want to impleme
 			if (numInSpan(spans[i]) != totalSamples)
 				throw new IllegalArgumentException("incompatible span shapes");
 
+		// whole images of the same size can be iterated together, if their containers are
+		// compatible by a single index. note that whole images are traversed in the iteration
+		// order of the first image's container (e.g. cell by cell), subregions in raster order
+		if (spansWholeImages())
+		{
+			fusedCursor = new MultiImageCursor<T>(images);
+			for (int i = 0; i < images.length; i++)
+				cursors[i] = fusedCursor.getCursor(i);
+			return;
+		}
+		
+		fusedCursor = null;
 		for (int i = 0; i < images.length; i++)
 		{
 			LocalizableByDimCursor<T> dimCursor = images[i].createLocalizableByDimCursor();
@@ -104,6 +126,9 @@ public class MultiImageIterator<T extends RealType<T>>  // don't want to impleme
 	
 	public boolean hasNext()
 	{
+		if (fusedCursor != null)
+			return fusedCursor.hasNext();
+		
 		boolean hasNext = cursors[0].hasNext();
 		
 		for (int i = 1; i < cursors.length; i++)
@@ -115,12 +140,37 @@ public class MultiImageIterator<T extends RealType<T>>  // don't want to impleme
 	
 	public void fwd()
 	{
+		if (fusedCursor != null)
+		{
+			fusedCursor.fwd();
+			return;
+		}
+		
 		for (int i = 0; i < cursors.length; i++)
 			cursors[i].fwd();
 	}
 	
 	// -----------------  private interface ------------------------------------------
 
+	private boolean spansWholeImages()
+	{
+		int[] dims = images[0].getDimensions();
+		
+		for (int i = 0; i < images.length; i++)
+		{
+			if (images[i].getNumDimensions() != dims.length)
+				return false;
+			
+			for (int d = 0; d < dims.length; d++)
+			{
+				if (origins[i][d] != 0 || spans[i][d] != dims[d] || images[i].getDimension(d) != dims[d])
+					return false;
+			}
+		}
+		
+		return true;
+	}
+
 	private long numInSpan(int[] span)  // TODO - call Imglib equivalent instead
 	{
 		long total = 1;
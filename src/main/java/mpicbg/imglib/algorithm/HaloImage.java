@@ -0,0 +1,308 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm;
+
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.array.ArrayLocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.multithreading.Chunk;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
+import mpicbg.imglib.type.Type;
+import mpicbg.imglib.type.label.FakeType;
+
+/**
+ * Materializes an {@link OutOfBoundsStrategyFactory} once: creates a copy of the input image that is padded
+ * by a halo on every side and fills the halo using the {@link OutOfBoundsStrategyFactory} (mirror, periodic, 
+ * value, exp-windowed mirror, ...). Neighborhood operations with a radius not larger than the halo can then
+ * run with plain {@link LocalizableByDimCursor}s on the result, without out of bounds checks.
+ * <p>
+ * The pixel at position p of the input image is located at p + {@link #getOffset()} in the padded image.
+ * <p>
+ * Iterative filters that change the input image in between can call {@link #process()} again, it writes 
+ * into the same padded image. {@link #updateHalo()} only refreshes the halo if the interior was not changed
+ * but the input image was.
+ *
+ * @param <T>
+ */
+public class HaloImage<T extends Type<T>> extends MultiThreadedBenchmarkAlgorithm implements OutputAlgorithm<T>
+{
+	final Image<T> input;
+	final OutOfBoundsStrategyFactory<T> outOfBoundsFactory;
+	final int numDimensions;
+	final int[] halo;
+	
+	int[] paddedSize = null;
+	Image<T> output = null;
+
+	/**
+	 * @param input - the image to pad
+	 * @param halo - the size of the halo on each side, per dimension
+	 * @param outOfBoundsFactory - defines the content of the halo
+	 */
+	public HaloImage( final Image<T> input, final int[] halo, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory )
+	{
+		this.input = input;
+		this.outOfBoundsFactory = outOfBoundsFactory;
+		this.numDimensions = input == null ? 0 : input.getNumDimensions();
+		this.halo = halo == null ? null : halo.clone();
+	}
+	
+	public HaloImage( final Image<T> input, final int halo, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory )
+	{
+		this( input, createArray( input, halo ), outOfBoundsFactory );
+	}
+	
+	/**
+	 * @return - the offset of the input image inside the padded image, i.e. the halo size per dimension
+	 */
+	public int[] getOffset() { return halo.clone(); }
+	
+	@Override
+	public boolean process()
+	{
+		final long startTime = System.currentTimeMillis();
+		
+		if ( output == null )
+		{
+			// the halo is validated by checkInput()
+			paddedSize = new int[ numDimensions ];
+			
+			for ( int d = 0; d < numDimensions; ++d )
+				paddedSize[ d ] = input.getDimension( d ) + 2 * halo[ d ];
+			
+			output = input.createNewImage( paddedSize, input.getName() + " (halo)" );
+		}
+		
+		if ( output == null )
+		{
+			errorMessage = "Cannot create padded image, maybe not enough memory";
+			return false;
+		}
+		
+		fill( true );
+		
+		processingTime = System.currentTimeMillis() - startTime;
+		
+		return true;
+	}
+	
+	/**
+	 * Re-computes only the halo of the padded image from the input image, the interior is left as it is.
+	 * 
+	 * @return - false if {@link #process()} was not called before
+	 */
+	public boolean updateHalo()
+	{
+		if ( output == null )
+		{
+			errorMessage = "Call process() first";
+			return false;
+		}
+		
+		fill( false );
+		
+		return true;
+	}
+	
+	/**
+	 * Iterates over all lines in dimension 0 of the padded image, copies the part of each line that overlaps 
+	 * the input image (if copyInterior is true) and fills the rest using the {@link OutOfBoundsStrategyFactory}.
+	 */
+	protected void fill( final boolean copyInterior )
+	{
+		// the lines in dimension 0, we "misuse" an ArrayLocalizableCursor to iterate over them
+		final int[] fakeSize = new int[ Math.max( 1, numDimensions - 1 ) ];
+		fakeSize[ 0 ] = 1;
+		
+		for ( int d = 1; d < numDimensions; ++d )
+			fakeSize[ d - 1 ] = paddedSize[ d ];
+		
+		long numLines = 1;
+		for ( final int s : fakeSize )
+			numLines *= s;
+		
+		final int size0 = input.getDimension( 0 );
+		final int halo0 = halo[ 0 ];
+		final int paddedSize0 = paddedSize[ 0 ];
+		
+		final Vector<Chunk> chunks = SimpleMultiThreading.divideIntoChunks( numLines, numThreads );
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final Chunk myChunk = chunks.get( ai.getAndIncrement() );
+					
+					final ArrayLocalizableCursor<FakeType> cursorDim = ArrayLocalizableCursor.createLinearCursor( fakeSize );
+					final LocalizableByDimCursor<T> cursorIn = input.createLocalizableByDimCursor();
+					final LocalizableByDimCursor<T> cursorOutOfBounds = input.createLocalizableByDimCursor( outOfBoundsFactory );
+					final LocalizableByDimCursor<T> cursorOut = output.createLocalizableByDimCursor();
+					
+					final int[] positionOut = new int[ numDimensions ];
+					final int[] positionIn = new int[ numDimensions ];
+					
+					cursorDim.fwd( myChunk.getStartPosition() );
+					
+					for ( long j = 0; j < myChunk.getLoopSize(); ++j )
+					{
+						cursorDim.fwd();
+						
+						// is the line inside the input image in all dimensions except 0
+						boolean interiorLine = true;
+						
+						for ( int d = 1; d < numDimensions; ++d )
+						{
+							positionOut[ d ] = cursorDim.getPosition( d - 1 );
+							positionIn[ d ] = positionOut[ d ] - halo[ d ];
+							
+							if ( positionIn[ d ] < 0 || positionIn[ d ] >= input.getDimension( d ) )
+								interiorLine = false;
+						}
+						
+						positionOut[ 0 ] = 0;
+						positionIn[ 0 ] = -halo0;
+						
+						if ( interiorLine )
+						{
+							// the halo before the image
+							if ( halo0 > 0 )
+								copyLine( cursorOutOfBounds, cursorOut, positionIn, positionOut, halo0 );
+
+							// the image itself
+							if ( copyInterior )
+							{
+								positionOut[ 0 ] = halo0;
+								positionIn[ 0 ] = 0;
+								copyLine( cursorIn, cursorOut, positionIn, positionOut, size0 );
+							}
+							
+							// the halo after the image
+							if ( halo0 > 0 )
+							{
+								positionOut[ 0 ] = halo0 + size0;
+								positionIn[ 0 ] = size0;
+								copyLine( cursorOutOfBounds, cursorOut, positionIn, positionOut, halo0 );
+							}
+						}
+						else
+						{
+							copyLine( cursorOutOfBounds, cursorOut, positionIn, positionOut, paddedSize0 );
+						}
+					}
+					
+					cursorDim.close();
+					cursorIn.close();
+					cursorOutOfBounds.close();
+					cursorOut.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	final protected static <T extends Type<T>> void copyLine( final LocalizableByDimCursor<T> cursorIn, final LocalizableByDimCursor<T> cursorOut, 
+	                                                          final int[] positionIn, final int[] positionOut, final int length )
+	{
+		cursorIn.setPosition( positionIn );
+		cursorOut.setPosition( positionOut );
+		
+		for ( int i = 0; i < length - 1; ++i )
+		{
+			cursorOut.getType().set( cursorIn.getType() );
+			cursorIn.fwd( 0 );
+			cursorOut.fwd( 0 );
+		}
+		
+		cursorOut.getType().set( cursorIn.getType() );
+	}
+
+	@Override
+	public Image<T> getResult() { return output; }
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( errorMessage.length() > 0 )
+		{
+			return false;
+		}
+		else if ( input == null )
+		{
+			errorMessage = "Input image is null";
+			return false;
+		}
+		else if ( outOfBoundsFactory == null )
+		{
+			errorMessage = "OutOfBoundsStrategyFactory is null";
+			return false;
+		}
+		else if ( halo == null || halo.length != numDimensions )
+		{
+			errorMessage = "Halo is not of same dimensionality as input image";
+			return false;
+		}
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			if ( halo[ d ] < 0 )
+			{
+				errorMessage = "Halo must not be negative";
+				return false;
+			}
+		}
+
+		return true;
+	}
+	
+	protected static int[] createArray( final Image<?> input, final int halo )
+	{
+		final int[] array = new int[ input == null ? 0 : input.getNumDimensions() ];
+		
+		for ( int d = 0; d < array.length; ++d )
+			array[ d ] = halo;
+		
+		return array;
+	}
+}
@@ -29,7 +29,7 @@ package mpicbg.imglib.algorithm.extremafinder;
 import java.util.ArrayList;
 
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
-import mpicbg.imglib.cursor.special.LocalNeighborhoodCursor;
+import mpicbg.imglib.cursor.special.LocalNeighborhoodOffsetCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
 import mpicbg.imglib.type.numeric.RealType;
@@ -182,7 +182,7 @@ public class RegionalExtremaFinder2D<T extends RealType<T>> extends AbstractRegi
 		
 		final LocalizableByDimCursor<T> curr = image.createLocalizableByDimCursor(outOfBoundsFactory);	// Used by step 2.1, the outer cursor
 		final LocalizableByDimCursor<T> local = image.createLocalizableByDimCursor(outOfBoundsFactory);		// Used by step 2.2, the lake/connected component cursor
-		final LocalNeighborhoodCursor<T> neighbors = new LocalNeighborhoodCursor<T>(local);				// Used by step 2.3, the neighbor searching cursor
+		final LocalNeighborhoodOffsetCursor<T> neighbors = new LocalNeighborhoodOffsetCursor<T>(local, LocalNeighborhoodOffsetCursor.createHyperCubeOffsets(2, 1, false));	// Used by step 2.3, the neighbor searching cursor
 		final ArrayList< int[] > toSearch = new ArrayList< int[] >();	// pixels known to be in the lake/connected component that we have yet to search the neighbors of
 		final ArrayList< int[] > searched = new ArrayList< int[] >();	// pixels in the lake/connected component that have had their neighbors searched.
 		T currentValue = image.createType();							// holds the pixel intensity of the outer pixel/lake
@@ -228,7 +228,7 @@ public class RegionalExtremaFinder2D<T extends RealType<T>> extends AbstractRegi
 				// 2.3 - Iterate through immediate neighbors, excluding out of bounds neighbors.
 				while(neighbors.hasNext()) {
 					neighbors.fwd();
-					local.getPosition(neighborCoords);
+					neighbors.getPosition(neighborCoords);
 					if (isWithinImageBounds(neighborCoords)) {
 						if ((visitedAndProcessed[getIndexOfPosition(neighborCoords, width)] & CC_MEMBER) != 0) {  // We've already visited this neighbor before, and handled it accordingly, so skip it since it hasn't changed.
 							continue;
@@ -27,17 +27,17 @@
 package mpicbg.imglib.algorithm.fft;
 
 import mpicbg.imglib.algorithm.Benchmark;
+import mpicbg.imglib.algorithm.MultiThreaded;
 import mpicbg.imglib.algorithm.OutputAlgorithm;
-import mpicbg.imglib.cursor.LocalizableCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.numeric.NumericType;
-import mpicbg.imglib.util.Util;
 
 /**
- * TODO
+ * Sets all frequencies of a spectrum to zero whose distance to the origin is outside (band pass) or inside (band stop) 
+ * a range of radii. The lines of the image are processed in parallel, see {@link SpectrumFunctions#applyRadialMask}.
  *
  */
-public class Bandpass<T extends NumericType<T>> implements OutputAlgorithm<T>, Benchmark
+public class Bandpass<T extends NumericType<T>> implements OutputAlgorithm<T>, Benchmark, MultiThreaded
 {
 	String errorMessage = "";
 	boolean inPlace, bandPass;
@@ -46,6 +46,7 @@ public class Bandpass<T extends NumericType<T>> implements OutputAlgorithm<T>, B
 	
 	int beginRadius, endRadius;
 	long processingTime;
+	int numThreads;
 	int[] origin;
 	
 	public Bandpass( final Image<T> img, final int beginRadius, final int endRadius )
@@ -62,6 +63,8 @@ public class Bandpass<T extends NumericType<T>> implements OutputAlgorithm<T>, B
 		this.origin[ 0 ] = img.getDimension( 0 ) - 1;
 		for ( int d = 1; d < this.origin.length; ++d )
 			origin[ d ] = img.getDimension( d ) / 2;
+		
+		setNumThreads();
 	}
 	
 	public void setImage( final Image<T> img ) { this.img = img; }
@@ -96,30 +99,8 @@ public class Bandpass<T extends NumericType<T>> implements OutputAlgorithm<T>, B
 			img = this.output;
 		}
 		
-		final LocalizableCursor<T> cursor = img.createLocalizableCursor();
-		final int[] pos = img.createPositionArray();
-		
-		final boolean actAsBandPass = bandPass;
-		
-		while ( cursor.hasNext() )
-		{
-			cursor.fwd();
-			cursor.getPosition( pos );
-			
-			final float dist = Util.computeDistance( origin, pos );
-			
-			if ( actAsBandPass )
-			{
-				if ( dist < beginRadius || dist > endRadius )
-					cursor.getType().setZero();
-			}
-			else
-			{
-				if ( dist >= beginRadius && dist <= endRadius )
-					cursor.getType().setZero();				
-			}
-		}
-		
+		SpectrumFunctions.applyRadialMask( img, origin, beginRadius, endRadius, bandPass, getNumThreads() );
+
 		processingTime = System.currentTimeMillis() - startTime;
 		
 		// finished applying bandpass
@@ -141,6 +122,15 @@ public class Bandpass<T extends NumericType<T>> implements OutputAlgorithm<T>, B
 	@Override
 	public boolean checkInput() { return true; }
 
+	@Override
+	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
+
+	@Override
+	public void setNumThreads( final int numThreads ) { this.numThreads = numThreads; }
+
+	@Override
+	public int getNumThreads() { return numThreads; }
+
 	@Override
 	public String getErrorMessage() { return errorMessage; }	
 }
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import mpicbg.imglib.container.array.Array;
+import mpicbg.imglib.container.basictypecontainer.array.FloatArray;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+/**
+ * The pixels of an {@link Image} as float[] with dimension 0 varying fastest, so that {@link PhaseCorrelation} 
+ * can test many shifts of two images on primitive arrays instead of with cursors. The buffer is not changed 
+ * after construction and can be used by several threads at once.
+ */
+final public class CrossCorrelationBuffer
+{
+	final int numDimensions;
+	final int[] dim, steps;
+	final float[] data;
+	
+	public CrossCorrelationBuffer( final Image<? extends RealType<?>> image )
+	{
+		this.numDimensions = image.getNumDimensions();
+		this.dim = image.getDimensions();
+		this.steps = Array.createAllocationSteps( dim );
+		this.data = getData( image );
+	}
+	
+	public int[] getDimensions() { return dim.clone(); }
+	public int getDimension( final int d ) { return dim[ d ]; }
+	public int getNumDimensions() { return numDimensions; }
+	
+	/**
+	 * @return the index of a pixel in the float[] of the pixels
+	 */
+	public int getIndex( final int[] position )
+	{
+		int i = 0;
+		for ( int d = 0; d < numDimensions; ++d )
+			i += position[ d ] * steps[ d ];
+		
+		return i;
+	}
+	
+	/**
+	 * @return the float[] of the pixels with dimension 0 varying fastest, must not be changed
+	 */
+	public float[] getData() { return data; }
+	
+	/**
+	 * @return the distances in the float[] between neighboring pixels in every dimension
+	 */
+	public int[] getSteps() { return steps.clone(); }
+	
+	/**
+	 * Copies the storage array of a {@link FloatType} image in an {@link Array}, otherwise reads all 
+	 * pixels with a {@link LocalizableCursor}
+	 */
+	protected static float[] getData( final Image<? extends RealType<?>> image )
+	{
+		if ( image.createType().getClass() == FloatType.class && Array.class.isInstance( image.getContainer() ) )
+		{
+			final Object data = ( (Array<?,?>)image.getContainer() ).update( null );
+			
+			if ( data instanceof FloatArray )
+				return ( (FloatArray)data ).getCurrentStorageArray().clone();
+		}
+		
+		final int numDimensions = image.getNumDimensions();
+		final int[] steps = Array.createAllocationSteps( image.getDimensions() );
+		final float[] data = new float[ image.getNumPixels() ];
+		final int[] position = new int[ numDimensions ];
+		
+		final LocalizableCursor<? extends RealType<?>> cursor = image.createLocalizableCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.getPosition( position );
+			
+			int i = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				i += position[ d ] * steps[ d ];
+			
+			data[ i ] = cursor.getType().getRealFloat();
+		}
+		
+		cursor.close();
+		
+		return data;
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.mines.jtk.dsp.FftComplex;
+import edu.mines.jtk.dsp.FftReal;
+
+/**
+ * Caches the FFT objects and the line buffers used by {@link FFTFunctions} across invocations, 
+ * so that many transforms of the same size (e.g. the tiles of a stitching) do not set them up
+ * again every time.
+ * 
+ * The {@link FftReal} and {@link FftComplex} objects (and their double precision counterparts {@link FftRealDouble} 
+ * and {@link FftComplexDouble}) keep no state besides their length, so there is one instance per length shared by 
+ * all threads. The line buffers are kept in a pool per length, a thread takes buffers with {@link #getBuffer(int)} 
+ * or {@link #getDoubleBuffer(int)} and gives them back with {@link #releaseBuffer(float[])} or {@link #releaseBuffer(double[])}
+ * when it is done, so they are reused across the threads of subsequent transforms 
+ * (the threads of {@link mpicbg.imglib.multithreading.SimpleMultiThreading} live only for one pass). 
+ * The pool holds at most {@link #getMaxBufferBytes()} bytes, the contents of a buffer are undefined. 
+ */
+final public class FFTCache 
+{
+	final static ConcurrentHashMap< Integer, FftReal > realPlans = new ConcurrentHashMap< Integer, FftReal >();
+	final static ConcurrentHashMap< Integer, FftComplex > complexPlans = new ConcurrentHashMap< Integer, FftComplex >();
+	final static ConcurrentHashMap< Integer, FftRealDouble > realDoublePlans = new ConcurrentHashMap< Integer, FftRealDouble >();
+	final static ConcurrentHashMap< Integer, FftComplexDouble > complexDoublePlans = new ConcurrentHashMap< Integer, FftComplexDouble >();
+	final static ConcurrentHashMap< Integer, ConcurrentLinkedQueue< float[] > > buffers = new ConcurrentHashMap< Integer, ConcurrentLinkedQueue< float[] > >();
+	final static ConcurrentHashMap< Integer, ConcurrentLinkedQueue< double[] > > doubleBuffers = new ConcurrentHashMap< Integer, ConcurrentLinkedQueue< double[] > >();
+	
+	final static AtomicLong bufferBytes = new AtomicLong( 0 );
+	
+	static volatile long maxBufferBytes = 64l * 1024l * 1024l;
+	static volatile boolean enabled = true;
+	
+	private FFTCache() {}
+	
+	/**
+	 * @param enabled - if false nothing is cached, every call creates new objects 
+	 */
+	public static void setEnabled( final boolean enabled ) 
+	{ 
+		FFTCache.enabled = enabled;
+		
+		if ( !enabled )
+			clear();
+	}
+	public static boolean isEnabled() { return enabled; }
+	
+	/**
+	 * @param maxBufferBytes - the maximal number of bytes kept in the buffer pool
+	 */
+	public static void setMaxBufferBytes( final long maxBufferBytes ) { FFTCache.maxBufferBytes = maxBufferBytes; }
+	public static long getMaxBufferBytes() { return maxBufferBytes; }
+	
+	/**
+	 * @return the number of bytes currently kept in the buffer pool
+	 */
+	public static long getBufferBytes() { return bufferBytes.get(); }
+	
+	/**
+	 * Removes all FFT objects and buffers
+	 */
+	public static void clear()
+	{
+		realPlans.clear();
+		complexPlans.clear();
+		realDoublePlans.clear();
+		complexDoublePlans.clear();
+		buffers.clear();
+		doubleBuffers.clear();
+		bufferBytes.set( 0 );
+	}
+	
+	/**
+	 * @param nfft - the length of the real FFT
+	 * @return the {@link FftReal} of this length
+	 */
+	public static FftReal getFftReal( final int nfft )
+	{
+		if ( !enabled )
+			return new FftReal( nfft );
+		
+		FftReal fft = realPlans.get( nfft );
+		
+		if ( fft == null )
+		{
+			fft = new FftReal( nfft );
+			
+			final FftReal existing = realPlans.putIfAbsent( nfft, fft );
+			
+			if ( existing != null )
+				fft = existing;
+		}
+		
+		return fft;
+	}
+
+	/**
+	 * @param nfft - the length of the complex FFT
+	 * @return the {@link FftComplex} of this length
+	 */
+	public static FftComplex getFftComplex( final int nfft )
+	{
+		if ( !enabled )
+			return new FftComplex( nfft );
+		
+		FftComplex fft = complexPlans.get( nfft );
+		
+		if ( fft == null )
+		{
+			fft = new FftComplex( nfft );
+			
+			final FftComplex existing = complexPlans.putIfAbsent( nfft, fft );
+			
+			if ( existing != null )
+				fft = existing;
+		}
+		
+		return fft;
+	}
+	
+	/**
+	 * @param nfft - the length of the real FFT, must be even
+	 * @return the {@link FftRealDouble} of this length
+	 */
+	public static FftRealDouble getFftRealDouble( final int nfft )
+	{
+		if ( !enabled )
+			return new FftRealDouble( nfft );
+		
+		FftRealDouble fft = realDoublePlans.get( nfft );
+		
+		if ( fft == null )
+		{
+			fft = new FftRealDouble( nfft );
+			
+			final FftRealDouble existing = realDoublePlans.putIfAbsent( nfft, fft );
+			
+			if ( existing != null )
+				fft = existing;
+		}
+		
+		return fft;
+	}
+
+	/**
+	 * @param nfft - the length of the complex FFT
+	 * @return the {@link FftComplexDouble} of this length
+	 */
+	public static FftComplexDouble getFftComplexDouble( final int nfft )
+	{
+		if ( !enabled )
+			return new FftComplexDouble( nfft );
+		
+		FftComplexDouble fft = complexDoublePlans.get( nfft );
+		
+		if ( fft == null )
+		{
+			fft = new FftComplexDouble( nfft );
+			
+			final FftComplexDouble existing = complexDoublePlans.putIfAbsent( nfft, fft );
+			
+			if ( existing != null )
+				fft = existing;
+		}
+		
+		return fft;
+	}
+	
+	/**
+	 * Takes a buffer from the pool or creates a new one, its contents are undefined.
+	 * 
+	 * @param length - the length of the buffer
+	 * @return a float[] of the given length that belongs to the caller until it is released
+	 */
+	public static float[] getBuffer( final int length )
+	{
+		if ( enabled )
+		{
+			final ConcurrentLinkedQueue< float[] > pool = buffers.get( length );
+			
+			if ( pool != null )
+			{
+				final float[] buffer = pool.poll();
+				
+				if ( buffer != null )
+				{
+					bufferBytes.addAndGet( -4l * length );
+					return buffer;
+				}
+			}
+		}
+		
+		return new float[ length ];
+	}
+	
+	/**
+	 * Gives a buffer back to the pool, the caller must not use it anymore.
+	 * 
+	 * @param buffer - the buffer obtained from {@link #getBuffer(int)}
+	 */
+	public static void releaseBuffer( final float[] buffer )
+	{
+		if ( !enabled || buffer == null )
+			return;
+		
+		final long bytes = 4l * buffer.length;
+		
+		if ( bufferBytes.addAndGet( bytes ) > maxBufferBytes )
+		{
+			bufferBytes.addAndGet( -bytes );
+			return;
+		}
+		
+		ConcurrentLinkedQueue< float[] > pool = buffers.get( buffer.length );
+		
+		if ( pool == null )
+		{
+			pool = new ConcurrentLinkedQueue< float[] >();
+			
+			final ConcurrentLinkedQueue< float[] > existing = buffers.putIfAbsent( buffer.length, pool );
+			
+			if ( existing != null )
+				pool = existing;
+		}
+		
+		pool.offer( buffer );
+	}
+	
+	/**
+	 * Takes a double buffer from the pool or creates a new one, its contents are undefined.
+	 * 
+	 * @param length - the length of the buffer
+	 * @return a double[] of the given length that belongs to the caller until it is released
+	 */
+	public static double[] getDoubleBuffer( final int length )
+	{
+		if ( enabled )
+		{
+			final ConcurrentLinkedQueue< double[] > pool = doubleBuffers.get( length );
+			
+			if ( pool != null )
+			{
+				final double[] buffer = pool.poll();
+				
+				if ( buffer != null )
+				{
+					bufferBytes.addAndGet( -8l * length );
+					return buffer;
+				}
+			}
+		}
+		
+		return new double[ length ];
+	}
+	
+	/**
+	 * Gives a double buffer back to the pool, the caller must not use it anymore.
+	 * 
+	 * @param buffer - the buffer obtained from {@link #getDoubleBuffer(int)}
+	 */
+	public static void releaseBuffer( final double[] buffer )
+	{
+		if ( !enabled || buffer == null )
+			return;
+		
+		final long bytes = 8l * buffer.length;
+		
+		if ( bufferBytes.addAndGet( bytes ) > maxBufferBytes )
+		{
+			bufferBytes.addAndGet( -bytes );
+			return;
+		}
+		
+		ConcurrentLinkedQueue< double[] > pool = doubleBuffers.get( buffer.length );
+		
+		if ( pool == null )
+		{
+			pool = new ConcurrentLinkedQueue< double[] >();
+			
+			final ConcurrentLinkedQueue< double[] > existing = doubleBuffers.putIfAbsent( buffer.length, pool );
+			
+			if ( existing != null )
+				pool = existing;
+		}
+		
+		pool.offer( buffer );
+	}
+}
@@ -31,6 +31,7 @@ import edu.mines.jtk.dsp.FftReal;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
 import mpicbg.imglib.cursor.array.ArrayLocalizableCursor;
 import mpicbg.imglib.image.Image;
@@ -49,6 +50,12 @@ import mpicbg.imglib.type.numeric.RealType;
  */
 final public class FFTFunctions 
 {
+	/**
+	 * The maximal number of lines a thread takes from the shared line counter at once. The lines of 
+	 * one task are neighbors in the image, so the memory they touch is contiguous.
+	 */
+	final public static int LINES_PER_TASK = 16;
+	
 	final public static <T extends RealType<T>, S extends ComplexType<S>> Image<T> 
 						computeInverseFFT( final Image<S> complex, final T type,  
 						                   final int numThreads, 
@@ -59,10 +66,27 @@ final public class FFTFunctions
 		// not enough memory
 		if ( complex == null )
 			return null;
+		
+		return computeInverseFFT( complex, type, numThreads, scale, cropBack, originalSize, originalOffset, additionalNormalization, complex.createType().getPreferredRealPrecision() );
+	}
+	
+	/**
+	 * Computes the inverse FFT with the line buffers and the FFT in the given precision, 
+	 * the output image has the {@link ImageFactory} of the complex image.
+	 * 
+	 * @param precision - {@link PrecisionReal#Float} or {@link PrecisionReal#Double}
+	 */
+	final public static <T extends RealType<T>, S extends ComplexType<S>> Image<T> 
+						computeInverseFFT( final Image<S> complex, final T type,  
+						                   final int numThreads, 
+						                   final boolean scale, final boolean cropBack,
+						                   final int[] originalSize, final int[] originalOffset,
+						                   final float additionalNormalization, final PrecisionReal precision )
+	{
+		// not enough memory
+		if ( complex == null )
+			return null;
 
-		// get the number of dimensions		
-		final int numDimensions = complex.getNumDimensions();
-			
 		// the size in dimension 0 of the output image
 		final int nfft = ( complex.getDimension( 0 ) - 1 ) * 2;
 		
@@ -83,115 +107,79 @@ final public class FFTFunctions
 		if ( realImage == null )
 			return null;
 		
+		computeInverseFFT( complex, realImage, numThreads, scale, cropBack, originalSize, originalOffset, additionalNormalization, precision );
+		
+		return realImage;
+	}
+	
+	/**
+	 * Computes the inverse FFT into an existing image, e.g. to reuse the same image across iterations. 
+	 * The complex image is overwritten.
+	 * 
+	 * @param complex - the complex image, it is changed
+	 * @param realImage - the output image, it has the size of the real transform or the originalSize if cropBack is set
+	 */
+	final public static <T extends RealType<T>, S extends ComplexType<S>> void 
+						computeInverseFFT( final Image<S> complex, final Image<T> realImage,  
+						                   final int numThreads, 
+						                   final boolean scale, final boolean cropBack,
+						                   final int[] originalSize, final int[] originalOffset,
+						                   final float additionalNormalization )
+	{
+		computeInverseFFT( complex, realImage, numThreads, scale, cropBack, originalSize, originalOffset, additionalNormalization, complex.createType().getPreferredRealPrecision() );
+	}
+	
+	/**
+	 * Computes the inverse FFT into an existing image with the line buffers and the FFT in the given precision. 
+	 * The complex image is overwritten.
+	 * 
+	 * @param precision - {@link PrecisionReal#Float} or {@link PrecisionReal#Double}
+	 */
+	final public static <T extends RealType<T>, S extends ComplexType<S>> void 
+						computeInverseFFT( final Image<S> complex, final Image<T> realImage,  
+						                   final int numThreads, 
+						                   final boolean scale, final boolean cropBack,
+						                   final int[] originalSize, final int[] originalOffset,
+						                   final float additionalNormalization, final PrecisionReal precision )
+	{
+		if ( precision == PrecisionReal.Double )
+		{
+			computeInverseFFTDouble( complex, realImage, numThreads, scale, cropBack, originalSize, originalOffset, additionalNormalization );
+			return;
+		}
+		
+		// get the number of dimensions		
+		final int numDimensions = complex.getNumDimensions();
+			
+		// the size in dimension 0 of the output image
+		final int nfft = ( complex.getDimension( 0 ) - 1 ) * 2;
+		
+		// the size of the inverse FFT image
+		final int dimensionsReal[] = complex.getDimensions();
+		dimensionsReal[ 0 ] = nfft;
+		
 		//
 		// do fft in all the other dimensions		
 		//	
 		for ( int d = numDimensions - 1; d > 0; --d )
-		{
-			final int dim = d;
-			
-			final AtomicInteger ai = new AtomicInteger();
-			final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-
-			for (int ithread = 0; ithread < threads.length; ++ithread)
-				threads[ithread] = new Thread(new Runnable()
-				{
-					public void run()
-					{
-						final int myNumber = ai.getAndIncrement();
-												
-						final int size = complex.getDimension( dim );
-						
-						final float[] tempIn = new float[ size * 2 ];						
-						final FftComplex fftc = new FftComplex( size );
-						
-						final LocalizableByDimCursor<S> cursor = complex.createLocalizableByDimCursor(); 
-
-						/**
-						 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the inverse fft in 
-						 */	
-						final int[] fakeSize = new int[ numDimensions - 1 ];
-						final int[] tmp = new int[ numDimensions ];
-						
-						// get all dimensions except the one we are currently doing the fft on
-						int countDim = 0;						
-						for ( int d = 0; d < numDimensions; ++d )
-							if ( d != dim )
-								fakeSize[ countDim++ ] = complex.getDimension( d );
-
-						final ArrayLocalizableCursor<FakeType> cursorDim = ArrayLocalizableCursor.createLinearCursor( fakeSize );
-						
-						final float[] tempOut = new float[ size * 2 ];
-						
-						// iterate over all dimensions except the one we are computing the fft in, which is dim=0 here
-						while( cursorDim.hasNext() )
-						{
-							cursorDim.fwd();							
-
-							if ( cursorDim.getPosition( 0 ) % numThreads == myNumber )
-							{
-								// update all positions except for the one we are currrently doing the inverse fft on
-								cursorDim.getPosition( fakeSize );
-
-								tmp[ dim ] = 0;								
-								countDim = 0;						
-								for ( int d = 0; d < numDimensions; ++d )
-									if ( d != dim )
-										tmp[ d ] = fakeSize[ countDim++ ];
-								
-								// update the cursor in the input image to the current dimension position
-								cursor.setPosition( tmp );
-																
-								// get the input line
-								for ( int i = 0; i < size-1; ++i )
-								{
-									tempIn[ i * 2 ] = cursor.getType().getRealFloat();
-									tempIn[ i * 2 + 1 ] = cursor.getType().getComplexFloat();
-									cursor.fwd( dim );
-								}
-								tempIn[ (size-1) * 2 ] = cursor.getType().getRealFloat();
-								tempIn[ (size-1) * 2 + 1 ] = cursor.getType().getComplexFloat();
-								
-								// compute the inverse fft
-								fftc.complexToComplex( 1, tempIn, tempOut );
-								
-								// update the cursor in the input image to the current dimension position
-								cursor.setPosition( tmp );
-
-								// write back result
-								if ( scale )
-								{
-									for ( int i = 0; i < size-1; ++i )
-									{
-										cursor.getType().setComplexNumber( tempOut[ i * 2 ] / size, tempOut[ i * 2 + 1 ] / size );
-										cursor.fwd( dim );
-									}
-									cursor.getType().setComplexNumber( tempOut[ (size-1) * 2 ] / size, tempOut[ (size-1) * 2 + 1 ] / size );
-								}
-								else
-								{
-									for ( int i = 0; i < size-1; ++i )
-									{
-										cursor.getType().setComplexNumber( tempOut[ i * 2 ], tempOut[ i * 2 + 1 ] );
-										cursor.fwd( dim );
-									}
-									cursor.getType().setComplexNumber( tempOut[ (size-1) * 2 ], tempOut[ (size-1) * 2 + 1 ] );
-								}	
-							}							
-						}
-						
-						cursor.close();
-						cursorDim.close();
-					}
-				});
-			
-			SimpleMultiThreading.startAndJoin( threads );						
-		}
+			computeComplexFFT( complex, d, 1, scale, numThreads, PrecisionReal.Float );
 		
 		//
 		// compute inverse fft into the real dimension
 		//
-		final AtomicInteger ai = new AtomicInteger();
+		
+		// the lines we have to compute, only those that are inside the cropped image if we crop back
+		final int[] lineSize = cropBack ? originalSize.clone() : dimensionsReal.clone();
+		final int[] lineOffset = cropBack ? originalOffset.clone() : new int[ numDimensions ];
+		lineOffset[ 0 ] = 0;
+		
+		final int numLines = getNumLines( lineSize, 0 );
+		final int linesPerTask = getLinesPerTask( numLines, numThreads );
+		
+		final FFTLineAccess complexAccess = FFTLineAccess.create( complex );
+		final FFTLineAccess realAccess = FFTLineAccess.create( realImage );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
 		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
 		
 		for (int ithread = 0; ithread < threads.length; ++ithread)
@@ -199,12 +187,11 @@ final public class FFTFunctions
 			{
 				public void run()
 				{
-					final int myNumber = ai.getAndIncrement();
-										
 					final int realSize = dimensionsReal[ 0 ];
 					final int complexSize = complex.getDimension( 0 );
-					final float[] tempIn = new float[ complexSize * 2 ];				
-					final FftReal fft = new FftReal( realSize );
+					final float[] tempIn = FFTCache.getBuffer( complexSize * 2 );				
+					final float[] tempOut = FFTCache.getBuffer( realSize );
+					final FftReal fft = FFTCache.getFftReal( realSize );
 
 					final int cropX1, cropX2;					
 					if ( cropBack )
@@ -218,162 +205,107 @@ final public class FFTFunctions
 						cropX2 = realSize;
 					}
 					
-					final LocalizableByDimCursor<S> cursor = complex.createLocalizableByDimCursor(); 
-					final LocalizableByDimCursor<T> cursorOut = realImage.createLocalizableByDimCursor(); 
+					final LocalizableByDimCursor<S> cursor = complexAccess == null ? complex.createLocalizableByDimCursor() : null; 
+					final LocalizableByDimCursor<T> cursorOut = realAccess == null ? realImage.createLocalizableByDimCursor() : null; 
+					
+					final float[][] data = new float[ Math.max( complexSize, cropX2 - cropX1 ) ][];
+					final int[] index = new int[ data.length ];
+					
+					final int[] tmp = new int[ numDimensions ];
 					
-					if ( numDimensions > 1 )
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
 					{
-						/**
-						 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the fft in 
-						 */	
-						final int[] fakeSize = new int[ numDimensions - 1 ];
-						final int[] tmp = new int[ numDimensions ];
-						
-						for ( int d = 1; d < numDimensions; ++d )
-							fakeSize[ d - 1 ] = complex.getDimension( d );
-						
-						final ArrayLocalizableCursor<FakeType> cursorDim = ArrayLocalizableCursor.createLinearCursor( fakeSize );
-							
-						final float[] tempOut = new float[ realSize ];
-																		
-						// iterate over all dimensions except the one we are computing the fft in, which is dim=0 here
-A:						while( cursorDim.hasNext() )
-						{
-							cursorDim.fwd();							
-
-							if ( cursorDim.getPosition( 0 ) % numThreads == myNumber )
-							{							
-								// get all dimensions except the one we are currently doing the fft on
-								cursorDim.getPosition( fakeSize );
-
-								tmp[ 0 ] = 0;
-								if ( cropBack )
-								{
-									// check that we are not out of the cropped image's bounds, then we do not have to compute the
-									// inverse fft here
-									for ( int d = 1; d < numDimensions; ++d )
-									{
-										tmp[ d ] = fakeSize[ d - 1 ];
-										if ( tmp[ d ] < originalOffset[ d ] || tmp[ d ] >= originalOffset[ d ] + originalSize[ d ] )
-											continue A;
-									}
-								}
-								else
-								{
-									for ( int d = 1; d < numDimensions; ++d )									
-										tmp[ d ] = fakeSize[ d - 1 ];
-								}
-
-								// set the cursor to the beginning of the correct line
-								cursor.setPosition( tmp );
-								
-								// fill the input array with complex image data
-								for ( int i = 0; i < complexSize-1; ++i )
-								{
-									tempIn[ i * 2 ] = cursor.getType().getRealFloat();
-									tempIn[ i * 2 + 1 ] = cursor.getType().getComplexFloat();
-									cursor.fwd( 0 );
-								}
-								tempIn[ (complexSize-1) * 2 ] = cursor.getType().getRealFloat();
-								tempIn[ (complexSize-1) * 2 + 1 ] = cursor.getType().getComplexFloat();
-																								
-								// compute the fft in dimension 0 ( complex -> real )
-								fft.complexToReal( 1, tempIn, tempOut );
-										
-								// set the cursor in the fft output image to the right line								
-								if ( cropBack )
-									for ( int d = 1; d < numDimensions; ++d )									
-										tmp[ d ] -= originalOffset[ d ];									
-								
-								cursorOut.setPosition( tmp );
-								
-								// write back the real data
-								if ( scale )
-								{
-									for ( int x = cropX1; x < cropX2-1; ++x )
-									{
-										cursorOut.getType().setReal( (tempOut[ x ] / realSize) * additionalNormalization );
-										cursorOut.fwd( 0 );
-									}
-									cursorOut.getType().setReal( (tempOut[ cropX2-1 ] / realSize) * additionalNormalization );
-								}
-								else
-								{
-									for ( int x = cropX1; x < cropX2-1; ++x )
-									{
-										cursorOut.getType().setReal( tempOut[ x ] * additionalNormalization );
-										cursorOut.fwd( 0 );
-									}
-									cursorOut.getType().setReal( tempOut[ cropX2-1 ] * additionalNormalization );
-								}
-							}
-						}
+						final int end = Math.min( start + linesPerTask, numLines );
 						
-						cursorOut.close();
-						cursor.close();
-						cursorDim.close();						
-					}
-					else
-					{
-						// multithreading makes no sense here
-						if ( myNumber == 0)
+						for ( int line = start; line < end; ++line )
 						{
-							// set the cursor to 0 in the first (and only) dimension
-							cursor.setPosition( 0, 0 );
+							// the position of the line in the complex image
+							getLinePosition( line, lineSize, lineOffset, 0, tmp );
 							
-							// get the input data
 							// fill the input array with complex image data
-							for ( int i = 0; i < complexSize-1; ++i )
+							if ( complexAccess == null )
+							{
+								readComplexLine( cursor, tmp, 0, complexSize, tempIn );
+							}
+							else
 							{
-								tempIn[ i * 2 ] = cursor.getType().getRealFloat();
-								tempIn[ i * 2 + 1 ] = cursor.getType().getComplexFloat();
-								cursor.fwd( 0 );
+								complexAccess.getLine( tmp, 0, complexSize, data, index );
+								
+								for ( int i = 0; i < complexSize; ++i )
+								{
+									tempIn[ i * 2 ] = data[ i ][ index[ i ] ];
+									tempIn[ i * 2 + 1 ] = data[ i ][ index[ i ] + 1 ];
+								}
 							}
-							tempIn[ (complexSize-1) * 2 ] = cursor.getType().getRealFloat();
-							tempIn[ (complexSize-1) * 2 + 1 ] = cursor.getType().getComplexFloat();
 							
-							// compute the fft in dimension 0 ( real -> complex )
-							final float[] tempOut = new float[ realSize ];
+							// compute the fft in dimension 0 ( complex -> real )
 							fft.complexToReal( 1, tempIn, tempOut );
 							
-							// set the cursor in the fft output image to 0 in the first (and only) dimension
-							cursorOut.setPosition( 0, 0 );
+							// the position of the line in the output image
+							if ( cropBack )
+								for ( int d = 1; d < numDimensions; ++d )									
+									tmp[ d ] -= originalOffset[ d ];									
 							
 							// write back the real data
 							if ( scale )
+								for ( int x = cropX1; x < cropX2; ++x )
+									tempOut[ x ] = (tempOut[ x ] / realSize) * additionalNormalization;
+							else
+								for ( int x = cropX1; x < cropX2; ++x )
+									tempOut[ x ] = tempOut[ x ] * additionalNormalization;
+							
+							if ( realAccess == null )
 							{
+								cursorOut.setPosition( tmp );
+								
 								for ( int x = cropX1; x < cropX2-1; ++x )
 								{
-									cursorOut.getType().setReal( (tempOut[ x ] / realSize) * additionalNormalization );
+									cursorOut.getType().setReal( tempOut[ x ] );
 									cursorOut.fwd( 0 );
 								}
-								cursorOut.getType().setReal( (tempOut[ cropX2-1 ] / realSize) * additionalNormalization );
+								cursorOut.getType().setReal( tempOut[ cropX2-1 ] );
 							}
 							else
 							{
-								for ( int x = cropX1; x < cropX2-1; ++x )
-								{
-									cursorOut.getType().setReal( tempOut[ x ] * additionalNormalization );
-									cursorOut.fwd( 0 );
-								}
-								cursorOut.getType().setReal( tempOut[ cropX2-1 ] * additionalNormalization );
+								realAccess.getLine( tmp, 0, cropX2 - cropX1, data, index );
+								
+								for ( int x = cropX1; x < cropX2; ++x )
+									data[ x - cropX1 ][ index[ x - cropX1 ] ] = tempOut[ x ];
 							}
 						}
-						cursorOut.close();
-						cursor.close();						
 					}
+					
+					if ( cursor != null )
+						cursor.close();
+					
+					if ( cursorOut != null )
+						cursorOut.close();
+					
+					FFTCache.releaseBuffer( tempIn );
+					FFTCache.releaseBuffer( tempOut );
 				}
 			});
 		
 		SimpleMultiThreading.startAndJoin(threads);
-		
-		return realImage;
 	}
 	
 	final public static <T extends RealType<T>, S extends ComplexType<S>> Image<S> 
 						computeFFT( final Image<T> img, final S complexType, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory,
 						            final int[] imageOffset, final int[] imageSize,
 						            final int numThreads, final boolean scale )
+	{
+		return computeFFT( img, complexType, outOfBoundsFactory, imageOffset, imageSize, numThreads, scale, complexType.getPreferredRealPrecision() );
+	}
+	
+	/**
+	 * Computes the FFT with the line buffers and the FFT in the given precision, independent of the precision of the complex type.
+	 * 
+	 * @param precision - {@link PrecisionReal#Float} or {@link PrecisionReal#Double}
+	 */
+	final public static <T extends RealType<T>, S extends ComplexType<S>> Image<S> 
+						computeFFT( final Image<T> img, final S complexType, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory,
+						            final int[] imageOffset, final int[] imageSize,
+						            final int numThreads, final boolean scale, final PrecisionReal precision )
 	{
 		final int numDimensions = img.getNumDimensions();
 		
@@ -392,149 +324,145 @@ A:						while( cursorDim.hasNext() )
 		if ( fftImage == null )
 			return null;
 		
-		final AtomicInteger ai = new AtomicInteger(0);
-		Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		computeFFT( img, fftImage, outOfBoundsFactory, imageOffset, imageSize, numThreads, scale, precision );
+		
+		return fftImage;
+	}
+	
+	/**
+	 * Computes the FFT into an existing complex image, e.g. to reuse the same image across iterations.
+	 * 
+	 * @param fftImage - the output image, it has the size imageSize[ 0 ] / 2 + 1 in dimension 0 and imageSize in all others
+	 */
+	final public static <T extends RealType<T>, S extends ComplexType<S>> void 
+						computeFFT( final Image<T> img, final Image<S> fftImage, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory,
+						            final int[] imageOffset, final int[] imageSize,
+						            final int numThreads, final boolean scale )
+	{
+		computeFFT( img, fftImage, outOfBoundsFactory, imageOffset, imageSize, numThreads, scale, fftImage.createType().getPreferredRealPrecision() );
+	}
+	
+	/**
+	 * Computes the FFT into an existing complex image with the line buffers and the FFT in the given precision.
+	 * 
+	 * @param precision - {@link PrecisionReal#Float} or {@link PrecisionReal#Double}
+	 */
+	final public static <T extends RealType<T>, S extends ComplexType<S>> void 
+						computeFFT( final Image<T> img, final Image<S> fftImage, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory,
+						            final int[] imageOffset, final int[] imageSize,
+						            final int numThreads, final boolean scale, final PrecisionReal precision )
+	{
+		if ( precision == PrecisionReal.Double )
+		{
+			computeFFTDouble( img, fftImage, outOfBoundsFactory, imageOffset, imageSize, numThreads, scale );
+			return;
+		}
+		
+		final int numDimensions = img.getNumDimensions();
+		
+		final int numLines = getNumLines( imageSize, 0 );
+		final int linesPerTask = getLinesPerTask( numLines, numThreads );
+
+		final FFTLineAccess realAccess = FFTLineAccess.create( img );
+		final FFTLineAccess complexAccess = FFTLineAccess.create( fftImage );
+		final int[] imgSize = img.getDimensions();
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
 		
 		for (int ithread = 0; ithread < threads.length; ++ithread)
 			threads[ithread] = new Thread(new Runnable()
 			{
 				public void run()
 				{
-					final int myNumber = ai.getAndIncrement();
-					
 					final int realSize = imageSize[ 0 ];
 					final int complexSize = fftImage.getDimension( 0 );
 							
-					final float[] tempIn = new float[ realSize ];				
-					final FftReal fft = new FftReal( realSize );
+					final float[] tempIn = FFTCache.getBuffer( realSize );				
+					final float[] tempOut = FFTCache.getBuffer( complexSize * 2 );
+					final FftReal fft = FFTCache.getFftReal( realSize );
 					
 					final LocalizableByDimCursor<T> cursor = img.createLocalizableByDimCursor( outOfBoundsFactory );
-					final LocalizableByDimCursor<S> cursorOut = fftImage.createLocalizableByDimCursor(); 
+					final LocalizableByDimCursor<S> cursorOut = complexAccess == null ? fftImage.createLocalizableByDimCursor() : null; 
+					
+					final float[][] data = new float[ Math.max( realSize, complexSize ) ][];
+					final int[] index = new int[ data.length ];
+					
+					final int[] tmp = new int[ numDimensions ];
+					final int[] tmp2 = new int[ numDimensions ];
 					
-					if ( numDimensions > 1 )
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
 					{
-						/**
-						 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the fft in 
-						 */	
-						final int[] fakeSize = new int[ numDimensions - 1 ];
-						final int[] tmp = new int[ numDimensions ];
-						final int[] tmp2 = new int[ numDimensions ];
-						
-						for ( int d = 1; d < numDimensions; ++d )
-							fakeSize[ d - 1 ] = imageSize[ d ];
-						
-						final ArrayLocalizableCursor<FakeType> cursorDim = ArrayLocalizableCursor.createLinearCursor( fakeSize );
-
-						final float[] tempOut = new float[ complexSize * 2 ];
+						final int end = Math.min( start + linesPerTask, numLines );
 						
-						// iterate over all dimensions except the one we are computing the fft in, which is dim=0 here
-						while( cursorDim.hasNext() )
+						for ( int line = start; line < end; ++line )
 						{
-							cursorDim.fwd();							
-
-							if ( cursorDim.getPosition( 0 ) % numThreads == myNumber )
-							{							
-								// get all dimensions except the one we are currently doing the fft on
-								cursorDim.getPosition( fakeSize );
-
-								tmp[ 0 ] = 0;
-								tmp2[ 0 ] = -imageOffset[ 0 ];
+							// the position of the line in the fft image and in the input image
+							getLinePosition( line, imageSize, null, 0, tmp );
+							
+							boolean inside = realAccess != null;
+							
+							for ( int d = 0; d < numDimensions; ++d )
+							{
+								tmp2[ d ] = tmp[ d ] - imageOffset[ d ];
 								
-								for ( int d = 1; d < numDimensions; ++d )
-								{
-									tmp[ d ] = fakeSize[ d - 1 ];
-									tmp2[ d ] = fakeSize[ d - 1 ] - imageOffset[ d ];
-								}
-
-								// set the cursor to the beginning of the correct line
+								if ( tmp2[ d ] < 0 || tmp2[ d ] + ( d == 0 ? realSize : 1 ) > imgSize[ d ] )
+									inside = false;
+							}
+							
+							// fill the input array with image data, only lines that do not need the 
+							// outofbounds strategy are read directly
+							if ( inside )
+							{
+								realAccess.getLine( tmp2, 0, realSize, data, index );
+								
+								for ( int x = 0; x < realSize; ++x )
+									tempIn[ x ] = data[ x ][ index[ x ] ];
+							}
+							else
+							{
 								cursor.setPosition( tmp2 );
 								
-								// fill the input array with image data
 								for ( int x = 0; x < realSize-1; ++x )
 								{
 									tempIn[ x ] = cursor.getType().getRealFloat();									
 									cursor.fwd( 0 );
 								}
 								tempIn[ (realSize-1) ] = cursor.getType().getRealFloat();
-
-								// compute the fft in dimension 0 ( real -> complex )
-								fft.realToComplex( -1, tempIn, tempOut );
-									
-								// set the cursor in the fft output image to the right line
-								cursorOut.setPosition( tmp );
-								
-								// write back the fft data
-								if ( scale )
-								{
-									for ( int x = 0; x < complexSize-1; ++x )
-									{
-										cursorOut.getType().setComplexNumber( tempOut[ x * 2 ] / realSize, tempOut[ x * 2 + 1 ] / realSize );									
-										cursorOut.fwd( 0 );
-									}
-									cursorOut.getType().setComplexNumber( tempOut[ (complexSize-1) * 2 ] / realSize, tempOut[ (complexSize-1) * 2 + 1 ] / realSize );									
-								}
-								else
-								{
-									for ( int x = 0; x < complexSize-1; ++x )
-									{
-										cursorOut.getType().setComplexNumber( tempOut[ x * 2 ], tempOut[ x * 2 + 1 ] );									
-										cursorOut.fwd( 0 );
-									}
-									cursorOut.getType().setComplexNumber( tempOut[ (complexSize-1) * 2 ], tempOut[ (complexSize-1) * 2 + 1 ] );									
-								}
-							}
-						}
-						
-						cursorOut.close();
-						cursor.close();
-						cursorDim.close();						
-					}
-					else
-					{
-						// multithreading makes no sense here
-						if ( myNumber == 0)
-						{
-							// set the cursor to 0 in the first (and only) dimension
-							cursor.setPosition( -imageOffset[ 0 ], 0 );
-							
-							// get the input data
-							for ( int x = 0; x < realSize-1; ++x )
-							{
-								tempIn[ x ] = cursor.getType().getRealFloat();
-								cursor.fwd( 0 );
 							}
-							tempIn[ realSize-1 ] = cursor.getType().getRealFloat();
 							
 							// compute the fft in dimension 0 ( real -> complex )
-							final float[] tempOut = new float[ complexSize * 2 ];
 							fft.realToComplex( -1, tempIn, tempOut );
 							
-							// set the cursor in the fft output image to 0 in the first (and only) dimension
-							cursorOut.setPosition( 0, 0 );
+							if ( scale )
+								for ( int x = 0; x < complexSize * 2; ++x )
+									tempOut[ x ] /= realSize;
 							
 							// write back the fft data
-							if ( scale )
+							if ( complexAccess == null )
 							{
-								for ( int x = 0; x < complexSize-1; ++x )
-								{
-									cursorOut.getType().setComplexNumber( tempOut[ x * 2 ] / realSize, tempOut[ x * 2 + 1 ] / realSize );
-									cursorOut.fwd( 0 );
-								}
-								cursorOut.getType().setComplexNumber( tempOut[ (complexSize-1) * 2 ] / realSize, tempOut[ (complexSize-1) * 2 + 1 ] / realSize );
+								writeComplexLine( cursorOut, tmp, 0, complexSize, tempOut );
 							}
 							else
 							{
-								for ( int x = 0; x < complexSize-1; ++x )
+								complexAccess.getLine( tmp, 0, complexSize, data, index );
+								
+								for ( int x = 0; x < complexSize; ++x )
 								{
-									cursorOut.getType().setComplexNumber( tempOut[ x * 2 ], tempOut[ x * 2 + 1 ] );									
-									cursorOut.fwd( 0 );
+									data[ x ][ index[ x ] ] = tempOut[ x * 2 ];
+									data[ x ][ index[ x ] + 1 ] = tempOut[ x * 2 + 1 ];
 								}
-								cursorOut.getType().setComplexNumber( tempOut[ (complexSize-1) * 2 ], tempOut[ (complexSize-1) * 2 + 1 ] );									
-							}	
+							}
 						}
-						cursorOut.close();
-						cursor.close();						
 					}
+					
+					cursor.close();
+					
+					if ( cursorOut != null )
+						cursorOut.close();
+					
+					FFTCache.releaseBuffer( tempIn );
+					FFTCache.releaseBuffer( tempOut );
 				}
 			});
 		
@@ -544,107 +472,565 @@ A:						while( cursorDim.hasNext() )
 		// do fft in all the other dimensions		
 		//	
 		for ( int d = 1; d < numDimensions; ++d )
+			computeComplexFFT( fftImage, d, -1, scale, numThreads, PrecisionReal.Float );
+	}
+	
+	/**
+	 * Computes the complex to complex fft in one dimension of a complex image in place. The lines are 
+	 * distributed as blocks of neighboring lines, which are read and written together pixel by pixel 
+	 * so that the memory access is contiguous also for dimensions other than 0.
+	 * 
+	 * @param image - the complex image
+	 * @param dim - the dimension
+	 * @param sign - -1 for the forward, 1 for the inverse transform
+	 * @param scale - divide the result by the size of the dimension
+	 * @param numThreads - the number of threads
+	 */
+	final protected static <S extends ComplexType<S>> void computeComplexFFT( final Image<S> image, final int dim, final int sign, final boolean scale, final int numThreads )
+	{
+		computeComplexFFT( image, dim, sign, scale, numThreads, image.createType().getPreferredRealPrecision() );
+	}
+
+	/**
+	 * The same as {@link #computeComplexFFT(Image, int, int, boolean, int)} with the line buffers and the FFT in the given precision.
+	 * 
+	 * @param precision - {@link PrecisionReal#Float} or {@link PrecisionReal#Double}
+	 */
+	final protected static <S extends ComplexType<S>> void computeComplexFFT( final Image<S> image, final int dim, final int sign, final boolean scale, final int numThreads, final PrecisionReal precision )
+	{
+		if ( precision == PrecisionReal.Double )
 		{
-			final int dim = d;
-			
-			ai.set( 0 );
-			threads = SimpleMultiThreading.newThreads( numThreads );
+			computeComplexFFTDouble( image, dim, sign, scale, numThreads );
+			return;
+		}
+		
+		final int numDimensions = image.getNumDimensions();
+		final int[] dimensions = image.getDimensions();
+		
+		final int numLines = getNumLines( dimensions, dim );
+		final int linesPerTask = getLinesPerTask( numLines, numThreads );
+		
+		final FFTLineAccess access = FFTLineAccess.create( image );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
 
-			for (int ithread = 0; ithread < threads.length; ++ithread)
-				threads[ithread] = new Thread(new Runnable()
+		for (int ithread = 0; ithread < threads.length; ++ithread)
+			threads[ithread] = new Thread(new Runnable()
+			{
+				public void run()
 				{
-					public void run()
+					final int size = dimensions[ dim ];
+					
+					final float[][] lines = new float[ linesPerTask ][];
+					for ( int l = 0; l < linesPerTask; ++l )
+						lines[ l ] = FFTCache.getBuffer( size * 2 );
+					
+					final float[] tempOut = FFTCache.getBuffer( size * 2 );
+					final FftComplex fftc = FFTCache.getFftComplex( size );
+					
+					final LocalizableByDimCursor<S> cursor = access == null ? image.createLocalizableByDimCursor() : null; 
+					
+					final int[][] positions = new int[ linesPerTask ][ numDimensions ];
+					final float[][][] data = access == null ? null : new float[ linesPerTask ][ size ][];
+					final int[][] index = access == null ? null : new int[ linesPerTask ][ size ];
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
 					{
-						final int myNumber = ai.getAndIncrement();
+						final int numTaskLines = Math.min( linesPerTask, numLines - start );
 						
-						final int size = fftImage.getDimension( dim );
+						for ( int l = 0; l < numTaskLines; ++l )
+							getLinePosition( start + l, dimensions, null, dim, positions[ l ] );
 						
-						final float[] tempIn = new float[ size * 2 ];						
-						final FftComplex fftc = new FftComplex( size );
+						// get the input lines
+						if ( access == null )
+						{
+							for ( int l = 0; l < numTaskLines; ++l )
+								readComplexLine( cursor, positions[ l ], dim, size, lines[ l ] );
+						}
+						else
+						{
+							for ( int l = 0; l < numTaskLines; ++l )
+								access.getLine( positions[ l ], dim, size, data[ l ], index[ l ] );
+							
+							for ( int i = 0; i < size; ++i )
+								for ( int l = 0; l < numTaskLines; ++l )
+								{
+									final float[] d = data[ l ][ i ];
+									final int j = index[ l ][ i ];
+									
+									lines[ l ][ i * 2 ] = d[ j ];
+									lines[ l ][ i * 2 + 1 ] = d[ j + 1 ];
+								}
+						}
 						
-						final LocalizableByDimCursor<S> cursor = fftImage.createLocalizableByDimCursor(); 
-
-						/**
-						 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the fft in 
-						 */	
-						final int[] fakeSize = new int[ numDimensions - 1 ];
-						final int[] tmp = new int[ numDimensions ];
+						// compute the fft in dimension dim (complex -> complex) 
+						for ( int l = 0; l < numTaskLines; ++l )
+						{
+							final float[] line = lines[ l ];
+							
+							fftc.complexToComplex( sign, line, tempOut );
+							
+							if ( scale )
+								for ( int i = 0; i < size * 2; ++i )
+									line[ i ] = tempOut[ i ] / size;
+							else
+								System.arraycopy( tempOut, 0, line, 0, size * 2 );
+						}
 						
-						// get all dimensions except the one we are currently doing the fft on
-						int countDim = 0;						
-						for ( int d = 0; d < numDimensions; ++d )
-							if ( d != dim )
-								fakeSize[ countDim++ ] = fftImage.getDimension( d );
+						// write back result
+						if ( access == null )
+						{
+							for ( int l = 0; l < numTaskLines; ++l )
+								writeComplexLine( cursor, positions[ l ], dim, size, lines[ l ] );
+						}
+						else
+						{
+							for ( int i = 0; i < size; ++i )
+								for ( int l = 0; l < numTaskLines; ++l )
+								{
+									final float[] d = data[ l ][ i ];
+									final int j = index[ l ][ i ];
+									
+									d[ j ] = lines[ l ][ i * 2 ];
+									d[ j + 1 ] = lines[ l ][ i * 2 + 1 ];
+								}
+						}
+					}
+					
+					if ( cursor != null )
+						cursor.close();
+					
+					for ( int l = 0; l < linesPerTask; ++l )
+						FFTCache.releaseBuffer( lines[ l ] );
+					
+					FFTCache.releaseBuffer( tempOut );
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/**
+	 * The double precision counterpart of the inverse FFT, the images can be stored in float[] or double[] 
+	 * (see {@link FFTLineAccess#readLines(int[][], int, int, int, double[][], Object[][], int[][])}) or in any other container.
+	 */
+	final private static <T extends RealType<T>, S extends ComplexType<S>> void 
+						computeInverseFFTDouble( final Image<S> complex, final Image<T> realImage,  
+						                         final int numThreads, 
+						                         final boolean scale, final boolean cropBack,
+						                         final int[] originalSize, final int[] originalOffset,
+						                         final float additionalNormalization )
+	{
+		final int numDimensions = complex.getNumDimensions();
+		
+		// the size of the inverse FFT image
+		final int dimensionsReal[] = complex.getDimensions();
+		dimensionsReal[ 0 ] = ( complex.getDimension( 0 ) - 1 ) * 2;
+		
+		for ( int d = numDimensions - 1; d > 0; --d )
+			computeComplexFFTDouble( complex, d, 1, scale, numThreads );
+		
+		// the lines we have to compute, only those that are inside the cropped image if we crop back
+		final int[] lineSize = cropBack ? originalSize.clone() : dimensionsReal.clone();
+		final int[] lineOffset = cropBack ? originalOffset.clone() : new int[ numDimensions ];
+		lineOffset[ 0 ] = 0;
+		
+		final int numLines = getNumLines( lineSize, 0 );
+		final int linesPerTask = getLinesPerTask( numLines, numThreads );
+		
+		final FFTLineAccess complexAccess = getLineAccess( complex );
+		final FFTLineAccess realAccess = getLineAccess( realImage );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		
+		for (int ithread = 0; ithread < threads.length; ++ithread)
+			threads[ithread] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					final int realSize = dimensionsReal[ 0 ];
+					final int complexSize = complex.getDimension( 0 );
+					final double[] tempIn = FFTCache.getDoubleBuffer( complexSize * 2 );				
+					final double[] tempOut = FFTCache.getDoubleBuffer( realSize );
+					final FftRealDouble fft = FFTCache.getFftRealDouble( realSize );
 
-						final ArrayLocalizableCursor<FakeType> cursorDim = ArrayLocalizableCursor.createLinearCursor( fakeSize );
-						
-						final float[] tempOut = new float[ size * 2 ];
+					final int cropX1 = cropBack ? originalOffset[ 0 ] : 0;
+					final int cropX2 = cropBack ? originalOffset[ 0 ] + originalSize[ 0 ] : realSize;
+					
+					final LocalizableByDimCursor<S> cursor = complexAccess == null ? complex.createLocalizableByDimCursor() : null; 
+					final LocalizableByDimCursor<T> cursorOut = realAccess == null ? realImage.createLocalizableByDimCursor() : null; 
+					
+					final double[][] in = new double[][]{ tempIn };
+					final double[][] out = new double[][]{ tempOut };
+					final Object[][] data = new Object[ 1 ][ Math.max( complexSize, cropX2 - cropX1 ) ];
+					final int[][] index = new int[ 1 ][ data[ 0 ].length ];
+					final int[][] tmp = new int[ 1 ][ numDimensions ];
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int end = Math.min( start + linesPerTask, numLines );
 						
-						// iterate over all dimensions except the one we are computing the fft in, which is dim=0 here
-						while( cursorDim.hasNext() )
+						for ( int line = start; line < end; ++line )
 						{
-							cursorDim.fwd();							
-
-							if ( cursorDim.getPosition( 0 ) % numThreads == myNumber )
+							// the position of the line in the complex image
+							getLinePosition( line, lineSize, lineOffset, 0, tmp[ 0 ] );
+							
+							if ( complexAccess == null )
+								readComplexLine( cursor, tmp[ 0 ], 0, complexSize, tempIn );
+							else
+								complexAccess.readLines( tmp, 1, 0, complexSize, in, data, index );
+							
+							// compute the fft in dimension 0 ( complex -> real )
+							fft.complexToReal( 1, tempIn, tempOut );
+							
+							// the position of the line in the output image
+							if ( cropBack )
+								for ( int d = 1; d < numDimensions; ++d )									
+									tmp[ 0 ][ d ] -= originalOffset[ d ];									
+							
+							// normalize and move the cropped part to the beginning of the line
+							if ( scale )
+								for ( int x = cropX1; x < cropX2; ++x )
+									tempOut[ x - cropX1 ] = ( tempOut[ x ] / realSize ) * additionalNormalization;
+							else
+								for ( int x = cropX1; x < cropX2; ++x )
+									tempOut[ x - cropX1 ] = tempOut[ x ] * additionalNormalization;
+							
+							if ( realAccess == null )
 							{
-								// update all positions except for the one we are currrently doing the fft on
-								cursorDim.getPosition( fakeSize );
-
-								tmp[ dim ] = 0;								
-								countDim = 0;						
-								for ( int d = 0; d < numDimensions; ++d )
-									if ( d != dim )
-										tmp[ d ] = fakeSize[ countDim++ ];
+								cursorOut.setPosition( tmp[ 0 ] );
 								
-								// update the cursor in the input image to the current dimension position
-								cursor.setPosition( tmp );
-								
-								// get the input line
-								for ( int i = 0; i < size - 1; ++i )
+								for ( int x = 0; x < cropX2 - cropX1 - 1; ++x )
 								{
-									tempIn[ i * 2 ] = cursor.getType().getRealFloat();
-									tempIn[ i * 2 + 1 ] = cursor.getType().getComplexFloat();
-									cursor.fwd( dim  );
+									cursorOut.getType().setReal( tempOut[ x ] );
+									cursorOut.fwd( 0 );
 								}
-								tempIn[ (size-1) * 2 ] = cursor.getType().getRealFloat();
-								tempIn[ (size-1) * 2 + 1 ] = cursor.getType().getComplexFloat();
-								
-								// compute the fft in dimension dim (complex -> complex) 
-								fftc.complexToComplex( -1, tempIn, tempOut);
+								cursorOut.getType().setReal( tempOut[ cropX2 - cropX1 - 1 ] );
+							}
+							else
+							{
+								realAccess.writeLines( tmp, 1, 0, cropX2 - cropX1, out, data, index );
+							}
+						}
+					}
+					
+					if ( cursor != null )
+						cursor.close();
+					
+					if ( cursorOut != null )
+						cursorOut.close();
+					
+					FFTCache.releaseBuffer( tempIn );
+					FFTCache.releaseBuffer( tempOut );
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin(threads);
+	}
 	
-								// set the cursor to the right line
-								cursor.setPosition( tmp );
+	/**
+	 * The double precision counterpart of the FFT, the images can be stored in float[] or double[] 
+	 * (see {@link FFTLineAccess#readLines(int[][], int, int, int, double[][], Object[][], int[][])}) or in any other container.
+	 */
+	final private static <T extends RealType<T>, S extends ComplexType<S>> void 
+						computeFFTDouble( final Image<T> img, final Image<S> fftImage, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory,
+						                  final int[] imageOffset, final int[] imageSize,
+						                  final int numThreads, final boolean scale )
+	{
+		final int numDimensions = img.getNumDimensions();
+		
+		final int numLines = getNumLines( imageSize, 0 );
+		final int linesPerTask = getLinesPerTask( numLines, numThreads );
+
+		final FFTLineAccess realAccess = getLineAccess( img );
+		final FFTLineAccess complexAccess = getLineAccess( fftImage );
+		final int[] imgSize = img.getDimensions();
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		
+		for (int ithread = 0; ithread < threads.length; ++ithread)
+			threads[ithread] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					final int realSize = imageSize[ 0 ];
+					final int complexSize = fftImage.getDimension( 0 );
+							
+					final double[] tempIn = FFTCache.getDoubleBuffer( realSize );				
+					final double[] tempOut = FFTCache.getDoubleBuffer( complexSize * 2 );
+					final FftRealDouble fft = FFTCache.getFftRealDouble( realSize );
+					
+					final LocalizableByDimCursor<T> cursor = img.createLocalizableByDimCursor( outOfBoundsFactory );
+					final LocalizableByDimCursor<S> cursorOut = complexAccess == null ? fftImage.createLocalizableByDimCursor() : null; 
+					
+					final double[][] in = new double[][]{ tempIn };
+					final double[][] out = new double[][]{ tempOut };
+					final Object[][] data = new Object[ 1 ][ Math.max( realSize, complexSize ) ];
+					final int[][] index = new int[ 1 ][ data[ 0 ].length ];
+					final int[][] tmp = new int[ 1 ][ numDimensions ];
+					final int[][] tmp2 = new int[ 1 ][ numDimensions ];
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int end = Math.min( start + linesPerTask, numLines );
+						
+						for ( int line = start; line < end; ++line )
+						{
+							// the position of the line in the fft image and in the input image
+							getLinePosition( line, imageSize, null, 0, tmp[ 0 ] );
+							
+							boolean inside = realAccess != null;
+							
+							for ( int d = 0; d < numDimensions; ++d )
+							{
+								tmp2[ 0 ][ d ] = tmp[ 0 ][ d ] - imageOffset[ d ];
 								
-								// write back result
-								if ( scale )	
-								{
-									for ( int i = 0; i < size-1; ++i )
-									{
-										cursor.getType().setComplexNumber( tempOut[ i * 2 ] / size, tempOut[ i * 2 + 1 ] / size );
-										cursor.fwd( dim );
-									}
-									cursor.getType().setComplexNumber( tempOut[ (size-1) * 2 ] / size, tempOut[ (size-1) * 2 + 1 ] / size );
-								}
-								else
+								if ( tmp2[ 0 ][ d ] < 0 || tmp2[ 0 ][ d ] + ( d == 0 ? realSize : 1 ) > imgSize[ d ] )
+									inside = false;
+							}
+							
+							// only lines that do not need the outofbounds strategy are read directly
+							if ( inside )
+							{
+								realAccess.readLines( tmp2, 1, 0, realSize, in, data, index );
+							}
+							else
+							{
+								cursor.setPosition( tmp2[ 0 ] );
+								
+								for ( int x = 0; x < realSize-1; ++x )
 								{
-									for ( int i = 0; i < size-1; ++i )
-									{
-										cursor.getType().setComplexNumber( tempOut[ i * 2 ], tempOut[ i * 2 + 1 ] );
-										cursor.fwd( dim );
-									}
-									cursor.getType().setComplexNumber( tempOut[ (size-1) * 2 ], tempOut[ (size-1) * 2 + 1 ] );									
+									tempIn[ x ] = cursor.getType().getRealDouble();									
+									cursor.fwd( 0 );
 								}
+								tempIn[ (realSize-1) ] = cursor.getType().getRealDouble();
 							}
+							
+							// compute the fft in dimension 0 ( real -> complex )
+							fft.realToComplex( -1, tempIn, tempOut );
+							
+							if ( scale )
+								for ( int x = 0; x < complexSize * 2; ++x )
+									tempOut[ x ] /= realSize;
+							
+							if ( complexAccess == null )
+								writeComplexLine( cursorOut, tmp[ 0 ], 0, complexSize, tempOut );
+							else
+								complexAccess.writeLines( tmp, 1, 0, complexSize, out, data, index );
 						}
+					}
+					
+					cursor.close();
+					
+					if ( cursorOut != null )
+						cursorOut.close();
+					
+					FFTCache.releaseBuffer( tempIn );
+					FFTCache.releaseBuffer( tempOut );
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin(threads);
+				
+		for ( int d = 1; d < numDimensions; ++d )
+			computeComplexFFTDouble( fftImage, d, -1, scale, numThreads );
+	}
+	
+	/**
+	 * The double precision counterpart of {@link #computeComplexFFT(Image, int, int, boolean, int)}.
+	 */
+	final private static <S extends ComplexType<S>> void computeComplexFFTDouble( final Image<S> image, final int dim, final int sign, final boolean scale, final int numThreads )
+	{
+		final int numDimensions = image.getNumDimensions();
+		final int[] dimensions = image.getDimensions();
+		
+		final int numLines = getNumLines( dimensions, dim );
+		final int linesPerTask = getLinesPerTask( numLines, numThreads );
+		
+		final FFTLineAccess access = getLineAccess( image );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for (int ithread = 0; ithread < threads.length; ++ithread)
+			threads[ithread] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					final int size = dimensions[ dim ];
+					
+					final double[][] lines = new double[ linesPerTask ][];
+					for ( int l = 0; l < linesPerTask; ++l )
+						lines[ l ] = FFTCache.getDoubleBuffer( size * 2 );
+					
+					final FftComplexDouble fftc = FFTCache.getFftComplexDouble( size );
+					
+					final LocalizableByDimCursor<S> cursor = access == null ? image.createLocalizableByDimCursor() : null; 
+					
+					final int[][] positions = new int[ linesPerTask ][ numDimensions ];
+					final Object[][] data = access == null ? null : new Object[ linesPerTask ][ size ];
+					final int[][] index = access == null ? null : new int[ linesPerTask ][ size ];
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int numTaskLines = Math.min( linesPerTask, numLines - start );
 						
-						cursor.close();
-						cursorDim.close();
+						for ( int l = 0; l < numTaskLines; ++l )
+							getLinePosition( start + l, dimensions, null, dim, positions[ l ] );
+						
+						if ( access == null )
+							for ( int l = 0; l < numTaskLines; ++l )
+								readComplexLine( cursor, positions[ l ], dim, size, lines[ l ] );
+						else
+							access.readLines( positions, numTaskLines, dim, size, lines, data, index );
+						
+						// compute the fft in dimension dim (complex -> complex) 
+						for ( int l = 0; l < numTaskLines; ++l )
+						{
+							final double[] line = lines[ l ];
+							
+							fftc.complexToComplex( sign, line, line );
+							
+							if ( scale )
+								for ( int i = 0; i < size * 2; ++i )
+									line[ i ] /= size;
+						}
+						
+						if ( access == null )
+							for ( int l = 0; l < numTaskLines; ++l )
+								writeComplexLine( cursor, positions[ l ], dim, size, lines[ l ] );
+						else
+							access.writeLines( positions, numTaskLines, dim, size, lines, data, index );
 					}
-				});
+					
+					if ( cursor != null )
+						cursor.close();
+					
+					for ( int l = 0; l < linesPerTask; ++l )
+						FFTCache.releaseBuffer( lines[ l ] );
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/**
+	 * @return the {@link FFTLineAccess} for images stored in float[] or double[], or null
+	 */
+	final private static FFTLineAccess getLineAccess( final Image<?> image )
+	{
+		final FFTLineAccess access = FFTLineAccess.create( image );
+		
+		if ( access == null )
+			return FFTLineAccess.createDouble( image );
+		else
+			return access;
+	}
+	
+	/**
+	 * @return the number of lines in dimension dim, i.e. the product of all other dimensions
+	 */
+	final protected static int getNumLines( final int[] size, final int dim )
+	{
+		int numLines = 1;
+		
+		for ( int d = 0; d < size.length; ++d )
+			if ( d != dim )
+				numLines *= size[ d ];
+		
+		return numLines;
+	}
+	
+	/**
+	 * @return how many lines a thread takes at once, at most {@link #LINES_PER_TASK} but small enough to give every thread several tasks
+	 */
+	final protected static int getLinesPerTask( final int numLines, final int numThreads )
+	{
+		return Math.max( 1, Math.min( LINES_PER_TASK, numLines / ( Math.max( 1, numThreads ) * 4 ) ) );
+	}
+	
+	/**
+	 * Computes the position of the first pixel of a line, the lines are numbered like the pixels of
+	 * an image of the given size without dimension dim.
+	 * 
+	 * @param line - the number of the line
+	 * @param size - the size of the area that contains the lines
+	 * @param offset - the offset of the area, or null
+	 * @param dim - the dimension of the lines
+	 * @param position - the position of the first pixel of the line 
+	 */
+	final protected static void getLinePosition( int line, final int[] size, final int[] offset, final int dim, final int[] position )
+	{
+		for ( int d = 0; d < size.length; ++d )
+		{
+			if ( d == dim )
+			{
+				position[ d ] = 0;
+			}
+			else
+			{
+				position[ d ] = line % size[ d ];
+				line /= size[ d ];
+			}
 			
-			SimpleMultiThreading.startAndJoin( threads );
+			if ( offset != null )
+				position[ d ] += offset[ d ];
 		}
-		return fftImage;
+	}
+	
+	final protected static <S extends ComplexType<S>> void readComplexLine( final LocalizableByDimCursor<S> cursor, final int[] position, final int dim, final int size, final float[] line )
+	{
+		cursor.setPosition( position );
+		
+		for ( int i = 0; i < size-1; ++i )
+		{
+			line[ i * 2 ] = cursor.getType().getRealFloat();
+			line[ i * 2 + 1 ] = cursor.getType().getComplexFloat();
+			cursor.fwd( dim );
+		}
+		line[ (size-1) * 2 ] = cursor.getType().getRealFloat();
+		line[ (size-1) * 2 + 1 ] = cursor.getType().getComplexFloat();
+	}
+	
+	final protected static <S extends ComplexType<S>> void writeComplexLine( final LocalizableByDimCursor<S> cursor, final int[] position, final int dim, final int size, final float[] line )
+	{
+		cursor.setPosition( position );
+		
+		for ( int i = 0; i < size-1; ++i )
+		{
+			cursor.getType().setComplexNumber( line[ i * 2 ], line[ i * 2 + 1 ] );
+			cursor.fwd( dim );
+		}
+		cursor.getType().setComplexNumber( line[ (size-1) * 2 ], line[ (size-1) * 2 + 1 ] );
+	}
+	
+	final protected static <S extends ComplexType<S>> void readComplexLine( final LocalizableByDimCursor<S> cursor, final int[] position, final int dim, final int size, final double[] line )
+	{
+		cursor.setPosition( position );
+		
+		for ( int i = 0; i < size-1; ++i )
+		{
+			line[ i * 2 ] = cursor.getType().getRealDouble();
+			line[ i * 2 + 1 ] = cursor.getType().getComplexDouble();
+			cursor.fwd( dim );
+		}
+		line[ (size-1) * 2 ] = cursor.getType().getRealDouble();
+		line[ (size-1) * 2 + 1 ] = cursor.getType().getComplexDouble();
+	}
+	
+	final protected static <S extends ComplexType<S>> void writeComplexLine( final LocalizableByDimCursor<S> cursor, final int[] position, final int dim, final int size, final double[] line )
+	{
+		cursor.setPosition( position );
+		
+		for ( int i = 0; i < size-1; ++i )
+		{
+			cursor.getType().setComplexNumber( line[ i * 2 ], line[ i * 2 + 1 ] );
+			cursor.fwd( dim );
+		}
+		cursor.getType().setComplexNumber( line[ (size-1) * 2 ], line[ (size-1) * 2 + 1 ] );
 	}
 	
 	final private static <T extends Type<T>> void rearrangeQuadrantFFTDimZeroSingleDim( final Image<T> fftImage )
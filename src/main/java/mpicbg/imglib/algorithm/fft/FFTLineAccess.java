@@ -0,0 +1,433 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import java.util.Arrays;
+
+import mpicbg.imglib.container.Container;
+import mpicbg.imglib.container.array.Array;
+import mpicbg.imglib.container.basictypecontainer.array.DoubleArray;
+import mpicbg.imglib.container.basictypecontainer.array.FloatArray;
+import mpicbg.imglib.container.cell.Cell;
+import mpicbg.imglib.container.cell.CellContainer;
+import mpicbg.imglib.container.planar.PlanarContainer;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.type.numeric.complex.ComplexDoubleType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.DoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+/**
+ * Gives {@link FFTFunctions} direct access to the float[] storage of {@link FloatType} and 
+ * {@link ComplexFloatType} images in {@link Array}, {@link PlanarContainer} and {@link CellContainer}
+ * containers ({@link #create(Image)}), or to the double[] storage of {@link DoubleType} and 
+ * {@link ComplexDoubleType} images ({@link #createDouble(Image)}). For every pixel of a line it returns 
+ * the primitive array and the index of the first entity of the pixel, so lines can be gathered and 
+ * scattered without cursors.
+ */
+final public class FFTLineAccess 
+{
+	final int numDimensions, entitiesPerPixel;
+	final int[] dim;
+	
+	// the primitive arrays are float[] or double[]
+	final boolean isDouble;
+	
+	// Array
+	final Object array;
+	final int[] steps;
+	
+	// PlanarContainer
+	final Object[] planes;
+	final int[] sliceSteps;
+	
+	// CellContainer
+	final Object[] cells;
+	final int[][] cellSteps, cellOffsets;
+	final int[] cellSize, numCellSteps;
+	
+	private FFTLineAccess( final int[] dim, final int entitiesPerPixel, final boolean isDouble, final Object array, final Object[] planes, final CellContainer<?,?> cellContainer )
+	{
+		this.numDimensions = dim.length;
+		this.dim = dim;
+		this.entitiesPerPixel = entitiesPerPixel;
+		this.isDouble = isDouble;
+		
+		this.array = array;
+		this.steps = Array.createAllocationSteps( dim );
+		
+		this.planes = planes;
+		this.sliceSteps = new int[ numDimensions ];
+		
+		if ( numDimensions > 2 )
+		{
+			sliceSteps[ 2 ] = 1;
+			for ( int d = 3; d < numDimensions; ++d )
+				sliceSteps[ d ] = sliceSteps[ d - 1 ] * dim[ d - 1 ];
+		}
+
+		if ( cellContainer != null )
+		{
+			final int numCells = cellContainer.getNumCells();
+			
+			this.cells = new Object[ numCells ];
+			this.cellSteps = new int[ numCells ][ numDimensions ];
+			this.cellOffsets = new int[ numCells ][ numDimensions ];
+			this.cellSize = cellContainer.getCellSize();
+			this.numCellSteps = Array.createAllocationSteps( cellContainer.getNumCellsDim() );
+			
+			for ( int c = 0; c < numCells; ++c )
+			{
+				final Cell<?,?> cell = cellContainer.getCell( c );
+				
+				if ( isDouble )
+					cells[ c ] = ( (DoubleArray)cell.getData() ).getCurrentStorageArray();
+				else
+					cells[ c ] = ( (FloatArray)cell.getData() ).getCurrentStorageArray();
+				cell.getSteps( cellSteps[ c ] );
+				cell.getOffset( cellOffsets[ c ] );
+			}
+		}
+		else
+		{
+			this.cells = null;
+			this.cellSteps = this.cellOffsets = null;
+			this.cellSize = this.numCellSteps = null;
+		}
+	}
+	
+	/**
+	 * @param image - the image to access
+	 * @return the {@link FFTLineAccess} or null if the type is not {@link FloatType} or {@link ComplexFloatType}, 
+	 * or the container is not one of {@link Array}, {@link PlanarContainer} or {@link CellContainer} backed by a {@link FloatArray}
+	 */
+	public static FFTLineAccess create( final Image<?> image )
+	{
+		final Class<?> typeClass = image.createType().getClass();
+		
+		if ( typeClass == FloatType.class )
+			return create( image, 1, false );
+		else if ( typeClass == ComplexFloatType.class )
+			return create( image, 2, false );
+		else
+			return null;
+	}
+	
+	/**
+	 * @param image - the image to access
+	 * @return the {@link FFTLineAccess} or null if the type is not {@link DoubleType} or {@link ComplexDoubleType}, 
+	 * or the container is not one of {@link Array}, {@link PlanarContainer} or {@link CellContainer} backed by a {@link DoubleArray}
+	 */
+	public static FFTLineAccess createDouble( final Image<?> image )
+	{
+		final Class<?> typeClass = image.createType().getClass();
+		
+		if ( typeClass == DoubleType.class )
+			return create( image, 1, true );
+		else if ( typeClass == ComplexDoubleType.class )
+			return create( image, 2, true );
+		else
+			return null;
+	}
+	
+	private static FFTLineAccess create( final Image<?> image, final int entitiesPerPixel, final boolean isDouble )
+	{
+		final Class<?> arrayClass = isDouble ? DoubleArray.class : FloatArray.class;
+		final Container<?> container = image.getContainer();
+		final int[] dim = image.getDimensions();
+		
+		if ( Array.class.isInstance( container ) )
+		{
+			final Object data = ( (Array<?,?>)container ).update( null );
+			
+			if ( arrayClass.isInstance( data ) )
+				return new FFTLineAccess( dim, entitiesPerPixel, isDouble, getStorageArray( data ), null, null );
+		}
+		else if ( PlanarContainer.class.isInstance( container ) )
+		{
+			final PlanarContainer<?,?> planar = (PlanarContainer<?,?>)container;
+			final Object[] planes = new Object[ planar.getSlices() ];
+			
+			for ( int i = 0; i < planes.length; ++i )
+			{
+				final Object data = planar.getPlane( i );
+				
+				if ( !arrayClass.isInstance( data ) )
+					return null;
+				
+				planes[ i ] = getStorageArray( data );
+			}
+			
+			return new FFTLineAccess( dim, entitiesPerPixel, isDouble, null, planes, null );
+		}
+		else if ( CellContainer.class.isInstance( container ) )
+		{
+			final CellContainer<?,?> cellContainer = (CellContainer<?,?>)container;
+			
+			for ( int c = 0; c < cellContainer.getNumCells(); ++c )
+				if ( !arrayClass.isInstance( cellContainer.getCell( c ).getData() ) )
+					return null;
+			
+			return new FFTLineAccess( dim, entitiesPerPixel, isDouble, null, null, cellContainer );
+		}
+		
+		return null;
+	}
+	
+	private static Object getStorageArray( final Object data )
+	{
+		if ( data instanceof DoubleArray )
+			return ( (DoubleArray)data ).getCurrentStorageArray();
+		else
+			return ( (FloatArray)data ).getCurrentStorageArray();
+	}
+	
+	public int getEntitiesPerPixel() { return entitiesPerPixel; }
+	
+	/**
+	 * @return true if the image is stored in double[], false if in float[]
+	 */
+	public boolean isDouble() { return isDouble; }
+	
+	/**
+	 * @return the primitive arrays that store the image, one for an {@link Array}, one per plane for a 
+	 * {@link PlanarContainer} and one per cell for a {@link CellContainer}; only for images stored in float[]
+	 */
+	public float[][] getStorageArrays()
+	{
+		final Object[] storage = ( array != null ) ? new Object[]{ array } : ( planes != null ) ? planes : cells;
+		final float[][] arrays = new float[ storage.length ][];
+		
+		for ( int i = 0; i < storage.length; ++i )
+			arrays[ i ] = (float[])storage[ i ];
+		
+		return arrays;
+	}
+	
+	/**
+	 * @param access - the access of another image
+	 * @return true if the pixel at the same position is at the same index of the same storage array in both images, 
+	 * i.e. if they have the same size and the same container layout (the number of entities per pixel may differ)
+	 */
+	public boolean hasSameLayout( final FFTLineAccess access )
+	{
+		if ( !Arrays.equals( dim, access.dim ) )
+			return false;
+		
+		if ( array != null )
+			return access.array != null;
+		else if ( planes != null )
+			return access.planes != null;
+		else
+			return access.cells != null && Arrays.equals( cellSize, access.cellSize );
+	}
+	
+	/**
+	 * Computes for each pixel of the line that starts at position and runs along dimension dim
+	 * the primitive array and the index of its first entity. 
+	 * 
+	 * @param position - the first pixel of the line
+	 * @param dim - the dimension of the line
+	 * @param length - the number of pixels
+	 * @param data - the primitive array for each pixel
+	 * @param index - the index into the primitive array for each pixel
+	 */
+	public void getLine( final int[] position, final int dim, final int length, final float[][] data, final int[] index )
+	{
+		getLine( position, dim, length, (Object[])data, index );
+	}
+
+	/**
+	 * The same as {@link #getLine(int[], int, int, float[][], int[])} for images stored in double[].
+	 */
+	public void getLine( final int[] position, final int dim, final int length, final double[][] data, final int[] index )
+	{
+		getLine( position, dim, length, (Object[])data, index );
+	}
+	
+	/**
+	 * Reads lines into double[] buffers with entitiesPerPixel values per pixel, from float[] or double[] storage. 
+	 * The lines are read together pixel by pixel, so that the memory access is contiguous also for dimensions other than 0.
+	 * 
+	 * @param positions - the first pixel of each line
+	 * @param numLines - the number of lines
+	 * @param dim - the dimension of the lines
+	 * @param length - the number of pixels per line
+	 * @param lines - the buffers for the lines
+	 * @param data - temporary storage, numLines x length
+	 * @param index - temporary storage, numLines x length
+	 */
+	public void readLines( final int[][] positions, final int numLines, final int dim, final int length, final double[][] lines, final Object[][] data, final int[][] index )
+	{
+		for ( int l = 0; l < numLines; ++l )
+			getLine( positions[ l ], dim, length, data[ l ], index[ l ] );
+		
+		for ( int i = 0; i < length; ++i )
+			for ( int l = 0; l < numLines; ++l )
+			{
+				final int j = index[ l ][ i ];
+				final int k = i * entitiesPerPixel;
+				
+				if ( isDouble )
+				{
+					final double[] d = (double[])data[ l ][ i ];
+					
+					for ( int e = 0; e < entitiesPerPixel; ++e )
+						lines[ l ][ k + e ] = d[ j + e ];
+				}
+				else
+				{
+					final float[] d = (float[])data[ l ][ i ];
+					
+					for ( int e = 0; e < entitiesPerPixel; ++e )
+						lines[ l ][ k + e ] = d[ j + e ];
+				}
+			}
+	}
+	
+	/**
+	 * Writes lines from double[] buffers, the counterpart of {@link #readLines(int[][], int, int, int, double[][], Object[][], int[][])}. 
+	 * For float[] storage the values are rounded to float.
+	 */
+	public void writeLines( final int[][] positions, final int numLines, final int dim, final int length, final double[][] lines, final Object[][] data, final int[][] index )
+	{
+		for ( int l = 0; l < numLines; ++l )
+			getLine( positions[ l ], dim, length, data[ l ], index[ l ] );
+		
+		for ( int i = 0; i < length; ++i )
+			for ( int l = 0; l < numLines; ++l )
+			{
+				final int j = index[ l ][ i ];
+				final int k = i * entitiesPerPixel;
+				
+				if ( isDouble )
+				{
+					final double[] d = (double[])data[ l ][ i ];
+					
+					for ( int e = 0; e < entitiesPerPixel; ++e )
+						d[ j + e ] = lines[ l ][ k + e ];
+				}
+				else
+				{
+					final float[] d = (float[])data[ l ][ i ];
+					
+					for ( int e = 0; e < entitiesPerPixel; ++e )
+						d[ j + e ] = (float)lines[ l ][ k + e ];
+				}
+			}
+	}
+	
+	private void getLine( final int[] position, final int dim, final int length, final Object[] data, final int[] index )
+	{
+		if ( array != null )
+		{
+			int i = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				i += position[ d ] * steps[ d ];
+			
+			final int step = steps[ dim ] * entitiesPerPixel;
+			i *= entitiesPerPixel;
+			
+			for ( int x = 0; x < length; ++x, i += step )
+			{
+				data[ x ] = array;
+				index[ x ] = i;
+			}
+		}
+		else if ( planes != null )
+		{
+			int slice = 0;			
+			for ( int d = 2; d < numDimensions; ++d )
+				slice += position[ d ] * sliceSteps[ d ];
+			
+			int i = position[ 0 ];			
+			if ( numDimensions > 1 )
+				i += position[ 1 ] * this.dim[ 0 ];
+			
+			i *= entitiesPerPixel;
+			
+			if ( dim < 2 )
+			{
+				final Object plane = planes[ slice ];
+				final int step = ( dim == 0 ? 1 : this.dim[ 0 ] ) * entitiesPerPixel;
+				
+				for ( int x = 0; x < length; ++x, i += step )
+				{
+					data[ x ] = plane;
+					index[ x ] = i;
+				}
+			}
+			else
+			{
+				final int step = sliceSteps[ dim ];
+				
+				for ( int x = 0; x < length; ++x, slice += step )
+				{
+					data[ x ] = planes[ slice ];
+					index[ x ] = i;
+				}				
+			}
+		}
+		else
+		{
+			// the cell index without the contribution of dim
+			int cellIndex = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( d != dim )
+					cellIndex += ( position[ d ] / cellSize[ d ] ) * numCellSteps[ d ];
+
+			int lastCell = -1;
+			int localIndex = 0;
+			Object cellData = null;
+			int[] cellStep = null;
+			
+			for ( int x = 0; x < length; ++x )
+			{
+				final int p = position[ dim ] + x;
+				final int c = cellIndex + ( p / cellSize[ dim ] ) * numCellSteps[ dim ];
+				
+				// we entered a new cell, compute the index of the line inside the cell
+				if ( c != lastCell )
+				{
+					final int[] offset = cellOffsets[ c ];
+					cellStep = cellSteps[ c ];
+					cellData = cells[ c ];
+					
+					localIndex = 0;
+					for ( int d = 0; d < numDimensions; ++d )
+						if ( d != dim )
+							localIndex += ( position[ d ] - offset[ d ] ) * cellStep[ d ];
+					
+					lastCell = c;
+				}
+				
+				data[ x ] = cellData;
+				index[ x ] = ( localIndex + ( p - cellOffsets[ c ][ dim ] ) * cellStep[ dim ] ) * entitiesPerPixel;
+			}
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import edu.mines.jtk.dsp.FftComplex;
+
+/**
+ * Complex to complex FFT in double precision with the same conventions as {@link FftComplex}, 
+ * i.e. cy[ k ] = sum_j cx[ j ] * exp( sign * i * 2 * pi * j * k / nfft ) without scaling, the 
+ * complex numbers are stored as pairs of real and imaginary part.
+ * 
+ * It is a mixed radix Stockham FFT for any length, the radices 2, 3 and 4 have their own butterflies, 
+ * all other prime factors are computed directly, which is fast for the small factors of the lengths 
+ * returned by {@link FftComplex#nfftFast(int)} and {@link FftComplex#nfftSmall(int)}. The twiddle factors 
+ * are taken from one table of exp( i * 2 * pi * t / nfft ), so they are accurate to the last bit. 
+ * An instance keeps no state besides the tables and can be used by several threads at once, the scratch 
+ * arrays of a transform are taken from the {@link FFTCache} buffer pool. 
+ */
+final public class FftComplexDouble 
+{
+	final int nfft;
+	final int[] factors;
+	
+	// the largest radix without its own butterfly, 0 if there is none
+	final int maxGenericRadix;
+	
+	// cos( 2 * pi * t / nfft ) and sin( 2 * pi * t / nfft )
+	final double[] cos, sin;
+	
+	/**
+	 * @param nfft - the length of the FFT
+	 */
+	public FftComplexDouble( final int nfft )
+	{
+		if ( nfft < 1 )
+			throw new IllegalArgumentException( "FftComplexDouble: the length must be positive, is " + nfft );
+		
+		this.nfft = nfft;
+		this.factors = factorize( nfft );
+		
+		int maxGenericRadix = 0;
+		for ( final int p : factors )
+			if ( p > 4 )
+				maxGenericRadix = Math.max( maxGenericRadix, p );
+		this.maxGenericRadix = maxGenericRadix;
+		
+		this.cos = new double[ nfft ];
+		this.sin = new double[ nfft ];
+		
+		for ( int t = 0; t < nfft; ++t )
+		{
+			final double angle = 2.0 * Math.PI * t / nfft;
+			cos[ t ] = Math.cos( angle );
+			sin[ t ] = Math.sin( angle );
+		}
+	}
+	
+	public int getNfft() { return nfft; }
+	
+	/**
+	 * Computes the FFT, cx and cy may be the same array.
+	 * 
+	 * @param sign - the sign of the exponent, -1 for the forward and 1 for the inverse transform
+	 * @param cx - the input, 2 * nfft values
+	 * @param cy - the output, 2 * nfft values
+	 */
+	public void complexToComplex( final int sign, final double[] cx, final double[] cy )
+	{
+		final double[] work = FFTCache.getDoubleBuffer( 2 * nfft );
+		
+		// the inputs of one generic butterfly, shared by all stages of this call
+		final double[] in = maxGenericRadix > 0 ? FFTCache.getDoubleBuffer( 2 * maxGenericRadix ) : null;
+		
+		// every stage reads one array and writes the other, start such that the last stage writes into cy
+		double[] x = ( factors.length % 2 == 0 ) ? cy : work;
+		double[] y = ( x == cy ) ? work : cy;
+		
+		System.arraycopy( cx, 0, x, 0, 2 * nfft );
+		
+		int n = nfft, s = 1;
+		
+		for ( final int p : factors )
+		{
+			final int m = n / p;
+			
+			if ( p == 2 )
+				radix2( sign, n, s, x, y );
+			else if ( p == 3 )
+				radix3( sign, n, s, x, y );
+			else if ( p == 4 )
+				radix4( sign, n, s, x, y );
+			else
+				radixGeneric( sign, p, n, s, x, y, in );
+			
+			n = m;
+			s *= p;
+			
+			final double[] tmp = x;
+			x = y;
+			y = tmp;
+		}
+		
+		FFTCache.releaseBuffer( work );
+		FFTCache.releaseBuffer( in );
+	}
+	
+	/*
+	 * One stage of the Stockham FFT for the remaining length n and the stride s: with m = n / p the 
+	 * stage computes for all q < m, i < s and k < p 
+	 * 
+	 * y[ i + s * ( p * q + k ) ] = exp( sign * i * 2 * pi * q * k / n ) * sum_j x[ i + s * ( q + m * j ) ] * exp( sign * i * 2 * pi * j * k / p )
+	 */
+	
+	private void radix2( final int sign, final int n, final int s, final double[] x, final double[] y )
+	{
+		final int m = n / 2;
+		final int tw = nfft / n;
+		
+		for ( int q = 0; q < m; ++q )
+		{
+			final double wr = cos[ q * tw ];
+			final double wi = sign * sin[ q * tw ];
+			
+			for ( int i = 0; i < s; ++i )
+			{
+				final int a = 2 * ( i + s * q );
+				final int b = 2 * ( i + s * ( q + m ) );
+				final int c = 2 * ( i + s * ( 2 * q ) );
+				final int d = 2 * ( i + s * ( 2 * q + 1 ) );
+				
+				final double dr = x[ a ] - x[ b ];
+				final double di = x[ a + 1 ] - x[ b + 1 ];
+				
+				y[ c ] = x[ a ] + x[ b ];
+				y[ c + 1 ] = x[ a + 1 ] + x[ b + 1 ];
+				y[ d ] = dr * wr - di * wi;
+				y[ d + 1 ] = dr * wi + di * wr;
+			}
+		}
+	}
+	
+	private void radix3( final int sign, final int n, final int s, final double[] x, final double[] y )
+	{
+		final int m = n / 3;
+		final int tw = nfft / n;
+		final double sin60 = sign * Math.sqrt( 0.75 );
+		
+		for ( int q = 0; q < m; ++q )
+		{
+			final double w1r = cos[ q * tw ];
+			final double w1i = sign * sin[ q * tw ];
+			final double w2r = cos[ 2 * q * tw ];
+			final double w2i = sign * sin[ 2 * q * tw ];
+			
+			for ( int i = 0; i < s; ++i )
+			{
+				final int a0 = 2 * ( i + s * q );
+				final int a1 = 2 * ( i + s * ( q + m ) );
+				final int a2 = 2 * ( i + s * ( q + 2 * m ) );
+				final int c = 2 * ( i + s * ( 3 * q ) );
+				
+				final double t1r = x[ a1 ] + x[ a2 ];
+				final double t1i = x[ a1 + 1 ] + x[ a2 + 1 ];
+				final double t2r = x[ a0 ] - 0.5 * t1r;
+				final double t2i = x[ a0 + 1 ] - 0.5 * t1i;
+				final double t3r = sin60 * ( x[ a1 ] - x[ a2 ] );
+				final double t3i = sin60 * ( x[ a1 + 1 ] - x[ a2 + 1 ] );
+				
+				final double y1r = t2r - t3i;
+				final double y1i = t2i + t3r;
+				final double y2r = t2r + t3i;
+				final double y2i = t2i - t3r;
+				
+				y[ c ] = x[ a0 ] + t1r;
+				y[ c + 1 ] = x[ a0 + 1 ] + t1i;
+				y[ c + 2 * s ] = y1r * w1r - y1i * w1i;
+				y[ c + 2 * s + 1 ] = y1r * w1i + y1i * w1r;
+				y[ c + 4 * s ] = y2r * w2r - y2i * w2i;
+				y[ c + 4 * s + 1 ] = y2r * w2i + y2i * w2r;
+			}
+		}
+	}
+	
+	private void radix4( final int sign, final int n, final int s, final double[] x, final double[] y )
+	{
+		final int m = n / 4;
+		final int tw = nfft / n;
+		
+		for ( int q = 0; q < m; ++q )
+		{
+			final double w1r = cos[ q * tw ];
+			final double w1i = sign * sin[ q * tw ];
+			final double w2r = cos[ 2 * q * tw ];
+			final double w2i = sign * sin[ 2 * q * tw ];
+			final double w3r = cos[ 3 * q * tw ];
+			final double w3i = sign * sin[ 3 * q * tw ];
+			
+			for ( int i = 0; i < s; ++i )
+			{
+				final int a0 = 2 * ( i + s * q );
+				final int a1 = 2 * ( i + s * ( q + m ) );
+				final int a2 = 2 * ( i + s * ( q + 2 * m ) );
+				final int a3 = 2 * ( i + s * ( q + 3 * m ) );
+				final int c = 2 * ( i + s * ( 4 * q ) );
+				
+				final double s02r = x[ a0 ] + x[ a2 ];
+				final double s02i = x[ a0 + 1 ] + x[ a2 + 1 ];
+				final double d02r = x[ a0 ] - x[ a2 ];
+				final double d02i = x[ a0 + 1 ] - x[ a2 + 1 ];
+				final double s13r = x[ a1 ] + x[ a3 ];
+				final double s13i = x[ a1 + 1 ] + x[ a3 + 1 ];
+				
+				// ( x1 - x3 ) * exp( sign * i * pi / 2 ) = ( x1 - x3 ) * sign * i
+				final double d13r = -sign * ( x[ a1 + 1 ] - x[ a3 + 1 ] );
+				final double d13i = sign * ( x[ a1 ] - x[ a3 ] );
+				
+				final double y1r = d02r + d13r;
+				final double y1i = d02i + d13i;
+				final double y2r = s02r - s13r;
+				final double y2i = s02i - s13i;
+				final double y3r = d02r - d13r;
+				final double y3i = d02i - d13i;
+				
+				y[ c ] = s02r + s13r;
+				y[ c + 1 ] = s02i + s13i;
+				y[ c + 2 * s ] = y1r * w1r - y1i * w1i;
+				y[ c + 2 * s + 1 ] = y1r * w1i + y1i * w1r;
+				y[ c + 4 * s ] = y2r * w2r - y2i * w2i;
+				y[ c + 4 * s + 1 ] = y2r * w2i + y2i * w2r;
+				y[ c + 6 * s ] = y3r * w3r - y3i * w3i;
+				y[ c + 6 * s + 1 ] = y3r * w3i + y3i * w3r;
+			}
+		}
+	}
+	
+	/*
+	 * in - scratch for the p complex inputs of one butterfly, at least 2 * p values
+	 */
+	private void radixGeneric( final int sign, final int p, final int n, final int s, final double[] x, final double[] y, final double[] in )
+	{
+		final int m = n / p;
+		final int tw = nfft / n;
+		final int pw = nfft / p;
+		
+		for ( int q = 0; q < m; ++q )
+		{
+			for ( int i = 0; i < s; ++i )
+			{
+				for ( int j = 0; j < p; ++j )
+				{
+					final int a = 2 * ( i + s * ( q + m * j ) );
+					in[ 2 * j ] = x[ a ];
+					in[ 2 * j + 1 ] = x[ a + 1 ];
+				}
+				
+				final int c = 2 * ( i + s * ( p * q ) );
+				
+				for ( int k = 0; k < p; ++k )
+				{
+					double sumR = in[ 0 ];
+					double sumI = in[ 1 ];
+					
+					for ( int j = 1, t = k; j < p; ++j, t = ( t + k ) % p )
+					{
+						final double er = cos[ t * pw ];
+						final double ei = sign * sin[ t * pw ];
+						
+						final double inR = in[ 2 * j ];
+						final double inI = in[ 2 * j + 1 ];
+						
+						sumR += inR * er - inI * ei;
+						sumI += inR * ei + inI * er;
+					}
+					
+					final double wr = cos[ q * k * tw ];
+					final double wi = sign * sin[ q * k * tw ];
+					
+					y[ c + 2 * s * k ] = sumR * wr - sumI * wi;
+					y[ c + 2 * s * k + 1 ] = sumR * wi + sumI * wr;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the radices of the stages, factors of 4 first, then 2, 3 and the remaining primes
+	 */
+	private static int[] factorize( int n )
+	{
+		final int[] tmp = new int[ 32 ];
+		int numFactors = 0;
+		
+		while ( n % 4 == 0 )
+		{
+			tmp[ numFactors++ ] = 4;
+			n /= 4;
+		}
+		
+		for ( int p = 2; n > 1; p = ( p == 2 ) ? 3 : p + 2 )
+		{
+			while ( n % p == 0 )
+			{
+				tmp[ numFactors++ ] = p;
+				n /= p;
+			}
+		}
+		
+		final int[] factors = new int[ numFactors ];
+		System.arraycopy( tmp, 0, factors, 0, numFactors );
+		
+		return factors;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import edu.mines.jtk.dsp.FftReal;
+
+/**
+ * Real to complex FFT and its inverse in double precision with the same conventions as {@link FftReal}, the 
+ * length must be even. The complex side consists of nfft / 2 + 1 complex numbers stored as pairs of real and 
+ * imaginary part. The transform of length nfft is computed by a {@link FftComplexDouble} of length nfft / 2 
+ * on the even and odd values as real and imaginary parts. An instance keeps no state besides the tables 
+ * and can be used by several threads at once.
+ */
+final public class FftRealDouble 
+{
+	final int nfft, half;
+	final FftComplexDouble fft;
+	
+	// cos( 2 * pi * k / nfft ) and sin( 2 * pi * k / nfft )
+	final double[] cos, sin;
+	
+	/**
+	 * @param nfft - the length of the FFT, must be even
+	 */
+	public FftRealDouble( final int nfft )
+	{
+		if ( nfft < 2 || nfft % 2 != 0 )
+			throw new IllegalArgumentException( "FftRealDouble: the length must be even and positive, is " + nfft );
+		
+		this.nfft = nfft;
+		this.half = nfft / 2;
+		this.fft = new FftComplexDouble( half );
+		this.cos = new double[ half / 2 + 1 ];
+		this.sin = new double[ half / 2 + 1 ];
+		
+		for ( int k = 0; k < cos.length; ++k )
+		{
+			final double angle = 2.0 * Math.PI * k / nfft;
+			cos[ k ] = Math.cos( angle );
+			sin[ k ] = Math.sin( angle );
+		}
+	}
+	
+	public int getNfft() { return nfft; }
+	
+	/**
+	 * Computes the FFT of a real sequence, rx and cy may be the same array.
+	 * 
+	 * @param sign - the sign of the exponent, -1 for the forward and 1 for the inverse transform
+	 * @param rx - the input, nfft values
+	 * @param cy - the output, nfft + 2 values
+	 */
+	public void realToComplex( final int sign, final double[] rx, final double[] cy )
+	{
+		// the transform of z[ j ] = x[ 2j ] + i * x[ 2j + 1 ]
+		fft.complexToComplex( sign, rx, cy );
+		
+		// Z[ k ] = E[ k ] + i * O[ k ], where E and O are the transforms of the even and odd values;
+		// X[ k ] = E[ k ] + w^k * O[ k ] and X[ half - k ] = conj( E[ k ] - w^k * O[ k ] ) 
+		for ( int k = 1; k <= half / 2; ++k )
+		{
+			final int a = 2 * k;
+			final int b = 2 * ( half - k );
+			
+			final double er = 0.5 * ( cy[ a ] + cy[ b ] );
+			final double ei = 0.5 * ( cy[ a + 1 ] - cy[ b + 1 ] );
+			final double or = 0.5 * ( cy[ a + 1 ] + cy[ b + 1 ] );
+			final double oi = -0.5 * ( cy[ a ] - cy[ b ] );
+			
+			final double wr = cos[ k ];
+			final double wi = sign * sin[ k ];
+			
+			final double tr = or * wr - oi * wi;
+			final double ti = or * wi + oi * wr;
+			
+			cy[ a ] = er + tr;
+			cy[ a + 1 ] = ei + ti;
+			cy[ b ] = er - tr;
+			cy[ b + 1 ] = ti - ei;
+		}
+		
+		final double z0r = cy[ 0 ];
+		final double z0i = cy[ 1 ];
+		
+		cy[ 0 ] = z0r + z0i;
+		cy[ 1 ] = 0;
+		cy[ nfft ] = z0r - z0i;
+		cy[ nfft + 1 ] = 0;
+	}
+	
+	/**
+	 * Computes the real sequence of a conjugate symmetric spectrum, cx and ry may be the same array.
+	 * 
+	 * @param sign - the sign of the exponent, -1 for the forward and 1 for the inverse transform
+	 * @param cx - the input, nfft + 2 values
+	 * @param ry - the output, nfft values
+	 */
+	public void complexToReal( final int sign, final double[] cx, final double[] ry )
+	{
+		// z[ j ] = y[ 2j ] + i * y[ 2j + 1 ] is the transform of Z[ k ] = A[ k ] + i * B[ k ], where
+		// A[ k ] = X[ k ] + conj( X[ half - k ] ) and B[ k ] = ( X[ k ] - conj( X[ half - k ] ) ) * w^k;
+		// A[ half - k ] = conj( A[ k ] ) and B[ half - k ] = conj( B[ k ] )
+		final double x0r = cx[ 0 ];
+		final double x0i = cx[ 1 ];
+		final double xhr = cx[ nfft ];
+		final double xhi = cx[ nfft + 1 ];
+		
+		for ( int k = 1; k <= half / 2; ++k )
+		{
+			final int a = 2 * k;
+			final int b = 2 * ( half - k );
+			
+			final double ar = cx[ a ] + cx[ b ];
+			final double ai = cx[ a + 1 ] - cx[ b + 1 ];
+			final double dr = cx[ a ] - cx[ b ];
+			final double di = cx[ a + 1 ] + cx[ b + 1 ];
+			
+			final double wr = cos[ k ];
+			final double wi = sign * sin[ k ];
+			
+			final double br = dr * wr - di * wi;
+			final double bi = dr * wi + di * wr;
+			
+			ry[ a ] = ar - bi;
+			ry[ a + 1 ] = ai + br;
+			ry[ b ] = ar + bi;
+			ry[ b + 1 ] = br - ai;
+		}
+		
+		ry[ 0 ] = ( x0r + xhr ) - ( x0i + xhi );
+		ry[ 1 ] = ( x0i - xhi ) + ( x0r - xhr );
+		
+		fft.complexToComplex( sign, ry, ry );
+	}
+}
@@ -26,7 +26,10 @@
 
 package mpicbg.imglib.algorithm.fft;
 
-import java.util.Vector;
+import edu.mines.jtk.dsp.FftComplex;
+import edu.mines.jtk.dsp.FftReal;
+
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import mpicbg.imglib.algorithm.Benchmark;
@@ -34,14 +37,16 @@ import mpicbg.imglib.algorithm.MultiThreaded;
 import mpicbg.imglib.algorithm.OutputAlgorithm;
 import mpicbg.imglib.algorithm.fft.FourierTransform.PreProcessing;
 import mpicbg.imglib.algorithm.fft.FourierTransform.Rearrangement;
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
+import mpicbg.imglib.algorithm.metrics.Measurable;
+import mpicbg.imglib.algorithm.metrics.Metrics;
 import mpicbg.imglib.algorithm.gauss.GaussianConvolution;
 import mpicbg.imglib.container.ContainerFactory;
-import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.container.cell.CellContainer;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
 import mpicbg.imglib.cursor.LocalizableCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.image.ImageFactory;
-import mpicbg.imglib.multithreading.Chunk;
 import mpicbg.imglib.multithreading.SimpleMultiThreading;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
@@ -56,7 +61,7 @@ import mpicbg.imglib.util.Util;
  *
  * @author Stephan Preibisch
  */
-public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> implements MultiThreaded, OutputAlgorithm<T>, Benchmark
+public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> implements MultiThreaded, OutputAlgorithm<T>, Benchmark, Measurable
 {
 	final int numDimensions;
 	Image<T> image, convolved;
@@ -66,6 +71,17 @@ public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> im
 	boolean keepImgFFT = true;
 	boolean extendImgByKernelSize = true;
 	
+	// overlap-save convolution in blocks
+	boolean blockProcessing = false;
+	int[] blockSize = null, blockFFTSize = null;
+	long maxBlockPixels = 1l << 21;
+	Image<ComplexFloatType> blockKernelFFT;
+	
+	KernelSpectrumCache kernelSpectrumCache = null;
+	
+	// the precision of the line buffers and the FFTs
+	PrecisionReal precision = PrecisionReal.Float;
+	
 	OutOfBoundsStrategyFactory<T> strategy = new OutOfBoundsStrategyMirrorFactory<T>();
 	
 	final int[] kernelDim;
@@ -73,6 +89,7 @@ public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> im
 	String errorMessage = "";
 	int numThreads;
 	long processingTime;
+	Metrics metrics = null;
 
 	public FourierConvolution( final Image<T> image, final Image<S> kernel )
 	{
@@ -125,6 +142,88 @@ public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> im
 	public void setKeepImgFFT( final boolean keepImgFFT ) { this.keepImgFFT = keepImgFFT; }
 	public boolean getKeepImgFFT() { return this.keepImgFFT; } 
 
+	/**
+	 * Convolves the image in blocks using overlap-save instead of transforming the whole (extended) image 
+	 * at once, so the memory needed for the Fourier transforms depends only on the block size. Every block 
+	 * is read with the {@link OutOfBoundsStrategyFactory} of the image extended by the kernel size, 
+	 * transformed, multiplied with the kernel spectrum of the block size, transformed back and the part 
+	 * that is not affected by the cyclic convolution is written into the result. The blocks are 
+	 * processed in parallel, one block per thread. For images in a 
+	 * {@link mpicbg.imglib.container.cell.CellContainer} the blocks are aligned to the cells.
+	 * 
+	 * The image FFT is not kept in this mode, {@link #setKeepImgFFT(boolean)} has no effect.
+	 * 
+	 * @param blockProcessing
+	 */
+	public void setBlockProcessing( final boolean blockProcessing ) { this.blockProcessing = blockProcessing; }
+	public boolean getBlockProcessing() { return blockProcessing; }
+	
+	/**
+	 * @param blockSize - the minimal size of the blocks the result is computed in, the Fourier transforms are 
+	 * bigger by the kernel size - 1; null (default) chooses the size automatically using {@link #getMaxBlockPixels()}
+	 */
+	public void setBlockSize( final int[] blockSize ) { this.blockSize = ( blockSize == null ) ? null : blockSize.clone(); }
+	public int[] getBlockSize() { return ( blockSize == null ) ? null : blockSize.clone(); }
+	
+	/**
+	 * @param maxBlockPixels - the maximal number of pixels of the Fourier transform of a block if the block size is chosen automatically
+	 */
+	public void setMaxBlockPixels( final long maxBlockPixels ) { this.maxBlockPixels = maxBlockPixels; }
+	public long getMaxBlockPixels() { return maxBlockPixels; }
+	
+	/**
+	 * @return the size of the Fourier transform of the blocks used in the last call of {@link #process()} in block processing mode, or null
+	 */
+	public int[] getBlockFFTSize() { return ( blockFFTSize == null ) ? null : blockFFTSize.clone(); }
+
+	/**
+	 * Takes the kernel spectra from the given {@link KernelSpectrumCache} (and stores them there),
+	 * so that several instances convolving images of the same size and container layout with the same kernel 
+	 * compute the kernel spectrum only once. Spectra from the cache are not closed by {@link #close()}.
+	 * 
+	 * @param kernelSpectrumCache - the cache or null (default) to compute the kernel spectrum in each instance
+	 */
+	public void setKernelSpectrumCache( final KernelSpectrumCache kernelSpectrumCache )
+	{
+		// the spectra computed so far belong to this instance
+		if ( this.kernelSpectrumCache == null )
+			closeKernelFFT();
+		
+		this.kernelSpectrumCache = kernelSpectrumCache;
+		this.kernelFFT = null;
+		this.blockKernelFFT = null;
+	}
+	public KernelSpectrumCache getKernelSpectrumCache() { return kernelSpectrumCache; }
+	
+	/**
+	 * Sets the precision in which the Fourier transforms are computed. With {@link PrecisionReal#Double} only the 
+	 * arithmetic of the transforms is double: every line is transformed in a double buffer, but the spectra of the 
+	 * image and the kernel are still stored as {@link ComplexFloatType}, so they are rounded to float after each 
+	 * transform and multiplied in float. It removes the round-off that accumulates inside the transforms, which 
+	 * matters e.g. for iterative deconvolutions that transform the same data many times, but not the float 
+	 * rounding of the stored spectrum, and it is slower than the default {@link PrecisionReal#Float} 
+	 * (see FFTPrecisionBenchmark). Changing the precision discards the spectra computed so far.
+	 * 
+	 * @param precision
+	 */
+	public void setPrecision( final PrecisionReal precision )
+	{
+		if ( precision == this.precision )
+			return;
+		
+		if ( kernelSpectrumCache == null )
+			closeKernelFFT();
+		
+		if ( imgFFT != null )
+			imgFFT.close();
+		
+		this.precision = precision;
+		this.kernelFFT = null;
+		this.blockKernelFFT = null;
+		this.imgFFT = null;
+	}
+	public PrecisionReal getPrecision() { return precision; }
+
 	public boolean replaceKernel( final Image<S> knl )
 	{
 		if ( !knl.getContainer().compareStorageContainerCompatibility( this.kernel.getContainer() ))
@@ -137,6 +236,7 @@ public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> im
 			this.kernel = knl;
 			// the fft has to be recomputed
 			this.kernelFFT = null;
+			this.blockKernelFFT = null;
 			return true;
 		}
 	}
@@ -270,213 +370,485 @@ public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> im
 	public boolean process() 
 	{		
 		final long startTime = System.currentTimeMillis();
-
-		//
-		// compute fft of the input image
-		//
-		if ( imgFFT == null ) //not computed in a previous step
+		metrics = new Metrics( "FourierConvolution", image, getNumThreads() );
+		
+		try
 		{
-			fftImage = new FourierTransform<T, ComplexFloatType>( image, new ComplexFloatType() );
-			fftImage.setNumThreads( this.getNumThreads() );
+			if ( blockProcessing )
+			{
+				if ( !processBlocks() )
+					return false;
 			
-			// we do not rearrange the fft quadrants
-			fftImage.setRearrangement( Rearrangement.UNCHANGED );
-						
-			if ( extendImgByKernelSize )
+				processingTime = System.currentTimeMillis() - startTime;
+			
+				return true;
+			}
+		
+			//
+			// compute fft of the input image
+			//
+			if ( imgFFT == null ) //not computed in a previous step
 			{
-				// how to extend the input image out of its boundaries for computing the FFT,
-				// we simply mirror the content at the borders
-				//fftImage.setPreProcessing( PreProcessing.EXTEND_MIRROR );
-				fftImage.setPreProcessing( PreProcessing.USE_GIVEN_OUTOFBOUNDSSTRATEGY );
-				fftImage.setCustomOutOfBoundsStrategy( strategy );
+				metrics.start( "forward fft" );
+			
+				fftImage = new FourierTransform<T, ComplexFloatType>( image, new ComplexFloatType() );
+				fftImage.setNumThreads( this.getNumThreads() );
+				fftImage.setPrecision( precision );
+			
+				// we do not rearrange the fft quadrants
+				fftImage.setRearrangement( Rearrangement.UNCHANGED );
+						
+				if ( extendImgByKernelSize )
+				{
+					// how to extend the input image out of its boundaries for computing the FFT,
+					// we simply mirror the content at the borders
+					//fftImage.setPreProcessing( PreProcessing.EXTEND_MIRROR );
+					fftImage.setPreProcessing( PreProcessing.USE_GIVEN_OUTOFBOUNDSSTRATEGY );
+					fftImage.setCustomOutOfBoundsStrategy( strategy );
+			
+					// the image has to be extended by the size of the kernel-1
+					// as the kernel is always odd, e.g. if kernel size is 3, we need to add
+					// one pixel out of bounds in each dimension (3-1=2 pixel all together) so that the
+					// convolution works
+					final int[] imageExtension = kernelDim.clone();		
+					for ( int d = 0; d < numDimensions; ++d )
+						--imageExtension[ d ];		
+					fftImage.setImageExtension( imageExtension );
+				}
+			
+				if ( !fftImage.checkInput() || !fftImage.process() )
+				{
+					errorMessage = "FFT of image failed: " + fftImage.getErrorMessage();
+					return false;			
+				}
 			
-				// the image has to be extended by the size of the kernel-1
-				// as the kernel is always odd, e.g. if kernel size is 3, we need to add
-				// one pixel out of bounds in each dimension (3-1=2 pixel all together) so that the
-				// convolution works
-				final int[] imageExtension = kernelDim.clone();		
-				for ( int d = 0; d < numDimensions; ++d )
-					--imageExtension[ d ];		
-				fftImage.setImageExtension( imageExtension );
+				imgFFT = fftImage.getResult();
+				metrics.addTemporary( imgFFT );
 			}
+		
+			//
+			// create the kernel for fourier transform
+			//
+			if ( kernelFFT == null )
+			{
+				metrics.start( "kernel fft" );
 			
-			if ( !fftImage.checkInput() || !fftImage.process() )
+				// get the size of the kernel image that will be fourier transformed,
+				// it has the same size as the image
+				final int kernelTemplateDim[] = imgFFT.getDimensions();
+				kernelTemplateDim[ 0 ] = ( imgFFT.getDimension( 0 ) - 1 ) * 2;
+			
+				kernelFFT = getKernelFFT( kernelTemplateDim );
+			
+				if ( kernelFFT == null )
+					return false;
+			}
+		
+			//
+			// Multiply in Fourier Space
+			//
+			metrics.start( "multiply" );
+		
+			final Image< ComplexFloatType > copy;
+		
+			if ( keepImgFFT )
 			{
-				errorMessage = "FFT of image failed: " + fftImage.getErrorMessage();
+				copy = imgFFT.clone();
+				metrics.addTemporary( copy );
+			}
+			else
+			{
+				copy = imgFFT;
+			}
+		
+			multiply( copy, kernelFFT, getNumThreads() );
+		
+			//
+			// Compute inverse Fourier Transform
+			//		
+			metrics.start( "inverse fft" );
+		
+			final InverseFourierTransform<T, ComplexFloatType> invFFT = new InverseFourierTransform<T, ComplexFloatType>( copy, fftImage );
+			invFFT.setInPlaceTransform( true );
+			invFFT.setNumThreads( this.getNumThreads() );
+			invFFT.setPrecision( precision );
+
+			if ( !invFFT.checkInput() || !invFFT.process() )
+			{
+				errorMessage = "InverseFFT of image failed: " + invFFT.getErrorMessage();
 				return false;			
 			}
+		
+			if ( !keepImgFFT )
+			{
+				// the imgFFT was changed during the multiplication
+				// it cannot be re-used
+				imgFFT.close();
+				imgFFT = null;			
+			}
+		
+			convolved = invFFT.getResult();	
+		
+			processingTime = System.currentTimeMillis() - startTime;
+		
+	        return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
+	}
+	
+	/**
+	 * @return the factory of the containers the kernel spectrum is computed in, the one of the image
+	 */
+	protected ContainerFactory getFFTContainerFactory() { return image.getContainer().getFactory(); }
+	
+	/**
+	 * Returns the Fourier transform of the kernel for the given size, from the {@link KernelSpectrumCache} 
+	 * if one is set, otherwise it is computed.
+	 * 
+	 * @param kernelTemplateDim - the size of the (real) image that is transformed, must be a valid FFT size
+	 * @return the kernel spectrum or null if the transform failed
+	 */
+	protected Image<ComplexFloatType> getKernelFFT( final int[] kernelTemplateDim )
+	{
+		if ( kernelSpectrumCache == null )
+			return computeKernelFFT( kernelTemplateDim );
+		
+		final KernelSpectrumCache.Entry entry = kernelSpectrumCache.getEntry( kernel, kernelTemplateDim, getFFTContainerFactory(), precision );
+		
+		synchronized ( entry )
+		{
+			if ( entry.getSpectrum() == null )
+				entry.setSpectrum( computeKernelFFT( kernelTemplateDim ) );
 			
-			imgFFT = fftImage.getResult();
+			return entry.getSpectrum();
 		}
+	}
+	
+	/**
+	 * Computes the Fourier transform of the kernel, padded to the given size with its center at the origin.
+	 * 
+	 * @param kernelTemplateDim - the size of the (real) image that is transformed, must be a valid FFT size
+	 * @return the kernel spectrum or null if the transform failed
+	 */
+	protected Image<ComplexFloatType> computeKernelFFT( final int[] kernelTemplateDim )
+	{
+		// instaniate real valued kernel template
+		// which is of the same container type as the image
+		// so that the computation is easy
+		final ImageFactory<S> kernelTemplateFactory = new ImageFactory<S>( kernel.createType(), getFFTContainerFactory() );
+		final Image<S> kernelTemplate = kernelTemplateFactory.createImage( kernelTemplateDim );
+		
+		// copy the kernel into the kernelTemplate,
+		// the key here is that the center pixel of the kernel (e.g. 13,13,13)
+		// is located at (0,0,0)
+		final LocalizableCursor<S> kernelCursor = kernel.createLocalizableCursor();
+		final LocalizableByDimCursor<S> kernelTemplateCursor = kernelTemplate.createLocalizableByDimCursor();
 		
-		//
-		// create the kernel for fourier transform
-		//
-		if ( kernelFFT == null )
+		final int[] position = new int[ numDimensions ];
+		while ( kernelCursor.hasNext() )
 		{
-			// get the size of the kernel image that will be fourier transformed,
-			// it has the same size as the image
-			final int kernelTemplateDim[] = imgFFT.getDimensions();
-			kernelTemplateDim[ 0 ] = ( imgFFT.getDimension( 0 ) - 1 ) * 2;
+			kernelCursor.next();
+			kernelCursor.getPosition( position );
 			
-			// instaniate real valued kernel template
-			// which is of the same container type as the image
-			// so that the computation is easy
-			final ImageFactory<S> kernelTemplateFactory = new ImageFactory<S>( kernel.createType(), image.getContainer().getFactory() );
-			final Image<S> kernelTemplate = kernelTemplateFactory.createImage( kernelTemplateDim );
+			for ( int d = 0; d < numDimensions; ++d )
+				position[ d ] = ( position[ d ] - kernelDim[ d ]/2 + kernelTemplateDim[ d ] ) % kernelTemplateDim[ d ];
 			
-			// copy the kernel into the kernelTemplate,
-			// the key here is that the center pixel of the kernel (e.g. 13,13,13)
-			// is located at (0,0,0)
-			final LocalizableCursor<S> kernelCursor = kernel.createLocalizableCursor();
-			final LocalizableByDimCursor<S> kernelTemplateCursor = kernelTemplate.createLocalizableByDimCursor();
+			kernelTemplateCursor.setPosition( position );
+			kernelTemplateCursor.getType().set( kernelCursor.getType() );
+		}
+		
+		kernelCursor.close();
+		kernelTemplateCursor.close();
+		
+		// 
+		// compute FFT of kernel
+		//
+		final FourierTransform<S, ComplexFloatType> fftKernel = new FourierTransform<S, ComplexFloatType>( kernelTemplate, new ComplexFloatType() );
+		fftKernel.setNumThreads( this.getNumThreads() );
+		fftKernel.setPrecision( precision );
+		
+		fftKernel.setPreProcessing( PreProcessing.NONE );		
+		fftKernel.setRearrangement( Rearrangement.UNCHANGED );
+		
+		if ( !fftKernel.checkInput() || !fftKernel.process() )
+		{
+			errorMessage = "FFT of kernel failed: " + fftKernel.getErrorMessage();
+			return null;			
+		}		
+		metrics.addTemporary( kernelTemplate );
+		kernelTemplate.close();		
+		
+		final Image<ComplexFloatType> kernelFFT = fftKernel.getResult();
+		metrics.addTemporary( kernelFFT );
+		
+		return kernelFFT;
+	}
+	
+	/**
+	 * Overlap-save convolution of the image in blocks, see {@link #setBlockProcessing(boolean)}.
+	 */
+	protected boolean processBlocks()
+	{
+		final int[] imgDim = image.getDimensions();
+		
+		// the kernel reaches kernelDim/2 pixels to the left and kernelDim - 1 - kernelDim/2 to the right
+		final int[] kernelOffset = new int[ numDimensions ];
+		for ( int d = 0; d < numDimensions; ++d )
+			kernelOffset[ d ] = kernelDim[ d ] - 1 - kernelDim[ d ] / 2;
+		
+		final int[] fftSize = getBlockFFTSize( imgDim );
+		
+		// the part of each block that is valid 
+		final int[] validSize = new int[ numDimensions ];
+		final int[] numBlocksDim = new int[ numDimensions ];
+		int numBlocks = 1;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			validSize[ d ] = fftSize[ d ] - ( kernelDim[ d ] - 1 );
 			
-			final int[] position = new int[ numDimensions ];
-			while ( kernelCursor.hasNext() )
+			// write whole cells if possible
+			if ( CellContainer.class.isInstance( image.getContainer() ) )
 			{
-				kernelCursor.next();
-				kernelCursor.getPosition( position );
+				final int cellSize = ( (CellContainer<?,?>)image.getContainer() ).getCellSize( d );
 				
-				for ( int d = 0; d < numDimensions; ++d )
-				{
-					position[ d ] = ( position[ d ] - kernelDim[ d ]/2 + kernelTemplateDim[ d ] ) % kernelTemplateDim[ d ];
-					/*final int tmp = ( position[ d ] - kernelDim[ d ]/2 );
-					
-					if ( tmp < 0 )
-						position[ d ] = kernelTemplateDim[ d ] + tmp;
-					else
-						position[ d ] = tmp;*/
-				}			
-				
-				kernelTemplateCursor.setPosition( position );
-				kernelTemplateCursor.getType().set( kernelCursor.getType() );
+				if ( validSize[ d ] > cellSize )
+					validSize[ d ] -= validSize[ d ] % cellSize;
 			}
 			
-			// 
-			// compute FFT of kernel
-			//
-			final FourierTransform<S, ComplexFloatType> fftKernel = new FourierTransform<S, ComplexFloatType>( kernelTemplate, new ComplexFloatType() );
-			fftKernel.setNumThreads( this.getNumThreads() );
-			
-			fftKernel.setPreProcessing( PreProcessing.NONE );		
-			fftKernel.setRearrangement( fftImage.getRearrangement() );
-			
-			if ( !fftKernel.checkInput() || !fftKernel.process() )
-			{
-				errorMessage = "FFT of kernel failed: " + fftKernel.getErrorMessage();
-				return false;			
-			}		
-			kernelTemplate.close();		
-			kernelFFT = fftKernel.getResult();
+			numBlocksDim[ d ] = ( imgDim[ d ] - 1 ) / validSize[ d ] + 1;
+			numBlocks *= numBlocksDim[ d ];
 		}
 		
 		//
-		// Multiply in Fourier Space
+		// the kernel spectrum of the block size
 		//
-		final Image< ComplexFloatType > copy;
-		
-		if ( keepImgFFT )
-			copy = imgFFT.clone();
-		else
-			copy = imgFFT;
-		
-		long numPixels = copy.getDimension( 0 );
-		for ( int d = 1; d < copy.getNumDimensions(); ++d )
-			numPixels *= copy.getDimension( d );
-		
-		final Vector< Chunk > threadChunks = SimpleMultiThreading.divideIntoChunks( numPixels, getNumThreads() );
-		
-		final AtomicInteger ai = new AtomicInteger(0);					
-        final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-        for ( int ithread = 0; ithread < threads.length; ++ithread )
-            threads[ithread] = new Thread(new Runnable()
-            {
-                public void run()
-                {
-                	// get chunk of pixels to process
-                	final Chunk myChunk = threadChunks.get( ai.getAndIncrement() );
-                	
-            		multiply( myChunk.getStartPosition(), myChunk.getLoopSize(), copy, kernelFFT );
-                }
-            });
-        
-        SimpleMultiThreading.startAndJoin( threads );
-
-		//multiply( copy, kernelFFT );
-		
-		//
-		// Compute inverse Fourier Transform
-		//		
-		final InverseFourierTransform<T, ComplexFloatType> invFFT = new InverseFourierTransform<T, ComplexFloatType>( copy, fftImage );
-		invFFT.setInPlaceTransform( true );
-		invFFT.setNumThreads( this.getNumThreads() );
-
-		if ( !invFFT.checkInput() || !invFFT.process() )
+		if ( blockKernelFFT == null || !Arrays.equals( fftSize, blockFFTSize ) )
 		{
-			errorMessage = "InverseFFT of image failed: " + invFFT.getErrorMessage();
-			return false;			
+			metrics.start( "kernel fft" );
+			
+			if ( blockKernelFFT != null && kernelSpectrumCache == null )
+				blockKernelFFT.close();
+			
+			blockKernelFFT = getKernelFFT( fftSize );
+			
+			if ( blockKernelFFT == null )
+				return false;
 		}
 		
-		if ( !keepImgFFT )
+		blockFFTSize = fftSize;
+		
+		final ImageFactory<T> imgFactory = new ImageFactory<T>( image.createType(), image.getContainerFactory() );
+		convolved = imgFactory.createImage( imgDim );
+		
+		if ( convolved == null )
 		{
-			// the imgFFT was changed during the multiplication
-			// it cannot be re-used
-			imgFFT.close();
-			imgFFT = null;			
+			errorMessage = "Cannot create output image, most likely out of memory";
+			return false;
 		}
 		
-		convolved = invFFT.getResult();	
+		//
+		// convolve the blocks
+		//
+		metrics.start( "blocks" );
+		
+		final int totalNumBlocks = numBlocks;
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final AtomicInteger nextBlock = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( getNumThreads() );
+		final String[] errors = new String[ threads.length ];
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ithread] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					final int myNumber = ai.getAndIncrement();
+					
+					final int[] blockPosition = new int[ numDimensions ];
+					final int[] imageOffset = new int[ numDimensions ];
+					final int[] size = new int[ numDimensions ];
+					final int[] position = new int[ numDimensions ];
+					
+					final LocalizableByDimCursor<T> cursorOut = convolved.createLocalizableByDimCursor();
+					
+					for ( int b = nextBlock.getAndIncrement(); b < totalNumBlocks; b = nextBlock.getAndIncrement() )
+					{
+						int index = b;
+						
+						for ( int d = 0; d < numDimensions; ++d )
+						{
+							blockPosition[ d ] = ( index % numBlocksDim[ d ] ) * validSize[ d ];
+							index /= numBlocksDim[ d ];
+							
+							// the block is read starting kernelOffset pixels before the valid area
+							imageOffset[ d ] = kernelOffset[ d ] - blockPosition[ d ];
+							size[ d ] = Math.min( validSize[ d ], imgDim[ d ] - blockPosition[ d ] );
+						}
+						
+						final Image<ComplexFloatType> blockFFT = FFTFunctions.computeFFT( image, new ComplexFloatType(), strategy, imageOffset, fftSize, 1, false, precision );
+						
+						if ( blockFFT == null )
+						{
+							errors[ myNumber ] = "FFT of block " + b + " failed, most likely out of memory";
+							break;
+						}
+						
+						multiply( blockFFT, blockKernelFFT, 1 );
+						
+						final Image<T> block = FFTFunctions.computeInverseFFT( blockFFT, image.createType(), 1, true, true, size, kernelOffset, 1, precision );
+						blockFFT.close();
+						
+						if ( block == null )
+						{
+							errors[ myNumber ] = "Inverse FFT of block " + b + " failed, most likely out of memory";
+							break;
+						}
+						
+						// write the valid part into the result
+						final LocalizableCursor<T> cursor = block.createLocalizableCursor();
+						
+						while ( cursor.hasNext() )
+						{
+							cursor.fwd();
+							cursor.getPosition( position );
+							
+							for ( int d = 0; d < numDimensions; ++d )
+								position[ d ] += blockPosition[ d ];
+							
+							cursorOut.setPosition( position );
+							cursorOut.getType().set( cursor.getType() );
+						}
+						
+						cursor.close();
+						block.close();
+					}
+					
+					cursorOut.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
 		
-		processingTime = System.currentTimeMillis() - startTime;
-        return true;
+		for ( final String error : errors )
+			if ( error != null )
+			{
+				errorMessage = error;
+				return false;
+			}
+		
+		return true;
 	}
 	
 	/**
-	 * Multiply in Fourier Space
-	 * 
-	 * @param a
-	 * @param b
+	 * Chooses the size of the Fourier transforms of the blocks. If no block size is set, it starts with 
+	 * twice the kernel size and grows the dimension in which the fraction of valid pixels is smallest 
+	 * until the blocks would have more than {@link #getMaxBlockPixels()} pixels or cover the image.
 	 */
-	protected void multiply( final Image< ComplexFloatType > a, final Image< ComplexFloatType > b )
+	protected int[] getBlockFFTSize( final int[] imgDim )
 	{
-		final Cursor<ComplexFloatType> cursorA = a.createCursor();
-		final Cursor<ComplexFloatType> cursorB = b.createCursor();
+		final int[] fftSize = new int[ numDimensions ];
+		final int[] maxSize = new int[ numDimensions ];
 		
-		while ( cursorA.hasNext() )
+		for ( int d = 0; d < numDimensions; ++d )
 		{
-			cursorA.fwd();
-			cursorB.fwd();
+			maxSize[ d ] = getFFTSize( imgDim[ d ] + kernelDim[ d ] - 1, d );
 			
-			cursorA.getType().mul( cursorB.getType() );
+			if ( blockSize != null )
+				fftSize[ d ] = Math.min( maxSize[ d ], getFFTSize( blockSize[ d ] + kernelDim[ d ] - 1, d ) );
+			else
+				fftSize[ d ] = Math.min( maxSize[ d ], getFFTSize( Math.max( 2 * kernelDim[ d ], 16 ), d ) );
 		}
 		
-		cursorA.close();
-		cursorB.close();
-	}
-
-	private final static void multiply( final long start, final long loopSize, final Image< ComplexFloatType > a, final Image< ComplexFloatType > b )
-	{
-		final Cursor<ComplexFloatType> cursorA = a.createCursor();
-		final Cursor<ComplexFloatType> cursorB = b.createCursor();
+		if ( blockSize != null )
+			return fftSize;
 		
-		cursorA.fwd( start );
-		cursorB.fwd( start );
+		final boolean[] done = new boolean[ numDimensions ];
 		
-		for ( long l = 0; l < loopSize; ++l )
+		while ( true )
 		{
-			cursorA.fwd();
-			cursorB.fwd();
+			// the dimension with the lowest fraction of valid pixels that can still grow 
+			int dim = -1;
+			double minEfficiency = Double.MAX_VALUE;
+			
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				final double efficiency = (double)( fftSize[ d ] - kernelDim[ d ] + 1 ) / fftSize[ d ];
+				
+				if ( !done[ d ] && fftSize[ d ] < maxSize[ d ] && efficiency < minEfficiency )
+				{
+					minEfficiency = efficiency;
+					dim = d;
+				}
+			}
+			
+			if ( dim == -1 )
+				break;
+			
+			final int newSize = Math.min( maxSize[ dim ], getFFTSize( fftSize[ dim ] * 2, dim ) );
 			
-			cursorA.getType().mul( cursorB.getType() );
+			long numPixels = newSize;
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( d != dim )
+					numPixels *= fftSize[ d ];
+			
+			if ( numPixels > maxBlockPixels )
+				done[ dim ] = true;
+			else
+				fftSize[ dim ] = newSize;
 		}
 		
-		cursorA.close();
-		cursorB.close();
+		return fftSize;
+	}
+	
+	/**
+	 * @return a fast FFT size that is at least size, the first dimension is real to complex, all others complex to complex  
+	 */
+	protected static int getFFTSize( final int size, final int dim )
+	{
+		if ( dim == 0 )
+			return FftReal.nfftFast( size );
+		else
+			return FftComplex.nfftFast( size );
+	}
+	
+	/**
+	 * Multiply in Fourier Space
+	 * 
+	 * @param a
+	 * @param b
+	 * @deprecated {@link #process()} only calls {@link #multiply(Image, Image, int)}, subclasses have to override that one
+	 */
+	@Deprecated
+	final protected void multiply( final Image< ComplexFloatType > a, final Image< ComplexFloatType > b )
+	{
+		multiply( a, b, 1 );
+	}
+
+	/**
+	 * Multiply in Fourier Space, a = a * b, in parallel using {@link SpectrumFunctions}. Subclasses override 
+	 * this method to combine the spectra differently, it is called for the whole image with all threads 
+	 * and for each block with one thread.
+	 * 
+	 * @param a
+	 * @param b
+	 * @param numThreads
+	 */
+	protected void multiply( final Image< ComplexFloatType > a, final Image< ComplexFloatType > b, final int numThreads )
+	{
+		SpectrumFunctions.multiply( a, b, false, numThreads );
 	}
 	
 	@Override
 	public long getProcessingTime() { return processingTime; }
 	
+	@Override
+	public Metrics getMetrics() { return metrics; }
+	
 	@Override
 	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
 
@@ -509,6 +881,12 @@ public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> im
 			return false;
 		}
 		
+		if ( precision == null )
+		{
+			errorMessage = "Precision is null";
+			return false;
+		}
+		
 		for ( int d = 0; d < numDimensions; ++d )
 			if ( kernel.getDimension( d ) % 2 != 1)
 			{
@@ -519,14 +897,25 @@ public class FourierConvolution<T extends RealType<T>, S extends RealType<S>> im
 		return true;
 	}
 	
+	protected void closeKernelFFT()
+	{
+		if ( kernelFFT != null )
+			kernelFFT.close(); 
+		
+		if ( blockKernelFFT != null )
+			blockKernelFFT.close();
+	}
+	
 	public void close()
 	{
-		kernelFFT.close(); 
+		if ( kernelSpectrumCache == null )
+			closeKernelFFT();
 		
 		image = null;
 		convolved = null;
 		kernel = null;
 		kernelFFT = null;
+		blockKernelFFT = null;
 		
 		if ( imgFFT != null )
 			imgFFT.close();
@@ -31,6 +31,9 @@ import edu.mines.jtk.dsp.FftReal;
 import mpicbg.imglib.algorithm.Benchmark;
 import mpicbg.imglib.algorithm.MultiThreaded;
 import mpicbg.imglib.algorithm.OutputAlgorithm;
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
+import mpicbg.imglib.algorithm.metrics.Measurable;
+import mpicbg.imglib.algorithm.metrics.Metrics;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorExpWindowingFactory;
@@ -38,6 +41,7 @@ import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
 import mpicbg.imglib.type.numeric.ComplexType;
 import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
 import mpicbg.imglib.util.Util;
 
 /**
@@ -45,7 +49,7 @@ import mpicbg.imglib.util.Util;
  *
  * @author Stephan Preibisch
  */
-public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> implements MultiThreaded, OutputAlgorithm<S>, Benchmark
+public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> implements MultiThreaded, OutputAlgorithm<S>, Benchmark, Measurable
 {
 	public static enum PreProcessing { NONE, EXTEND_MIRROR, EXTEND_MIRROR_FADING, USE_GIVEN_OUTOFBOUNDSSTRATEGY }
 	public static enum Rearrangement { REARRANGE_QUADRANTS, UNCHANGED }
@@ -69,10 +73,18 @@ public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> i
 	int[] inputSize = null, inputSizeOffset = null;
 	
 	final S complexType;
+	
+	// the precision of the line buffers and the FFT
+	PrecisionReal precision;
+	
+	// the spectrum is stored in a HalfSpectrumStorage
+	boolean useHalfSpectrumStorage = false;
+	HalfSpectrumStorage halfSpectrumStorage = null;
 
 	String errorMessage = "";
 	int numThreads;
 	long processingTime;
+	Metrics metrics = null;
 
 	public FourierTransform( final Image<T> image, final S complexType, final PreProcessing preProcessing, final Rearrangement rearrangement,
 							 final FFTOptimization fftOptimization, final float relativeImageExtension, final float relativeFadeOutDistance,
@@ -80,6 +92,7 @@ public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> i
 	{
 		this.img = image;
 		this.complexType = complexType;
+		this.precision = complexType.getPreferredRealPrecision();
 		this.numDimensions = img.getNumDimensions();
 		this.extendedSize = new int[ numDimensions ];
 		this.extendedZeroPaddedSize = new int[ numDimensions ];
@@ -140,6 +153,31 @@ public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> i
 	public void setCustomOutOfBoundsStrategy( final OutOfBoundsStrategyFactory<T> strategy ) { this.strategy = strategy; } 
 	public void setMinExtension( final int minExtension ) { this.minExtension = minExtension; }	
 	public void setImageExtension( final int[] imageExtension ) { this.imageExtension = imageExtension.clone(); }
+	
+	/**
+	 * Sets the precision in which the FFT is computed, independent of the precision in which the spectrum is stored. 
+	 * By default it is the preferred precision of the complex type, i.e. {@link PrecisionReal#Float} for {@link ComplexFloatType} 
+	 * and {@link PrecisionReal#Double} for {@link mpicbg.imglib.type.numeric.complex.ComplexDoubleType}. 
+	 * 
+	 * @param precision
+	 */
+	public void setPrecision( final PrecisionReal precision ) { this.precision = precision; }
+	public PrecisionReal getPrecision() { return precision; }
+	
+	/**
+	 * Computes the spectrum into a {@link HalfSpectrumStorage} independent of the container of the image, so that the 
+	 * inverse transform can be computed in place and return the real image without allocating memory 
+	 * (see {@link InverseFourierTransform#setOutputInSpectrumStorage(boolean)}). Only for {@link ComplexFloatType}.
+	 * 
+	 * @param useHalfSpectrumStorage
+	 */
+	public void setHalfSpectrumStorage( final boolean useHalfSpectrumStorage ) { this.useHalfSpectrumStorage = useHalfSpectrumStorage; }
+	public boolean getUseHalfSpectrumStorage() { return useHalfSpectrumStorage; }
+	
+	/**
+	 * @return the storage of the spectrum of the last call of {@link #process()} if {@link #setHalfSpectrumStorage(boolean)} is set, otherwise null
+	 */
+	public HalfSpectrumStorage getHalfSpectrumStorage() { return halfSpectrumStorage; }
 	public boolean setExtendedOriginalImageSize( final int[] inputSize )
 	{
 		for ( int d = 0; d < numDimensions; ++d )
@@ -208,78 +246,105 @@ public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> i
 			return inputSize.clone();
 	}
 	
+	@SuppressWarnings("unchecked")
 	@Override
 	public boolean process() 
 	{		
 		final long startTime = System.currentTimeMillis();
-
-		//
-		// perform FFT on the temporary image
-		//			
-		final OutOfBoundsStrategyFactory<T> outOfBoundsFactory;		
-		switch ( preProcessing )
+		metrics = new Metrics( "FourierTransform", img, getNumThreads() );
+		
+		try
 		{
-			case USE_GIVEN_OUTOFBOUNDSSTRATEGY:
+			//
+			// perform FFT on the temporary image
+			//			
+			final OutOfBoundsStrategyFactory<T> outOfBoundsFactory;		
+			switch ( preProcessing )
 			{
-				if ( strategy == null )
+				case USE_GIVEN_OUTOFBOUNDSSTRATEGY:
 				{
-					errorMessage = "Custom OutOfBoundsStrategyFactory is null, cannot use custom strategy";
-					return false;
-				}				
-				extendedZeroPaddedSize = getZeroPaddingSize( getExtendedImageSize( img, imageExtension ), fftOptimization );
-				outOfBoundsFactory = strategy;				
-				break;
-			}
-			case EXTEND_MIRROR:
-			{	
-				extendedZeroPaddedSize = getZeroPaddingSize( getExtendedImageSize( img, imageExtension ), fftOptimization );
-				outOfBoundsFactory = new OutOfBoundsStrategyMirrorFactory<T>();
-				break;
+					if ( strategy == null )
+					{
+						errorMessage = "Custom OutOfBoundsStrategyFactory is null, cannot use custom strategy";
+						return false;
+					}				
+					extendedZeroPaddedSize = getZeroPaddingSize( getExtendedImageSize( img, imageExtension ), fftOptimization );
+					outOfBoundsFactory = strategy;				
+					break;
+				}
+				case EXTEND_MIRROR:
+				{	
+					extendedZeroPaddedSize = getZeroPaddingSize( getExtendedImageSize( img, imageExtension ), fftOptimization );
+					outOfBoundsFactory = new OutOfBoundsStrategyMirrorFactory<T>();
+					break;
 				
-			}			
-			case EXTEND_MIRROR_FADING:
-			{
-				extendedZeroPaddedSize = getZeroPaddingSize( getExtendedImageSize( img, imageExtension ), fftOptimization );
-				outOfBoundsFactory = new OutOfBoundsStrategyMirrorExpWindowingFactory<T>( relativeFadeOutDistance );				
-				break;
-			}			
-			default: // or NONE
-			{
-				if ( inputSize == null )
-					extendedZeroPaddedSize = getZeroPaddingSize( img.getDimensions(), fftOptimization );
-				else
-					extendedZeroPaddedSize = getZeroPaddingSize( inputSize, fftOptimization );
+				}			
+				case EXTEND_MIRROR_FADING:
+				{
+					extendedZeroPaddedSize = getZeroPaddingSize( getExtendedImageSize( img, imageExtension ), fftOptimization );
+					outOfBoundsFactory = new OutOfBoundsStrategyMirrorExpWindowingFactory<T>( relativeFadeOutDistance );				
+					break;
+				}			
+				default: // or NONE
+				{
+					if ( inputSize == null )
+						extendedZeroPaddedSize = getZeroPaddingSize( img.getDimensions(), fftOptimization );
+					else
+						extendedZeroPaddedSize = getZeroPaddingSize( inputSize, fftOptimization );
 				
-				outOfBoundsFactory = new OutOfBoundsStrategyValueFactory<T>( img.createType() );
-				break;
-			}		
-		}
+					outOfBoundsFactory = new OutOfBoundsStrategyValueFactory<T>( img.createType() );
+					break;
+				}		
+			}
 		
-		originalOffset = new int[ numDimensions ];		
-		for ( int d = 0; d < numDimensions; ++d )
-		{
-			if ( inputSize != null )
-				inputSizeOffset[ d ] = ( extendedZeroPaddedSize[ d ] - inputSize[ d ] ) / 2;
+			originalOffset = new int[ numDimensions ];		
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				if ( inputSize != null )
+					inputSizeOffset[ d ] = ( extendedZeroPaddedSize[ d ] - inputSize[ d ] ) / 2;
 			
-			originalOffset[ d ] = ( extendedZeroPaddedSize[ d ] - img.getDimension( d ) ) / 2;			
-		}
+				originalOffset[ d ] = ( extendedZeroPaddedSize[ d ] - img.getDimension( d ) ) / 2;			
+			}
 		
 		
-		fftImage = FFTFunctions.computeFFT( img, complexType, outOfBoundsFactory, originalOffset, extendedZeroPaddedSize, getNumThreads(), false );
+			metrics.start( "fft" );
 		
-		if ( fftImage == null )
-		{
-			errorMessage = "Could not compute the FFT transformation, most likely out of memory";
-			return false;
-		}
+			if ( useHalfSpectrumStorage )
+			{
+				// checkInput() made sure that S is ComplexFloatType
+				halfSpectrumStorage = new HalfSpectrumStorage( extendedZeroPaddedSize );
+				fftImage = (Image<S>)halfSpectrumStorage.getSpectrum();
+			
+				FFTFunctions.computeFFT( img, fftImage, outOfBoundsFactory, originalOffset, extendedZeroPaddedSize, getNumThreads(), false, precision );
+			}
+			else
+			{
+				halfSpectrumStorage = null;
+				fftImage = FFTFunctions.computeFFT( img, complexType, outOfBoundsFactory, originalOffset, extendedZeroPaddedSize, getNumThreads(), false, precision );
+			}
+		
+			if ( fftImage == null )
+			{
+				errorMessage = "Could not compute the FFT transformation, most likely out of memory";
+				return false;
+			}
 
-		// rearrange quadrants if wanted
-		if ( rearrangement == Rearrangement.REARRANGE_QUADRANTS )
-			FFTFunctions.rearrangeFFTQuadrants( fftImage, true, getNumThreads() );
+			// rearrange quadrants if wanted
+			if ( rearrangement == Rearrangement.REARRANGE_QUADRANTS )
+			{
+				metrics.start( "rearrange" );
+				FFTFunctions.rearrangeFFTQuadrants( fftImage, true, getNumThreads() );
+			}
 			
-        processingTime = System.currentTimeMillis() - startTime;
+	        processingTime = System.currentTimeMillis() - startTime;
 
-        return true;
+	        return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
 	}	
 				
 	protected int[] getExtendedImageSize( final Image<?> img, final int[] imageExtension )
@@ -320,6 +385,9 @@ public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> i
 	@Override
 	public long getProcessingTime() { return processingTime; }
 	
+	@Override
+	public Metrics getMetrics() { return metrics; }
+	
 	@Override
 	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
 
@@ -344,6 +412,16 @@ public class FourierTransform<T extends RealType<T>, S extends ComplexType<S>> i
 			errorMessage = "Input image is null";
 			return false;
 		}
+		else if ( useHalfSpectrumStorage && complexType.getClass() != ComplexFloatType.class )
+		{
+			errorMessage = "HalfSpectrumStorage is only supported for ComplexFloatType";
+			return false;
+		}
+		else if ( precision == null )
+		{
+			errorMessage = "Precision is null";
+			return false;
+		}
 		else
 		{
 			return true;
@@ -0,0 +1,329 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.container.Container;
+import mpicbg.imglib.container.array.Array;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.basictypecontainer.FloatAccess;
+import mpicbg.imglib.container.basictypecontainer.array.FloatArray;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+import edu.mines.jtk.dsp.FftReal;
+
+/**
+ * One float[] that holds a real image of size n0 x n1 x ... and its half spectrum of size ( n0 / 2 + 1 ) x n1 x ... 
+ * Each line in dimension 0 has room for n0 / 2 + 1 complex numbers, the real values of a line are stored at its 
+ * beginning. The real to complex FFT and the inverse are computed in place, so a transform needs no memory 
+ * besides the storage (and the line buffers of the threads).
+ * 
+ * The storage is accessible as a {@link FloatType} image with the padded lines ({@link #getPaddedRealImage()}) and as
+ * {@link ComplexFloatType} image ({@link #getSpectrum()}), both are views on the same array. The spectrum has the 
+ * layout of any {@link ComplexFloatType} image in an {@link Array}, so an existing spectrum can be wrapped with 
+ * {@link #wrap(Image)} to compute the inverse in place. 
+ * 
+ * The real size in dimension 0 must be even (as all sizes returned by {@link FftReal#nfftFast(int)}), the storage 
+ * is limited to 2^31-1 floats.
+ */
+final public class HalfSpectrumStorage 
+{
+	final int numDimensions;
+	final int[] realSize, complexSize, paddedRealSize;
+	final float[] data;
+	final Image<ComplexFloatType> spectrum;
+	
+	/**
+	 * Allocates the storage for a real image of the given size
+	 * 
+	 * @param realSize - the size of the real image, the size in dimension 0 must be even
+	 */
+	public HalfSpectrumStorage( final int[] realSize )
+	{
+		this( realSize, null );
+	}
+
+	private HalfSpectrumStorage( final int[] realSize, final Image<ComplexFloatType> spectrum )
+	{
+		this.numDimensions = realSize.length;
+		this.realSize = realSize.clone();
+		this.complexSize = realSize.clone();
+		this.paddedRealSize = realSize.clone();
+		
+		complexSize[ 0 ] = realSize[ 0 ] / 2 + 1;
+		paddedRealSize[ 0 ] = complexSize[ 0 ] * 2;
+		
+		if ( spectrum == null )
+		{
+			long numEntities = paddedRealSize[ 0 ];
+			for ( int d = 1; d < numDimensions; ++d )
+				numEntities *= paddedRealSize[ d ];
+			
+			if ( numEntities > Integer.MAX_VALUE )
+				throw new RuntimeException( "HalfSpectrumStorage: " + numEntities + " floats do not fit into one array." );
+			
+			this.data = new float[ (int)numEntities ];
+			this.spectrum = createComplexView( data, complexSize );
+		}
+		else
+		{
+			this.data = ( (FloatArray)( (Array<?,?>)spectrum.getContainer() ).update( null ) ).getCurrentStorageArray();
+			this.spectrum = spectrum;
+		}
+	}
+	
+	/**
+	 * Wraps an existing spectrum, e.g. the result of a {@link FourierTransform}, to compute the inverse transform in place.
+	 * 
+	 * @param spectrum - the half spectrum of a real image with an even size in dimension 0
+	 * @return the storage or null if the spectrum is not stored in an {@link Array} backed by a {@link FloatArray}
+	 */
+	public static HalfSpectrumStorage wrap( final Image<ComplexFloatType> spectrum )
+	{
+		final Container<?> container = spectrum.getContainer();
+		
+		if ( !Array.class.isInstance( container ) || !( ( (Array<?,?>)container ).update( null ) instanceof FloatArray ) )
+			return null;
+		
+		final int[] realSize = spectrum.getDimensions();
+		realSize[ 0 ] = ( realSize[ 0 ] - 1 ) * 2;
+		
+		return new HalfSpectrumStorage( realSize, spectrum );
+	}
+	
+	/**
+	 * @return the size of the real image
+	 */
+	public int[] getRealSize() { return realSize.clone(); }
+	
+	/**
+	 * @return the size of the spectrum
+	 */
+	public int[] getSpectrumSize() { return complexSize.clone(); }
+	
+	/**
+	 * @return the storage as complex image, it contains the spectrum after {@link #forward(int, boolean)}
+	 */
+	public Image<ComplexFloatType> getSpectrum() { return spectrum; }
+	
+	/**
+	 * @return the storage as real image with the size of the padded lines, the pixels 0 ... n0-1 of each line are the 
+	 * real image (before {@link #forward(int, boolean)} and after {@link #inverse(int, boolean, float)}), the last one or 
+	 * two pixels are padding
+	 */
+	public Image<FloatType> getPaddedRealImage() { return createRealView( data, paddedRealSize ); }
+	
+	/**
+	 * Moves an area of the real image (after {@link #inverse(int, boolean, float)}) to the beginning of the storage and 
+	 * returns it as image that uses the storage, so no memory is allocated. The spectrum and the padded real image are 
+	 * invalid afterwards.
+	 * 
+	 * @param size - the size of the area or null for the whole real image
+	 * @param offset - the offset of the area or null
+	 * @return the real image
+	 * @throws RuntimeException if the area is not inside the real image
+	 */
+	public Image<FloatType> getRealImage( final int[] size, final int[] offset )
+	{
+		final int[] areaSize = ( size == null ) ? realSize.clone() : size.clone();
+		final int[] areaOffset = ( offset == null ) ? new int[ numDimensions ] : offset.clone();
+		
+		if ( areaSize.length != numDimensions || areaOffset.length != numDimensions )
+			throw new RuntimeException( "HalfSpectrumStorage: the area has " + areaSize.length + " / " + areaOffset.length + " dimensions, the image " + numDimensions + "." );
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			if ( areaSize[ d ] < 1 || areaOffset[ d ] < 0 || (long)areaOffset[ d ] + areaSize[ d ] > realSize[ d ] )
+				throw new RuntimeException( "HalfSpectrumStorage: the area [" + areaOffset[ d ] + ", " + ( (long)areaOffset[ d ] + areaSize[ d ] ) + 
+				                            "[ in dimension " + d + " is not inside the real image of size " + realSize[ d ] + "." );
+		
+		final int numLines = FFTFunctions.getNumLines( areaSize, 0 );
+		final int[] position = new int[ numDimensions ];
+		final int[] steps = Array.createAllocationSteps( paddedRealSize );
+		
+		// the lines are moved in increasing order, the target of a line is never behind its source
+		for ( int line = 0; line < numLines; ++line )
+		{
+			FFTFunctions.getLinePosition( line, areaSize, areaOffset, 0, position );
+			
+			int source = position[ 0 ];
+			for ( int d = 1; d < numDimensions; ++d )
+				source += position[ d ] * steps[ d ];
+			
+			System.arraycopy( data, source, data, line * areaSize[ 0 ], areaSize[ 0 ] );
+		}
+		
+		return createRealView( data, areaSize );
+	}
+	
+	/**
+	 * Computes the FFT of the real image in place
+	 * 
+	 * @param numThreads - the number of threads
+	 * @param scale - divide by the size of each dimension
+	 */
+	public void forward( final int numThreads, final boolean scale )
+	{
+		final int realSize = this.realSize[ 0 ];
+		final int pitch = paddedRealSize[ 0 ];
+		final int numLines = FFTFunctions.getNumLines( paddedRealSize, 0 );
+		final int linesPerTask = FFTFunctions.getLinesPerTask( numLines, numThreads );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final float[] tempIn = FFTCache.getBuffer( realSize );
+					final float[] tempOut = FFTCache.getBuffer( pitch );
+					final FftReal fft = FFTCache.getFftReal( realSize );
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int end = Math.min( start + linesPerTask, numLines );
+						
+						for ( int line = start; line < end; ++line )
+						{
+							System.arraycopy( data, line * pitch, tempIn, 0, realSize );
+							
+							fft.realToComplex( -1, tempIn, tempOut );
+							
+							if ( scale )
+								for ( int x = 0; x < pitch; ++x )
+									tempOut[ x ] /= realSize;
+							
+							System.arraycopy( tempOut, 0, data, line * pitch, pitch );
+						}
+					}
+					
+					FFTCache.releaseBuffer( tempIn );
+					FFTCache.releaseBuffer( tempOut );
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+		
+		for ( int d = 1; d < numDimensions; ++d )
+			FFTFunctions.computeComplexFFT( spectrum, d, -1, scale, numThreads );
+	}
+	
+	/**
+	 * Computes the inverse FFT of the spectrum in place, afterwards the storage contains the real image 
+	 * (see {@link #getPaddedRealImage()} and {@link #getRealImage(int[], int[])})
+	 * 
+	 * @param numThreads - the number of threads
+	 * @param scale - divide by the size of each dimension
+	 * @param additionalNormalization - multiply the result with this value
+	 */
+	public void inverse( final int numThreads, final boolean scale, final float additionalNormalization )
+	{
+		for ( int d = numDimensions - 1; d > 0; --d )
+			FFTFunctions.computeComplexFFT( spectrum, d, 1, scale, numThreads );
+		
+		final int realSize = this.realSize[ 0 ];
+		final int pitch = paddedRealSize[ 0 ];
+		final int numLines = FFTFunctions.getNumLines( paddedRealSize, 0 );
+		final int linesPerTask = FFTFunctions.getLinesPerTask( numLines, numThreads );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final float[] tempIn = FFTCache.getBuffer( pitch );
+					final float[] tempOut = FFTCache.getBuffer( realSize );
+					final FftReal fft = FFTCache.getFftReal( realSize );
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int end = Math.min( start + linesPerTask, numLines );
+						
+						for ( int line = start; line < end; ++line )
+						{
+							System.arraycopy( data, line * pitch, tempIn, 0, pitch );
+							
+							fft.complexToReal( 1, tempIn, tempOut );
+							
+							// the same normalization as FFTFunctions.computeInverseFFT()
+							if ( scale )
+								for ( int x = 0; x < realSize; ++x )
+									tempOut[ x ] = ( tempOut[ x ] / realSize ) * additionalNormalization;
+							else
+								for ( int x = 0; x < realSize; ++x )
+									tempOut[ x ] = tempOut[ x ] * additionalNormalization;
+							
+							System.arraycopy( tempOut, 0, data, line * pitch, realSize );
+						}
+					}
+					
+					FFTCache.releaseBuffer( tempIn );
+					FFTCache.releaseBuffer( tempOut );
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/*
+	 * The views have their own FloatArray on the same float[], so closing one image does not invalidate the others
+	 */
+	private static Image<FloatType> createRealView( final float[] data, final int[] dim )
+	{
+		final FloatAccess access = new FloatArray( data );
+		final Array<FloatType, FloatAccess> array = new Array<FloatType, FloatAccess>( new ArrayContainerFactory(), access, dim, 1 );
+		
+		// create a Type that is linked to the container
+		final FloatType linkedType = new FloatType( array );
+		
+		// pass it to the DirectAccessContainer
+		array.setLinkedType( linkedType );
+		
+		return new Image<FloatType>( array, new FloatType() );
+	}
+
+	private static Image<ComplexFloatType> createComplexView( final float[] data, final int[] dim )
+	{
+		final FloatAccess access = new FloatArray( data );
+		final Array<ComplexFloatType, FloatAccess> array = new Array<ComplexFloatType, FloatAccess>( new ArrayContainerFactory(), access, dim, 2 );
+		
+		// create a Type that is linked to the container
+		final ComplexFloatType linkedType = new ComplexFloatType( array );
+		
+		// pass it to the DirectAccessContainer
+		array.setLinkedType( linkedType );
+		
+		return new Image<ComplexFloatType>( array, new ComplexFloatType() );
+	}
+}
@@ -26,44 +26,43 @@
 
 package mpicbg.imglib.algorithm.fft;
 
-import mpicbg.imglib.cursor.Cursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.numeric.RealType;
 import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
 
 /**
  * Convolve an image with the inverse of a kernel which is division in the Fourier domain.
+ * With a regularization &gt; 0 the spectrum is multiplied with conj( K ) / ( |K|^2 + regularization ) instead of 
+ * divided by K, which avoids the amplification of frequencies the kernel (almost) removes.
  *
  *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
 public class InverseFourierConvolution< T extends RealType< T >, S extends RealType< S > > extends FourierConvolution< T, S >
 {
+	float regularization = 0;
+	
 	public InverseFourierConvolution( final Image< T > image, final Image< S > kernel )
 	{
 		super( image, kernel );
 	}
 	
 	/**
-	 * Divide in Fourier Space
+	 * @param regularization - added to the squared magnitude of the kernel spectrum, 0 (default) is a plain division
+	 */
+	public void setRegularization( final float regularization ) { this.regularization = regularization; }
+	public float getRegularization() { return regularization; }
+	
+	/**
+	 * Divide in Fourier Space, in parallel using {@link SpectrumFunctions}
 	 * 
 	 * @param a
 	 * @param b
+	 * @param numThreads
 	 */
-	protected void multiply( final Image< ComplexFloatType > a, final Image< ComplexFloatType > b )
+	@Override
+	protected void multiply( final Image< ComplexFloatType > a, final Image< ComplexFloatType > b, final int numThreads )
 	{
-		final Cursor<ComplexFloatType> cursorA = a.createCursor();
-		final Cursor<ComplexFloatType> cursorB = b.createCursor();
-		
-		while ( cursorA.hasNext() )
-		{
-			cursorA.fwd();
-			cursorB.fwd();
-			
-			cursorA.getType().div( cursorB.getType() );
-		}
-		
-		cursorA.close();
-		cursorB.close();
+		SpectrumFunctions.divide( a, b, regularization, numThreads );
 	}
 }
@@ -29,17 +29,22 @@ package mpicbg.imglib.algorithm.fft;
 import mpicbg.imglib.algorithm.Benchmark;
 import mpicbg.imglib.algorithm.MultiThreaded;
 import mpicbg.imglib.algorithm.OutputAlgorithm;
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
+import mpicbg.imglib.algorithm.metrics.Measurable;
+import mpicbg.imglib.algorithm.metrics.Metrics;
 import mpicbg.imglib.algorithm.fft.FourierTransform.Rearrangement;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.numeric.ComplexType;
 import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
 
 /**
  * TODO
  *
  * @author Stephan Preibisch
  */
-public class InverseFourierTransform<T extends RealType<T>, S extends ComplexType<S>> implements MultiThreaded, OutputAlgorithm<T>, Benchmark
+public class InverseFourierTransform<T extends RealType<T>, S extends ComplexType<S>> implements MultiThreaded, OutputAlgorithm<T>, Benchmark, Measurable
 {
 	final Image<S> fftImage;	
 	final int numDimensions;
@@ -47,11 +52,13 @@ public class InverseFourierTransform<T extends RealType<T>, S extends ComplexTyp
 	T type;
 	
 	Rearrangement rearrangement;
+	PrecisionReal precision;
 
 	String errorMessage = "";
 	int numThreads;
 	long processingTime;
-	boolean scale, inPlace, cropBack;
+	Metrics metrics = null;
+	boolean scale, inPlace, cropBack, outputInSpectrumStorage = false;
 	int[] originalSize, originalOffset; 
 	float additionalNormalization;
 
@@ -64,6 +71,7 @@ public class InverseFourierTransform<T extends RealType<T>, S extends ComplexTyp
 		this.numDimensions = fftImage.getNumDimensions();
 		
 		this.rearrangement = rearrangement;
+		this.precision = fftImage.createType().getPreferredRealPrecision();
 		this.scale = scale;
 		this.inPlace = inPlace;
 		this.cropBack = cropBack;
@@ -82,11 +90,13 @@ public class InverseFourierTransform<T extends RealType<T>, S extends ComplexTyp
 	public InverseFourierTransform( final Image<S> fftImage, final FourierTransform<T,?> forwardTransform )
 	{
 		this ( fftImage, forwardTransform.getImageType(), forwardTransform.getRearrangement(), false, true, true, forwardTransform.getFFTInputSize(), forwardTransform.getFFTInputOffset() );
+		setPrecision( forwardTransform.getPrecision() );
 	}
 
 	public InverseFourierTransform( final Image<S> fftImage, final FourierTransform<?,?> forwardTransform, final T type )
 	{
 		this ( fftImage, type, forwardTransform.getRearrangement(), false, true, true, forwardTransform.getFFTInputSize(), forwardTransform.getFFTInputOffset() );
+		setPrecision( forwardTransform.getPrecision() );
 	}
 
 	public InverseFourierTransform( final Image<S> fftImage, final T type )
@@ -101,6 +111,26 @@ public class InverseFourierTransform<T extends RealType<T>, S extends ComplexTyp
 	public void setOriginalSize( final int[] originalSize ) { this.originalSize = originalSize; }
 	public void setOriginalOffset( final int[] originalOffset ) { this.originalOffset = originalOffset; }
 	public void setAdditionalNormalization( final float additionalNormalization ) { this.additionalNormalization = additionalNormalization; }
+	
+	/**
+	 * Sets the precision in which the FFT is computed, by default the preferred precision of the complex type 
+	 * or the precision of the {@link FourierTransform} this inverse transform was created from.
+	 * 
+	 * @param precision
+	 */
+	public void setPrecision( final PrecisionReal precision ) { this.precision = precision; }
+	
+	/**
+	 * Computes the inverse transform in the memory of the spectrum and returns the real image as a view on it 
+	 * (see {@link HalfSpectrumStorage}), so no memory is allocated. Only used for in-place transforms of 
+	 * {@link ComplexFloatType} spectra in an {@link mpicbg.imglib.container.array.Array} into a {@link FloatType} image 
+	 * with {@link PrecisionReal#Float}, otherwise the output is allocated as usual. The spectrum is invalid afterwards, the result keeps the whole 
+	 * storage of the spectrum in memory.
+	 * 
+	 * @param outputInSpectrumStorage
+	 */
+	public void setOutputInSpectrumStorage( final boolean outputInSpectrumStorage ) { this.outputInSpectrumStorage = outputInSpectrumStorage; }
+	public boolean getOutputInSpectrumStorage() { return outputInSpectrumStorage; }
 
 	public Rearrangement getRearrangement() { return rearrangement; }
 	public boolean getInPlaceTransform() { return inPlace; }
@@ -109,37 +139,80 @@ public class InverseFourierTransform<T extends RealType<T>, S extends ComplexTyp
 	public int[] getOriginalSize() { return originalSize.clone(); }
 	public int[] getOriginalOffset() { return originalOffset.clone(); }
 	public float getAdditionalNormalization() { return additionalNormalization; }
+	public PrecisionReal getPrecision() { return precision; }
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public boolean process() 
 	{		
 		final long startTime = System.currentTimeMillis();
-
-		// in Place computation will destroy the image
-		final Image<S> complex;		
+		metrics = new Metrics( "InverseFourierTransform", fftImage, getNumThreads() );
 		
-		if ( inPlace )
-			complex = fftImage;
-		else
-			complex = fftImage.clone();
+		try
+		{
+			// in Place computation will destroy the image
+			final Image<S> complex;		
+		
+			if ( inPlace )
+			{
+				complex = fftImage;
+			}
+			else
+			{
+				complex = fftImage.clone();
+				metrics.addTemporary( complex );
+			}
 			
-		if ( rearrangement == Rearrangement.REARRANGE_QUADRANTS )
-			FFTFunctions.rearrangeFFTQuadrants( complex, false, getNumThreads() );
-
-		// perform inverse FFT 					
-		image = FFTFunctions.computeInverseFFT( complex, type, getNumThreads(), scale, cropBack, originalSize, originalOffset, additionalNormalization );
+			if ( rearrangement == Rearrangement.REARRANGE_QUADRANTS )
+			{
+				metrics.start( "rearrange" );
+				FFTFunctions.rearrangeFFTQuadrants( complex, false, getNumThreads() );
+			}
+
+			// perform inverse FFT 					
+			metrics.start( "inverse fft" );
+		
+			final HalfSpectrumStorage storage;
 		
-		if ( !inPlace )
-			complex.close();
+			if ( outputInSpectrumStorage && inPlace && precision == PrecisionReal.Float && type.getClass() == FloatType.class && complex.createType().getClass() == ComplexFloatType.class )
+				storage = HalfSpectrumStorage.wrap( (Image<ComplexFloatType>)complex );
+			else
+				storage = null;
+		
+			if ( storage == null )
+			{
+				image = FFTFunctions.computeInverseFFT( complex, type, getNumThreads(), scale, cropBack, originalSize, originalOffset, additionalNormalization, precision );
+			}
+			else
+			{
+				storage.inverse( getNumThreads(), scale, additionalNormalization );
+			
+				if ( cropBack )
+					image = (Image<T>)storage.getRealImage( originalSize, originalOffset );
+				else
+					image = (Image<T>)storage.getRealImage( null, null );
+			}
+		
+			if ( !inPlace )
+				complex.close();
 
-		processingTime = System.currentTimeMillis() - startTime;
+			processingTime = System.currentTimeMillis() - startTime;
 
-        return true;
+	        return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
 	}
 	
 	@Override
 	public long getProcessingTime() { return processingTime; }
 	
+	@Override
+	public Metrics getMetrics() { return metrics; }
+	
 	@Override
 	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
 
@@ -164,6 +237,11 @@ public class InverseFourierTransform<T extends RealType<T>, S extends ComplexTyp
 			errorMessage = "Input image is null";
 			return false;
 		}
+		else if ( precision == null )
+		{
+			errorMessage = "Precision is null";
+			return false;
+		}
 		else
 		{
 			return true;
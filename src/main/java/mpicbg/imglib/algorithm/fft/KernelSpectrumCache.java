@@ -0,0 +1,198 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+
+/**
+ * Keeps the Fourier transforms of convolution kernels so that they are computed only once if 
+ * many images of the same size are convolved with the same kernel, e.g. all time points of a 
+ * series deconvolved with one PSF. One instance can be shared by any number of {@link FourierConvolution}
+ * instances and threads, see {@link FourierConvolution#setKernelSpectrumCache(KernelSpectrumCache)}.
+ * 
+ * A spectrum is identified by the kernel {@link Image} instance (not its content, so a kernel must 
+ * not be changed while it is cached), the size it was padded to, the container layout it was created with, 
+ * as the spectrum is multiplied with image spectra of the same container, and the {@link PrecisionReal} 
+ * of the transform. The layout is the class of the {@link ContainerFactory} and, for a {@link CellContainerFactory}, 
+ * the cell size, so instances convolving with different factory instances of the same layout share a spectrum. 
+ * The cache holds at most {@link #getMaxEntries()} spectra and removes the least recently used ones, 
+ * the spectra are never closed by the cache as they might still be used.
+ */
+public class KernelSpectrumCache 
+{
+	/**
+	 * One cached spectrum, the instance is locked while the spectrum is computed
+	 */
+	public class Entry
+	{
+		Image<ComplexFloatType> spectrum = null;
+		
+		public Image<ComplexFloatType> getSpectrum() { return spectrum; }
+		public void setSpectrum( final Image<ComplexFloatType> spectrum ) 
+		{
+			if ( spectrum != null && this.spectrum == null )
+				numComputed.incrementAndGet();
+
+			this.spectrum = spectrum; 
+		}
+	}
+	
+	protected static class Key
+	{
+		final Image<?> kernel;
+		final int[] paddedSize;
+		final Class<?> factoryClass;
+		final int[] cellSize;
+		final PrecisionReal precision;
+		
+		public Key( final Image<?> kernel, final int[] paddedSize, final ContainerFactory factory, final PrecisionReal precision )
+		{
+			this.kernel = kernel;
+			this.paddedSize = paddedSize.clone();
+			this.factoryClass = factory.getClass();
+			this.cellSize = CellContainerFactory.class.isInstance( factory ) ? ( (CellContainerFactory)factory ).getCellSize( paddedSize.length ) : null;
+			this.precision = precision;
+		}
+		
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof Key ) )
+				return false;
+			
+			final Key key = (Key)o;
+			
+			return key.kernel == kernel && key.factoryClass == factoryClass && key.precision == precision && 
+				Arrays.equals( key.paddedSize, paddedSize ) && Arrays.equals( key.cellSize, cellSize );
+		}
+		
+		@Override
+		public int hashCode() 
+		{ 
+			return ( ( ( System.identityHashCode( kernel ) * 31 + factoryClass.hashCode() ) * 31 + Arrays.hashCode( cellSize ) ) * 31 + Arrays.hashCode( paddedSize ) ) * 31 + precision.hashCode();
+		}
+	}
+	
+	final LinkedHashMap<Key, Entry> entries;
+	final AtomicInteger numComputed = new AtomicInteger( 0 );
+	int maxEntries;
+	
+	/**
+	 * @param maxEntries - the maximal number of spectra kept
+	 */
+	public KernelSpectrumCache( final int maxEntries )
+	{
+		this.maxEntries = maxEntries;
+		
+		this.entries = new LinkedHashMap<Key, Entry>( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry<Key, KernelSpectrumCache.Entry> eldest ) { return size() > KernelSpectrumCache.this.maxEntries; }
+		};
+	}
+	
+	public KernelSpectrumCache()
+	{
+		this( 16 );
+	}
+	
+	public synchronized void setMaxEntries( final int maxEntries ) { this.maxEntries = maxEntries; }
+	public synchronized int getMaxEntries() { return maxEntries; }
+	public synchronized int size() { return entries.size(); }
+	
+	/**
+	 * @return how many spectra were computed and stored using this cache
+	 */
+	public int getNumComputed() { return numComputed.get(); }
+	
+	/**
+	 * Returns the entry for a kernel spectrum, which is created empty if it is not in the cache. 
+	 * Synchronize on the entry while checking and computing the spectrum, then it is computed only once:
+	 * 
+	 * <pre>
+	 * synchronized ( entry )
+	 * {
+	 *     if ( entry.getSpectrum() == null )
+	 *         entry.setSpectrum( ... );
+	 * }
+	 * </pre>
+	 * 
+	 * @param kernel - the kernel
+	 * @param paddedSize - the (real) size the kernel is padded to
+	 * @param factory - the {@link ContainerFactory} the spectrum is created with, only its layout is part of the key
+	 * @return the entry
+	 */
+	public synchronized Entry getEntry( final Image<?> kernel, final int[] paddedSize, final ContainerFactory factory )
+	{
+		return getEntry( kernel, paddedSize, factory, PrecisionReal.Float );
+	}
+	
+	/**
+	 * The same as {@link #getEntry(Image, int[], ContainerFactory)} for a spectrum computed with the given precision
+	 * 
+	 * @param precision - the precision of the Fourier transform
+	 */
+	public synchronized Entry getEntry( final Image<?> kernel, final int[] paddedSize, final ContainerFactory factory, final PrecisionReal precision )
+	{
+		final Key key = new Key( kernel, paddedSize, factory, precision );
+		Entry entry = entries.get( key );
+		
+		if ( entry == null )
+		{
+			entry = new Entry();
+			entries.put( key, entry );
+		}
+		
+		return entry;
+	}
+	
+	/**
+	 * Removes all spectra of a kernel, e.g. after it was changed
+	 */
+	public synchronized void remove( final Image<?> kernel )
+	{
+		final Iterator<Key> i = entries.keySet().iterator();
+		
+		while ( i.hasNext() )
+			if ( i.next().kernel == kernel )
+				i.remove();
+	}
+	
+	public synchronized void clear() { entries.clear(); }
+}
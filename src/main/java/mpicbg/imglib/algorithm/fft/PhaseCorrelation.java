@@ -33,6 +33,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import mpicbg.imglib.algorithm.Algorithm;
 import mpicbg.imglib.algorithm.Benchmark;
 import mpicbg.imglib.algorithm.MultiThreaded;
+import mpicbg.imglib.algorithm.metrics.Measurable;
+import mpicbg.imglib.algorithm.metrics.Metrics;
 import mpicbg.imglib.algorithm.fft.FourierTransform.Rearrangement;
 import mpicbg.imglib.cursor.Cursor;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
@@ -51,7 +53,7 @@ import mpicbg.imglib.util.Util;
  *
  * @author Stephan Preibisch
  */
-public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> implements MultiThreaded, Algorithm, Benchmark
+public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> implements MultiThreaded, Algorithm, Benchmark, Measurable
 {
 	final int numDimensions;
 	boolean computeFFTinParalell = true;
@@ -63,11 +65,13 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 	int[] minOverlapPx;
 	float normalizationThreshold;
 	boolean verifyWithCrossCorrelation;
+	boolean subpixelAccuracy = false;
 	ArrayList<PhaseCorrelationPeak> phaseCorrelationPeaks;
 
 	String errorMessage = "";
 	int numThreads;
 	long processingTime;
+	Metrics metrics = null;
 
 	public PhaseCorrelation( final Image<T> image1, final Image<S> image2, final int numPeaks, final boolean verifyWithCrossCorrelation )
 	{
@@ -103,12 +107,19 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 			this.minOverlapPx[ d ] = minOverlapPx;
 	}
 	
+	/**
+	 * @param subpixelAccuracy - if true, a parabola is fitted through every peak of the phase correlation 
+	 * matrix and its neighbors in each dimension, see {@link PhaseCorrelationPeak#getSubpixelPosition()}
+	 */
+	public void setSubpixelAccuracy( final boolean subpixelAccuracy ) { this.subpixelAccuracy = subpixelAccuracy; }
+	
 	public boolean getComputeFFTinParalell() { return computeFFTinParalell; }
 	public int getInvestigateNumPeaks() { return numPeaks; }
 	public boolean getKeepPhaseCorrelationMatrix() { return keepPCM; }
 	public float getNormalizationThreshold() { return normalizationThreshold; }
 	public boolean getVerifyWithCrossCorrelation() { return verifyWithCrossCorrelation; }
 	public int[] getMinimalPixelOverlap() { return minOverlapPx.clone(); }
+	public boolean getSubpixelAccuracy() { return subpixelAccuracy; }
 	public Image<FloatType> getPhaseCorrelationMatrix() { return invPCM; }
 	public PhaseCorrelationPeak getShift() { return phaseCorrelationPeaks.get( phaseCorrelationPeaks.size() -1 ); }
 	public ArrayList<PhaseCorrelationPeak> getAllShifts() { return phaseCorrelationPeaks; }
@@ -116,120 +127,179 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 	@Override
 	public boolean process()
 	{		
-		// get the maximal dimensions of both images
-		final int[] maxDim = getMaxDim( image1, image2 );
-		
-		// compute fourier transforms
-		final FourierTransform<T, ComplexFloatType> fft1 = new FourierTransform<T, ComplexFloatType>( image1, new ComplexFloatType() );
-		final FourierTransform<S, ComplexFloatType> fft2 = new FourierTransform<S, ComplexFloatType>( image2, new ComplexFloatType() );
-		fft1.setRelativeImageExtension( 0.1f );
-		fft2.setRelativeImageExtension( 0.1f );
-		fft1.setRelativeFadeOutDistance( 0.1f );
-		fft2.setRelativeFadeOutDistance( 0.1f );		
-		fft1.setRearrangement( Rearrangement.UNCHANGED );
-		fft2.setRearrangement( Rearrangement.UNCHANGED );
-		
-		boolean sizeFound = false;
-		
-		// check if the size was enough ( there is a minimum extension )
-		do
+		final long startTime = System.currentTimeMillis();
+		metrics = new Metrics( "PhaseCorrelation", image1, getNumThreads() );
+		
+		try
 		{
-			sizeFound = true;
+			// get the maximal dimensions of both images
+			final int[] maxDim = getMaxDim( image1, image2 );
+		
+			// compute fourier transforms
+			final FourierTransform<T, ComplexFloatType> fft1 = new FourierTransform<T, ComplexFloatType>( image1, new ComplexFloatType() );
+			final FourierTransform<S, ComplexFloatType> fft2 = new FourierTransform<S, ComplexFloatType>( image2, new ComplexFloatType() );
+			setupFourierTransform( fft1 );
+			setupFourierTransform( fft2 );
+		
+			boolean sizeFound = false;
+		
+			// check if the size was enough ( there is a minimum extension )
+			do
+			{
+				sizeFound = true;
 
-			fft1.setExtendedOriginalImageSize( maxDim );
-			fft2.setExtendedOriginalImageSize( maxDim );
+				fft1.setExtendedOriginalImageSize( maxDim );
+				fft2.setExtendedOriginalImageSize( maxDim );
 			
-			for ( int d = 0; d < numDimensions; ++d )
-			{
-				final int diff = Math.abs( fft1.getExtendedSize()[ d ] - fft2.getExtendedSize()[ d ] );
-				
-				if ( diff > 0 )
+				for ( int d = 0; d < numDimensions; ++d )
 				{
-					maxDim[ d ] += diff;
-					sizeFound = false;
-				}
-			}			
-		}
-		while( !sizeFound );
+					final int diff = Math.abs( fft1.getExtendedSize()[ d ] - fft2.getExtendedSize()[ d ] );
 				
-		if ( !fft1.checkInput() )
-		{
-			errorMessage = "Fourier Transform of first image failed: " + fft1.getErrorMessage(); 
-			return false;
-		}
+					if ( diff > 0 )
+					{
+						maxDim[ d ] += diff;
+						sizeFound = false;
+					}
+				}			
+			}
+			while( !sizeFound );
+				
+			if ( !fft1.checkInput() )
+			{
+				errorMessage = "Fourier Transform of first image failed: " + fft1.getErrorMessage(); 
+				return false;
+			}
 			
-		if ( !fft2.checkInput() )
-		{
-			errorMessage = "Fourier Transform of second image failed: " + fft2.getErrorMessage(); 
-			return false;
-		}
+			if ( !fft2.checkInput() )
+			{
+				errorMessage = "Fourier Transform of second image failed: " + fft2.getErrorMessage(); 
+				return false;
+			}
 		
-		//
-		// compute the fft's
-		//
-		if ( !computeFFT( fft1, fft2 ) )
-		{
-			errorMessage = "Fourier Transform of failed: fft1=" + fft1.getErrorMessage() + " fft2=" + fft2.getErrorMessage();
-			return false;
-		}
+			//
+			// compute the fft's
+			//
+			metrics.start( "forward fft" );
+		
+			if ( !computeFFT( fft1, fft2 ) )
+			{
+				errorMessage = "Fourier Transform of failed: fft1=" + fft1.getErrorMessage() + " fft2=" + fft2.getErrorMessage();
+				return false;
+			}
 				
-		final Image<ComplexFloatType> fftImage1 = fft1.getResult();
-		final Image<ComplexFloatType> fftImage2 = fft2.getResult();
+			final Image<ComplexFloatType> fftImage1 = fft1.getResult();
+			final Image<ComplexFloatType> fftImage2 = fft2.getResult();
+		
+			metrics.addTemporary( fftImage1 );
+			metrics.addTemporary( fftImage2 );
 
-		//
-		// normalize and compute complex conjugate of fftImage2
-		//
-		normalizeAndConjugate( fftImage1, fftImage2 );
+			//
+			// normalize and compute complex conjugate of fftImage2
+			//
+			metrics.start( "multiply" );
 		
-		//
-		// multiply fftImage1 and fftImage2 which yields the phase correlation spectrum
-		//
-		multiplyInPlace( fftImage1, fftImage2 );
+			normalizeAndConjugate( fftImage1, fftImage2 );
 		
-		//
-		// invert fftImage1 which contains the phase correlation spectrum
-		//
-		final InverseFourierTransform<FloatType, ComplexFloatType> invFFT = new InverseFourierTransform<FloatType, ComplexFloatType>( fftImage1, fft1, new FloatType() );
-		invFFT.setInPlaceTransform( true );
-		invFFT.setCropBackToOriginalSize( false );
+			//
+			// multiply fftImage1 and fftImage2 which yields the phase correlation spectrum
+			//
+			multiplyInPlace( fftImage1, fftImage2 );
 		
-		if ( !invFFT.checkInput() || !invFFT.process() )
-		{
-			errorMessage = "Inverse Fourier Transform of failed: " + invFFT.getErrorMessage();
-			return false;			
-		}
+			//
+			// invert fftImage1 which contains the phase correlation spectrum
+			//
+			metrics.start( "inverse fft" );
+		
+			final InverseFourierTransform<FloatType, ComplexFloatType> invFFT = new InverseFourierTransform<FloatType, ComplexFloatType>( fftImage1, fft1, new FloatType() );
+			invFFT.setInPlaceTransform( true );
+			invFFT.setCropBackToOriginalSize( false );
+		
+			if ( !invFFT.checkInput() || !invFFT.process() )
+			{
+				errorMessage = "Inverse Fourier Transform of failed: " + invFFT.getErrorMessage();
+				return false;			
+			}
 
-		//
-		// close the fft images
-		//
-		fftImage1.close();
-		fftImage2.close();
+			//
+			// close the fft images
+			//
+			fftImage1.close();
+			fftImage2.close();
 		
-		invPCM = invFFT.getResult();
+			invPCM = invFFT.getResult();
 		
-		/*
-		invPCM.getDisplay().setMinMax();
-		invPCM.setName("invPCM");
-		ImageJFunctions.copyToImagePlus( invPCM ).show();
-		*/
+			/*
+			invPCM.getDisplay().setMinMax();
+			invPCM.setName("invPCM");
+			ImageJFunctions.copyToImagePlus( invPCM ).show();
+			*/
 		
-		//
-		// extract the peaks
-		//
-		phaseCorrelationPeaks = extractPhaseCorrelationPeaks( invPCM, numPeaks, fft1, fft2 );
+			//
+			// extract the peaks
+			//
+			metrics.start( "peak extraction" );
 		
-		if ( !verifyWithCrossCorrelation )
-			return true;
+			phaseCorrelationPeaks = extractPhaseCorrelationPeaks( invPCM, numPeaks, fft1, fft2 );
+		
+			if ( !verifyWithCrossCorrelation )
+			{
+				processingTime = System.currentTimeMillis() - startTime;
+			
+				return true;
+			}
 
-		verifyWithCrossCorrelation( phaseCorrelationPeaks, invPCM.getDimensions(), image1, image2 );
+			metrics.start( "peak verification" );
 		
-		if ( !keepPCM )
-			invPCM.close();
+			verifyWithCrossCorrelation( phaseCorrelationPeaks, invPCM.getDimensions(), image1, image2 );
 		
-		return true;
+			if ( !keepPCM )
+			{
+				metrics.addTemporary( invPCM );
+				invPCM.close();
+			}
+		
+			processingTime = System.currentTimeMillis() - startTime;
+		
+			return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
 	}
 	
 	protected void verifyWithCrossCorrelation( final ArrayList<PhaseCorrelationPeak> peakList, final int[] dimInvPCM, final Image<T> image1, final Image<S> image2 )
+	{
+		//
+		// copy both images into primitive buffers once for all shifts
+		//
+		final CrossCorrelationBuffer[] buffers = new CrossCorrelationBuffer[ 2 ];
+		
+		final AtomicInteger ai = new AtomicInteger(0);
+		Thread[] threads = SimpleMultiThreading.newThreads( Math.min( 2, getNumThreads() ) );
+			
+		for (int ithread = 0; ithread < threads.length; ++ithread)
+			threads[ithread] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for ( int i = ai.getAndIncrement(); i < 2; i = ai.getAndIncrement() )
+					{
+						if ( i == 0 )
+							buffers[ 0 ] = new CrossCorrelationBuffer( image1 );
+						else
+							buffers[ 1 ] = new CrossCorrelationBuffer( image2 );
+					}
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+		
+		verifyWithCrossCorrelation( peakList, dimInvPCM, buffers[ 0 ], buffers[ 1 ] );
+	}
+	
+	protected void verifyWithCrossCorrelation( final ArrayList<PhaseCorrelationPeak> peakList, final int[] dimInvPCM, final CrossCorrelationBuffer image1, final CrossCorrelationBuffer image2 )
 	{
 		final boolean[][] coordinates = Util.getRecursiveCoordinates( numDimensions );
 		
@@ -259,38 +329,46 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 				
 				final PhaseCorrelationPeak newPeak = new PhaseCorrelationPeak( peakPosition, peak.getPhaseCorrelationPeak() );
 				newPeak.setOriginalInvPCMPosition( peak.getOriginalInvPCMPosition() );
+				
+				// the subpixel position moves by the same multiple of the size of the phase correlation matrix
+				if ( peak.getSubpixelPosition() != null )
+				{
+					final int[] position = peak.getPosition();
+					final float[] subpixelPosition = peak.getSubpixelPosition();
+					
+					for ( int d = 0; d < numDimensions; ++d )
+						subpixelPosition[ d ] += peakPosition[ d ] - position[ d ];
+					
+					newPeak.setSubpixelPosition( subpixelPosition );
+				}
+				
 				newPeakList.add( newPeak );
 			}			
 		}
 		
-		
 		//
-		// test them multithreaded
+		// test them multithreaded, every thread takes the next untested peak
 		//
-		final AtomicInteger ai = new AtomicInteger(0);
+		final AtomicInteger nextPeak = new AtomicInteger(0);
 		Thread[] threads = SimpleMultiThreading.newThreads( getNumThreads() );
-		final int numThreads = threads.length;
 			
 		for (int ithread = 0; ithread < threads.length; ++ithread)
 			threads[ithread] = new Thread(new Runnable()
 			{
 				public void run()
 				{
-					final int myNumber = ai.getAndIncrement();
+					final long[] numPixels = new long[ 1 ];
 					
-					for ( int i = 0; i < newPeakList.size(); ++i )
-						if ( i % numThreads == myNumber )
-						{
-							final PhaseCorrelationPeak peak = newPeakList.get( i );
-							final long[] numPixels = new long[ 1 ];
-							
-							peak.setCrossCorrelationPeak( (float)testCrossCorrelation( peak.getPosition(), image1, image2, minOverlapPx, numPixels ) );
-							peak.setNumPixels( numPixels[ 0 ] );
-							
-							// sort by cross correlation peak
-							peak.setSortPhaseCorrelation( false );
-						}
-											
+					for ( int i = nextPeak.getAndIncrement(); i < newPeakList.size(); i = nextPeak.getAndIncrement() )
+					{
+						final PhaseCorrelationPeak peak = newPeakList.get( i );
+						
+						peak.setCrossCorrelationPeak( (float)testCrossCorrelation( peak.getPosition(), image1, image2, minOverlapPx, numPixels ) );
+						peak.setNumPixels( numPixels[ 0 ] );
+						
+						// sort by cross correlation peak
+						peak.setSortPhaseCorrelation( false );
+					}
 				}
 			});
 		
@@ -325,84 +403,18 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 	public static <T extends RealType<T>, S extends RealType<S>> double testCrossCorrelation( final int[] shift, final Image<T> image1, final Image<S> image2, final int[] minOverlapPx, final long[] numPixels )
 	{
 		final int numDimensions = image1.getNumDimensions();
-		double correlationCoefficient = 0;
 		
 		final int[] overlapSize = new int[ numDimensions ];
 		final int[] offsetImage1 = new int[ numDimensions ];
 		final int[] offsetImage2 = new int[ numDimensions ];
 		
-		long numPx = 1;
-		
-		for ( int d = 0; d < numDimensions; ++d )
-		{
-			if ( shift[ d ] >= 0 )
-			{
-				// two possiblities
-				//
-				//               shift=start              end
-				//                 |					   |
-				// A: Image 1 ------------------------------
-				//    Image 2      ----------------------------------
-				//
-				//               shift=start	    end
-				//                 |			     |
-				// B: Image 1 ------------------------------
-				//    Image 2      -------------------
-				
-				// they are not overlapping ( this might happen due to fft zeropadding and extension
-				if ( shift[ d ] >= image1.getDimension( d ) )
-				{
-					if ( numPixels != null && numPixels.length > 0 )
-						numPixels[ 0 ] = 0;
-					
-					return 0;
-				}
-				
-				offsetImage1[ d ] = shift[ d ];
-				offsetImage2[ d ] = 0;
-				overlapSize[ d ] = Math.min( image1.getDimension( d ) - shift[ d ],  image2.getDimension( d ) );
-			}
-			else
-			{
-				// two possiblities
-				//
-				//          shift start                	  end
-				//            |	   |			`		   |
-				// A: Image 1      ------------------------------
-				//    Image 2 ------------------------------
-				//
-				//          shift start	     end
-				//            |	   |          |
-				// B: Image 1      ------------
-				//    Image 2 -------------------
-				
-				// they are not overlapping ( this might happen due to fft zeropadding and extension
-				if ( shift[ d ] >= image2.getDimension( d ) )
-				{
-					if ( numPixels != null && numPixels.length > 0 )
-						numPixels[ 0 ] = 0;
-					
-					return 0;
-				}
-
-				offsetImage1[ d ] = 0;
-				offsetImage2[ d ] = -shift[ d ];
-				overlapSize[ d ] = Math.min( image2.getDimension( d ) + shift[ d ],  image1.getDimension( d ) );				
-			}
-			
-			numPx *= overlapSize[ d ];
-			
-			if ( overlapSize[ d ] < minOverlapPx[ d ] )
-			{
-				if ( numPixels != null && numPixels.length > 0 )
-					numPixels[ 0 ] = 0;
-				
-				return 0;
-			}
-		}
+		final long numPx = getOverlap( shift, image1.getDimensions(), image2.getDimensions(), minOverlapPx, offsetImage1, offsetImage2, overlapSize );
 
 		if ( numPixels != null && numPixels.length > 0 )
 			numPixels[ 0 ] = numPx;
+		
+		if ( numPx == 0 )
+			return 0;
 
 		final LocalizableByDimCursor<T> cursor1 = image1.createLocalizableByDimCursor();
 		final LocalizableByDimCursor<S> cursor2 = image2.createLocalizableByDimCursor();
@@ -453,6 +465,131 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 			var2 += dist2 * dist2;
 		}		
 		
+		roiCursor1.close();
+		roiCursor2.close();
+		cursor1.close();
+		cursor2.close();
+		
+		return getCorrelationCoefficient( avg1, avg2, var1, var2, coVar, numPx );
+	}
+
+	/**
+	 * Computes the correlation coefficient of the overlapping area of two images for a certain shift. It is 
+	 * the same computation as for two {@link Image}s, only the pixels are read from the float[] of the 
+	 * {@link CrossCorrelationBuffer}s instead of with cursors. Use this method if the same images are tested 
+	 * for several shifts.
+	 * 
+	 * @param shift - the shift of image2 relative to image1
+	 * @param minOverlapPx - the minimal overlap in every dimension, otherwise the correlation is 0
+	 * @param numPixels - if not null, its first entry is set to the number of overlapping pixels
+	 * @return the correlation coefficient
+	 */
+	public static double testCrossCorrelation( final int[] shift, final CrossCorrelationBuffer image1, final CrossCorrelationBuffer image2, final int[] minOverlapPx, final long[] numPixels )
+	{
+		final int numDimensions = image1.getNumDimensions();
+		
+		final int[] overlapSize = new int[ numDimensions ];
+		final int[] offsetImage1 = new int[ numDimensions ];
+		final int[] offsetImage2 = new int[ numDimensions ];
+		
+		final long numPx = getOverlap( shift, image1.getDimensions(), image2.getDimensions(), minOverlapPx, offsetImage1, offsetImage2, overlapSize );
+
+		if ( numPixels != null && numPixels.length > 0 )
+			numPixels[ 0 ] = numPx;
+		
+		if ( numPx == 0 )
+			return 0;
+
+		final float[] data1 = image1.getData();
+		final float[] data2 = image2.getData();
+		
+		final int length = overlapSize[ 0 ];
+		final long numLines = numPx / length;
+		final int[] position1 = new int[ numDimensions ];
+		final int[] position2 = new int[ numDimensions ];
+		
+		//
+		// compute average, line by line in the same order as the cursors
+		//
+		double avg1 = 0;
+		double avg2 = 0;
+
+		System.arraycopy( offsetImage1, 0, position1, 0, numDimensions );
+		System.arraycopy( offsetImage2, 0, position2, 0, numDimensions );
+		
+		for ( long line = 0; line < numLines; ++line )
+		{
+			final int i1 = image1.getIndex( position1 );
+			final int i2 = image2.getIndex( position2 );
+			
+			for ( int x = 0; x < length; ++x )
+			{
+				avg1 += data1[ i1 + x ];
+				avg2 += data2[ i2 + x ];
+			}
+			
+			nextLine( position1, position2, offsetImage1, offsetImage2, overlapSize );
+		}
+
+		avg1 /= (double) numPx;
+		avg2 /= (double) numPx;
+		
+		//
+		// compute cross correlation
+		//
+		double var1 = 0, var2 = 0;
+		double coVar = 0;
+
+		System.arraycopy( offsetImage1, 0, position1, 0, numDimensions );
+		System.arraycopy( offsetImage2, 0, position2, 0, numDimensions );
+		
+		for ( long line = 0; line < numLines; ++line )
+		{
+			final int i1 = image1.getIndex( position1 );
+			final int i2 = image2.getIndex( position2 );
+			
+			for ( int x = 0; x < length; ++x )
+			{
+				final double dist1 = data1[ i1 + x ] - avg1;
+				final double dist2 = data2[ i2 + x ] - avg2;
+
+				coVar += dist1 * dist2;
+				var1 += dist1 * dist1;
+				var2 += dist2 * dist2;
+			}
+			
+			nextLine( position1, position2, offsetImage1, offsetImage2, overlapSize );
+		}
+		
+		return getCorrelationCoefficient( avg1, avg2, var1, var2, coVar, numPx );
+	}
+	
+	/**
+	 * Moves both positions to the start of the next line (dimension 0) of the overlap
+	 */
+	protected static void nextLine( final int[] position1, final int[] position2, final int[] offsetImage1, final int[] offsetImage2, final int[] overlapSize )
+	{
+		for ( int d = 1; d < position1.length; ++d )
+		{
+			++position1[ d ];
+			++position2[ d ];
+			
+			if ( position1[ d ] < offsetImage1[ d ] + overlapSize[ d ] )
+				break;
+			
+			position1[ d ] = offsetImage1[ d ];
+			position2[ d ] = offsetImage2[ d ];
+		}
+	}
+	
+	/**
+	 * @param var1 - the sum of the squared distances of image1 to avg1 over the overlap
+	 * @param var2 - the sum of the squared distances of image2 to avg2 over the overlap
+	 * @param coVar - the sum of the products of both distances over the overlap
+	 * @return the correlation coefficient, 1 or 0 if one of the overlaps is constant
+	 */
+	protected static double getCorrelationCoefficient( final double avg1, final double avg2, double var1, double var2, double coVar, final long numPx )
+	{
 		var1 /= (double) numPx;
 		var2 /= (double) numPx;
 		coVar /= (double) numPx;
@@ -470,18 +607,91 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 		}
 
 		// compute correlation coeffienct
-		correlationCoefficient = coVar / (stDev1 * stDev2);
+		return coVar / (stDev1 * stDev2);
+	}
+	
+	/**
+	 * Computes the overlapping area of two images for a certain shift
+	 * 
+	 * @param shift - the shift of image2 relative to image1
+	 * @param dim1 - the dimensions of image1
+	 * @param dim2 - the dimensions of image2
+	 * @param minOverlapPx - the minimal overlap in every dimension
+	 * @param offsetImage1 - is filled with the start of the overlap in image1
+	 * @param offsetImage2 - is filled with the start of the overlap in image2
+	 * @param overlapSize - is filled with the size of the overlap
+	 * @return the number of overlapping pixels, 0 if the images overlap less than minOverlapPx in any dimension
+	 */
+	protected static long getOverlap( final int[] shift, final int[] dim1, final int[] dim2, final int[] minOverlapPx, final int[] offsetImage1, final int[] offsetImage2, final int[] overlapSize )
+	{
+		final int numDimensions = dim1.length;
 		
-		roiCursor1.close();
-		roiCursor2.close();
-		cursor1.close();
-		cursor2.close();
+		long numPx = 1;
 		
-		return correlationCoefficient;
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			if ( shift[ d ] >= 0 )
+			{
+				// two possiblities
+				//
+				//               shift=start              end
+				//                 |					   |
+				// A: Image 1 ------------------------------
+				//    Image 2      ----------------------------------
+				//
+				//               shift=start	    end
+				//                 |			     |
+				// B: Image 1 ------------------------------
+				//    Image 2      -------------------
+				
+				// they are not overlapping ( this might happen due to fft zeropadding and extension
+				if ( shift[ d ] >= dim1[ d ] )
+					return 0;
+				
+				offsetImage1[ d ] = shift[ d ];
+				offsetImage2[ d ] = 0;
+				overlapSize[ d ] = Math.min( dim1[ d ] - shift[ d ],  dim2[ d ] );
+			}
+			else
+			{
+				// two possiblities
+				//
+				//          shift start                	  end
+				//            |	   |			`		   |
+				// A: Image 1      ------------------------------
+				//    Image 2 ------------------------------
+				//
+				//          shift start	     end
+				//            |	   |          |
+				// B: Image 1      ------------
+				//    Image 2 -------------------
+				
+				// they are not overlapping ( this might happen due to fft zeropadding and extension
+				if ( shift[ d ] >= dim2[ d ] )
+					return 0;
+
+				offsetImage1[ d ] = 0;
+				offsetImage2[ d ] = -shift[ d ];
+				overlapSize[ d ] = Math.min( dim2[ d ] + shift[ d ],  dim1[ d ] );				
+			}
+			
+			numPx *= overlapSize[ d ];
+			
+			if ( overlapSize[ d ] < minOverlapPx[ d ] )
+				return 0;
+		}
+
+		return numPx;
 	}
 	
 	protected ArrayList<PhaseCorrelationPeak> extractPhaseCorrelationPeaks( final Image<FloatType> invPCM, final int numPeaks,
 	                                                                        final FourierTransform<?,?> fft1, final FourierTransform<?,?> fft2 )
+	{
+		return extractPhaseCorrelationPeaks( invPCM, numPeaks, fft1.getOriginalOffset(), fft2.getOriginalOffset() );
+	}
+	
+	protected ArrayList<PhaseCorrelationPeak> extractPhaseCorrelationPeaks( final Image<FloatType> invPCM, final int numPeaks,
+	                                                                        final int[] originalOffset1, final int[] originalOffset2 )
 	{
 		final ArrayList<PhaseCorrelationPeak> peakList = new ArrayList<PhaseCorrelationPeak>();
 		
@@ -491,9 +701,6 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 		final LocalizableByDimCursor<FloatType> cursor = invPCM.createLocalizableByDimCursor( new OutOfBoundsStrategyPeriodicFactory<FloatType>() );
 		final LocalNeighborhoodCursor<FloatType> localCursor = cursor.createLocalNeighborhoodCursor();
 				
-		final int[] originalOffset1 = fft1.getOriginalOffset();
-		final int[] originalOffset2 = fft2.getOriginalOffset();
-
 		final int[] offset = new int[ numDimensions ];
 		
 		for ( int d = 0; d < numDimensions; ++d )
@@ -564,10 +771,65 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 		
 		// sort list 
 		Collections.sort( peakList );
+		
+		if ( subpixelAccuracy )
+			computeSubpixelPositions( invPCM, peakList );
 						
 		return peakList;
 	}
 	
+	/**
+	 * Fits a parabola through the value of each peak and its two neighbors in every dimension of the phase 
+	 * correlation matrix (periodic at the borders) and sets the position of its maximum as subpixel position.
+	 */
+	protected void computeSubpixelPositions( final Image<FloatType> invPCM, final ArrayList<PhaseCorrelationPeak> peakList )
+	{
+		final LocalizableByDimCursor<FloatType> cursor = invPCM.createLocalizableByDimCursor( new OutOfBoundsStrategyPeriodicFactory<FloatType>() );
+		
+		for ( final PhaseCorrelationPeak peak : peakList )
+		{
+			// less local maxima than peaks
+			if ( peak.originalInvPCMPosition == null )
+				continue;
+			
+			final int[] invPCMPosition = peak.getOriginalInvPCMPosition();
+			final float[] subpixelPosition = new float[ numDimensions ];
+			
+			cursor.setPosition( invPCMPosition );
+			final double value = cursor.getType().get();
+			
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				cursor.setPosition( invPCMPosition );
+				cursor.bck( d );
+				final double valueBck = cursor.getType().get();
+				
+				cursor.move( 2, d );
+				final double valueFwd = cursor.getType().get();
+				
+				// the second derivative is negative at a maximum, then the offset is within [ -0.5, 0.5 ]
+				final double secondDerivative = valueBck - 2 * value + valueFwd;
+				final double offset = secondDerivative < 0 ? ( valueBck - valueFwd ) / ( 2 * secondDerivative ) : 0; 
+				
+				subpixelPosition[ d ] = (float)( peak.position[ d ] + offset );
+			}
+			
+			peak.setSubpixelPosition( subpixelPosition );
+		}
+		
+		cursor.close();
+	}
+	
+	/**
+	 * Sets the extension, fading and rearrangement used for the Fourier transforms of the images.
+	 */
+	protected static void setupFourierTransform( final FourierTransform<?,?> fft )
+	{
+		fft.setRelativeImageExtension( 0.1f );
+		fft.setRelativeFadeOutDistance( 0.1f );
+		fft.setRearrangement( Rearrangement.UNCHANGED );
+	}
+	
 	protected static int[] getMaxDim( final Image<?> image1, final Image<?> image2 )
 	{
 		final int[] maxDim = new int[ image1.getNumDimensions() ];
@@ -626,7 +888,7 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 		SimpleMultiThreading.startAndJoin( threads );		
 	}
 	
-	private static final void normalizeComplexImage( final Image<ComplexFloatType> fftImage, final float normalizationThreshold )
+	static final void normalizeComplexImage( final Image<ComplexFloatType> fftImage, final float normalizationThreshold )
 	{
 		final Cursor<ComplexFloatType> cursor = fftImage.createCursor();
 
@@ -722,6 +984,9 @@ public class PhaseCorrelation<T extends RealType<T>, S extends RealType<S>> impl
 	@Override
 	public long getProcessingTime() { return processingTime; }
 	
+	@Override
+	public Metrics getMetrics() { return metrics; }
+	
 	@Override
 	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
 
@@ -0,0 +1,471 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.algorithm.Algorithm;
+import mpicbg.imglib.algorithm.Benchmark;
+import mpicbg.imglib.algorithm.MultiThreaded;
+import mpicbg.imglib.algorithm.fft.FourierTransform.Rearrangement;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+/**
+ * Computes the {@link PhaseCorrelation} of many pairs of tiles, e.g. all overlapping tiles of a mosaic. 
+ * The Fourier transform of every tile is computed only once instead of once per pair, with the same
+ * extension and fading as {@link PhaseCorrelation} on a size common to all tiles. The normalized 
+ * spectra are kept in a cache that holds at most {@link #getMaxCachedSpectra()} tiles, if a 
+ * tile was removed from the cache it is transformed again when it is needed. The pairs are processed 
+ * in parallel, one pair per thread, in the order given, so the cache works best if pairs sharing a 
+ * tile are close to each other in the list (e.g. sorted by the first tile).
+ * 
+ * For tiles that all have the same size the results are identical to running {@link PhaseCorrelation} 
+ * on each pair.
+ *
+ * @param <T> the type of the tiles
+ */
+public class PhaseCorrelationBatch<T extends RealType<T>> implements MultiThreaded, Algorithm, Benchmark
+{
+	/**
+	 * The normalized spectrum of a tile and the offset of the tile inside the transformed image
+	 */
+	protected static class Spectrum
+	{
+		final Image<ComplexFloatType> fftImage;
+		final int[] originalOffset;
+		
+		public Spectrum( final Image<ComplexFloatType> fftImage, final int[] originalOffset )
+		{
+			this.fftImage = fftImage;
+			this.originalOffset = originalOffset;
+		}
+	}
+	
+	final List<Image<T>> tiles;
+	final int[][] pairs;
+	final int numDimensions;
+	
+	int numPeaks;
+	int[] minOverlapPx;
+	float normalizationThreshold;
+	boolean verifyWithCrossCorrelation;
+	boolean subpixelAccuracy = false;
+	int maxCachedSpectra;
+	
+	int[] fftSize;
+	Map<Integer, Spectrum> spectra;
+	Object[] locks;
+	AtomicInteger numComputedFFTs;
+	ArrayList<ArrayList<PhaseCorrelationPeak>> phaseCorrelationPeaks;
+
+	String errorMessage = "";
+	int numThreads;
+	long processingTime;
+	
+	/**
+	 * @param tiles - the tiles, all of the same dimensionality
+	 * @param pairs - the pairs of tiles to correlate, each given as { index of tile 1, index of tile 2 }
+	 * @param numPeaks - how many peaks of each phase correlation matrix are investigated
+	 * @param verifyWithCrossCorrelation - verify the peaks with the cross correlation of the overlapping areas
+	 */
+	public PhaseCorrelationBatch( final List<Image<T>> tiles, final int[][] pairs, final int numPeaks, final boolean verifyWithCrossCorrelation )
+	{
+		this.tiles = tiles;
+		this.pairs = pairs;
+		this.numPeaks = numPeaks;
+		this.verifyWithCrossCorrelation = verifyWithCrossCorrelation;
+		
+		this.numDimensions = tiles.size() > 0 ? tiles.get( 0 ).getNumDimensions() : 0;
+		this.normalizationThreshold = 1E-5f;
+		this.maxCachedSpectra = 64;
+		
+		this.minOverlapPx = new int[ numDimensions ];
+		setMinimalPixelOverlap( 3 );
+		
+		setNumThreads();
+		processingTime = -1;
+	}
+	
+	public PhaseCorrelationBatch( final List<Image<T>> tiles, final int[][] pairs )
+	{
+		this( tiles, pairs, 5, true );
+	}
+	
+	public void setInvestigateNumPeaks( final int numPeaks ) { this.numPeaks = numPeaks; }
+	public void setNormalizationThreshold( final float normalizationThreshold ) { this.normalizationThreshold = normalizationThreshold; }
+	public void setVerifyWithCrossCorrelation( final boolean verifyWithCrossCorrelation ) { this.verifyWithCrossCorrelation = verifyWithCrossCorrelation; }
+	public void setMinimalPixelOverlap( final int[] minOverlapPx ) { this.minOverlapPx = minOverlapPx.clone(); } 
+	public void setMinimalPixelOverlap( final int minOverlapPx ) 
+	{ 
+		for ( int d = 0; d < numDimensions; ++d )
+			this.minOverlapPx[ d ] = minOverlapPx;
+	}
+	
+	/**
+	 * @param subpixelAccuracy - refine the peaks to subpixel accuracy, like {@link PhaseCorrelation#setSubpixelAccuracy(boolean)}
+	 */
+	public void setSubpixelAccuracy( final boolean subpixelAccuracy ) { this.subpixelAccuracy = subpixelAccuracy; }
+	
+	/**
+	 * @param maxCachedSpectra - the maximal number of tile spectra kept in memory at the same time, 
+	 * at least the number of threads is kept
+	 */
+	public void setMaxCachedSpectra( final int maxCachedSpectra ) { this.maxCachedSpectra = maxCachedSpectra; }
+	
+	public int getInvestigateNumPeaks() { return numPeaks; }
+	public float getNormalizationThreshold() { return normalizationThreshold; }
+	public boolean getVerifyWithCrossCorrelation() { return verifyWithCrossCorrelation; }
+	public int[] getMinimalPixelOverlap() { return minOverlapPx.clone(); }
+	public boolean getSubpixelAccuracy() { return subpixelAccuracy; }
+	public int getMaxCachedSpectra() { return maxCachedSpectra; }
+	
+	/**
+	 * @return the size of the Fourier transforms (before zero-padding) that is used for all tiles
+	 */
+	public int[] getFFTSize() { return fftSize.clone(); }
+	
+	/**
+	 * @return how many Fourier transforms of tiles were computed by the last call of {@link #process()}
+	 */
+	public int getNumComputedFFTs() { return numComputedFFTs.get(); }
+	
+	/**
+	 * @param pair - the index of the pair
+	 * @return the best shift of the pair, like {@link PhaseCorrelation#getShift()}
+	 */
+	public PhaseCorrelationPeak getShift( final int pair ) { return phaseCorrelationPeaks.get( pair ).get( phaseCorrelationPeaks.get( pair ).size() - 1 ); }
+	
+	/**
+	 * @param pair - the index of the pair
+	 * @return all investigated shifts of the pair, like {@link PhaseCorrelation#getAllShifts()}
+	 */
+	public ArrayList<PhaseCorrelationPeak> getAllShifts( final int pair ) { return phaseCorrelationPeaks.get( pair ); }
+	
+	@Override
+	public boolean process()
+	{
+		final long startTime = System.currentTimeMillis();
+		
+		fftSize = getCommonFFTSize();
+		
+		if ( fftSize == null )
+			return false;
+		
+		final int cacheSize = Math.max( maxCachedSpectra, getNumThreads() * 2 );
+		
+		spectra = new LinkedHashMap<Integer, Spectrum>( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry<Integer, Spectrum> eldest ) { return size() > cacheSize; }
+		};
+		
+		locks = new Object[ tiles.size() ];
+		for ( int i = 0; i < locks.length; ++i )
+			locks[ i ] = new Object();
+		
+		numComputedFFTs = new AtomicInteger( 0 );
+		
+		phaseCorrelationPeaks = new ArrayList<ArrayList<PhaseCorrelationPeak>>( pairs.length );
+		for ( int i = 0; i < pairs.length; ++i )
+			phaseCorrelationPeaks.add( null );
+		
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final AtomicInteger nextPair = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( getNumThreads() );
+		final String[] errors = new String[ threads.length ];
+		
+		for (int ithread = 0; ithread < threads.length; ++ithread)
+			threads[ithread] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					final int myNumber = ai.getAndIncrement();
+					
+					for ( int i = nextPair.getAndIncrement(); i < pairs.length; i = nextPair.getAndIncrement() )
+					{
+						try
+						{
+							phaseCorrelationPeaks.set( i, computePair( pairs[ i ][ 0 ], pairs[ i ][ 1 ] ) );
+						}
+						catch ( final RuntimeException e )
+						{
+							errors[ myNumber ] = "Pair " + i + " ( " + pairs[ i ][ 0 ] + ", " + pairs[ i ][ 1 ] + " ) failed: " + e.getMessage();
+							return;
+						}
+					}
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+		
+		// the spectra are only needed during processing
+		spectra = null;
+		
+		for ( final String error : errors )
+			if ( error != null )
+			{
+				errorMessage = error;
+				return false;
+			}
+		
+		processingTime = System.currentTimeMillis() - startTime;
+		
+		return true;
+	}
+	
+	/**
+	 * Computes the phase correlation of two tiles single-threaded using their cached spectra.
+	 */
+	protected ArrayList<PhaseCorrelationPeak> computePair( final int tile1, final int tile2 )
+	{
+		final Spectrum spectrum1 = getSpectrum( tile1 );
+		final Spectrum spectrum2 = getSpectrum( tile2 );
+		
+		//
+		// multiply the first spectrum with the complex conjugate of the second one
+		//
+		final Image<ComplexFloatType> pcm = spectrum1.fftImage.clone();
+		
+		final Cursor<ComplexFloatType> cursor1 = pcm.createCursor();
+		final Cursor<ComplexFloatType> cursor2 = spectrum2.fftImage.createCursor();
+		final ComplexFloatType conjugate = new ComplexFloatType();
+		
+		while ( cursor1.hasNext() )
+		{
+			cursor1.fwd();
+			cursor2.fwd();
+			
+			conjugate.set( cursor2.getType() );
+			conjugate.complexConjugate();
+			
+			cursor1.getType().mul( conjugate );
+		}
+		
+		cursor1.close();
+		cursor2.close();
+		
+		//
+		// invert the phase correlation spectrum
+		//
+		final InverseFourierTransform<FloatType, ComplexFloatType> invFFT = 
+			new InverseFourierTransform<FloatType, ComplexFloatType>( pcm, new FloatType(), Rearrangement.UNCHANGED, true, true, false, null, null );
+		invFFT.setNumThreads( 1 );
+		
+		if ( !invFFT.checkInput() || !invFFT.process() )
+			throw new RuntimeException( "Inverse Fourier Transform failed: " + invFFT.getErrorMessage() );
+		
+		pcm.close();
+		
+		final Image<FloatType> invPCM = invFFT.getResult();
+		
+		//
+		// extract and verify the peaks
+		//
+		final PhaseCorrelation<T, T> phaseCorrelation = new PhaseCorrelation<T, T>( tiles.get( tile1 ), tiles.get( tile2 ), numPeaks, verifyWithCrossCorrelation );
+		phaseCorrelation.setNumThreads( 1 );
+		phaseCorrelation.setMinimalPixelOverlap( minOverlapPx );
+		phaseCorrelation.setSubpixelAccuracy( subpixelAccuracy );
+		
+		final ArrayList<PhaseCorrelationPeak> peaks = phaseCorrelation.extractPhaseCorrelationPeaks( invPCM, numPeaks, spectrum1.originalOffset, spectrum2.originalOffset );
+		
+		if ( verifyWithCrossCorrelation )
+			phaseCorrelation.verifyWithCrossCorrelation( peaks, invPCM.getDimensions(), tiles.get( tile1 ), tiles.get( tile2 ) );
+		
+		invPCM.close();
+		
+		return peaks;
+	}
+	
+	/**
+	 * Returns the normalized spectrum of a tile from the cache or computes it single-threaded.
+	 * Every tile is computed by only one thread at a time.
+	 */
+	protected Spectrum getSpectrum( final int tile )
+	{
+		synchronized ( locks[ tile ] )
+		{
+			Spectrum spectrum;
+			
+			synchronized ( spectra )
+			{
+				spectrum = spectra.get( tile );
+			}
+			
+			if ( spectrum != null )
+				return spectrum;
+			
+			final FourierTransform<T, ComplexFloatType> fft = new FourierTransform<T, ComplexFloatType>( tiles.get( tile ), new ComplexFloatType() );
+			PhaseCorrelation.setupFourierTransform( fft );
+			fft.setExtendedOriginalImageSize( fftSize );
+			fft.setNumThreads( 1 );
+			
+			if ( !fft.checkInput() || !fft.process() )
+				throw new RuntimeException( "Fourier Transform of tile " + tile + " failed: " + fft.getErrorMessage() );
+			
+			final Image<ComplexFloatType> fftImage = fft.getResult();
+			PhaseCorrelation.normalizeComplexImage( fftImage, normalizationThreshold );
+			
+			spectrum = new Spectrum( fftImage, fft.getOriginalOffset() );
+			numComputedFFTs.incrementAndGet();
+			
+			synchronized ( spectra )
+			{
+				spectra.put( tile, spectrum );
+			}
+			
+			return spectrum;
+		}
+	}
+	
+	/**
+	 * Computes the size all tiles are extended to, so that all Fourier transforms have the same size.
+	 * It is the size {@link PhaseCorrelation} would use for two tiles of the maximal size.
+	 */
+	protected int[] getCommonFFTSize()
+	{
+		final int[] maxDim = tiles.get( 0 ).getDimensions();
+		
+		for ( final Image<T> tile : tiles )
+			for ( int d = 0; d < numDimensions; ++d )
+				maxDim[ d ] = Math.max( maxDim[ d ], tile.getDimension( d ) );
+		
+		final ArrayList<FourierTransform<T, ComplexFloatType>> ffts = new ArrayList<FourierTransform<T, ComplexFloatType>>();
+		
+		for ( final Image<T> tile : tiles )
+		{
+			final FourierTransform<T, ComplexFloatType> fft = new FourierTransform<T, ComplexFloatType>( tile, new ComplexFloatType() );
+			PhaseCorrelation.setupFourierTransform( fft );
+			ffts.add( fft );
+		}
+		
+		boolean sizeFound = false;
+		
+		// check if the size was enough ( there is a minimum extension )
+		do
+		{
+			sizeFound = true;
+			
+			final int[] minSize = new int[ numDimensions ];
+			final int[] maxSize = new int[ numDimensions ];
+			
+			for ( int d = 0; d < numDimensions; ++d )
+				minSize[ d ] = Integer.MAX_VALUE;
+			
+			for ( final FourierTransform<T, ComplexFloatType> fft : ffts )
+			{
+				fft.setExtendedOriginalImageSize( maxDim );
+				
+				final int[] extendedSize = fft.getExtendedSize();
+				
+				for ( int d = 0; d < numDimensions; ++d )
+				{
+					minSize[ d ] = Math.min( minSize[ d ], extendedSize[ d ] );
+					maxSize[ d ] = Math.max( maxSize[ d ], extendedSize[ d ] );
+				}
+			}
+			
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				final int diff = maxSize[ d ] - minSize[ d ];
+				
+				if ( diff > 0 )
+				{
+					maxDim[ d ] += diff;
+					sizeFound = false;
+				}
+			}
+		}
+		while ( !sizeFound );
+		
+		for ( final FourierTransform<T, ComplexFloatType> fft : ffts )
+			if ( !fft.checkInput() )
+			{
+				errorMessage = "Fourier Transform failed: " + fft.getErrorMessage();
+				return null;
+			}
+		
+		return maxDim;
+	}
+	
+	@Override
+	public long getProcessingTime() { return processingTime; }
+	
+	@Override
+	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
+
+	@Override
+	public void setNumThreads( final int numThreads ) { this.numThreads = numThreads; }
+
+	@Override
+	public int getNumThreads() { return numThreads; }	
+
+	@Override
+	public boolean checkInput() 
+	{
+		if ( errorMessage.length() > 0 )
+		{
+			return false;
+		}
+		
+		if ( tiles == null || pairs == null || tiles.size() == 0 )
+		{
+			errorMessage = "No tiles or pairs given";
+			return false;
+		}
+		
+		for ( final Image<T> tile : tiles )
+			if ( tile == null || tile.getNumDimensions() != numDimensions )
+			{
+				errorMessage = "One of the tiles is null or the dimensionality of the tiles is not the same";
+				return false;
+			}
+		
+		for ( final int[] pair : pairs )
+			if ( pair.length != 2 || pair[ 0 ] < 0 || pair[ 1 ] < 0 || pair[ 0 ] >= tiles.size() || pair[ 1 ] >= tiles.size() )
+			{
+				errorMessage = "Invalid pair of tiles: " + Arrays.toString( pair );
+				return false;
+			}
+		
+		return true;
+	}
+
+	@Override
+	public String getErrorMessage()  { return errorMessage; }
+}
@@ -37,6 +37,7 @@ public class PhaseCorrelationPeak implements Comparable<PhaseCorrelationPeak>
 {
 	int[] position = null;
 	int[] originalInvPCMPosition = null;
+	float[] subpixelPosition = null;
 	float phaseCorrelationPeak = 0, crossCorrelationPeak = 0;
 	long numPixels = 0;
 	boolean sortPhaseCorrelation = true;
@@ -65,6 +66,7 @@ public class PhaseCorrelationPeak implements Comparable<PhaseCorrelationPeak>
 	
 	public void setPosition( final int[] position ) { this.position = position.clone(); }
 	public void setOriginalInvPCMPosition( final int[] originalInvPCMPosition ) { this.originalInvPCMPosition = originalInvPCMPosition.clone(); }
+	public void setSubpixelPosition( final float[] subpixelPosition ) { this.subpixelPosition = subpixelPosition.clone(); }
 	public void setPhaseCorrelationPeak( final float phaseCorrelationPeak ) { this.phaseCorrelationPeak = phaseCorrelationPeak; }
 	public void setCrossCorrelationPeak( final float crossCorrelationPeak ) { this.crossCorrelationPeak = crossCorrelationPeak; }
 	public void setSortPhaseCorrelation( final boolean sortPhaseCorrelation ) { this.sortPhaseCorrelation = sortPhaseCorrelation; }
@@ -72,6 +74,12 @@ public class PhaseCorrelationPeak implements Comparable<PhaseCorrelationPeak>
 	
 	public int[] getPosition() { return position.clone(); }
 	public int[] getOriginalInvPCMPosition() { return originalInvPCMPosition.clone(); }
+	
+	/**
+	 * @return the position refined to subpixel accuracy, or null if {@link PhaseCorrelation#setSubpixelAccuracy(boolean)} was not set
+	 */
+	public float[] getSubpixelPosition() { return subpixelPosition == null ? null : subpixelPosition.clone(); }
+	
 	public float getPhaseCorrelationPeak() { return phaseCorrelationPeak; }
 	public float getCrossCorrelationPeak() { return crossCorrelationPeak; }
 	public boolean getSortPhaseCorrelation() { return sortPhaseCorrelation; }
@@ -114,9 +122,11 @@ public class PhaseCorrelationPeak implements Comparable<PhaseCorrelationPeak>
 	@Override
 	public String toString()
 	{
+		final String subpixel = subpixelPosition == null ? "" : " " + Util.printCoordinates( subpixelPosition );
+		
 		if ( originalInvPCMPosition == null)
-			return Util.printCoordinates( position ) + ", phaseCorrelationPeak = " + phaseCorrelationPeak + ", crossCorrelationPeak = " + crossCorrelationPeak;
+			return Util.printCoordinates( position ) + subpixel + ", phaseCorrelationPeak = " + phaseCorrelationPeak + ", crossCorrelationPeak = " + crossCorrelationPeak;
 		else
-			return Util.printCoordinates( position ) + " [" + Util.printCoordinates( originalInvPCMPosition ) + "], phaseCorrelationPeak = " + phaseCorrelationPeak + ", crossCorrelationPeak = " + crossCorrelationPeak; 
+			return Util.printCoordinates( position ) + subpixel + " [" + Util.printCoordinates( originalInvPCMPosition ) + "], phaseCorrelationPeak = " + phaseCorrelationPeak + ", crossCorrelationPeak = " + crossCorrelationPeak; 
 	}
 }
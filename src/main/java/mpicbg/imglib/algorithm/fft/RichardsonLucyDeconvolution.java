@@ -0,0 +1,562 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.algorithm.fft.SpectrumFunctions.PointOperation;
+import mpicbg.imglib.algorithm.metrics.Metrics;
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+import mpicbg.imglib.util.Util;
+
+/**
+ * Richardson-Lucy deconvolution of an image with a point spread function (the kernel of the {@link FourierConvolution}). 
+ * Each iteration computes
+ * 
+ * u = u * ( ( d / ( u * p ) ) x p )
+ * 
+ * where d is the image, p the point spread function, * the convolution and x the correlation. 
+ * The image is extended by the kernel size with the {@link OutOfBoundsStrategyFactory} of the {@link FourierConvolution} 
+ * and the whole iteration is computed on that domain, only the image area is returned. The spectrum of the point spread 
+ * function is computed once (or taken from the {@link KernelSpectrumCache}), the correlation is the multiplication with its 
+ * complex conjugate. All images and the spectrum are allocated once and reused in every iteration, all pixel-wise operations 
+ * run in parallel with {@link SpectrumFunctions}. The point spread function does not need to be normalized.
+ * 
+ * The iteration starts from a constant image with the mean intensity of the image. It stops after {@link #getNumIterations()} 
+ * iterations or as soon as the relative change of the estimate sum( |u_k - u_k-1| ) / sum( u_k-1 ) is below {@link #getTolerance()}. 
+ * With {@link #setAcceleration(boolean)} the iterations are accelerated by vector extrapolation (Biggs and Andrews, 1997).
+ * 
+ * Block processing is not supported.
+ */
+public class RichardsonLucyDeconvolution<T extends RealType<T>, S extends RealType<S>> extends FourierConvolution<T, S>
+{
+	int numIterations = 10, numIterationsPerformed = 0;
+	double tolerance = 0, lastChange = Double.NaN;
+	float epsilon = 1e-6f;
+	boolean acceleration = false;
+	
+	ContainerFactory fftFactory = null;
+	
+	public RichardsonLucyDeconvolution( final Image<T> image, final Image<S> kernel, final int numIterations )
+	{
+		super( image, kernel );
+		
+		this.numIterations = numIterations;
+	}
+
+	public RichardsonLucyDeconvolution( final Image<T> image, final Image<S> kernel )
+	{
+		super( image, kernel );
+	}
+	
+	/**
+	 * @param numIterations - the maximal number of iterations
+	 */
+	public void setNumIterations( final int numIterations ) { this.numIterations = numIterations; }
+	public int getNumIterations() { return numIterations; }
+	
+	/**
+	 * @param tolerance - stop when the relative change of the estimate in one iteration is below this value, 0 (default) runs all iterations
+	 */
+	public void setTolerance( final double tolerance ) { this.tolerance = tolerance; }
+	public double getTolerance() { return tolerance; }
+	
+	/**
+	 * @param epsilon - where the blurred estimate is not larger than epsilon the ratio is 0
+	 */
+	public void setEpsilon( final float epsilon ) { this.epsilon = epsilon; }
+	public float getEpsilon() { return epsilon; }
+	
+	/**
+	 * @param acceleration - extrapolate the estimate after each iteration (Biggs and Andrews), needs two more images of the extended size
+	 */
+	public void setAcceleration( final boolean acceleration ) { this.acceleration = acceleration; }
+	public boolean getAcceleration() { return acceleration; }
+	
+	/**
+	 * @return the number of iterations of the last call of {@link #process()}
+	 */
+	public int getNumIterationsPerformed() { return numIterationsPerformed; }
+	
+	/**
+	 * @return the relative change of the estimate in the last iteration
+	 */
+	public double getLastChange() { return lastChange; }
+	
+	/**
+	 * The images are processed directly on their storage, so the container of the image is only used if it is 
+	 * accessible by {@link FFTLineAccess}, otherwise an {@link ArrayContainerFactory}.
+	 */
+	@Override
+	protected ContainerFactory getFFTContainerFactory()
+	{
+		if ( fftFactory == null )
+		{
+			final ContainerFactory factory = image.getContainer().getFactory();
+			final Image<FloatType> test = new ImageFactory<FloatType>( new FloatType(), factory ).createImage( Util.getArrayFromValue( 1, numDimensions ) );
+			
+			if ( FFTLineAccess.create( test ) == null )
+				fftFactory = new ArrayContainerFactory();
+			else
+				fftFactory = factory;
+			
+			test.close();
+		}
+		
+		return fftFactory;
+	}
+	
+	@Override
+	public boolean process()
+	{
+		final long startTime = System.currentTimeMillis();
+		metrics = new Metrics( "RichardsonLucyDeconvolution", image, getNumThreads() );
+		
+		try
+		{
+			final int[] imgDim = image.getDimensions();
+			final int[] fftSize = new int[ numDimensions ];
+			final int[] imageOffset = new int[ numDimensions ];
+			final int[] zeroOffset = new int[ numDimensions ];
+		
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				fftSize[ d ] = getFFTSize( imgDim[ d ] + kernelDim[ d ] - 1, d );
+				imageOffset[ d ] = ( fftSize[ d ] - imgDim[ d ] ) / 2;
+			}
+		
+			//
+			// the kernel spectrum, it is kept if the size does not change
+			//
+			metrics.start( "kernel fft" );
+		
+			final int[] complexSize = fftSize.clone();
+			complexSize[ 0 ] = fftSize[ 0 ] / 2 + 1;
+		
+			if ( kernelFFT != null && !Arrays.equals( kernelFFT.getDimensions(), complexSize ) )
+			{
+				if ( kernelSpectrumCache == null )
+					kernelFFT.close();
+			
+				kernelFFT = null;
+			}
+		
+			if ( kernelFFT == null )
+			{
+				kernelFFT = getKernelFFT( fftSize );
+			
+				if ( kernelFFT == null )
+					return false;
+			}
+		
+			//
+			// allocate all images once
+			//
+			metrics.start( "setup" );
+		
+			final ImageFactory<FloatType> realFactory = new ImageFactory<FloatType>( new FloatType(), getFFTContainerFactory() );
+			final ImageFactory<ComplexFloatType> complexFactory = new ImageFactory<ComplexFloatType>( new ComplexFloatType(), getFFTContainerFactory() );
+		
+			final Image<FloatType> observed = realFactory.createImage( fftSize, "observed" );
+			final Image<FloatType> estimate = realFactory.createImage( fftSize, "estimate" );
+			final Image<FloatType> work = realFactory.createImage( fftSize, "work" );
+			final Image<FloatType> previous = acceleration ? realFactory.createImage( fftSize, "previous" ) : null;
+			final Image<FloatType> gradient = acceleration ? realFactory.createImage( fftSize, "gradient" ) : null;
+			final Image<ComplexFloatType> spectrum = complexFactory.createImage( complexSize, "spectrum" );
+		
+			if ( observed == null || estimate == null || work == null || spectrum == null || ( acceleration && ( previous == null || gradient == null ) ) )
+			{
+				errorMessage = "Cannot create the images of the iteration, most likely out of memory";
+				
+				for ( final Image<?> img : new Image<?>[]{ observed, estimate, work, previous, gradient, spectrum } )
+					if ( img != null )
+						img.close();
+				
+				return false;
+			}
+		
+			metrics.addTemporary( observed );
+			metrics.addTemporary( estimate );
+			metrics.addTemporary( work );
+			metrics.addTemporary( spectrum );
+		
+			if ( acceleration )
+			{
+				metrics.addTemporary( previous );
+				metrics.addTemporary( gradient );
+			}
+		
+			copyExtended( observed, imageOffset );
+		
+			// start with the mean intensity
+			final double[] sum = SpectrumFunctions.process( new Image<?>[]{ observed }, new PointOperation()
+			{
+				@Override
+				public void compute( final float[][] data, final int start, final int end, final double[] sums )
+				{
+					final float[] o = data[ 0 ];
+				
+					for ( int i = start; i < end; ++i )
+						sums[ 0 ] += o[ i ];
+				}
+			}, 1, getNumThreads() );
+		
+			final float mean = (float)Math.max( epsilon, sum[ 0 ] / observed.getNumPixels() );
+		
+			SpectrumFunctions.process( acceleration ? new Image<?>[]{ estimate, previous } : new Image<?>[]{ estimate }, new PointOperation()
+			{
+				@Override
+				public void compute( final float[][] data, final int start, final int end, final double[] sums )
+				{
+					for ( final float[] d : data )
+						for ( int i = start; i < end; ++i )
+							d[ i ] = mean;
+				}
+			}, 0, getNumThreads() );
+		
+			//
+			// iterate
+			//
+			final OutOfBoundsStrategyFactory<FloatType> zero = new OutOfBoundsStrategyValueFactory<FloatType>();
+		
+			numIterationsPerformed = 0;
+			lastChange = Double.NaN;
+		
+			for ( int it = 0; it < numIterations; ++it )
+			{
+				// blur the estimate
+				metrics.start( "convolve" );
+				FFTFunctions.computeFFT( estimate, spectrum, zero, zeroOffset, fftSize, getNumThreads(), false, getPrecision() );
+				SpectrumFunctions.multiply( spectrum, kernelFFT, false, getNumThreads() );
+				FFTFunctions.computeInverseFFT( spectrum, work, getNumThreads(), true, false, null, null, 1, getPrecision() );
+			
+				// ratio of the image and the blurred estimate
+				metrics.start( "ratio" );
+				SpectrumFunctions.process( new Image<?>[]{ observed, work }, new PointOperation()
+				{
+					@Override
+					public void compute( final float[][] data, final int start, final int end, final double[] sums )
+					{
+						final float[] o = data[ 0 ];
+						final float[] w = data[ 1 ];
+					
+						for ( int i = start; i < end; ++i )
+							w[ i ] = w[ i ] > epsilon ? o[ i ] / w[ i ] : 0;
+					}
+				}, 0, getNumThreads() );
+			
+				// correlate the ratio with the kernel
+				metrics.start( "correlate" );
+				FFTFunctions.computeFFT( work, spectrum, zero, zeroOffset, fftSize, getNumThreads(), false, getPrecision() );
+				SpectrumFunctions.multiply( spectrum, kernelFFT, true, getNumThreads() );
+				FFTFunctions.computeInverseFFT( spectrum, work, getNumThreads(), true, false, null, null, 1, getPrecision() );
+			
+				// update the estimate
+				metrics.start( "update" );
+			
+				if ( acceleration )
+					lastChange = updateAccelerated( estimate, work, previous, gradient );
+				else
+					lastChange = update( estimate, work );
+			
+				++numIterationsPerformed;
+			
+				if ( lastChange < tolerance )
+					break;
+			}
+		
+			// the last iterate is in previous if accelerated
+			metrics.start( "output" );
+			convolved = copyBack( acceleration ? previous : estimate, imageOffset );
+		
+			observed.close();
+			estimate.close();
+			work.close();
+			spectrum.close();
+		
+			if ( acceleration )
+			{
+				previous.close();
+				gradient.close();
+			}
+		
+			if ( convolved == null )
+			{
+				errorMessage = "Cannot create output image, most likely out of memory";
+				return false;
+			}
+		
+			processingTime = System.currentTimeMillis() - startTime;
+		
+			return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
+	}
+	
+	/**
+	 * u = max( u * c, 0 )
+	 * 
+	 * @return the relative change
+	 */
+	protected double update( final Image<FloatType> estimate, final Image<FloatType> correction )
+	{
+		final double[] sums = SpectrumFunctions.process( new Image<?>[]{ estimate, correction }, new PointOperation()
+		{
+			@Override
+			public void compute( final float[][] data, final int start, final int end, final double[] sums )
+			{
+				final float[] u = data[ 0 ];
+				final float[] c = data[ 1 ];
+				
+				for ( int i = start; i < end; ++i )
+				{
+					final float x = Math.max( u[ i ] * c[ i ], 0 );
+					
+					sums[ 0 ] += Math.abs( x - u[ i ] );
+					sums[ 1 ] += u[ i ];
+					
+					u[ i ] = x;
+				}
+			}
+		}, 2, getNumThreads() );
+		
+		return sums[ 0 ] / sums[ 1 ];
+	}
+	
+	/**
+	 * The Richardson-Lucy step x_k = max( y_k-1 * c, 0 ) followed by the extrapolation 
+	 * y_k = x_k + alpha * ( x_k - x_k-1 ) with alpha = sum( g_k-1 * g_k-2 ) / sum( g_k-2 * g_k-2 ) and g_k-1 = x_k - y_k-1. 
+	 * 
+	 * @param estimate - y, the extrapolated estimate
+	 * @param correction - c, it is overwritten with x_k
+	 * @param previous - x_k-1, it is overwritten with x_k
+	 * @param gradient - g_k-2, it is overwritten with g_k-1
+	 * @return the relative change of x
+	 */
+	protected double updateAccelerated( final Image<FloatType> estimate, final Image<FloatType> correction, final Image<FloatType> previous, final Image<FloatType> gradient )
+	{
+		final double[] sums = SpectrumFunctions.process( new Image<?>[]{ estimate, correction, gradient }, new PointOperation()
+		{
+			@Override
+			public void compute( final float[][] data, final int start, final int end, final double[] sums )
+			{
+				final float[] y = data[ 0 ];
+				final float[] c = data[ 1 ];
+				final float[] g = data[ 2 ];
+				
+				for ( int i = start; i < end; ++i )
+				{
+					final float x = Math.max( y[ i ] * c[ i ], 0 );
+					final float gi = x - y[ i ];
+					
+					sums[ 0 ] += gi * g[ i ];
+					sums[ 1 ] += g[ i ] * g[ i ];
+					
+					c[ i ] = x;
+				}
+			}
+		}, 2, getNumThreads() );
+		
+		// there is no previous gradient in the first iteration
+		final float alpha = sums[ 1 ] > 0 ? (float)Math.max( 0, Math.min( 1, sums[ 0 ] / sums[ 1 ] ) ) : 0;
+		
+		final double[] change = SpectrumFunctions.process( new Image<?>[]{ estimate, correction, previous, gradient }, new PointOperation()
+		{
+			@Override
+			public void compute( final float[][] data, final int start, final int end, final double[] sums )
+			{
+				final float[] y = data[ 0 ];
+				final float[] x = data[ 1 ];
+				final float[] p = data[ 2 ];
+				final float[] g = data[ 3 ];
+				
+				for ( int i = start; i < end; ++i )
+				{
+					sums[ 0 ] += Math.abs( x[ i ] - p[ i ] );
+					sums[ 1 ] += p[ i ];
+					
+					g[ i ] = x[ i ] - y[ i ];
+					y[ i ] = Math.max( x[ i ] + alpha * ( x[ i ] - p[ i ] ), 0 );
+					p[ i ] = x[ i ];
+				}
+			}
+		}, 2, getNumThreads() );
+		
+		return change[ 0 ] / change[ 1 ];
+	}
+	
+	/**
+	 * Copies the image into the center of the extended image, outside of the image the {@link OutOfBoundsStrategyFactory} is used.
+	 */
+	protected void copyExtended( final Image<FloatType> extended, final int[] offset )
+	{
+		final int[] size = extended.getDimensions();
+		final int numLines = FFTFunctions.getNumLines( size, 0 );
+		final int linesPerTask = FFTFunctions.getLinesPerTask( numLines, getNumThreads() );
+		final FFTLineAccess access = FFTLineAccess.create( extended );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( getNumThreads() );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final LocalizableByDimCursor<T> cursor = image.createLocalizableByDimCursor( strategy );
+					final float[][] data = new float[ size[ 0 ] ][];
+					final int[] index = new int[ size[ 0 ] ];
+					final int[] position = new int[ numDimensions ];
+					final int[] imagePosition = new int[ numDimensions ];
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int end = Math.min( start + linesPerTask, numLines );
+						
+						for ( int line = start; line < end; ++line )
+						{
+							FFTFunctions.getLinePosition( line, size, null, 0, position );
+							
+							for ( int d = 0; d < numDimensions; ++d )
+								imagePosition[ d ] = position[ d ] - offset[ d ];
+							
+							cursor.setPosition( imagePosition );
+							access.getLine( position, 0, size[ 0 ], data, index );
+							
+							for ( int x = 0; x < size[ 0 ] - 1; ++x )
+							{
+								data[ x ][ index[ x ] ] = cursor.getType().getRealFloat();
+								cursor.fwd( 0 );
+							}
+							data[ size[ 0 ] - 1 ][ index[ size[ 0 ] - 1 ] ] = cursor.getType().getRealFloat();
+						}
+					}
+					
+					cursor.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/**
+	 * @return the area of the image cut out of the extended image or null if it cannot be created
+	 */
+	protected Image<T> copyBack( final Image<FloatType> extended, final int[] offset )
+	{
+		final Image<T> output = image.createNewImage( image.getName() + " deconvolved" );
+		
+		if ( output == null )
+			return null;
+		
+		final int[] size = output.getDimensions();
+		final int numLines = FFTFunctions.getNumLines( size, 0 );
+		final int linesPerTask = FFTFunctions.getLinesPerTask( numLines, getNumThreads() );
+		final FFTLineAccess access = FFTLineAccess.create( extended );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( getNumThreads() );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final LocalizableByDimCursor<T> cursor = output.createLocalizableByDimCursor();
+					final float[][] data = new float[ size[ 0 ] ][];
+					final int[] index = new int[ size[ 0 ] ];
+					final int[] position = new int[ numDimensions ];
+					final int[] extendedPosition = new int[ numDimensions ];
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int end = Math.min( start + linesPerTask, numLines );
+						
+						for ( int line = start; line < end; ++line )
+						{
+							FFTFunctions.getLinePosition( line, size, null, 0, position );
+							
+							for ( int d = 0; d < numDimensions; ++d )
+								extendedPosition[ d ] = position[ d ] + offset[ d ];
+							
+							cursor.setPosition( position );
+							access.getLine( extendedPosition, 0, size[ 0 ], data, index );
+							
+							for ( int x = 0; x < size[ 0 ] - 1; ++x )
+							{
+								cursor.getType().setReal( data[ x ][ index[ x ] ] );
+								cursor.fwd( 0 );
+							}
+							cursor.getType().setReal( data[ size[ 0 ] - 1 ][ index[ size[ 0 ] - 1 ] ] );
+						}
+					}
+					
+					cursor.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+		
+		return output;
+	}
+	
+	@Override
+	public boolean checkInput()
+	{
+		if ( !super.checkInput() )
+			return false;
+		
+		if ( numIterations < 1 )
+		{
+			errorMessage = "Number of iterations must be at least 1 (" + numIterations + ")";
+			return false;
+		}
+		
+		if ( blockProcessing )
+		{
+			errorMessage = "Block processing is not supported by RichardsonLucyDeconvolution";
+			return false;
+		}
+		
+		return true;
+	}
+}
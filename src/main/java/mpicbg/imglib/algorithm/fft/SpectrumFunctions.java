@@ -0,0 +1,377 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.multithreading.Chunk;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.type.numeric.NumericType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+import mpicbg.imglib.util.Util;
+
+/**
+ * Pixel-wise operations on Fourier spectra and on the real images that are transformed, computed in parallel 
+ * directly on the float[] storage of {@link FloatType} and {@link ComplexFloatType} images (see {@link FFTLineAccess}).
+ * The storage arrays are cut into tasks of {@link #ENTITIES_PER_TASK} floats that the threads take from a shared counter.
+ */
+final public class SpectrumFunctions 
+{
+	/**
+	 * The number of floats a thread processes at once
+	 */
+	final public static int ENTITIES_PER_TASK = 1 << 16;
+	
+	private SpectrumFunctions() {}
+	
+	/**
+	 * An operation on the pixels of images with the same storage layout.
+	 */
+	public static abstract class PointOperation
+	{
+		/**
+		 * @param data - the storage array of each image, all in the same order as the images
+		 * @param start - the first index (a multiple of the entities per pixel)
+		 * @param end - the index after the last one
+		 * @param sums - the partial sums of this task, add to them if the operation computes sums
+		 */
+		public abstract void compute( final float[][] data, final int start, final int end, final double[] sums );
+	}
+	
+	/**
+	 * @param images - the images, all must be accessible by {@link FFTLineAccess} with the same layout and type
+	 * @return the {@link FFTLineAccess} of each image or null if they cannot be processed together
+	 */
+	public static FFTLineAccess[] getAccess( final Image<?>... images )
+	{
+		final FFTLineAccess[] access = new FFTLineAccess[ images.length ];
+		
+		for ( int i = 0; i < images.length; ++i )
+		{
+			access[ i ] = FFTLineAccess.create( images[ i ] );
+			
+			if ( access[ i ] == null )
+				return null;
+			
+			if ( i > 0 && ( !access[ i ].hasSameLayout( access[ 0 ] ) || access[ i ].getEntitiesPerPixel() != access[ 0 ].getEntitiesPerPixel() ) )
+				return null;
+		}
+		
+		return access;
+	}
+	
+	/**
+	 * Runs the operation in parallel on the storage arrays of the images. 
+	 * 
+	 * @param images - the images, they must have the same size, type and container layout
+	 * @param operation - the operation
+	 * @param numSums - the number of sums the operation computes
+	 * @param numThreads - the number of threads
+	 * @return the sums (added up in a fixed order, so the result does not depend on the number of threads), 
+	 * or null if the images cannot be accessed directly, see {@link #getAccess(Image...)}
+	 */
+	public static double[] process( final Image<?>[] images, final PointOperation operation, final int numSums, final int numThreads )
+	{
+		final FFTLineAccess[] access = getAccess( images );
+		
+		if ( access == null )
+			return null;
+		
+		final float[][][] arrays = new float[ images.length ][][];
+		for ( int i = 0; i < images.length; ++i )
+			arrays[ i ] = access[ i ].getStorageArrays();
+		
+		// cut all storage arrays into tasks
+		final int numArrays = arrays[ 0 ].length;
+		int numTasks = 0;
+		for ( int a = 0; a < numArrays; ++a )
+			numTasks += ( arrays[ 0 ][ a ].length + ENTITIES_PER_TASK - 1 ) / ENTITIES_PER_TASK;
+		
+		final int[] taskArray = new int[ numTasks ];
+		final int[] taskStart = new int[ numTasks ];
+		
+		for ( int a = 0, t = 0; a < numArrays; ++a )
+			for ( int start = 0; start < arrays[ 0 ][ a ].length; start += ENTITIES_PER_TASK, ++t )
+			{
+				taskArray[ t ] = a;
+				taskStart[ t ] = start;
+			}
+		
+		final double[][] taskSums = new double[ numTasks ][ numSums ];
+		
+		final AtomicInteger nextTask = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( Math.max( 1, Math.min( numThreads, numTasks ) ) );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final float[][] data = new float[ arrays.length ][];
+					
+					for ( int t = nextTask.getAndIncrement(); t < taskArray.length; t = nextTask.getAndIncrement() )
+					{
+						final int a = taskArray[ t ];
+						
+						for ( int i = 0; i < data.length; ++i )
+							data[ i ] = arrays[ i ][ a ];
+						
+						operation.compute( data, taskStart[ t ], Math.min( taskStart[ t ] + ENTITIES_PER_TASK, data[ 0 ].length ), taskSums[ t ] );
+					}
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+		
+		final double[] sums = new double[ numSums ];
+		
+		for ( int t = 0; t < numTasks; ++t )
+			for ( int s = 0; s < numSums; ++s )
+				sums[ s ] += taskSums[ t ][ s ];
+		
+		return sums;
+	}
+	
+	/**
+	 * Multiplies two spectra pixel by pixel, a = a * b or a = a * conj( b ). Multiplying with the complex conjugate of the 
+	 * spectrum of a real kernel is the same as multiplying with the spectrum of the mirrored kernel (correlation instead of convolution).
+	 * 
+	 * @param a - the spectrum that is changed
+	 * @param b - a spectrum of the same size and container type
+	 * @param conjugate - multiply with the complex conjugate of b
+	 * @param numThreads - the number of threads
+	 */
+	public static void multiply( final Image<ComplexFloatType> a, final Image<ComplexFloatType> b, final boolean conjugate, final int numThreads )
+	{
+		final float sign = conjugate ? -1 : 1;
+		
+		processComplex( a, b, new PointOperation()
+		{
+			@Override
+			public void compute( final float[][] data, final int start, final int end, final double[] sums )
+			{
+				final float[] dataA = data[ 0 ];
+				final float[] dataB = data[ 1 ];
+				
+				for ( int i = start; i < end; i += 2 )
+				{
+					final float re1 = dataA[ i ];
+					final float im1 = dataA[ i + 1 ];
+					final float re2 = dataB[ i ];
+					final float im2 = dataB[ i + 1 ] * sign;
+					
+					// the same as ComplexFloatType.mul()
+					dataA[ i ] = re1 * re2 - im1 * im2;
+					dataA[ i + 1 ] = re1 * im2 + im1 * re2;
+				}
+			}
+		}, numThreads );
+	}
+	
+	/**
+	 * Divides two spectra pixel by pixel, a = a * conj( b ) / ( |b|^2 + regularization ). Without regularization this is 
+	 * a = a / b (the same as ComplexFloatType.div()), a regularization &gt; 0 avoids the amplification of frequencies where 
+	 * b is close to zero (Tikhonov regularized inverse filter).
+	 * 
+	 * @param a - the spectrum that is changed
+	 * @param b - a spectrum of the same size and container type
+	 * @param regularization - added to the squared magnitude of b
+	 * @param numThreads - the number of threads
+	 */
+	public static void divide( final Image<ComplexFloatType> a, final Image<ComplexFloatType> b, final float regularization, final int numThreads )
+	{
+		processComplex( a, b, new PointOperation()
+		{
+			@Override
+			public void compute( final float[][] data, final int start, final int end, final double[] sums )
+			{
+				final float[] dataA = data[ 0 ];
+				final float[] dataB = data[ 1 ];
+				
+				for ( int i = start; i < end; i += 2 )
+				{
+					final float a1 = dataA[ i ];
+					final float b1 = dataA[ i + 1 ];
+					final float c1 = dataB[ i ];
+					final float d1 = dataB[ i + 1 ];
+					
+					final float norm = c1*c1 + d1*d1 + regularization;
+					
+					dataA[ i ] = ( a1*c1 + b1*d1 ) / norm;
+					dataA[ i + 1 ] = ( b1*c1 - a1*d1 ) / norm;
+				}
+			}
+		}, numThreads );
+	}
+	
+	/**
+	 * Sets all pixels to zero whose distance to the origin is outside (band pass) or inside (band stop) the range 
+	 * [beginRadius, endRadius]. The image is processed line by line in parallel, {@link FloatType} and {@link ComplexFloatType} 
+	 * images are accessed directly, all others with cursors.
+	 * 
+	 * @param img - the image that is changed
+	 * @param origin - the position of the zero frequency
+	 * @param beginRadius - the inner radius
+	 * @param endRadius - the outer radius
+	 * @param bandPass - if true keep the range, otherwise clear it
+	 * @param numThreads - the number of threads
+	 */
+	public static <T extends NumericType<T>> void applyRadialMask( final Image<T> img, final int[] origin, final int beginRadius, final int endRadius, final boolean bandPass, final int numThreads )
+	{
+		final int numDimensions = img.getNumDimensions();
+		final int[] size = img.getDimensions();
+		final int numLines = FFTFunctions.getNumLines( size, 0 );
+		final int linesPerTask = FFTFunctions.getLinesPerTask( numLines, numThreads );
+		final FFTLineAccess access = FFTLineAccess.create( img );
+		
+		final AtomicInteger nextLine = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final LocalizableByDimCursor<T> cursor = access == null ? img.createLocalizableByDimCursor() : null;
+					final float[][] data = new float[ size[ 0 ] ][];
+					final int[] index = new int[ size[ 0 ] ];
+					final int[] position = new int[ numDimensions ];
+					
+					for ( int start = nextLine.getAndAdd( linesPerTask ); start < numLines; start = nextLine.getAndAdd( linesPerTask ) )
+					{
+						final int end = Math.min( start + linesPerTask, numLines );
+						
+						for ( int line = start; line < end; ++line )
+						{
+							FFTFunctions.getLinePosition( line, size, null, 0, position );
+							
+							if ( access == null )
+								cursor.setPosition( position );
+							else
+								access.getLine( position, 0, size[ 0 ], data, index );
+							
+							for ( int x = 0; x < size[ 0 ]; ++x )
+							{
+								position[ 0 ] = x;
+								
+								final float dist = Util.computeDistance( origin, position );
+								final boolean clear;
+								
+								if ( bandPass )
+									clear = dist < beginRadius || dist > endRadius;
+								else
+									clear = dist >= beginRadius && dist <= endRadius;
+								
+								if ( clear )
+								{
+									if ( access == null )
+									{
+										cursor.getType().setZero();
+									}
+									else
+									{
+										for ( int e = 0; e < access.getEntitiesPerPixel(); ++e )
+											data[ x ][ index[ x ] + e ] = 0;
+									}
+								}
+								
+								if ( access == null && x < size[ 0 ] - 1 )
+									cursor.fwd( 0 );
+							}
+						}
+					}
+					
+					if ( cursor != null )
+						cursor.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/**
+	 * Runs an operation on two complex images, directly on the storage arrays if possible, otherwise with cursors 
+	 * that copy each pixel into small arrays.
+	 */
+	protected static void processComplex( final Image<ComplexFloatType> a, final Image<ComplexFloatType> b, final PointOperation operation, final int numThreads )
+	{
+		if ( process( new Image<?>[]{ a, b }, operation, 0, numThreads ) != null )
+			return;
+		
+		// the containers cannot be accessed directly, use cursors
+		final Vector<Chunk> threadChunks = SimpleMultiThreading.divideIntoChunks( a.getNumPixels(), numThreads );
+		
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final Chunk myChunk = threadChunks.get( ai.getAndIncrement() );
+					
+					final Cursor<ComplexFloatType> cursorA = a.createCursor();
+					final Cursor<ComplexFloatType> cursorB = b.createCursor();
+					final float[][] data = new float[ 2 ][ 2 ];
+					final double[] sums = new double[ 0 ];
+					
+					cursorA.fwd( myChunk.getStartPosition() );
+					cursorB.fwd( myChunk.getStartPosition() );
+					
+					for ( long l = 0; l < myChunk.getLoopSize(); ++l )
+					{
+						cursorA.fwd();
+						cursorB.fwd();
+						
+						final ComplexFloatType typeA = cursorA.getType();
+						final ComplexFloatType typeB = cursorB.getType();
+						
+						data[ 0 ][ 0 ] = typeA.getRealFloat();
+						data[ 0 ][ 1 ] = typeA.getComplexFloat();
+						data[ 1 ][ 0 ] = typeB.getRealFloat();
+						data[ 1 ][ 1 ] = typeB.getComplexFloat();
+						
+						operation.compute( data, 0, 2, sums );
+						
+						typeA.setReal( data[ 0 ][ 0 ] );
+						typeA.setComplex( data[ 0 ][ 1 ] );
+					}
+					
+					cursorA.close();
+					cursorB.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+}
@@ -30,7 +30,6 @@ import mpicbg.imglib.algorithm.Benchmark;
 import mpicbg.imglib.algorithm.MultiThreaded;
 import mpicbg.imglib.algorithm.OutputAlgorithm;
 import mpicbg.imglib.cursor.LocalizableCursor;
-import mpicbg.imglib.function.RealTypeConverter;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.image.ImageFactory;
 import mpicbg.imglib.interpolation.Interpolator;
@@ -140,21 +139,32 @@ public class DownSample<T extends RealType<T>> implements MultiThreaded, OutputA
 			final double s = targetSigma * scaling[ d ]; 
 			sigma[ d ] = Math.sqrt( s * s - sourceSigma * sourceSigma );
 		}
+		
+		// convolve in double precision, the first dimension reads the input, all others are in-place.
+		// the KernelLineFilter sums in a different order than the GaussianConvolution3 used before,
+		// so the result can differ in the last bits (and by one gray level where it is rounded to an integer type)
 		final ImageFactory<DoubleType> factory = new ImageFactory<DoubleType>( new DoubleType(), input.getContainerFactory() );
-		final GaussianConvolution3<T,DoubleType,T> gauss = new GaussianConvolution3<T,DoubleType,T>( input, factory, input.getImageFactory(), new OutOfBoundsStrategyMirrorFactory<DoubleType>(), 
-				new RealTypeConverter<T, DoubleType>(), new RealTypeConverter<DoubleType, T>(), sigma );
-		gauss.setNumThreads( getNumThreads() );
-
-		if ( !gauss.checkInput() || !gauss.process() )
+		final Image<DoubleType> gaussConvolved = factory.createImage( input.getDimensions() );
+		
+		if ( gaussConvolved == null )
 		{
-			errorMessage = "Gaussian Convolution failed: " + gauss.getErrorMessage();
+			errorMessage = "Gaussian Convolution failed: cannot create the temporary image";
 			return false;
 		}
 		
-		final Image<T> gaussConvolved = gauss.getResult();
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			final KernelLineFilter filter = new KernelLineFilter( Util.createGaussianKernel1DDouble( sigma[ d ], true ) );
+			
+			if ( d == 0 )
+				SeparableConvolution.convolve( input, new OutOfBoundsStrategyMirrorFactory<T>(), gaussConvolved, d, filter, getNumThreads() );
+			else
+				SeparableConvolution.convolve( gaussConvolved, new OutOfBoundsStrategyMirrorFactory<DoubleType>(), gaussConvolved, d, filter, getNumThreads() );
+		}
+		
 		downSampled = input.createNewImage( newSize );
 		
-		final Interpolator<T> interpolator = gaussConvolved.createInterpolator( new NearestNeighborInterpolatorFactory<T>( new OutOfBoundsStrategyMirrorFactory<T>() ) );		
+		final Interpolator<DoubleType> interpolator = gaussConvolved.createInterpolator( new NearestNeighborInterpolatorFactory<DoubleType>( new OutOfBoundsStrategyMirrorFactory<DoubleType>() ) );		
 		final LocalizableCursor<T> cursor = downSampled.createLocalizableCursor();
 		
 		final int[] pos = new int[ numDimensions ];
@@ -170,7 +180,7 @@ public class DownSample<T extends RealType<T>> implements MultiThreaded, OutputA
 				scaledPos[ d ] = pos[ d ] * scalingDim[ d ];
 
 			interpolator.moveTo( scaledPos );
-			cursor.getType().set( interpolator.getType() );
+			cursor.getType().setReal( interpolator.getType().get() );
 		}
 		
 		cursor.close();
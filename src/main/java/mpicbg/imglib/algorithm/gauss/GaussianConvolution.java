@@ -37,6 +37,7 @@ import mpicbg.imglib.image.Image;
 import mpicbg.imglib.multithreading.SimpleMultiThreading;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
 import mpicbg.imglib.type.numeric.NumericType;
+import mpicbg.imglib.type.numeric.RealType;
 import mpicbg.imglib.type.numeric.real.FloatType;
 
 /**
@@ -46,6 +47,21 @@ import mpicbg.imglib.type.numeric.real.FloatType;
  */
 public class GaussianConvolution < T extends NumericType<T> > extends GaussianConvolution3<T, T, T>
 {
+	/**
+	 * How the image is convolved: {@link #CURSOR} (the default) is the cursor based convolution of 
+	 * {@link GaussianConvolution3}, or the float path for {@link Array3D}, with the same results as 
+	 * before the line based modes existed. The other modes convolve images in a {@link DirectAccessContainer} 
+	 * line by line: {@link #FIR} uses the sampled Gaussian kernel, {@link #RECURSIVE} uses
+	 * a {@link RecursiveGaussianLineFilter} whose cost does not depend on sigma, {@link #AUTO} uses the
+	 * recursive filter for all dimensions with a sigma of at least {@link GaussianConvolution#setRecursiveSigma(double)} (default 10).
+	 * The recursive filter is only used for {@link RealType}s and sigmas of at least 0.5, otherwise the kernel is used.
+	 */
+	public static enum Mode { CURSOR, FIR, RECURSIVE, AUTO }
+	
+	Mode mode = Mode.CURSOR;
+	double recursiveSigma = 10;
+	boolean inPlace = false;
+	
 	public GaussianConvolution( final Image<T> image, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory, final double[] sigma )
 	{
 		super( image, null, null, outOfBoundsFactory, null, null, sigma );
@@ -56,6 +72,26 @@ public class GaussianConvolution < T extends NumericType<T> > extends GaussianCo
 		this( image, outOfBoundsFactory, createArray( image, sigma ) );
 	}
 	
+	public void setMode( final Mode mode ) { this.mode = mode; }
+	public Mode getMode() { return mode; }
+	
+	/**
+	 * @param recursiveSigma - the sigma from which on {@link Mode#AUTO} uses the recursive filter
+	 */
+	public void setRecursiveSigma( final double recursiveSigma ) { this.recursiveSigma = recursiveSigma; }
+	public double getRecursiveSigma() { return recursiveSigma; }
+	
+	/**
+	 * The line based modes create one new image as result, the first dimension is read from the input and all 
+	 * others are convolved in-place in the result. In-place mode convolves all dimensions in-place in 
+	 * the input image instead, which then is also the result, so no image is allocated at all. In-place 
+	 * convolution is always line based, with {@link Mode#CURSOR} it convolves like {@link Mode#FIR}.
+	 * 
+	 * @param inPlace - overwrite the input with the result
+	 */
+	public void setInPlace( final boolean inPlace ) { this.inPlace = inPlace; }
+	public boolean isInPlace() { return inPlace; }
+	
 	protected Image<T> getTempImage1( final int currentDim )
 	{
 		if ( currentDim == 0 )
@@ -97,13 +133,48 @@ public class GaussianConvolution < T extends NumericType<T> > extends GaussianCo
 		return output;		
 	}
 	
+	/**
+	 * Except for {@link Mode#CURSOR}, {@link RealType}s in a {@link DirectAccessContainer} are convolved line by line with 
+	 * {@link #computeGaussLines(Image, OutOfBoundsStrategyFactory)}, which sums in double and rounds to 
+	 * the type once per dimension like {@link GaussianConvolutionReal} (up to the summation order). The
+	 * cursor based path of {@link GaussianConvolution3} computes every product and sum in the type instead, 
+	 * which rounds every product for integer types. The results of both paths therefore differ, by a few 
+	 * gray levels for unsigned byte images and by the float rounding for {@link FloatType}.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	protected boolean processWithOptimizedMethod()
 	{
-		if ( Array3D.class.isInstance( image.getContainer() ) && FloatType.class.isInstance( image.createType() ))
+		if ( mode == Mode.CURSOR && !inPlace )
+		{
+			if ( Array3D.class.isInstance( image.getContainer() ) && FloatType.class.isInstance( image.createType() ))
+			{
+	 			convolved = computeGaussFloatArray3D( image, outOfBoundsFactory, kernel, getNumThreads() );
+	    		    		
+	    		return true;
+			}
+			else
+			{
+				return false;
+			}
+		}
+		else if ( DirectAccessContainer.class.isInstance( image.getContainer() ) && RealType.class.isInstance( image.createType() ) )
+		{
+			/* inconvertible types due to javac bug 6548436 */
+			convolved = computeGaussLines( (Image)image, (OutOfBoundsStrategyFactory)outOfBoundsFactory );
+			
+			return true;
+		}
+		else if ( DirectAccessContainer.class.isInstance( image.getContainer() ) )
+		{
+			convolved = computeGaussLinesGeneric( image, outOfBoundsFactory );
+			
+			return true;
+		}
+		else if ( inPlace )
 		{
- 			convolved = computeGaussFloatArray3D( image, outOfBoundsFactory, kernel, getNumThreads() );
-    		    		
-    		return true;
+			errorMessage = "In-place convolution needs a DirectAccessContainer, but the image is stored in a " + image.getContainer().getClass().getSimpleName();
+			
+			return true;
 		}
 		else
 		{
@@ -111,6 +182,74 @@ public class GaussianConvolution < T extends NumericType<T> > extends GaussianCo
 		}
 	}
 	
+	/**
+	 * Convolves all lines of the image dimension by dimension using a {@link SeparableConvolution},
+	 * which works for any dimensionality and any {@link DirectAccessContainer} (Array, Planar, Cell, ...).
+	 * The first dimension is read from the image, all other dimensions are computed in-place in the output.
+	 * In in-place mode the output is the input.
+	 * 
+	 * @param input - the input image
+	 * @param outOfBoundsFactory - the strategy to extend the lines at their ends
+	 * @return the convolved image
+	 */
+	protected <R extends RealType<R>> Image<R> computeGaussLines( final Image<R> input, final OutOfBoundsStrategyFactory<R> outOfBoundsFactory )
+	{
+		final Image<R> output = inPlace ? input : input.createNewImage();
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			metrics.start( "dimension " + d );
+			SeparableConvolution.convolve( d == 0 ? input : output, outOfBoundsFactory, output, d, createLineFilter( d ), getNumThreads() );
+		}
+		
+		return output;
+	}
+
+	/**
+	 * Same as {@link #computeGaussLines(Image, OutOfBoundsStrategyFactory)} for {@link NumericType}s
+	 * that are no {@link RealType}s, the lines are buffered as instances of the type and always 
+	 * convolved with the kernel.
+	 * 
+	 * @param input - the input image
+	 * @param outOfBoundsFactory - the strategy to extend the lines at their ends
+	 * @return the convolved image
+	 */
+	protected Image<T> computeGaussLinesGeneric( final Image<T> input, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory )
+	{
+		final Image<T> output = inPlace ? input : input.createNewImage();
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			metrics.start( "dimension " + d );
+			SeparableConvolution.convolve( d == 0 ? input : output, outOfBoundsFactory, output, d, kernel[ d ], getNumThreads() );
+		}
+		
+		return output;
+	}
+	
+	/**
+	 * Creates the {@link LineFilter} for one dimension depending on the {@link Mode}.
+	 * 
+	 * @param d - the dimension
+	 * @return a {@link RecursiveGaussianLineFilter} or a {@link KernelLineFilter}
+	 */
+	protected LineFilter createLineFilter( final int d )
+	{
+		final boolean recursive;
+		
+		if ( mode == Mode.RECURSIVE )
+			recursive = sigma[ d ] >= 0.5;
+		else if ( mode == Mode.AUTO )
+			recursive = sigma[ d ] >= Math.max( 0.5, recursiveSigma );
+		else
+			recursive = false;
+		
+		if ( recursive )
+			return new RecursiveGaussianLineFilter( sigma[ d ], kernel[ d ].length / 2 );
+		else
+			return new KernelLineFilter( kernel[ d ] );
+	}
+	
 	/**
 	 * This class does the gaussian filtering of an image. On the edges of
 	 * the image it does mirror the pixels. It also uses the seperability of
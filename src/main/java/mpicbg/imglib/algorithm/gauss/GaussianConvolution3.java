@@ -33,6 +33,8 @@ import mpicbg.imglib.algorithm.Benchmark;
 import mpicbg.imglib.algorithm.MultiThreaded;
 import mpicbg.imglib.algorithm.OutputAlgorithm;
 import mpicbg.imglib.algorithm.math.ImageConverter;
+import mpicbg.imglib.algorithm.metrics.Measurable;
+import mpicbg.imglib.algorithm.metrics.Metrics;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
 import mpicbg.imglib.cursor.LocalizableCursor;
 import mpicbg.imglib.function.Converter;
@@ -55,7 +57,7 @@ import mpicbg.imglib.util.Util;
  *
  * @author Stephan Preibisch
  */
-public class GaussianConvolution3< A extends Type<A>, B extends NumericType<B>, C extends Type<C> > implements MultiThreaded, OutputAlgorithm<C>, Benchmark
+public class GaussianConvolution3< A extends Type<A>, B extends NumericType<B>, C extends Type<C> > implements MultiThreaded, OutputAlgorithm<C>, Benchmark, Measurable
 {	
 	Image<A> image;	
 	final ImageFactory<B> factoryProcess;
@@ -73,6 +75,7 @@ public class GaussianConvolution3< A extends Type<A>, B extends NumericType<B>,
     final double[][] kernel;
 
 	long processingTime;
+	Metrics metrics = null;
 	int numThreads;
 	String errorMessage = "";
 
@@ -140,6 +143,9 @@ public class GaussianConvolution3< A extends Type<A>, B extends NumericType<B>,
 	@Override
 	public long getProcessingTime() { return processingTime; }
 	
+	@Override
+	public Metrics getMetrics() { return metrics; }
+	
 	@Override
 	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
 
@@ -278,68 +284,79 @@ public class GaussianConvolution3< A extends Type<A>, B extends NumericType<B>,
 	public boolean process() 
 	{		
 		final long startTime = System.currentTimeMillis();
-
-		if ( processWithOptimizedMethod() )
+		metrics = new Metrics( getClass().getSimpleName(), image, getNumThreads() );
+		
+		try
 		{
-    		processingTime = System.currentTimeMillis() - startTime;
+			if ( processWithOptimizedMethod() )
+			{
+	    		processingTime = System.currentTimeMillis() - startTime;
 
-			if ( errorMessage.length() == 0 )
-				return true;
-			else
-				return false;
-		}
+				if ( errorMessage.length() == 0 )
+					return true;
+				else
+					return false;
+			}
 		
-		final long imageSize = image.getNumPixels();
+			final long imageSize = image.getNumPixels();
 		
-		// divide the image into chunks
-        final Vector<Chunk> threadChunks = SimpleMultiThreading.divideIntoChunks( imageSize, numThreads );
+			// divide the image into chunks
+	        final Vector<Chunk> threadChunks = SimpleMultiThreading.divideIntoChunks( imageSize, numThreads );
 
-        //
-        // Folding loop
-        //
-        for ( int dim = 0; dim < numDimensions; dim++ )
-        {
-         	final int currentDim = dim;
+	        //
+	        // Folding loop
+	        //
+	        for ( int dim = 0; dim < numDimensions; dim++ )
+	        {
+	         	final int currentDim = dim;
+	         	metrics.start( "dimension " + dim );
          	
-    		final Image<B> temp1 = getTempImage1( currentDim );
-    		if ( temp1 == null ) return false;
+	    		final Image<B> temp1 = getTempImage1( currentDim );
+	    		if ( temp1 == null ) return false;
     		
-    		final Image<B> temp2 = getTempImage2( currentDim );
-    		if ( temp2 == null ) return false;
+	    		final Image<B> temp2 = getTempImage2( currentDim );
+	    		if ( temp2 == null ) return false;
         	
-			final AtomicInteger ai = new AtomicInteger(0);					
-	        final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+				final AtomicInteger ai = new AtomicInteger(0);					
+		        final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
 	        	        
-	        for (int ithread = 0; ithread < threads.length; ++ithread)
-	            threads[ithread] = new Thread(new Runnable()
-	            {
-	                public void run()
-	                {
-	                	// Thread ID
-	                	final int myNumber = ai.getAndIncrement();
+		        for (int ithread = 0; ithread < threads.length; ++ithread)
+		            threads[ithread] = new Thread(new Runnable()
+		            {
+		                public void run()
+		                {
+		                	// Thread ID
+		                	final int myNumber = ai.getAndIncrement();
 
-	                	// get chunk of pixels to process
-	                	final Chunk myChunk = threadChunks.get( myNumber );
+		                	// get chunk of pixels to process
+		                	final Chunk myChunk = threadChunks.get( myNumber );
 
-	                	final LocalizableByDimCursor<B> inputIterator = getInputIterator( temp1, temp2, currentDim );
-	                	final LocalizableCursor<B> outputIterator = getOutputIterator( temp1, temp2, currentDim );
+		                	final LocalizableByDimCursor<B> inputIterator = getInputIterator( temp1, temp2, currentDim );
+		                	final LocalizableCursor<B> outputIterator = getOutputIterator( temp1, temp2, currentDim );
 	                		                	
-	                    // convolve the image in the current dimension using the given cursors
-	                    convolveDim( inputIterator, outputIterator, currentDim, myChunk.getStartPosition(), myChunk.getLoopSize() );
+		                    // convolve the image in the current dimension using the given cursors
+		                    convolveDim( inputIterator, outputIterator, currentDim, myChunk.getStartPosition(), myChunk.getLoopSize() );
 		                
-		                inputIterator.close();
-		                outputIterator.close();		               
-	                }
-	            });
-	        SimpleMultiThreading.startAndJoin(threads);
-        }
+			                inputIterator.close();
+			                outputIterator.close();		               
+		                }
+		            });
+		        SimpleMultiThreading.startAndJoin(threads);
+	        }
 
-        // get output image and close the temporary ones if appropriate
-		convolved = getConvolvedImage();
+	        // get output image and close the temporary ones if appropriate
+			metrics.start( "output" );
+			convolved = getConvolvedImage();
 		
-        processingTime = System.currentTimeMillis() - startTime;
+	        processingTime = System.currentTimeMillis() - startTime;
         
-        return true;
+	        return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
 	}
 	
 	protected void convolveDim( final LocalizableByDimCursor<B> inputIterator, final LocalizableCursor<B> outputIterator, final int currentDim, final long startPos, final long loopSize )
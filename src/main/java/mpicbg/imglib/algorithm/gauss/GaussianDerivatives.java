@@ -0,0 +1,434 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.algorithm.Benchmark;
+import mpicbg.imglib.algorithm.MultiThreaded;
+import mpicbg.imglib.algorithm.OutputAlgorithm;
+import mpicbg.imglib.algorithm.metrics.Measurable;
+import mpicbg.imglib.algorithm.metrics.Metrics;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.multithreading.Chunk;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+import mpicbg.imglib.util.Util;
+
+/**
+ * Computes the Gaussian-smoothed gradient and Hessian of an image in one set of separable passes.
+ * The result is a {@link FloatType} image with one more dimension than the input, the channels: first 
+ * the n components of the gradient, then the upper triangle of the Hessian row by row, 
+ * (0,0), (0,1), ..., (0,n-1), (1,1), ... (see {@link #getGradientChannel(int)} and 
+ * {@link #getHessianChannel(int, int)}).
+ * 
+ * Every component is a separable filter, along each dimension either the Gaussian, its first or its 
+ * second derivative. The derivative kernels are the Gaussian kernel convolved with the central differences
+ * [1 0 -1]/2 and [1 -2 1], i.e. the result is the same as blurring followed by finite differences.
+ * The passes go dimension by dimension, components that apply the same filters in the dimensions 
+ * already processed share one line read and one filter evaluation, e.g. in 3d the first pass reads 
+ * every line of the input once and computes the smoothed, first and second derivative line from it. 
+ * All intermediate results are stored in the channels of the output, no temporary images are needed.
+ * 
+ * The image is extended by mirroring at the borders.
+ */
+public class GaussianDerivatives< T extends RealType<T> > implements MultiThreaded, OutputAlgorithm<FloatType>, Benchmark, Measurable
+{
+	final Image<T> image;
+	final int numDimensions;
+	final double[] sigma;
+	
+	/* the Gaussian, first and second derivative kernel for each dimension */
+	final double[][][] kernel;
+	
+	boolean computeGradient = true, computeHessian = true;
+	
+	Image<FloatType> derivatives;
+	
+	long processingTime;
+	Metrics metrics = null;
+	int numThreads;
+	String errorMessage = "";
+	
+	public GaussianDerivatives( final Image<T> image, final double[] sigma )
+	{
+		this.image = image;
+		this.numDimensions = image.getNumDimensions();
+		this.sigma = sigma.clone();
+		this.kernel = new double[ numDimensions ][][];
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			kernel[ d ] = createDerivativeKernels( sigma[ d ] );
+		
+		this.processingTime = -1;
+		setNumThreads();
+	}
+	
+	public GaussianDerivatives( final Image<T> image, final double sigma )
+	{
+		this( image, GaussianConvolution3.createArray( image, sigma ) );
+	}
+	
+	/**
+	 * Creates the Gaussian kernel and its first and second derivative with the same size, 
+	 * two entries longer than {@link Util#createGaussianKernel1DDouble(double, boolean)}. 
+	 * They are applied as a correlation, the first derivative is (f(x+1) - f(x-1))/2 and 
+	 * the second f(x+1) - 2f(x) + f(x-1) of the blurred f.
+	 * 
+	 * @param sigma - the sigma of the Gaussian
+	 * @return - { gaussian, first derivative, second derivative } 
+	 */
+	public static double[][] createDerivativeKernels( final double sigma )
+	{
+		final double[] g = Util.createGaussianKernel1DDouble( sigma, true );
+		final int size = g.length + 2;
+		final double[][] kernels = new double[ 3 ][ size ];
+		
+		for ( int j = 0; j < size; ++j )
+		{
+			// the gaussian centered at one pixel to the right, at the center and one to the left
+			final double right = j >= 2 ? g[ j - 2 ] : 0;
+			final double center = j >= 1 && j <= g.length ? g[ j - 1 ] : 0;
+			final double left = j < g.length ? g[ j ] : 0;
+			
+			kernels[ 0 ][ j ] = center;
+			kernels[ 1 ][ j ] = 0.5 * ( right - left );
+			kernels[ 2 ][ j ] = right - 2 * center + left;
+		}
+		
+		return kernels;
+	}
+	
+	public void setComputeGradient( final boolean computeGradient ) { this.computeGradient = computeGradient; }
+	public void setComputeHessian( final boolean computeHessian ) { this.computeHessian = computeHessian; }
+	public boolean getComputeGradient() { return computeGradient; }
+	public boolean getComputeHessian() { return computeHessian; }
+	public double[] getSigma() { return sigma.clone(); }
+	
+	/**
+	 * @return - the number of channels of the result
+	 */
+	public int getNumChannels()
+	{
+		return ( computeGradient ? numDimensions : 0 ) + ( computeHessian ? numDimensions * ( numDimensions + 1 ) / 2 : 0 );
+	}
+	
+	/**
+	 * @param d - the dimension
+	 * @return - the channel of the result containing the derivative along d, -1 if the gradient is not computed
+	 */
+	public int getGradientChannel( final int d )
+	{
+		return computeGradient ? d : -1;
+	}
+	
+	/**
+	 * @param d1 - the first dimension
+	 * @param d2 - the second dimension
+	 * @return - the channel of the result containing the second derivative along d1 and d2, -1 if the Hessian is not computed
+	 */
+	public int getHessianChannel( final int d1, final int d2 )
+	{
+		if ( !computeHessian )
+			return -1;
+		
+		final int i = Math.min( d1, d2 );
+		final int j = Math.max( d1, d2 );
+		
+		int channel = computeGradient ? numDimensions : 0;
+		
+		for ( int a = 0; a < i; ++a )
+			channel += numDimensions - a;
+		
+		return channel + j - i;
+	}
+	
+	/**
+	 * @return - for each channel the order of the derivative in each dimension
+	 */
+	protected int[][] getDerivativeOrders()
+	{
+		final int[][] orders = new int[ getNumChannels() ][ numDimensions ];
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			if ( computeGradient )
+				orders[ getGradientChannel( d ) ][ d ] = 1;
+		
+		for ( int i = 0; i < numDimensions; ++i )
+			for ( int j = i; j < numDimensions && computeHessian; ++j )
+			{
+				++orders[ getHessianChannel( i, j ) ][ i ];
+				++orders[ getHessianChannel( i, j ) ][ j ];
+			}
+		
+		return orders;
+	}
+	
+	@Override
+	public boolean process()
+	{
+		final long startTime = System.currentTimeMillis();
+		metrics = new Metrics( getClass().getSimpleName(), image, getNumThreads() );
+		
+		try
+		{
+			final int numChannels = getNumChannels();
+			final int[][] orders = getDerivativeOrders();
+		
+			final int[] size = Arrays.copyOf( image.getDimensions(), numDimensions + 1 );
+			size[ numDimensions ] = numChannels;
+		
+			derivatives = new ImageFactory<FloatType>( new FloatType(), image.getContainerFactory() ).createImage( size, image.getName() + " derivatives" );
+		
+			if ( derivatives == null )
+			{
+				errorMessage = "GaussianDerivatives: cannot create the output image.";
+				return false;
+			}
+		
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				metrics.start( "dimension " + d );
+			
+				// all channels that applied the same filters in the dimensions 0...d-1 currently contain the
+				// same data, they form a group that is read once from its first channel (or the image in the first pass)
+				final ArrayList<int[]> prefixes = new ArrayList<int[]>();
+				final ArrayList<ArrayList<Integer>> groups = new ArrayList<ArrayList<Integer>>();
+			
+				for ( int c = 0; c < numChannels; ++c )
+				{
+					final int[] prefix = Arrays.copyOf( orders[ c ], d );
+					int g = 0;
+				
+					while ( g < prefixes.size() && !Arrays.equals( prefixes.get( g ), prefix ) )
+						++g;
+				
+					if ( g == prefixes.size() )
+					{
+						prefixes.add( prefix );
+						groups.add( new ArrayList<Integer>() );
+					}
+				
+					groups.get( g ).add( c );
+				}
+			
+				final int[][] channels = new int[ groups.size() ][];
+			
+				for ( int g = 0; g < channels.length; ++g )
+				{
+					channels[ g ] = new int[ groups.get( g ).size() ];
+				
+					for ( int i = 0; i < channels[ g ].length; ++i )
+						channels[ g ][ i ] = groups.get( g ).get( i );
+				}
+
+				filterDim( d, channels, orders );
+			}
+
+			processingTime = System.currentTimeMillis() - startTime;
+		
+			return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
+	}
+	
+	/**
+	 * Filters all lines along one dimension
+	 * 
+	 * @param dim - the dimension
+	 * @param channels - the groups of channels, each group is read from the image (dim == 0) or from its first channel 
+	 * @param orders - the derivative orders of all channels
+	 */
+	protected void filterDim( final int dim, final int[][] channels, final int[][] orders )
+	{
+		final int[] dimensions = image.getDimensions();
+		final int length = dimensions[ dim ];
+		final long numLines = image.getNumPixels() / length;
+		final double[][] kernels = kernel[ dim ];
+		final int border = kernels[ 0 ].length / 2;
+		
+		final Vector<Chunk> threadChunks = SimpleMultiThreading.divideIntoChunks( numLines, numThreads );
+		
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final Chunk myChunk = threadChunks.get( ai.getAndIncrement() );
+					
+					if ( myChunk.getLoopSize() == 0 )
+						return;
+					
+					final double[] in = new double[ length + 2 * border ];
+					final double[][] out = new double[ 3 ][ length ];
+					
+					// which filters are needed by each group
+					final boolean[][] needed = new boolean[ channels.length ][ 3 ];
+					
+					for ( int g = 0; g < channels.length; ++g )
+						for ( final int c : channels[ g ] )
+							needed[ g ][ orders[ c ][ dim ] ] = true;
+					
+					final LocalizableByDimCursor<T> imageCursor = image.createLocalizableByDimCursor();
+					final LocalizableByDimCursor<T> imageBorderCursor = image.createLocalizableByDimCursor( new OutOfBoundsStrategyMirrorFactory<T>() );
+					final LocalizableByDimCursor<FloatType> readCursor = derivatives.createLocalizableByDimCursor();
+					final LocalizableByDimCursor<FloatType> readBorderCursor = derivatives.createLocalizableByDimCursor( new OutOfBoundsStrategyMirrorFactory<FloatType>() );
+					final LocalizableByDimCursor<FloatType> writeCursor = derivatives.createLocalizableByDimCursor();
+					
+					// the position of the first pixel of the first line of this chunk in the image, 
+					// and the same position in a channel of the output
+					final int[] position = new int[ numDimensions ];
+					final int[] channelPosition = new int[ numDimensions + 1 ];
+					long index = myChunk.getStartPosition();
+					
+					for ( int d = 0; d < numDimensions; ++d )
+						if ( d != dim )
+						{
+							position[ d ] = (int)( index % dimensions[ d ] );
+							index /= dimensions[ d ];
+						}
+					
+					for ( long l = 0; l < myChunk.getLoopSize(); ++l )
+					{
+						if ( l > 0 )
+							SeparableConvolution.nextLine( position, dimensions, dim );
+						
+						System.arraycopy( position, 0, channelPosition, 0, numDimensions );
+						
+						for ( int g = 0; g < channels.length; ++g )
+						{
+							if ( dim == 0 )
+							{
+								SeparableConvolution.readLine( imageCursor, imageBorderCursor, position, dim, length, border, in );
+							}
+							else
+							{
+								channelPosition[ numDimensions ] = channels[ g ][ 0 ];
+								SeparableConvolution.readLine( readCursor, readBorderCursor, channelPosition, dim, length, border, in );
+							}
+							
+							for ( int o = 0; o < 3; ++o )
+								if ( needed[ g ][ o ] )
+									correlate( in, out[ o ], kernels[ o ], length );
+							
+							for ( final int c : channels[ g ] )
+							{
+								channelPosition[ numDimensions ] = c;
+								SeparableConvolution.writeLine( writeCursor, channelPosition, dim, length, out[ orders[ c ][ dim ] ] );
+							}
+						}
+					}
+					
+					imageCursor.close();
+					imageBorderCursor.close();
+					readCursor.close();
+					readBorderCursor.close();
+					writeCursor.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/**
+	 * Correlates a line with a kernel, output[ x ] = sum_j kernel[ j ] * input[ x + j ]
+	 */
+	final protected static void correlate( final double[] input, final double[] output, final double[] kernel, final int length )
+	{
+		final double k0 = kernel[ 0 ];
+		
+		for ( int x = 0; x < length; ++x )
+			output[ x ] = k0 * input[ x ];
+		
+		for ( int j = 1; j < kernel.length; ++j )
+		{
+			final double kj = kernel[ j ];
+			
+			if ( kj == 0 )
+				continue;
+			
+			for ( int x = 0; x < length; ++x )
+				output[ x ] += kj * input[ x + j ];
+		}
+	}
+	
+	@Override
+	public boolean checkInput()
+	{
+		if ( errorMessage.length() > 0 )
+		{
+			return false;
+		}
+		else if ( image == null )
+		{
+			errorMessage = "GaussianDerivatives: [Image<T> img] is null.";
+			return false;
+		}
+		else if ( !computeGradient && !computeHessian )
+		{
+			errorMessage = "GaussianDerivatives: neither gradient nor Hessian are supposed to be computed.";
+			return false;
+		}
+		else
+			return true;
+	}
+	
+	@Override
+	public Image<FloatType> getResult() { return derivatives; }
+
+	@Override
+	public String getErrorMessage() { return errorMessage; }
+
+	@Override
+	public long getProcessingTime() { return processingTime; }
+	
+	@Override
+	public Metrics getMetrics() { return metrics; }
+
+	@Override
+	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
+
+	@Override
+	public void setNumThreads( final int numThreads ) { this.numThreads = numThreads; }
+
+	@Override
+	public int getNumThreads() { return numThreads; }
+}
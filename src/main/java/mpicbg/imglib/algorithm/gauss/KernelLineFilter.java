@@ -0,0 +1,90 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+/**
+ * Convolves a line with a symmetric kernel of odd size like the ones created by 
+ * {@link mpicbg.imglib.util.Util#createGaussianKernel1DDouble(double, boolean)}. The symmetry is used
+ * to halve the number of multiplications: the two pixels sharing a kernel entry are added first and 
+ * multiplied once, starting from the center. The result therefore differs in the last bits from a 
+ * sum of kernel[ i ] * input[ x + i ] in kernel order as computed by {@link GaussianConvolution3}.
+ */
+public class KernelLineFilter implements LineFilter
+{
+	/**
+	 * The number of pixels that are processed at once for each kernel entry
+	 */
+	final static int BLOCK_SIZE = 1024;
+	
+	final double[] kernel;
+	final int kernelSizeHalf;
+	
+	/**
+	 * @param kernel - the kernel, it must have an odd size and kernel[ i ] == kernel[ kernel.length - 1 - i ]
+	 */
+	public KernelLineFilter( final double[] kernel )
+	{
+		this.kernel = kernel.clone();
+		this.kernelSizeHalf = kernel.length / 2;
+	}
+	
+	public double[] getKernel() { return kernel.clone(); }
+	
+	@Override
+	public int getBorder() { return kernelSizeHalf; }
+
+	@Override
+	public void filter( final double[] input, final double[] output, final int length )
+	{
+		final double[] k = kernel;
+		final int r = kernelSizeHalf;
+		final double center = k[ r ];
+		
+		// The kernel loop is outside and the pixel loop inside, so the inner loop is a plain streaming
+		// loop over arrays that the JIT compiles into SIMD instructions, several output pixels per 
+		// instruction. The order of the additions per pixel is the same as with the kernel loop inside.
+		// The line is processed in blocks so that the block of the output stays in the cache.
+		for ( int start = 0; start < length; start += BLOCK_SIZE )
+		{
+			final int end = Math.min( length, start + BLOCK_SIZE );
+			
+			// the center of the kernel is at x + r in the input
+			for ( int x = start; x < end; ++x )
+				output[ x ] = center * input[ x + r ];
+			
+			for ( int i = 1; i <= r; ++i )
+			{
+				final double ki = k[ r + i ];
+				final int left = r - i;
+				final int right = r + i;
+				
+				for ( int x = start; x < end; ++x )
+					output[ x ] += ki * ( input[ x + left ] + input[ x + right ] );
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+/**
+ * A one-dimensional filter applied by {@link SeparableConvolution} to every line of an image 
+ * along one dimension. The line is copied into a buffer that is extended by {@link #getBorder()}
+ * pixels on both sides using the {@link mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory}
+ * of the image.
+ * 
+ * The same instance is used by all threads at the same time, so implementations must not store
+ * per-line state in fields.
+ */
+public interface LineFilter 
+{
+	/**
+	 * @return - the number of pixels needed on each side of the line
+	 */
+	public int getBorder();
+	
+	/**
+	 * Filters one line
+	 * 
+	 * @param input - the line, input[ getBorder() ] is the first pixel of the line, the array has at least length + 2*getBorder() entries,
+	 *                it may be overwritten by the filter
+	 * @param output - receives the filtered line, output[ 0 ] is the first pixel of the line
+	 * @param length - the length of the line
+	 */
+	public void filter( final double[] input, final double[] output, final int length );
+}
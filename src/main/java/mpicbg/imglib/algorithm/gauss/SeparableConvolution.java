@@ -0,0 +1,492 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+import java.util.ArrayList;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.container.array.Array;
+import mpicbg.imglib.container.basictypecontainer.array.DoubleArray;
+import mpicbg.imglib.container.basictypecontainer.array.FloatArray;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.multithreading.Chunk;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
+import mpicbg.imglib.type.numeric.NumericType;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.real.DoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+/**
+ * Applies a {@link LineFilter} to all lines of an {@link Image} along one dimension. Every line is
+ * read once into a primitive buffer (extended at both ends by the {@link OutOfBoundsStrategyFactory}),
+ * filtered and written into the same line of the target image. This needs only one cursor movement 
+ * per pixel instead of one per pixel and kernel entry, and works for any dimensionality and any
+ * container that provides {@link LocalizableByDimCursor}s (Array, Planar, Cell, ...).
+ * 
+ * As a line is completely buffered before it is written, the source and the target can be the 
+ * same image, i.e. a separable filter needs only one output image: the first dimension reads 
+ * the input and writes the output, all others work in-place on the output.
+ * 
+ * For {@link RealType}s the lines are buffered as double[] and filtered by a {@link LineFilter}, for
+ * all other {@link NumericType}s they are buffered as arrays of the type and convolved with a kernel.
+ * Lines of {@link FloatType} and {@link DoubleType} images in an {@link Array} container are copied
+ * directly from and to the primitive array, only the border is read with a cursor.
+ * 
+ * The lines are distributed over the threads.
+ */
+public class SeparableConvolution 
+{
+	/**
+	 * Filters all lines of the source along the dimension dim and writes them into the target
+	 * 
+	 * @param source - the input
+	 * @param outOfBoundsFactory - how to extend the lines of the source at their ends
+	 * @param target - the output of the same size, may be the source
+	 * @param dim - the dimension of the lines
+	 * @param filter - the {@link LineFilter}
+	 * @param numThreads - the number of threads
+	 */
+	public static <S extends RealType<S>, T extends RealType<T>> void convolve( final Image<S> source, final OutOfBoundsStrategyFactory<S> outOfBoundsFactory, 
+			final Image<T> target, final int dim, final LineFilter filter, final int numThreads )
+	{
+		final int numDimensions = source.getNumDimensions();
+		final int[] dimensions = source.getDimensions();
+		final int length = dimensions[ dim ];
+		final long numLines = source.getNumPixels() / length;
+		
+		final Vector<Chunk> threadChunks = SimpleMultiThreading.divideIntoChunks( numLines, numThreads );
+		
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final Chunk myChunk = threadChunks.get( ai.getAndIncrement() );
+					
+					if ( myChunk.getLoopSize() == 0 )
+						return;
+					
+					final int border = filter.getBorder();
+					final double[] in = new double[ length + 2 * border ];
+					final double[] out = new double[ length ];
+					
+					final LocalizableByDimCursor<S> inCursor = source.createLocalizableByDimCursor();
+					final LocalizableByDimCursor<S> borderCursor = border > 0 ? source.createLocalizableByDimCursor( outOfBoundsFactory ) : null;
+					final LocalizableByDimCursor<T> outCursor = target.createLocalizableByDimCursor();
+					
+					// float[] or double[] if the pixels can be accessed directly, otherwise null
+					final Object inData = getPrimitiveArray( source );
+					final Object outData = getPrimitiveArray( target );
+					final int[] steps = Array.createAllocationSteps( dimensions );
+					final int step = steps[ dim ];
+					
+					// the position of the first pixel of the first line of this chunk
+					final int[] position = new int[ numDimensions ];
+					long index = myChunk.getStartPosition();
+					
+					for ( int d = 0; d < numDimensions; ++d )
+						if ( d != dim )
+						{
+							position[ d ] = (int)( index % dimensions[ d ] );
+							index /= dimensions[ d ];
+						}
+					
+					for ( long l = 0; l < myChunk.getLoopSize(); ++l )
+					{
+						if ( l > 0 )
+							nextLine( position, dimensions, dim );
+						
+						if ( inData == null )
+						{
+							readLine( inCursor, borderCursor, position, dim, length, border, in );
+						}
+						else
+						{
+							readLine( inData, getIndex( position, steps ), step, length, border, in );
+							readBorder( borderCursor, position, dim, length, border, in );
+						}
+						
+						filter.filter( in, out, length );
+						
+						if ( outData == null )
+							writeLine( outCursor, position, dim, length, out );
+						else
+							writeLine( outData, getIndex( position, steps ), step, length, out );
+					}
+					
+					inCursor.close();
+					outCursor.close();
+					
+					if ( borderCursor != null )
+						borderCursor.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/**
+	 * Convolves all lines of the source along the dimension dim with a symmetric kernel and writes them into 
+	 * the target, for {@link NumericType}s that are not {@link RealType}s (e.g. complex numbers). The 
+	 * per-thread line buffers are instances of the type.
+	 * 
+	 * @param source - the input
+	 * @param outOfBoundsFactory - how to extend the lines of the source at their ends
+	 * @param target - the output of the same size, may be the source
+	 * @param dim - the dimension of the lines
+	 * @param kernel - the kernel, odd size
+	 * @param numThreads - the number of threads
+	 */
+	public static <T extends NumericType<T>> void convolve( final Image<T> source, final OutOfBoundsStrategyFactory<T> outOfBoundsFactory, 
+			final Image<T> target, final int dim, final double[] kernel, final int numThreads )
+	{
+		final int numDimensions = source.getNumDimensions();
+		final int[] dimensions = source.getDimensions();
+		final int length = dimensions[ dim ];
+		final long numLines = source.getNumPixels() / length;
+		
+		final Vector<Chunk> threadChunks = SimpleMultiThreading.divideIntoChunks( numLines, numThreads );
+		
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final Chunk myChunk = threadChunks.get( ai.getAndIncrement() );
+					
+					if ( myChunk.getLoopSize() == 0 )
+						return;
+					
+					final int filterSize = kernel.length;
+					final int border = filterSize / 2;
+					
+					final LocalizableByDimCursor<T> inCursor = source.createLocalizableByDimCursor();
+					final LocalizableByDimCursor<T> borderCursor = border > 0 ? source.createLocalizableByDimCursor( outOfBoundsFactory ) : null;
+					final LocalizableByDimCursor<T> outCursor = target.createLocalizableByDimCursor();
+					
+					final T sum = inCursor.getType().createVariable();
+					final T tmp = inCursor.getType().createVariable();
+					
+					final ArrayList<T> in = new ArrayList<T>( length + 2 * border );
+					final ArrayList<T> out = new ArrayList<T>( length );
+					
+					for ( int x = 0; x < length + 2 * border; ++x )
+						in.add( sum.createVariable() );
+					
+					for ( int x = 0; x < length; ++x )
+						out.add( sum.createVariable() );
+
+					// the position of the first pixel of the first line of this chunk
+					final int[] position = new int[ numDimensions ];
+					long index = myChunk.getStartPosition();
+					
+					for ( int d = 0; d < numDimensions; ++d )
+						if ( d != dim )
+						{
+							position[ d ] = (int)( index % dimensions[ d ] );
+							index /= dimensions[ d ];
+						}
+					
+					for ( long l = 0; l < myChunk.getLoopSize(); ++l )
+					{
+						if ( l > 0 )
+							nextLine( position, dimensions, dim );
+						
+						readLine( inCursor, borderCursor, position, dim, length, border, in );
+
+						for ( int x = 0; x < length; ++x )
+						{
+							sum.setZero();
+							
+							for ( int f = 0; f < filterSize; ++f )
+							{
+								tmp.set( in.get( x + f ) );
+								tmp.mul( kernel[ f ] );
+								sum.add( tmp );
+							}
+							
+							out.get( x ).set( sum );
+						}
+						
+						writeLine( outCursor, position, dim, length, out );
+					}
+					
+					inCursor.close();
+					outCursor.close();
+					
+					if ( borderCursor != null )
+						borderCursor.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+	
+	/**
+	 * Moves the position to the start of the next line along dim
+	 */
+	final protected static void nextLine( final int[] position, final int[] dimensions, final int dim )
+	{
+		for ( int d = 0; d < position.length; ++d )
+		{
+			if ( d == dim )
+				continue;
+			
+			if ( ++position[ d ] < dimensions[ d ] )
+				return;
+			
+			position[ d ] = 0;
+		}
+	}
+	
+	/**
+	 * Copies the line starting at position into buffer[ border ... border + length - 1 ] and
+	 * the out of bounds pixels on both sides into the remaining entries
+	 */
+	final protected static <S extends RealType<S>> void readLine( final LocalizableByDimCursor<S> cursor, final LocalizableByDimCursor<S> borderCursor, 
+			final int[] position, final int dim, final int length, final int border, final double[] buffer )
+	{
+		final S type = cursor.getType();
+		
+		position[ dim ] = 0;
+		cursor.setPosition( position );
+		
+		for ( int x = 0; x < length - 1; ++x )
+		{
+			buffer[ border + x ] = type.getRealDouble();
+			cursor.fwd( dim );
+		}
+		buffer[ border + length - 1 ] = type.getRealDouble();
+		
+		readBorder( borderCursor, position, dim, length, border, buffer );
+	}
+
+	/**
+	 * Copies the out of bounds pixels on both sides of the line starting at position into
+	 * buffer[ 0 ... border - 1 ] and buffer[ border + length ... 2 * border + length - 1 ]
+	 */
+	final protected static <S extends RealType<S>> void readBorder( final LocalizableByDimCursor<S> borderCursor, 
+			final int[] position, final int dim, final int length, final int border, final double[] buffer )
+	{
+		if ( border > 0 )
+		{
+			// the type of an out of bounds cursor depends on its position
+			position[ dim ] = -border;
+			borderCursor.setPosition( position );
+			
+			for ( int x = 0; x < border - 1; ++x )
+			{
+				buffer[ x ] = borderCursor.getType().getRealDouble();
+				borderCursor.fwd( dim );
+			}
+			buffer[ border - 1 ] = borderCursor.getType().getRealDouble();
+
+			position[ dim ] = length;
+			borderCursor.setPosition( position );
+			
+			for ( int x = 0; x < border - 1; ++x )
+			{
+				buffer[ border + length + x ] = borderCursor.getType().getRealDouble();
+				borderCursor.fwd( dim );
+			}
+			buffer[ 2 * border + length - 1 ] = borderCursor.getType().getRealDouble();
+		}
+		
+		position[ dim ] = 0;
+	}
+
+	/**
+	 * Copies the line starting at position into buffer[ border ... border + length - 1 ] and
+	 * the out of bounds pixels on both sides into the remaining entries
+	 */
+	final protected static <T extends NumericType<T>> void readLine( final LocalizableByDimCursor<T> cursor, final LocalizableByDimCursor<T> borderCursor, 
+			final int[] position, final int dim, final int length, final int border, final ArrayList<T> buffer )
+	{
+		final T type = cursor.getType();
+		
+		position[ dim ] = 0;
+		cursor.setPosition( position );
+		
+		for ( int x = 0; x < length - 1; ++x )
+		{
+			buffer.get( border + x ).set( type );
+			cursor.fwd( dim );
+		}
+		buffer.get( border + length - 1 ).set( type );
+		
+		if ( border > 0 )
+		{
+			// the type of an out of bounds cursor depends on its position
+			position[ dim ] = -border;
+			borderCursor.setPosition( position );
+			
+			for ( int x = 0; x < border - 1; ++x )
+			{
+				buffer.get( x ).set( borderCursor.getType() );
+				borderCursor.fwd( dim );
+			}
+			buffer.get( border - 1 ).set( borderCursor.getType() );
+
+			position[ dim ] = length;
+			borderCursor.setPosition( position );
+			
+			for ( int x = 0; x < border - 1; ++x )
+			{
+				buffer.get( border + length + x ).set( borderCursor.getType() );
+				borderCursor.fwd( dim );
+			}
+			buffer.get( 2 * border + length - 1 ).set( borderCursor.getType() );
+		}
+		
+		position[ dim ] = 0;
+	}
+
+	/**
+	 * Copies length pixels of a float[] or double[], starting at index and step apart, 
+	 * into buffer[ border ... border + length - 1 ]
+	 */
+	final protected static void readLine( final Object data, final int index, final int step, final int length, final int border, final double[] buffer )
+	{
+		if ( data instanceof float[] )
+		{
+			final float[] array = (float[])data;
+			
+			for ( int x = 0, i = index; x < length; ++x, i += step )
+				buffer[ border + x ] = array[ i ];
+		}
+		else
+		{
+			final double[] array = (double[])data;
+			
+			if ( step == 1 )
+				System.arraycopy( array, index, buffer, border, length );
+			else
+				for ( int x = 0, i = index; x < length; ++x, i += step )
+					buffer[ border + x ] = array[ i ];
+		}
+	}
+
+	/**
+	 * Writes buffer[ 0 ... length - 1 ] into a float[] or double[], starting at index and step apart
+	 */
+	final protected static void writeLine( final Object data, final int index, final int step, final int length, final double[] buffer )
+	{
+		if ( data instanceof float[] )
+		{
+			final float[] array = (float[])data;
+			
+			for ( int x = 0, i = index; x < length; ++x, i += step )
+				array[ i ] = (float)buffer[ x ];
+		}
+		else
+		{
+			final double[] array = (double[])data;
+			
+			if ( step == 1 )
+				System.arraycopy( buffer, 0, array, index, length );
+			else
+				for ( int x = 0, i = index; x < length; ++x, i += step )
+					array[ i ] = buffer[ x ];
+		}
+	}
+	
+	/**
+	 * @return the index of position in an {@link Array} with the given steps
+	 */
+	final protected static int getIndex( final int[] position, final int[] steps )
+	{
+		int index = 0;
+		
+		for ( int d = 0; d < position.length; ++d )
+			index += position[ d ] * steps[ d ];
+		
+		return index;
+	}
+	
+	/**
+	 * @return the float[] of a {@link FloatType} or the double[] of a {@link DoubleType} image stored 
+	 * in an {@link Array}, null for all other images
+	 */
+	protected static Object getPrimitiveArray( final Image<?> image )
+	{
+		if ( !Array.class.isInstance( image.getContainer() ) )
+			return null;
+		
+		final Class<?> typeClass = image.createType().getClass();
+		final Object data = ( (Array<?,?>)image.getContainer() ).update( null );
+		
+		if ( typeClass == FloatType.class && data instanceof FloatArray )
+			return ( (FloatArray)data ).getCurrentStorageArray();
+		else if ( typeClass == DoubleType.class && data instanceof DoubleArray )
+			return ( (DoubleArray)data ).getCurrentStorageArray();
+		else
+			return null;
+	}
+
+	/**
+	 * Writes buffer[ 0 ... length - 1 ] into the line starting at position
+	 */
+	final protected static <T extends RealType<T>> void writeLine( final LocalizableByDimCursor<T> cursor, final int[] position, final int dim, final int length, final double[] buffer )
+	{
+		final T type = cursor.getType();
+		
+		cursor.setPosition( position );
+		
+		for ( int x = 0; x < length - 1; ++x )
+		{
+			type.setReal( buffer[ x ] );
+			cursor.fwd( dim );
+		}
+		type.setReal( buffer[ length - 1 ] );
+	}
+
+	/**
+	 * Writes buffer[ 0 ... length - 1 ] into the line starting at position
+	 */
+	final protected static <T extends NumericType<T>> void writeLine( final LocalizableByDimCursor<T> cursor, final int[] position, final int dim, final int length, final ArrayList<T> buffer )
+	{
+		final T type = cursor.getType();
+		
+		cursor.setPosition( position );
+		
+		for ( int x = 0; x < length - 1; ++x )
+		{
+			type.set( buffer.get( x ) );
+			cursor.fwd( dim );
+		}
+		type.set( buffer.get( length - 1 ) );
+	}
+}
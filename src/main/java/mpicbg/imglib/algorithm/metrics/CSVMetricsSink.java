@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.metrics;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Writes one row per phase of every algorithm run plus a row "total" for the complete run. 
+ * The columns are
+ * <pre>
+ * algorithm,phase,time_ms,pixels,pixels_per_second,temporary_bytes,threads
+ * </pre>
+ * where the number of pixels and threads are the ones of the complete run.
+ */
+public class CSVMetricsSink implements MetricsSink
+{
+	public static final String HEADER = "algorithm,phase,time_ms,pixels,pixels_per_second,temporary_bytes,threads";
+	
+	final PrintWriter out;
+	
+	/**
+	 * @param out - where to write the rows to, it is flushed after every algorithm run
+	 * @param writeHeader - write the column names as first line
+	 */
+	public CSVMetricsSink( final Writer out, final boolean writeHeader )
+	{
+		this.out = new PrintWriter( out );
+		
+		if ( writeHeader )
+		{
+			this.out.println( HEADER );
+			this.out.flush();
+		}
+	}
+	
+	public CSVMetricsSink( final Writer out ) { this( out, true ); }
+	
+	@Override
+	public synchronized void report( final Metrics metrics ) 
+	{
+		for ( final String phase : metrics.getPhases() )
+			writeRow( metrics, phase, metrics.getPhaseTime( phase ) );
+		
+		writeRow( metrics, "total", metrics.getProcessingTime() );
+		
+		out.flush();
+	}
+	
+	protected void writeRow( final Metrics metrics, final String phase, final double timeMs )
+	{
+		out.println( metrics.getAlgorithm() + "," + phase + "," + timeMs + "," + metrics.getNumPixels() + "," + 
+		             metrics.getThroughput() + "," + metrics.getTemporaryBytes() + "," + metrics.getNumThreads() );
+	}
+	
+	public void close() { out.close(); }
+}
@@ -0,0 +1,277 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import mpicbg.imglib.container.Container;
+import mpicbg.imglib.container.DirectAccessContainer;
+import mpicbg.imglib.container.DirectAccessContainerFactory;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.util.FlightRecorder;
+
+/**
+ * The metrics of one algorithm run: the time spent in each phase, the number of pixels processed,
+ * the bytes allocated for temporary images and the number of threads used.
+ * 
+ * An algorithm creates a new instance at the beginning of process(), calls {@link #start(String)} 
+ * at the beginning of each phase and {@link #stop()} at the end of the run, which hands the metrics
+ * to all {@link MetricsSink}s registered with {@link #addSink(MetricsSink)}. A phase that is started
+ * several times accumulates its time. Every run is also recorded as a {@link FlightRecorder#ALGORITHM}
+ * event if a Flight Recorder recording is active.
+ */
+public class Metrics 
+{
+	final static CopyOnWriteArrayList<MetricsSink> sinks = new CopyOnWriteArrayList<MetricsSink>();
+	
+	/**
+	 * Registers a {@link MetricsSink} that receives the {@link Metrics} of all algorithm runs
+	 * 
+	 * @param sink - the {@link MetricsSink}
+	 */
+	public static void addSink( final MetricsSink sink ) { sinks.add( sink ); }
+	public static void removeSink( final MetricsSink sink ) { sinks.remove( sink ); }
+	public static void removeAllSinks() { sinks.clear(); }
+	
+	final String algorithm;
+	final long numPixels;
+	final int numThreads;
+	
+	// phase name -> time in nanoseconds, in the order they were started
+	final LinkedHashMap<String, Long> phases = new LinkedHashMap<String, Long>();
+	
+	final long startTime;
+	long totalTime = -1, temporaryBytes = 0;
+	
+	String currentPhase = null;
+	long currentPhaseStart;
+	
+	final FlightRecorder.Event event;
+	
+	/**
+	 * Creates the metrics of a run and starts measuring the total time
+	 * 
+	 * @param algorithm - the name of the algorithm
+	 * @param numPixels - the number of pixels processed in this run
+	 * @param numThreads - the number of threads used
+	 */
+	public Metrics( final String algorithm, final long numPixels, final int numThreads )
+	{
+		this( algorithm, null, numPixels, numThreads );
+	}
+	
+	/**
+	 * Creates the metrics of a run on an {@link Image} and starts measuring the total time
+	 * 
+	 * @param algorithm - the name of the algorithm
+	 * @param image - the input of the algorithm, all its pixels are processed
+	 * @param numThreads - the number of threads used
+	 */
+	public Metrics( final String algorithm, final Image<?> image, final int numThreads )
+	{
+		this( algorithm, image, image.getNumPixels(), numThreads );
+	}
+	
+	protected Metrics( final String algorithm, final Image<?> image, final long numPixels, final int numThreads )
+	{
+		this.algorithm = algorithm;
+		this.numPixels = numPixels;
+		this.numThreads = numThreads;
+		
+		this.event = FlightRecorder.ALGORITHM.newEvent();
+		
+		if ( event.isEnabled() )
+		{
+			event.set( 0, algorithm );
+			
+			if ( image != null )
+			{
+				event.set( 1, FlightRecorder.toString( image.getDimensions() ) );
+				event.set( 2, image.createType().getClass().getSimpleName() );
+				event.set( 3, image.getContainer().getClass().getSimpleName() );
+			}
+			
+			event.set( 4, numThreads );
+			event.set( 5, numPixels );
+			event.begin();
+		}
+		
+		this.startTime = System.nanoTime();
+	}
+	
+	/**
+	 * Ends the current phase (if any) and starts a new one
+	 * 
+	 * @param phase - the name of the phase
+	 */
+	public void start( final String phase )
+	{
+		final long time = System.nanoTime();
+		
+		endPhase( time );
+		
+		currentPhase = phase;
+		currentPhaseStart = time;
+	}
+	
+	/**
+	 * Ends the current phase (if any) without starting a new one, the time until the next call
+	 * of {@link #start(String)} is only part of the total time.
+	 */
+	public void end() { endPhase( System.nanoTime() ); }
+	
+	/**
+	 * Ends the current phase and the run and reports the metrics to all registered {@link MetricsSink}s
+	 */
+	public void stop()
+	{
+		final long time = System.nanoTime();
+		
+		endPhase( time );		
+		totalTime = time - startTime;
+		
+		event.commit();
+		
+		for ( final MetricsSink sink : sinks )
+			sink.report( this );
+	}
+	
+	protected void endPhase( final long time )
+	{
+		if ( currentPhase != null )
+		{
+			final Long sum = phases.get( currentPhase );
+			phases.put( currentPhase, ( sum == null ? 0 : sum ) + time - currentPhaseStart );
+			currentPhase = null;
+		}		
+	}
+	
+	/**
+	 * Adds the memory of a temporary {@link Image} allocated during this run
+	 *  
+	 * @param image - the temporary image
+	 */
+	public void addTemporary( final Image<?> image ) { addTemporaryBytes( getNumBytes( image ) ); }
+	
+	public void addTemporaryBytes( final long bytes ) { temporaryBytes += bytes; }
+	
+	public String getAlgorithm() { return algorithm; }
+	public long getNumPixels() { return numPixels; }
+	public int getNumThreads() { return numThreads; }
+	public long getTemporaryBytes() { return temporaryBytes; }
+	
+	/**
+	 * @return - the names of all phases in the order they were started
+	 */
+	public ArrayList<String> getPhases() { return new ArrayList<String>( phases.keySet() ); }
+	
+	/**
+	 * @param phase - the name of the phase
+	 * @return - the time spent in this phase in ms, 0 if it was not run
+	 */
+	public double getPhaseTime( final String phase )
+	{
+		final Long time = phases.get( phase );
+		
+		if ( time == null )
+			return 0;
+		else
+			return time / 1000000.0;
+	}
+	
+	/**
+	 * @return - the time of the complete run in ms, -1 if it did not finish yet
+	 */
+	public double getProcessingTime() 
+	{
+		if ( totalTime < 0 )
+			return -1;
+		else
+			return totalTime / 1000000.0;
+	}
+	
+	/**
+	 * @return - the number of pixels processed per second in the complete run
+	 */
+	public double getThroughput()
+	{
+		if ( totalTime <= 0 )
+			return 0;
+		else
+			return numPixels / ( totalTime / 1000000000.0 );
+	}
+	
+	@Override
+	public String toString()
+	{
+		String out = algorithm + ": " + String.format( "%.1f", getProcessingTime() ) + " ms, " + numPixels + " px, " + 
+		             String.format( "%.2f", getThroughput() / 1000000 ) + " Mpx/s, " + 
+		             String.format( "%.1f", temporaryBytes / ( 1024.0 * 1024.0 ) ) + " MB temporary, " + numThreads + " threads [";
+		
+		boolean first = true;
+		for ( final String phase : phases.keySet() )
+		{
+			if ( !first )
+				out += ", ";
+			
+			out += phase + " " + String.format( "%.1f", getPhaseTime( phase ) ) + " ms";
+			first = false;
+		}
+		
+		return out + "]";
+	}
+	
+	/**
+	 * Computes the memory occupied by the pixels of an {@link Image}. Only {@link DirectAccessContainer}s 
+	 * are considered, for all others 0 is returned.
+	 * 
+	 * @param image - the {@link Image}
+	 * @return - the number of bytes
+	 */
+	public static long getNumBytes( final Image<?> image )
+	{
+		final Container<?> container = image.getContainer();
+		
+		if ( !DirectAccessContainer.class.isInstance( container ) )
+			return 0;
+		else
+			return DirectAccessContainerFactory.getNumBytes( (DirectAccessContainer<?, ?>)container, image.createType() );
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.metrics;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps the {@link Metrics} of all algorithm runs in memory, e.g. to compare them at the end of
+ * a pipeline or in a test.
+ */
+public class MetricsRegistry implements MetricsSink
+{
+	final ArrayList<Metrics> metrics = new ArrayList<Metrics>();
+	
+	@Override
+	public synchronized void report( final Metrics m ) { metrics.add( m ); }
+	
+	/**
+	 * @return - a copy of the list of all {@link Metrics} reported so far
+	 */
+	public synchronized ArrayList<Metrics> getMetrics() { return new ArrayList<Metrics>( metrics ); }
+	
+	/**
+	 * @param algorithm - the name of the algorithm, see {@link Metrics#getAlgorithm()}
+	 * @return - all {@link Metrics} reported by this algorithm so far
+	 */
+	public synchronized ArrayList<Metrics> getMetrics( final String algorithm )
+	{
+		final ArrayList<Metrics> list = new ArrayList<Metrics>();
+		
+		for ( final Metrics m : metrics )
+			if ( m.getAlgorithm().equals( algorithm ) )
+				list.add( m );
+		
+		return list;
+	}
+	
+	public synchronized void clear() { metrics.clear(); }
+}
@@ -35,6 +35,8 @@ import mpicbg.imglib.image.ImageFactory;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
 import mpicbg.imglib.type.numeric.RealType;
 import mpicbg.imglib.type.numeric.integer.ShortType;
+import mpicbg.imglib.type.numeric.real.DoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
 
 /**
  * DirectConvolution is an ROIAlgorithm designed to do both convolution and cross-correlation 
@@ -104,6 +106,14 @@ public class DirectConvolution
 	private final LocalizableByDimCursor<R> kernelCursor;
 	private final boolean doInvert;
 	
+	/*
+	 * For FloatType and DoubleType output the kernel values are read once in the order of the 
+	 * RegionOfInterestCursor and the patch is convolved in a plain float or double loop
+	 */
+	private final boolean isFloat, isDouble;
+	private float[] kernelFloat;
+	private double[] kernelDouble;
+	
 	public DirectConvolution(final S type, final Image<T> inputImage, final Image<R> kernel)
 	{
 		this(type, inputImage, kernel, null);
@@ -128,6 +138,9 @@ public class DirectConvolution
 		setName(inputImage.getName() + " * " + kernel.getName());
 		
 		doInvert = isconv;
+		
+		isFloat = type.getClass() == FloatType.class;
+		isDouble = type.getClass() == DoubleType.class;
 	}
 	
 	private LocalizableByDimCursor<S> getOutputCursor()
@@ -147,8 +160,58 @@ public class DirectConvolution
 		}
 	}
 	
+	/**
+	 * Reads the kernel values in the order in which the {@link RegionOfInterestCursor} visits the patch 
+	 * and resets the cursor.
+	 */
+	private void cacheKernel(final RegionOfInterestCursor<T> roiCursor)
+	{
+		final int[] pos = new int[kernel.getNumDimensions()];
+		final int[] invPos = new int[kernel.getNumDimensions()];
+		final double[] values = new double[kernel.getNumPixels()];
+		int i = 0;
+		
+		while(roiCursor.hasNext())
+		{
+			roiCursor.fwd();
+			roiCursor.getPosition(pos);
+			
+			if (doInvert)
+			{
+				invertPosition(pos, invPos);			
+				kernelCursor.setPosition(invPos);
+			}
+			else
+			{
+				kernelCursor.setPosition(pos);
+			}
+			
+			values[i++] = kernelCursor.getType().getRealDouble();
+		}
+		
+		roiCursor.reset();
+		
+		if (isFloat)
+		{
+			kernelFloat = new float[values.length];
+			for (i = 0; i < values.length; ++i)
+			{
+				kernelFloat[i] = (float)values[i];
+			}
+		}
+		else
+		{
+			kernelDouble = values;
+		}
+	}
+	
 	@Override
 	protected boolean patchOperation(final int[] position, final RegionOfInterestCursor<T> roiCursor) {
+		if (isFloat || isDouble)
+		{
+			return patchOperationReal(position, roiCursor);
+		}
+		
 		final LocalizableByDimCursor<S> outCursor = getOutputCursor();
 		final int[] pos = new int[outCursor.getNumDimensions()];
 		final int[] invPos = new int[outCursor.getNumDimensions()];
@@ -191,6 +254,52 @@ public class DirectConvolution
 		return true;
 	}
 
+	/**
+	 * The same as the generic patchOperation for FloatType and DoubleType output, the products and 
+	 * the sum are computed in the same precision as the types would do, so the results are identical.
+	 */
+	private boolean patchOperationReal(final int[] position, final RegionOfInterestCursor<T> roiCursor)
+	{
+		if (kernelFloat == null && kernelDouble == null)
+		{
+			cacheKernel(roiCursor);
+		}
+		
+		final LocalizableByDimCursor<S> outCursor = getOutputCursor();
+		int i = 0;
+		
+		outCursor.setPosition(position);
+		
+		if (isFloat)
+		{
+			final float[] k = kernelFloat;
+			float accum = 0;
+			
+			while(roiCursor.hasNext())
+			{
+				roiCursor.fwd();
+				accum += k[i++] * (float)roiCursor.getType().getRealDouble();
+			}
+			
+			outCursor.getType().setReal(accum);
+		}
+		else
+		{
+			final double[] k = kernelDouble;
+			double accum = 0;
+			
+			while(roiCursor.hasNext())
+			{
+				roiCursor.fwd();
+				accum += k[i++] * roiCursor.getType().getRealDouble();
+			}
+			
+			outCursor.getType().setReal(accum);
+		}
+		
+		return true;
+	}
+
 	@Override
 	public boolean checkInput() {
 		if (super.checkInput())
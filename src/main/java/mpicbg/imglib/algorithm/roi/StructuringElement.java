@@ -29,6 +29,7 @@ package mpicbg.imglib.algorithm.roi;
 import mpicbg.imglib.container.array.ArrayContainerFactory;
 import mpicbg.imglib.cursor.Cursor;
 import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.cursor.special.LocalNeighborhoodOffsetCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.image.ImageFactory;
 import mpicbg.imglib.type.logic.BitType;
@@ -62,6 +63,15 @@ public class StructuringElement extends Image<BitType> {
 		return offset;
 	}
 	
+	/**
+	 * Returns the positions of all set pixels relative to {@link #getOffset()}, as used by 
+	 * a {@link LocalNeighborhoodOffsetCursor}.
+	 */
+	public int[][] getNeighborhoodOffsets()
+	{
+		return LocalNeighborhoodOffsetCursor.createShapeOffsets(this, offset);
+	}
+	
 	public static StructuringElement createBall(final int nd, final double radius)
 	{
 		StructuringElement strel;
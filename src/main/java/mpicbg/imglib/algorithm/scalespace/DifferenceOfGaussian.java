@@ -38,9 +38,12 @@ import mpicbg.imglib.algorithm.function.SubtractNorm;
 import mpicbg.imglib.algorithm.gauss.GaussianConvolution;
 import mpicbg.imglib.algorithm.gauss.GaussianConvolution2;
 import mpicbg.imglib.algorithm.math.ImageCalculatorInPlace;
+import mpicbg.imglib.algorithm.metrics.Measurable;
+import mpicbg.imglib.algorithm.metrics.Metrics;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
 import mpicbg.imglib.cursor.special.LocalNeighborhoodCursor;
 import mpicbg.imglib.cursor.special.LocalNeighborhoodCursorFactory;
+import mpicbg.imglib.cursor.special.LocalNeighborhoodOffsetCursor;
 import mpicbg.imglib.function.Converter;
 import mpicbg.imglib.function.Function;
 import mpicbg.imglib.image.Image;
@@ -55,7 +58,7 @@ import mpicbg.imglib.type.numeric.NumericType;
  *
  * @author Stephan Preibisch
  */
-public class DifferenceOfGaussian < A extends Type<A>, B extends NumericType<B> & Comparable<B> > implements Algorithm, MultiThreaded, Benchmark
+public class DifferenceOfGaussian < A extends Type<A>, B extends NumericType<B> & Comparable<B> > implements Algorithm, MultiThreaded, Benchmark, Measurable
 {
 	public static enum SpecialPoint { INVALID, MIN, MAX };
 	
@@ -72,6 +75,7 @@ public class DifferenceOfGaussian < A extends Type<A>, B extends NumericType<B>
 	
 	boolean computeConvolutionsParalell, keepDoGImage;
 	long processingTime;
+	Metrics metrics = null;
 	int numThreads;
 	String errorMessage = "";
 
@@ -241,102 +245,121 @@ public class DifferenceOfGaussian < A extends Type<A>, B extends NumericType<B>
 	public boolean process()
 	{
 		final long startTime = System.currentTimeMillis();
+		metrics = new Metrics( getClass().getSimpleName(), image, getNumThreads() );
 		
-		//
-		// perform the gaussian convolutions transferring it to the new (potentially higher precision) type T
-		//
-		final int divisor = computeConvolutionsParalell ? 2 : 1;
-		final OutputAlgorithm<B> conv1 = getGaussianConvolution( sigma1, Math.max( 1, getNumThreads() / divisor ) );
-		final OutputAlgorithm<B> conv2 = getGaussianConvolution( sigma2, Math.max( 1, getNumThreads() / divisor ) );
+		try
+		{
+			//
+			// perform the gaussian convolutions transferring it to the new (potentially higher precision) type T
+			//
+			metrics.start( "blur" );
+		
+			final int divisor = computeConvolutionsParalell ? 2 : 1;
+			final OutputAlgorithm<B> conv1 = getGaussianConvolution( sigma1, Math.max( 1, getNumThreads() / divisor ) );
+			final OutputAlgorithm<B> conv2 = getGaussianConvolution( sigma2, Math.max( 1, getNumThreads() / divisor ) );
 		        
-        final Image<B> gauss1, gauss2;
+	        final Image<B> gauss1, gauss2;
         
-        if ( conv1.checkInput() && conv2.checkInput() )
-        {       	
-            final AtomicInteger ai = new AtomicInteger(0);					
-            Thread[] threads = SimpleMultiThreading.newThreads( divisor );
+	        if ( conv1.checkInput() && conv2.checkInput() )
+	        {       	
+	            final AtomicInteger ai = new AtomicInteger(0);					
+	            Thread[] threads = SimpleMultiThreading.newThreads( divisor );
 
-        	for (int ithread = 0; ithread < threads.length; ++ithread)
-                threads[ithread] = new Thread(new Runnable()
-                {
-                    public void run()
-                    {
-                    	final int myNumber = ai.getAndIncrement();
-                    	if ( myNumber == 0 || !computeConvolutionsParalell )
-                    	{
-                    		if ( !conv1.process() )
-                            	System.out.println( "Cannot compute gaussian convolution 1: " + conv1.getErrorMessage() );                    		
-                    	}
+	        	for (int ithread = 0; ithread < threads.length; ++ithread)
+	                threads[ithread] = new Thread(new Runnable()
+	                {
+	                    public void run()
+	                    {
+	                    	final int myNumber = ai.getAndIncrement();
+	                    	if ( myNumber == 0 || !computeConvolutionsParalell )
+	                    	{
+	                    		if ( !conv1.process() )
+	                            	System.out.println( "Cannot compute gaussian convolution 1: " + conv1.getErrorMessage() );                    		
+	                    	}
                     	
-                    	if ( myNumber == 1 || !computeConvolutionsParalell )
-                    	{
-                    		if ( !conv2.process() )
-                    			System.out.println( "Cannot compute gaussian convolution 2: " + conv2.getErrorMessage() );
-                    	}                    	
-                    }
-                });
+	                    	if ( myNumber == 1 || !computeConvolutionsParalell )
+	                    	{
+	                    		if ( !conv2.process() )
+	                    			System.out.println( "Cannot compute gaussian convolution 2: " + conv2.getErrorMessage() );
+	                    	}                    	
+	                    }
+	                });
         	
-    		SimpleMultiThreading.startAndJoin( threads );       	
-        }
-        else
-        {
-        	errorMessage =  "Cannot compute gaussian convolutions: " + conv1.getErrorMessage() + " & " + conv2.getErrorMessage();
+	    		SimpleMultiThreading.startAndJoin( threads );       	
+	        }
+	        else
+	        {
+	        	errorMessage =  "Cannot compute gaussian convolutions: " + conv1.getErrorMessage() + " & " + conv2.getErrorMessage();
         
-        	gauss1 = gauss2 = null;
-        	return false;
-        }
+	        	gauss1 = gauss2 = null;
+	        	return false;
+	        }
                 
-        if ( conv1.getErrorMessage().length() == 0 && conv2.getErrorMessage().length() == 0 )
-        {
-	        gauss1 = conv1.getResult();
-	        gauss2 = conv2.getResult();
-        }
-        else
-        {
-        	gauss1 = gauss2 = null;
-        	return false;        	
-        }
+	        if ( conv1.getErrorMessage().length() == 0 && conv2.getErrorMessage().length() == 0 )
+	        {
+		        gauss1 = conv1.getResult();
+		        gauss2 = conv2.getResult();
+	        
+		        metrics.addTemporary( gauss1 );
+		        if ( !keepDoGImage )
+		        	metrics.addTemporary( gauss2 );
+	        }
+	        else
+	        {
+	        	gauss1 = gauss2 = null;
+	        	return false;        	
+	        }
 
-        //
-        // subtract the images to get the LaPlace image
-        //
-        final Function<B, B, B> function = getNormalizedSubtraction();        
-        final ImageCalculatorInPlace<B, B> imageCalc = new ImageCalculatorInPlace<B, B>( gauss2, gauss1, function );
+	        //
+	        // subtract the images to get the LaPlace image
+	        //
+	        metrics.start( "subtract" );
+        
+	        final Function<B, B, B> function = getNormalizedSubtraction();        
+	        final ImageCalculatorInPlace<B, B> imageCalc = new ImageCalculatorInPlace<B, B>( gauss2, gauss1, function );
 
-        imageCalc.setNumThreads( getNumThreads() );
+	        imageCalc.setNumThreads( getNumThreads() );
 
-        if ( !imageCalc.checkInput() || !imageCalc.process() )
-        {
-        	errorMessage =  "Cannot subtract images: " + imageCalc.getErrorMessage();
+	        if ( !imageCalc.checkInput() || !imageCalc.process() )
+	        {
+	        	errorMessage =  "Cannot subtract images: " + imageCalc.getErrorMessage();
         	
-        	gauss1.close();
-        	gauss2.close();
+	        	gauss1.close();
+	        	gauss2.close();
         	
-        	return false;
-        }
+	        	return false;
+	        }
 
-        gauss1.close();
+	        gauss1.close();
+        
+	        /*
+	        gauss2.setName( "laplace" );
+	        gauss2.getDisplay().setMinMax();
+	        ImageJFunctions.copyToImagePlus( gauss2 ).show();
+	        */
         
-        /*
-        gauss2.setName( "laplace" );
-        gauss2.getDisplay().setMinMax();
-        ImageJFunctions.copyToImagePlus( gauss2 ).show();
-        */
+	        //
+	        // Now we find minima and maxima in the DoG image
+	        //        
+	        metrics.start( "peak finding" );
         
-        //
-        // Now we find minima and maxima in the DoG image
-        //        
-		peaks.clear();
-		peaks.addAll( findPeaks( gauss2 ) );
+			peaks.clear();
+			peaks.addAll( findPeaks( gauss2 ) );
 
-		if ( keepDoGImage )
-			dogImage = gauss2;
-		else
-			gauss2.close(); 
+			if ( keepDoGImage )
+				dogImage = gauss2;
+			else
+				gauss2.close(); 
         		
-        processingTime = System.currentTimeMillis() - startTime;
+	        processingTime = System.currentTimeMillis() - startTime;
 		
-		return true;
+			return true;
+		}
+		finally
+		{
+			// also stop the metrics of failed runs
+			metrics.stop();
+		}
 	}
 	
 	public ArrayList<DifferenceOfGaussianPeak<B>> findPeaks( final Image<B> laPlace )
@@ -360,7 +383,8 @@ public class DifferenceOfGaussian < A extends Type<A>, B extends NumericType<B>
             	
 	            	final ArrayList<DifferenceOfGaussianPeak<B>> myPeaks = threadPeaksList.get( myNumber );	
 	            	final LocalizableByDimCursor<B> cursor = laPlace.createLocalizableByDimCursor();	            	
-	            	final LocalNeighborhoodCursor<B> neighborhoodCursor = LocalNeighborhoodCursorFactory.createLocalNeighborhoodCursor( cursor );
+	            	// the 3^n neighborhood is read by linear index where it lies inside the image (Array) or inside the current cell (Cell), elsewhere by moving the cursor
+	            	final LocalNeighborhoodCursor<B> neighborhoodCursor = LocalNeighborhoodCursorFactory.createLocalNeighborhoodCursor( cursor, LocalNeighborhoodOffsetCursor.createHyperCubeOffsets( numDimensions, 1, false ) );
 	            	
 	            	final int[] position = new int[ numDimensions ];
 	            	final int[] dimensionsMinus2 = laPlace.getDimensions();
@@ -404,6 +428,7 @@ MainLoop:           while ( cursor.hasNext() )
 	                	}
 	                }
                 
+	                neighborhoodCursor.close();
 	                cursor.close();
             }
         });
@@ -451,6 +476,9 @@ MainLoop:           while ( cursor.hasNext() )
 	@Override
 	public long getProcessingTime() { return processingTime; }
 	
+	@Override
+	public Metrics getMetrics() { return metrics; }
+	
 	@Override
 	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
 
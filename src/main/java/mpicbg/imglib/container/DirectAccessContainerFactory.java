@@ -37,9 +37,13 @@
 
 package mpicbg.imglib.container;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import mpicbg.imglib.container.array.ArrayContainerFactory;
 import mpicbg.imglib.container.basictypecontainer.BitAccess;
 import mpicbg.imglib.container.basictypecontainer.ByteAccess;
 import mpicbg.imglib.container.basictypecontainer.CharAccess;
+import mpicbg.imglib.container.basictypecontainer.DataAccess;
 import mpicbg.imglib.container.basictypecontainer.DoubleAccess;
 import mpicbg.imglib.container.basictypecontainer.FloatAccess;
 import mpicbg.imglib.container.basictypecontainer.IntAccess;
@@ -47,6 +51,7 @@ import mpicbg.imglib.container.basictypecontainer.LongAccess;
 import mpicbg.imglib.container.basictypecontainer.ShortAccess;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.Type;
+import mpicbg.imglib.util.FlightRecorder;
 
 /**
  * TODO
@@ -54,6 +59,8 @@ import mpicbg.imglib.type.Type;
  */
 public abstract class DirectAccessContainerFactory extends PixelGridContainerFactory
 {
+	final static ConcurrentHashMap<Class<?>, Integer> bitsPerEntity = new ConcurrentHashMap<Class<?>, Integer>();
+	
 	/**
 	 * This method is called by {@link Image}. This class will ask the {@link Type} to create a 
 	 * suitable {@link Container} for the {@link Type} and the dimensionality.
@@ -66,7 +73,73 @@ public abstract class DirectAccessContainerFactory extends PixelGridContainerFac
 	@Override
 	public <T extends Type<T>> DirectAccessContainer<T,?> createContainer( final int[] dim, final T type )
 	{
-		return type.createSuitableDirectAccessContainer( this, dim );
+		final FlightRecorder.Event event = FlightRecorder.ALLOCATION.newEvent();
+		event.begin();
+		
+		final DirectAccessContainer<T,?> container = type.createSuitableDirectAccessContainer( this, dim );
+		
+		if ( event.isEnabled() )
+		{
+			final long bytes = getNumBytes( container, type );
+			
+			if ( bytes >= FlightRecorder.getAllocationThreshold() )
+			{
+				event.set( 0, container.getClass().getSimpleName() );
+				event.set( 1, FlightRecorder.toString( dim ) );
+				event.set( 2, type.getClass().getSimpleName() );
+				event.set( 3, bytes );
+				event.commit();
+			}
+		}
+		
+		return container;
+	}
+	
+	/**
+	 * Computes the memory occupied by the pixels of a {@link PixelGridContainer}
+	 * 
+	 * @param container - the container
+	 * @param type - the {@link Type} stored in the container
+	 * @return - the number of bytes
+	 */
+	public static long getNumBytes( final PixelGridContainer<?> container, final Type<?> type )
+	{
+		return ( (long)container.getNumEntities() * getBitsPerEntity( type ) + 7 ) / 8;
+	}
+	
+	/**
+	 * Determines the size of the basic type a {@link Type} is stored in by creating a
+	 * one-pixel container for it, the result is cached per class.
+	 * 
+	 * @param type - the {@link Type}
+	 * @return - the number of bits per entity, e.g. 32 for float
+	 */
+	public static int getBitsPerEntity( final Type<?> type )
+	{
+		final Integer cached = bitsPerEntity.get( type.getClass() );
+		
+		if ( cached != null )
+			return cached;
+		
+		final DirectAccessContainer<?, ?> probe = type.createSuitableDirectAccessContainer( new ArrayContainerFactory(), new int[] { 1 } );
+		final DataAccess access = probe.update( null );
+		final int bits;
+		
+		if ( BitAccess.class.isInstance( access ) )
+			bits = 1;
+		else if ( ByteAccess.class.isInstance( access ) )
+			bits = 8;
+		else if ( ShortAccess.class.isInstance( access ) || CharAccess.class.isInstance( access ) )
+			bits = 16;
+		else if ( LongAccess.class.isInstance( access ) || DoubleAccess.class.isInstance( access ) )
+			bits = 64;
+		else
+			bits = 32;
+		
+		probe.close();
+		bitsPerEntity.put( type.getClass(), bits );
+		
+		return bits;
 	}
 
 	// All basic Type containers
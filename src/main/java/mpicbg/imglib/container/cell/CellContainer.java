@@ -72,18 +72,19 @@ public class CellContainer<T extends Type<T>, A extends ArrayDataAccess<A>> exte
 	{
 		super(factory, dim, entitiesPerPixel);
 		
-		// check that cellsize is not bigger than the image
+		// check that cellsize is not bigger than the image, on a copy as the array 
+		// may belong to the factory and be shared with other containers
+		this.cellSize = cellSize.clone();
 		for ( int d = 0; d < getNumDimensions(); d++ )
-			if ( cellSize[ d ] > dim[ d ] )
-				cellSize[ d ] = dim[ d ];
+			if ( this.cellSize[ d ] > dim[ d ] )
+				this.cellSize[ d ] = dim[ d ];
 			
-		this.cellSize = cellSize;
 		numCellsDim = new int[ getNumDimensions() ];				
 		
 		int tmp = 1;		
 		for ( int d = 0; d < getNumDimensions(); d++ )
 		{
-			numCellsDim[ d ] = ( dim[ d ] - 1) / cellSize[ d ] + 1;
+			numCellsDim[ d ] = ( dim[ d ] - 1) / this.cellSize[ d ] + 1;
 			tmp *= numCellsDim[ d ];
 		}
 		numCells = tmp;
@@ -102,14 +103,14 @@ public class CellContainer<T extends Type<T>, A extends ArrayDataAccess<A>> exte
 			
 			for ( int d = 0; d < getNumDimensions(); d++ )
 			{
-				finalSize[ d ] = cellSize[ d ];
+				finalSize[ d ] = this.cellSize[ d ];
 				
 				// the last cell in each dimension might have another size
 				if ( cursor.getPosition( d ) == numCellsDim[ d ] - 1 )
-					if ( dim[ d ] % cellSize[ d ] != 0 )
-						finalSize[ d ] = dim[ d ] % cellSize[ d ];
+					if ( dim[ d ] % this.cellSize[ d ] != 0 )
+						finalSize[ d ] = dim[ d ] % this.cellSize[ d ];
 				
-				finalOffset[ d ] = cursor.getPosition( d ) * cellSize[ d ];
+				finalOffset[ d ] = cursor.getPosition( d ) * this.cellSize[ d ];
 			}			
 
 			data.add( createCellInstance( creator, c, finalSize, finalOffset, entitiesPerPixel ) );			
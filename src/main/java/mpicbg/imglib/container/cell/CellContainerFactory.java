@@ -90,6 +90,17 @@ public class CellContainerFactory extends DirectAccessContainerFactory
 		this.cellSize = cellSize;
 	}
 	
+	/**
+	 * @return the cell size of the containers created for images with the given number of dimensions, 
+	 * before it is limited to the size of the image
+	 */
+	public int[] getCellSize( final int numDimensions )
+	{
+		final int[] dimensions = new int[ numDimensions ];
+		
+		return checkCellSize( cellSize, dimensions ).clone();
+	}
+	
 	protected int[] checkDimensions( int dimensions[] )
 	{
 		if ( dimensions == null || dimensions.length == 0 )
@@ -39,6 +39,7 @@ package mpicbg.imglib.cursor.array;
 
 import mpicbg.imglib.container.array.Array;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.special.RegionOfInterestCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategy;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
@@ -65,6 +66,26 @@ public class ArrayLocalizableByDimOutOfBoundsCursor<T extends Type<T>> extends A
 		this.outOfBoundsStrategy = outOfBoundsStrategyFactory.createStrategy( this );
 		
 		reset();
+	}
+	
+	/**
+	 * Creates a {@link RegionOfInterestCursor} that traverses rois lying completely inside the image 
+	 * with a second {@link LocalizableByDimCursor} that does no bounds checking, the {@link OutOfBoundsStrategy}
+	 * is only used for rois that touch the image borders. 
+	 */
+	@Override
+	public synchronized RegionOfInterestCursor<T> createRegionOfInterestCursor( final int[] offset, final int[] size )
+	{
+		if ( numNeighborhoodCursors == 0)
+		{
+			++numNeighborhoodCursors;
+			return new RegionOfInterestCursor<T>( this, image.createLocalizableByDimCursor(), offset, size );
+		}
+		else
+		{
+			System.out.println("ArrayLocalizableByDimOutOfBoundsCursor.createRegionOfInterestCursor(): There is only one special cursor per cursor allowed.");
+			return null;
+		}
 	}	
 	
 	@Override
@@ -39,6 +39,7 @@ package mpicbg.imglib.cursor.cell;
 
 import mpicbg.imglib.container.cell.CellContainer;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.special.RegionOfInterestCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategy;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
@@ -65,6 +66,21 @@ public class CellLocalizableByDimOutOfBoundsCursor<T extends Type<T>> extends Ce
 		this.outOfBoundsStrategy = outOfBoundsStrategyFactory.createStrategy( this );
 		
 		reset();
+	}
+	
+	@Override
+	public synchronized RegionOfInterestCursor<T> createRegionOfInterestCursor( final int[] offset, final int[] size )
+	{
+		if ( numNeighborhoodCursors == 0)
+		{
+			++numNeighborhoodCursors;
+			return new RegionOfInterestCursor<T>( this, image.createLocalizableByDimCursor(), offset, size );
+		}
+		else
+		{
+			System.out.println("CellLocalizableByDimOutOfBoundsCursor.createRegionOfInterestCursor(): There is only one special cursor per cursor allowed.");
+			return null;
+		}
 	}	
 
 	@Override
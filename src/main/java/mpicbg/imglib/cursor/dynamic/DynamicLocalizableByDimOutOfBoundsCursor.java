@@ -39,6 +39,7 @@ package mpicbg.imglib.cursor.dynamic;
 
 import mpicbg.imglib.container.dynamic.DynamicContainer;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.special.RegionOfInterestCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategy;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
@@ -64,6 +65,21 @@ public class DynamicLocalizableByDimOutOfBoundsCursor<T extends Type<T>> extends
 		this.outOfBoundsStrategy = outOfBoundsStrategyFactory.createStrategy( this );
 		
 		reset();
+	}
+	
+	@Override
+	public synchronized RegionOfInterestCursor<T> createRegionOfInterestCursor( final int[] offset, final int[] size )
+	{
+		if ( numNeighborhoodCursors == 0)
+		{
+			++numNeighborhoodCursors;
+			return new RegionOfInterestCursor<T>( this, image.createLocalizableByDimCursor(), offset, size );
+		}
+		else
+		{
+			System.out.println("DynamicLocalizableByDimOutOfBoundsCursor.createRegionOfInterestCursor(): There is only one special cursor per cursor allowed.");
+			return null;
+		}
 	}	
 	
 	@Override
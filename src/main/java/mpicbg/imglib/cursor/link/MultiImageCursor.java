@@ -0,0 +1,269 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.link;
+
+import mpicbg.imglib.container.Container;
+import mpicbg.imglib.container.DirectAccessContainer;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.cursor.CursorImpl;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.cursor.special.RegionOfInterestCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.type.Type;
+import mpicbg.imglib.util.Util;
+
+/**
+ * Iterates several {@link Image}s of the same size simultaneously. 
+ * 
+ * If all images are stored in compatible {@link DirectAccessContainer}s (see 
+ * {@link Container#compareStorageContainerCompatibility(Container)}), only the cursor of the first 
+ * image is moved, the {@link Type}s of all other images are set to the same index (and the same
+ * storage, e.g. cell or plane, whenever it changes). Otherwise every image gets its own 
+ * {@link LocalizableByDimCursor} that is placed at the position of the first cursor, as a 
+ * {@link GenericCursorLink} would do.
+ * 
+ * The images are traversed in the iteration order of the first image, i.e. the order of its container 
+ * (cell by cell for a CellContainer), not in the raster order of a {@link RegionOfInterestCursor}.
+ * Both paths use the same order, so their results are identical for any operation on the 
+ * pixel values.
+ * 
+ * The {@link LocalizableCursor} for each image returned by {@link #getCursor(int)} can be used to 
+ * read its {@link Type} and position, moving or resetting it moves or resets this 
+ * {@link MultiImageCursor} and therefore all images.
+ *
+ * @param <T>
+ */
+public class MultiImageCursor< T extends Type< T > >
+{
+	final Image< T >[] images;
+	final int numImages;
+	final boolean isFused;
+	
+	/* the cursor that is moved, it iterates the first image */
+	final LocalizableCursor< T > cursor;
+	
+	/* the types of all images */
+	final T[] types;
+	
+	/* the cursors that provide the linked types (fused) or are moved to the position of the first cursor (not fused) */
+	final Cursor< T >[] linkedCursors;
+	
+	/* the cursors given out for every image */
+	final LocalizableCursor< T >[] cursors;
+	
+	int storageIndex;
+
+	public MultiImageCursor( final Image< T >[] images )
+	{
+		this.images = images;
+		this.numImages = images.length;
+		this.isFused = isFusable( images );
+		
+		this.cursor = images[ 0 ].createLocalizableCursor();
+		this.types = images[ 0 ].createType().createArray1D( numImages );
+		
+		// arrays of a generic type can only be created with wildcards
+		@SuppressWarnings( "unchecked" )
+		final Cursor< T >[] linkedCursors = ( Cursor< T >[] )new Cursor< ? >[ numImages ];
+		@SuppressWarnings( "unchecked" )
+		final LocalizableCursor< T >[] cursors = ( LocalizableCursor< T >[] )new LocalizableCursor< ? >[ numImages ];
+		
+		this.linkedCursors = linkedCursors;
+		this.cursors = cursors;
+		
+		types[ 0 ] = cursor.getType();
+		linkedCursors[ 0 ] = cursor;
+		
+		for ( int i = 1; i < numImages; ++i )
+		{
+			if ( isFused )
+				linkedCursors[ i ] = images[ i ].createCursor();
+			else
+				linkedCursors[ i ] = images[ i ].createLocalizableByDimCursor();
+			
+			types[ i ] = linkedCursors[ i ].getType();
+		}
+		
+		for ( int i = 0; i < numImages; ++i )
+			cursors[ i ] = new LinkedTypeCursor( i );
+		
+		reset();
+	}
+	
+	/**
+	 * Tests if the images can be iterated by one index, i.e. they have the same size and are
+	 * stored in compatible {@link DirectAccessContainer}s.
+	 * 
+	 * @param images - the images
+	 * @return true if one index can drive all images
+	 */
+	public static boolean isFusable( final Image< ? >[] images )
+	{
+		final Container< ? > container = images[ 0 ].getContainer();
+		
+		if ( !DirectAccessContainer.class.isInstance( container ) )
+			return false;
+		
+		for ( int i = 1; i < images.length; ++i )
+		{
+			if ( !container.compareStorageContainerCompatibility( images[ i ].getContainer() ) || 
+				 !DirectAccessContainer.class.isInstance( images[ i ].getContainer() ) )
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return true if all images are driven by one index, false if every image has its own cursor
+	 */
+	public boolean isFused() { return isFused; }
+	
+	public int getNumImages() { return numImages; }
+	
+	public Image< T > getImage( final int i ) { return images[ i ]; }
+	
+	/**
+	 * @param i - the image
+	 * @return the {@link Type} of image i at the current position
+	 */
+	public T getType( final int i ) { return types[ i ]; }
+	
+	/**
+	 * @param i - the image
+	 * @return a {@link LocalizableCursor} to access image i at the current position, 
+	 * moving it moves all images
+	 */
+	public LocalizableCursor< T > getCursor( final int i ) { return cursors[ i ]; }
+	
+	public boolean hasNext() { return cursor.hasNext(); }
+	
+	public void reset()
+	{
+		cursor.reset();
+		storageIndex = -1;
+	}
+	
+	public void fwd()
+	{
+		cursor.fwd();
+		
+		if ( isFused )
+		{
+			// the cell or plane has changed
+			final int storage = cursor.getStorageIndex();
+			
+			if ( storage != storageIndex )
+			{
+				storageIndex = storage;
+				
+				for ( int i = 1; i < numImages; ++i )
+					types[ i ].updateContainer( cursor );
+			}
+			
+			final int index = types[ 0 ].getIndex();
+			
+			for ( int i = 1; i < numImages; ++i )
+				types[ i ].updateIndex( index );
+		}
+		else
+		{
+			for ( int i = 1; i < numImages; ++i )
+				( (LocalizableByDimCursor< T >)linkedCursors[ i ] ).setPosition( cursor );
+		}
+	}
+	
+	public void getPosition( final int[] position ) { cursor.getPosition( position ); }
+	
+	public int getPosition( final int dim ) { return cursor.getPosition( dim ); }
+	
+	public void close()
+	{
+		for ( int i = 0; i < numImages; ++i )
+			linkedCursors[ i ].close();
+	}
+	
+	/**
+	 * Gives access to the linked {@link Type} of one image, the position is the one of the first cursor. 
+	 * It moves the {@link MultiImageCursor} it belongs to.
+	 */
+	protected class LinkedTypeCursor extends CursorImpl< T > implements LocalizableCursor< T >
+	{
+		final int i;
+		
+		public LinkedTypeCursor( final int i )
+		{
+			super( images[ i ].getContainer(), images[ i ] );
+			this.i = i;
+		}
+
+		@Override
+		public T getType() { return types[ i ]; }
+
+		@Override
+		public int getStorageIndex() { return isFused ? cursor.getStorageIndex() : linkedCursors[ i ].getStorageIndex(); }
+
+		@Override
+		public boolean hasNext() { return MultiImageCursor.this.hasNext(); }
+
+		@Override
+		public void fwd() { MultiImageCursor.this.fwd(); }
+
+		@Override
+		public void reset() { MultiImageCursor.this.reset(); }
+
+		@Override
+		public void close() { linkedCursors[ i ].close(); }
+
+		@Override
+		public void getPosition( final int[] position ) { cursor.getPosition( position ); }
+
+		@Override
+		public int[] getPosition() { return cursor.getPosition(); }
+
+		@Override
+		public int getPosition( final int dim ) { return cursor.getPosition( dim ); }
+
+		@Override
+		public String getPositionAsString() { return cursor.getPositionAsString(); }
+		
+		@Override
+		public String toString() { return Util.printCoordinates( cursor.getPosition() ) + ": " + getType(); }
+	}
+}
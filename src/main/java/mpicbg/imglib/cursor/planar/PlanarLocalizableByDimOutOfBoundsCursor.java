@@ -39,6 +39,7 @@ package mpicbg.imglib.cursor.planar;
 
 import mpicbg.imglib.container.planar.PlanarContainer;
 import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.special.RegionOfInterestCursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategy;
 import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
@@ -68,6 +69,21 @@ public class PlanarLocalizableByDimOutOfBoundsCursor<T extends Type<T>> extends
 		this.outOfBoundsStrategy = outOfBoundsStrategyFactory.createStrategy( this );
 		
 		reset();
+	}
+	
+	@Override
+	public synchronized RegionOfInterestCursor<T> createRegionOfInterestCursor( final int[] offset, final int[] size )
+	{
+		if ( numNeighborhoodCursors == 0)
+		{
+			++numNeighborhoodCursors;
+			return new RegionOfInterestCursor<T>( this, image.createLocalizableByDimCursor(), offset, size );
+		}
+		else
+		{
+			System.err.println( getClass().getCanonicalName() + ".createRegionOfInterestCursor(): There is only one special cursor per cursor allowed." );
+			return null;
+		}
 	}	
 	
 	@Override
@@ -38,13 +38,18 @@
 package mpicbg.imglib.cursor.special;
 
 import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import mpicbg.imglib.container.Container;
 import mpicbg.imglib.cursor.Cursor;
 import mpicbg.imglib.cursor.Iterable;
 import mpicbg.imglib.cursor.Localizable;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
 import mpicbg.imglib.cursor.LocalizableCursor;
 import mpicbg.imglib.image.Image;
+import mpicbg.imglib.multithreading.Chunk;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
 import mpicbg.imglib.type.Type;
 import mpicbg.imglib.type.numeric.IntegerType;
 import mpicbg.imglib.util.Util;
@@ -62,13 +67,32 @@ public abstract class AbstractSortedGrayLevelIterator< T extends IntegerType< T
 	protected final Image< T > image;
 	protected final int[] sortedLinIdx;
 
-	protected int n, maxIdx, curIdx;
+	protected int n, maxIdx, curIdx, numThreads;
 	protected final int[] position;
 	protected final int[] dimensions;
 	
+	/* the minimal number of pixels a thread sorts, smaller images are sorted single-threaded */
+	final static int minPixelsPerThread = 65536;
+	
+	/**
+	 * Sorts the pixels single-threaded.
+	 * 
+	 * @param image - the image to iterate
+	 */
 	public AbstractSortedGrayLevelIterator( final Image< T > image )
+	{
+		this( image, 1 );
+	}
+	
+	/**
+	 * @param image - the image to iterate
+	 * @param numThreads - the maximal number of threads used for sorting, images with 
+	 * less than 65536 pixels per thread use less threads
+	 */
+	public AbstractSortedGrayLevelIterator( final Image< T > image, final int numThreads )
 	{
 		this.image 			= image;
+		this.numThreads 	= Math.max( 1, numThreads );
 		this.position 		= image.createPositionArray();
 		this.n 				= image.getNumPixels();
 		this.maxIdx 		= this.n-1;
@@ -176,36 +200,176 @@ public abstract class AbstractSortedGrayLevelIterator< T extends IntegerType< T
 	//returns the gray value at the given linear index p, see also createInternalCursor()
 	protected abstract int getIntegerValueAtLinearIndex(final int p);
 	
+	/**
+	 * Reads gray values by linear index, every thread of the sorting gets its own instance.
+	 */
+	protected interface GrayLevelReader
+	{
+		public int getIntegerValueAtLinearIndex( final int p );
+		public void close();
+	}
+	
+	/**
+	 * Creates a {@link GrayLevelReader} that is independent of the internal cursor, 
+	 * works for all containers. Subclasses may override it with a faster access.
+	 */
+	protected GrayLevelReader createGrayLevelReader()
+	{
+		final LocalizableByDimCursor<T> cursor = image.createLocalizableByDimCursor();
+		final int[] tmp = image.createPositionArray();
+		
+		return new GrayLevelReader()
+		{
+			@Override
+			public int getIntegerValueAtLinearIndex( final int p )
+			{
+				indexToPosition( p, dimensions, tmp );
+				cursor.setPosition( tmp );
+				return cursor.getType().getInteger();
+			}
+
+			@Override
+			public void close() { cursor.close(); }
+		};
+	}
+	
 	//counting sort for sorting the pixels by intensity
 	//needs only one array of length n (compare to bucket sort)
+	//every thread counts and distributes a contiguous chunk of linear indices, 
+	//the offsets of all chunks are computed from the per-thread histograms so that
+	//pixels of the same gray level remain in decreasing order of their linear index
 	protected int[] getLinearIndexArraySortedByGrayLevel()
 	{
-		int k     = max(image).getInteger();
-		int[] c   = new int[k+1];
+		// small images are not worth starting threads
+		final int numThreads = Math.max( 1, Math.min( this.numThreads, n / minPixelsPerThread ) );
+		
+		final int[] idx = new int[ this.n ];
 		
-		int[] idx = new int[this.n];
-		int p=0;
-		for(p=0;p<n;p++)
+		if ( n == 0 )
+			return idx;
+		
+		final Vector<Chunk> threadChunks = SimpleMultiThreading.divideIntoChunks( n, numThreads );
+		
+		final int[] minThread = new int[ numThreads ];
+		final int[] maxThread = new int[ numThreads ];
+		final int[][] c = new int[ numThreads ][];
+		
+		// the range of gray levels
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final int myNumber = ai.getAndIncrement();
+					final Chunk myChunk = threadChunks.get( myNumber );
+					final int start = (int)myChunk.getStartPosition();
+					final int end = start + (int)myChunk.getLoopSize();
+					
+					final GrayLevelReader reader = createGrayLevelReader();
+					
+					int min = Integer.MAX_VALUE;
+					int max = Integer.MIN_VALUE;
+					
+					for ( int p = start; p < end; ++p )
+					{
+						final int level = reader.getIntegerValueAtLinearIndex( p );
+						
+						if ( level < min )
+							min = level;
+						if ( level > max )
+							max = level;
+					}
+					
+					reader.close();
+					
+					minThread[ myNumber ] = min;
+					maxThread[ myNumber ] = max;
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+		
+		int minLevel = Integer.MAX_VALUE;
+		int maxLevel = Integer.MIN_VALUE;
+		
+		for ( int t = 0; t < numThreads; ++t )
 		{
-			c[getIntegerValueAtLinearIndex(p)]++;
+			minLevel = Math.min( minLevel, minThread[ t ] );
+			maxLevel = Math.max( maxLevel, maxThread[ t ] );
 		}
-		//c[i] = how many times gray level i is in image
 		
-		for(int i = 1; i<=k;i++)
-			c[i]= c[i] + c[i-1];
-		//c[i] = number of elements <= i in image
-		//     = position with the largest index at which element i will be in the sorted array
+		final int min = minLevel;
+		final int k = maxLevel - minLevel;
 		
-		int level;
-		for(p=this.n-1;p>=0;p--)
-		{
+		// c[t][i] = how many times gray level min+i is in the chunk of thread t
+		ai.set( 0 );
+		threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final int myNumber = ai.getAndIncrement();
+					final Chunk myChunk = threadChunks.get( myNumber );
+					final int start = (int)myChunk.getStartPosition();
+					final int end = start + (int)myChunk.getLoopSize();
+					
+					final GrayLevelReader reader = createGrayLevelReader();
+					final int[] myC = new int[ k + 1 ];
+					
+					for ( int p = start; p < end; ++p )
+						myC[ reader.getIntegerValueAtLinearIndex( p ) - min ]++;
+					
+					reader.close();
+					
+					c[ myNumber ] = myC;
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
 
-			level = getIntegerValueAtLinearIndex(p);
-			
-			//idx[c[level]-1] = p;    //increasing order
-			idx[this.n-c[level]] = p; //decreasing order
-			c[level]--;
+		// c[t][i] = position at which the first (largest) linear index of gray level min+i 
+		//           of the chunk of thread t will be in the sorted array (decreasing order)
+		int pos = 0;
+		for ( int i = k; i >= 0; --i )
+		{
+			for ( int t = numThreads - 1; t >= 0; --t )
+			{
+				final int count = c[ t ][ i ];
+				c[ t ][ i ] = pos;
+				pos += count;
+			}
 		}
+		
+		ai.set( 0 );
+		threads = SimpleMultiThreading.newThreads( numThreads );
+
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final int myNumber = ai.getAndIncrement();
+					final Chunk myChunk = threadChunks.get( myNumber );
+					final int start = (int)myChunk.getStartPosition();
+					final int end = start + (int)myChunk.getLoopSize();
+					
+					final GrayLevelReader reader = createGrayLevelReader();
+					final int[] myC = c[ myNumber ];
+					
+					for ( int p = end - 1; p >= start; --p )
+						idx[ myC[ reader.getIntegerValueAtLinearIndex( p ) - min ]++ ] = p;
+					
+					reader.close();
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+
 		return idx;
 	}
 	
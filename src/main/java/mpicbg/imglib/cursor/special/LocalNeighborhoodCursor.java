@@ -63,6 +63,15 @@ public class LocalNeighborhoodCursor<T extends Type<T>> extends CursorImpl<T>
 	boolean isActive, debug = false;
 	
 	public LocalNeighborhoodCursor( final LocalizableByDimCursor<T> cursor )
+	{
+		this( cursor, true );
+	}
+	
+	/**
+	 * @param createNeighborhoodCursor - false for subclasses that implement their own iteration and 
+	 * do not need the cursor over the 3^n neighborhood
+	 */
+	protected LocalNeighborhoodCursor( final LocalizableByDimCursor<T> cursor, final boolean createNeighborhoodCursor )
 	{
 		super( cursor.getStorageContainer(), cursor.getImage() );
 		
@@ -71,13 +80,20 @@ public class LocalNeighborhoodCursor<T extends Type<T>> extends CursorImpl<T>
 		
 		this.numDimensions = cursor.getImage().getNumDimensions();
 		this.tmp = new int[ numDimensions ];
+		this.isActive = true;
+		
+		if ( !createNeighborhoodCursor )
+		{
+			this.neigborhoodCursor = null;
+			this.centralPositionIndex = -1;
+			return;
+		}
 				
 		int[] dim = new int[ numDimensions ];
 		for ( int d = 0; d < numDimensions; ++d )
 			dim[ d ] = 3;
 
 		this.neigborhoodCursor = ArrayLocalizableCursor.createLinearCursor( dim );
-		this.isActive = true;
 
 		for ( int d = 0; d < numDimensions; ++d )
 			dim[ d ] = 1;
@@ -91,7 +107,9 @@ public class LocalNeighborhoodCursor<T extends Type<T>> extends CursorImpl<T>
 	@Override
 	public void close() 
 	{
-		neigborhoodCursor.close();
+		if ( neigborhoodCursor != null )
+			neigborhoodCursor.close();
+		
 		isActive = false;
 	}
 
@@ -63,4 +63,9 @@ public class LocalNeighborhoodCursorFactory
 			return new LocalNeighborhoodCursor<T>( cursor );
 		}
 	}
+
+	public static <T extends Type<T>>LocalNeighborhoodOffsetCursor<T> createLocalNeighborhoodCursor( final LocalizableByDimCursor<T> cursor, final int[][] offsets )
+	{
+		return new LocalNeighborhoodOffsetCursor<T>( cursor, offsets );
+	}
 }
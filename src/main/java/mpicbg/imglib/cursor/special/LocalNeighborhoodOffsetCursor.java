@@ -0,0 +1,407 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.special;
+
+import java.util.ArrayList;
+
+import mpicbg.imglib.container.Container;
+import mpicbg.imglib.container.array.Array;
+import mpicbg.imglib.container.cell.Cell;
+import mpicbg.imglib.container.cell.CellContainer;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.type.Type;
+import mpicbg.imglib.type.logic.BitType;
+
+/**
+ * A {@link LocalNeighborhoodCursor} for an arbitrary, n-dimensional neighborhood given as a
+ * list of offsets relative to the current position of the parent cursor, e.g. the 3^n-1 direct
+ * neighbors, a hypercube of any radius or the set pixels of a structuring element.
+ * 
+ * For {@link Array} and {@link CellContainer} images the offsets are translated once into
+ * offsets of the linear index. Whenever the whole neighborhood lies inside the image (inside
+ * the current cell, respectively) {@link #fwd()} only updates the index of a {@link Type}, 
+ * all other positions (and all other containers) are visited by moving the parent cursor.
+ * In contrast to the {@link LocalNeighborhoodCursor} the parent cursor is therefore not
+ * guaranteed to follow the neighborhood, use {@link #getPosition(int[])} to localize a 
+ * neighbor and {@link #reset()} to place the parent cursor back onto the center. No objects 
+ * are created while iterating.
+ *
+ * @param <T>
+ */
+public class LocalNeighborhoodOffsetCursor<T extends Type<T>> extends LocalNeighborhoodCursor<T>
+{
+	final int[][] offsets;
+	final int numNeighbors;
+	
+	/* the bounding box of the neighborhood, always including the center */
+	final int[] min, max;
+	
+	/* the offsets of the linear index for the current memory layout and its steps */
+	final int[] linearOffsets, layoutSteps, steps;
+	
+	/* the image and, for a CellContainer, the cell the fast path is confined to */
+	final int[] dimensions, cellOffset, cellDimensions;
+	
+	/* the cursor that is used for the linear access, null if the container has no linear layout */
+	final LocalizableByDimCursor<T> linearCursor;
+	final T linearType;
+	final CellContainer<T,?> cellContainer;
+	
+	int i, centerIndex;
+	boolean linear;
+
+	public LocalNeighborhoodOffsetCursor( final LocalizableByDimCursor<T> cursor, final int[][] offsets )
+	{
+		super( cursor, false );
+		
+		this.numNeighbors = offsets.length;
+		this.offsets = new int[ numNeighbors ][];
+		
+		this.min = new int[ numDimensions ];
+		this.max = new int[ numDimensions ];
+		
+		for ( int n = 0; n < numNeighbors; ++n )
+		{
+			if ( offsets[ n ].length != numDimensions )
+				throw new IllegalArgumentException( "LocalNeighborhoodOffsetCursor(): offset " + n + " has " + offsets[ n ].length + " dimensions, but the image has " + numDimensions );
+			
+			this.offsets[ n ] = offsets[ n ].clone();
+			
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], offsets[ n ][ d ] );
+				max[ d ] = Math.max( max[ d ], offsets[ n ][ d ] );
+			}
+		}
+		
+		this.dimensions = cursor.getImage().getDimensions();
+		this.linearOffsets = new int[ numNeighbors ];
+		this.layoutSteps = new int[ numDimensions ];
+		this.steps = new int[ numDimensions ];
+		this.cellOffset = new int[ numDimensions ];
+		this.cellDimensions = new int[ numDimensions ];
+		
+		final Container<T> container = cursor.getStorageContainer();
+		
+		if ( container instanceof Array )
+		{
+			this.cellContainer = null;
+			this.linearCursor = cursor.getImage().createLocalizableByDimCursor();
+			this.linearType = linearCursor.getType();
+			
+			// the layout of an Array never changes
+			Array.createAllocationSteps( dimensions, steps );
+			updateLinearOffsets();
+		}
+		else if ( container instanceof CellContainer )
+		{
+			this.cellContainer = (CellContainer<T,?>)container;
+			this.linearCursor = cursor.getImage().createLocalizableByDimCursor();
+			this.linearType = linearCursor.getType();
+			
+			// will be computed for the first cell that is visited
+			layoutSteps[ 0 ] = -1;
+		}
+		else
+		{
+			this.cellContainer = null;
+			this.linearCursor = null;
+			this.linearType = null;
+		}
+		
+		this.i = -1;
+		this.linear = false;
+	}
+	
+	/**
+	 * Creates the offsets of all pixels of a hypercube with the given radius around the center.
+	 * 
+	 * @param numDimensions - the dimensionality 
+	 * @param radius - the radius, i.e. the hypercube has a size of 2*radius+1 in every dimension
+	 * @param includeCenter - if the center itself is part of the neighborhood
+	 * @return the offsets, the first dimension is the fastest varying one
+	 */
+	public static int[][] createHyperCubeOffsets( final int numDimensions, final int radius, final boolean includeCenter )
+	{
+		final int size = 2 * radius + 1;
+		int numPixels = 1;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			numPixels *= size;
+		
+		final int[][] offsets = new int[ includeCenter ? numPixels : numPixels - 1 ][];
+		final int[] position = new int[ numDimensions ];
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			position[ d ] = -radius;
+		
+		for ( int n = 0, j = 0; n < numPixels; ++n )
+		{
+			boolean isCenter = true;
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( position[ d ] != 0 )
+					isCenter = false;
+			
+			if ( includeCenter || !isCenter )
+				offsets[ j++ ] = position.clone();
+			
+			// move to the next pixel
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				if ( position[ d ] < radius )
+				{
+					++position[ d ];
+					break;
+				}
+				
+				position[ d ] = -radius;
+			}
+		}
+		
+		return offsets;
+	}
+	
+	/**
+	 * Creates the offsets of all set pixels of a binary shape relative to its center, e.g. of a 
+	 * {@link mpicbg.imglib.algorithm.roi.StructuringElement}.
+	 * 
+	 * @param shape - the shape, must have the dimensionality of the image the cursor will be used on 
+	 * @param center - the location in the shape that corresponds to the position of the parent cursor
+	 * @return the offsets
+	 */
+	public static int[][] createShapeOffsets( final Image<BitType> shape, final int[] center )
+	{
+		final int numDimensions = shape.getNumDimensions();
+		final ArrayList<int[]> offsets = new ArrayList<int[]>();
+		
+		final LocalizableCursor<BitType> cursor = shape.createLocalizableCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			
+			if ( cursor.getType().get() )
+			{
+				final int[] offset = cursor.getPosition();
+				
+				for ( int d = 0; d < numDimensions; ++d )
+					offset[ d ] -= center[ d ];
+				
+				offsets.add( offset );
+			}
+		}
+		
+		cursor.close();
+		
+		return offsets.toArray( new int[ offsets.size() ][] );
+	}
+
+	/**
+	 * Computes the offsets of the linear index from the current steps
+	 */
+	protected void updateLinearOffsets()
+	{
+		for ( int n = 0; n < numNeighbors; ++n )
+		{
+			final int[] offset = offsets[ n ];
+			
+			int index = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				index += offset[ d ] * steps[ d ];
+			
+			linearOffsets[ n ] = index;
+		}
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			layoutSteps[ d ] = steps[ d ];
+	}
+	
+	/**
+	 * Tests if the neighborhood of the current center is fully contained in the 
+	 * image (Array) or in the current cell (CellContainer) and prepares the linear access. 
+	 * 
+	 * @return - if the neighborhood can be iterated by linear index
+	 */
+	protected boolean updateLinear()
+	{
+		if ( linearCursor == null )
+			return false;
+		
+		if ( cellContainer == null )
+		{
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( position[ d ] + min[ d ] < 0 || position[ d ] + max[ d ] >= dimensions[ d ] )
+					return false;
+			
+			linearCursor.setPosition( position );
+		}
+		else
+		{
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( position[ d ] < 0 || position[ d ] >= dimensions[ d ] )
+					return false;
+			
+			linearCursor.setPosition( position );
+			
+			final Cell<T,?> cell = cellContainer.getCell( linearCursor.getStorageIndex() );
+			cell.getOffset( cellOffset );
+			cell.getDimensions( cellDimensions );
+			
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				final int p = position[ d ] - cellOffset[ d ];
+				
+				if ( p + min[ d ] < 0 || p + max[ d ] >= cellDimensions[ d ] )
+					return false;
+			}
+			
+			// cells at the border of the image may have a different layout
+			cell.getSteps( steps );
+			
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				if ( steps[ d ] != layoutSteps[ d ] )
+				{
+					updateLinearOffsets();
+					break;
+				}
+			}
+		}
+		
+		centerIndex = linearType.getIndex();
+		
+		return true;
+	}
+	
+	@Override
+	public boolean hasNext() { return i < numNeighbors - 1; }
+
+	@Override
+	public void update()
+	{
+		cursor.getPosition( position );
+		linear = updateLinear();
+		i = -1;
+	}
+
+	@Override
+	public void reset()
+	{
+		cursor.setPosition( position );
+		i = -1;
+	}
+
+	@Override
+	public void fwd()
+	{
+		++i;
+		
+		if ( linear )
+		{
+			linearType.updateIndex( centerIndex + linearOffsets[ i ] );
+		}
+		else
+		{
+			final int[] offset = offsets[ i ];
+			
+			for ( int d = 0; d < numDimensions; ++d )
+				tmp[ d ] = position[ d ] + offset[ d ];
+			
+			cursor.setPosition( tmp );
+		}
+	}
+	
+	@Override
+	public T getType() { return linear ? linearType : cursor.getType(); }
+	
+	/**
+	 * @return - the number of pixels in the neighborhood
+	 */
+	public int getNumNeighbors() { return numNeighbors; }
+	
+	/**
+	 * @return - the index of the current neighbor in the list of offsets
+	 */
+	public int getNeighborIndex() { return i; }
+	
+	/**
+	 * @param d - dimension
+	 * @return - the offset of the current neighbor relative to the center
+	 */
+	public int getOffset( final int d ) { return offsets[ i ][ d ]; }
+	
+	/**
+	 * @return - the position of the current neighbor relative to the bounding box of the neighborhood 
+	 */
+	@Override
+	public int getRelativePosition( final int d ) { return offsets[ i ][ d ] - min[ d ]; }
+
+	/**
+	 * @param position - the array to write the image coordinates of the current neighbor into
+	 */
+	public void getPosition( final int[] position )
+	{
+		final int[] offset = offsets[ i ];
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			position[ d ] = this.position[ d ] + offset[ d ];
+	}
+	
+	/**
+	 * @param d - dimension
+	 * @return - the image coordinate of the current neighbor in dimension d
+	 */
+	public int getPosition( final int d ) { return position[ d ] + offsets[ i ][ d ]; }
+	
+	@Override
+	public int getArrayIndex() { return linear ? linearType.getIndex() : cursor.getArrayIndex(); }
+
+	@Override
+	public int getStorageIndex() { return linear ? linearCursor.getStorageIndex() : cursor.getStorageIndex(); }
+	
+	@Override
+	public void close() 
+	{
+		if ( linearCursor != null )
+			linearCursor.close();
+		
+		super.close();
+	}
+}
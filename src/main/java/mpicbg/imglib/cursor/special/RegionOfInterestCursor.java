@@ -51,9 +51,16 @@ import mpicbg.imglib.util.Util;
  */
 public class RegionOfInterestCursor<T extends Type<T>> extends CursorImpl<T> implements LocalizableCursor<T> 
 {
-	final LocalizableByDimCursor<T> cursor;
+	/* the cursor moving through the current roi, either the out of bounds cursor or the interior cursor */
+	LocalizableByDimCursor<T> cursor;
+
+	/* the cursor as given, and an optional cursor without bounds checks for rois that lie completely inside the image */
+	final LocalizableByDimCursor<T> outOfBoundsCursor, interiorCursor;
 	final int[] offset, size, roiPosition;
 	
+	/* the range of offsets for which the whole roi lies inside the image */
+	final int[] interiorMin, interiorMax;
+	
 	// true means go forward, false go backward
 	final boolean[] currentDirectionDim;
 	
@@ -63,16 +70,35 @@ public class RegionOfInterestCursor<T extends Type<T>> extends CursorImpl<T> imp
 	int i;
 	
 	public RegionOfInterestCursor( final LocalizableByDimCursor<T> cursor, final int[] offset, final int size[] )
+	{
+		this( cursor, null, offset, size );
+	}
+
+	/**
+	 * Creates a {@link RegionOfInterestCursor} with an interior fast path. Whenever the roi lies completely 
+	 * inside the image, it is traversed with the interiorCursor which does no bounds checking, only rois 
+	 * touching the image borders are traversed by the (out of bounds) cursor. 
+	 * 
+	 * @param cursor - the {@link LocalizableByDimCursor} that can leave the image
+	 * @param interiorCursor - a {@link LocalizableByDimCursor} on the same image that does not need to leave it, or null
+	 * @param offset - the offset of the roi
+	 * @param size - the size of the roi
+	 */
+	public RegionOfInterestCursor( final LocalizableByDimCursor<T> cursor, final LocalizableByDimCursor<T> interiorCursor, final int[] offset, final int size[] )
 	{
 		super( cursor.getStorageContainer(), cursor.getImage() );
 		
 		this.offset = offset.clone();
 		this.size = size.clone();		
 		this.cursor = cursor;
+		this.outOfBoundsCursor = cursor;
+		this.interiorCursor = interiorCursor;
 		
 		this.numDimensions = cursor.getImage().getNumDimensions();
 		this.roiPosition = new int[ numDimensions ];
 		this.currentDirectionDim = new boolean[ numDimensions ]; 
+		this.interiorMin = new int[ numDimensions ];
+		this.interiorMax = new int[ numDimensions ];
 		
 		int count = 1;
 		for ( int d = 0; d < numDimensions; ++d )
@@ -80,15 +106,54 @@ public class RegionOfInterestCursor<T extends Type<T>> extends CursorImpl<T> imp
 		
 		numPixels = count;
 		numPixelsMinus1 = count - 1;
+		isActive = true;
 		
+		updateInterior();
 		reset();
 	}
 	
+	/**
+	 * Computes the range of offsets for which the roi lies completely inside the image. The cursor never 
+	 * leaves the roi, so the interior starts at 0 in every dimension.
+	 */
+	protected void updateInterior()
+	{
+		if ( interiorCursor == null )
+			return;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			interiorMin[ d ] = 0;
+			interiorMax[ d ] = image.getDimension( d ) - size[ d ];
+		}
+	}
+	
+	/**
+	 * @return true if the current roi lies completely inside the image and no bounds checking is necessary
+	 */
+	public boolean isInterior()
+	{
+		if ( interiorCursor == null )
+			return false;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			if ( offset[ d ] < interiorMin[ d ] || offset[ d ] > interiorMax[ d ] )
+				return false;
+		
+		return true;
+	}
+	
 	@Override
 	public boolean hasNext() { return i < numPixelsMinus1; }
 	
 	@Override
-	public void close()  { isActive = false; }
+	public void close()  
+	{ 
+		if ( interiorCursor != null )
+			interiorCursor.close();
+		
+		isActive = false; 
+	}
 
 	@Override
 	public T getType() { return cursor.getType(); }
@@ -111,6 +176,8 @@ public class RegionOfInterestCursor<T extends Type<T>> extends CursorImpl<T> imp
 		{
 			for ( int d = 0; d < numDimensions; ++d )
 				this.size[ d ] = s[ d ];
+			
+			updateInterior();
 		}
 		reset();
 	}
@@ -119,8 +186,14 @@ public class RegionOfInterestCursor<T extends Type<T>> extends CursorImpl<T> imp
 	public void reset()
 	{
 		i = -1;
+		
+		if ( isInterior() )
+			cursor = interiorCursor;
+		else
+			cursor = outOfBoundsCursor;
+		
+		// the first fwd() stays at the offset, so the cursor never leaves the roi (cell cursors cannot step outside the image)
 		cursor.setPosition( offset );
-		cursor.bck( 0 );
 			
 		for ( int d = 0; d < numDimensions; ++d )
 		{
@@ -128,14 +201,13 @@ public class RegionOfInterestCursor<T extends Type<T>> extends CursorImpl<T> imp
 			currentDirectionDim[ d ] = true;
 			roiPosition[ d ] = 0;
 		}
-		
-		roiPosition[ 0 ] = -1;
 	}
 
 	@Override
 	public void fwd()
 	{
-		++i;
+		if ( ++i == 0 )
+			return;
 		
 		for ( int dim = 0; dim < numDimensions; ++dim )
 		{
@@ -179,7 +251,7 @@ public class RegionOfInterestCursor<T extends Type<T>> extends CursorImpl<T> imp
 	public int getStorageIndex() { return cursor.getStorageIndex();	}
 
 	@Override
-	public boolean isActive() { return cursor.isActive() && isActive; }
+	public boolean isActive() { return outOfBoundsCursor.isActive() && isActive; }
 
 	@Override
 	public void setDebug( boolean debug ) { this.debug = debug; }
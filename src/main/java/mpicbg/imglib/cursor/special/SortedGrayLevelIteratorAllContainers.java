@@ -59,6 +59,11 @@ public class SortedGrayLevelIteratorAllContainers< T extends IntegerType< T > >
 		super(image);
 	}
 	
+	public SortedGrayLevelIteratorAllContainers( final Image< T > image, final int numThreads )
+	{
+		super( image, numThreads );
+	}
+	
 	@Override
 	protected void createInternalCursor()
 	{
@@ -40,6 +40,7 @@ package mpicbg.imglib.cursor.special;
 import java.util.Iterator;
 
 import mpicbg.imglib.container.array.Array;
+import mpicbg.imglib.cursor.Cursor;
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.numeric.IntegerType;
 
@@ -58,7 +59,12 @@ public class SortedGrayLevelIteratorArrayContainerOnly< T extends IntegerType< T
 	
 	public SortedGrayLevelIteratorArrayContainerOnly( final Image< T > image )
 	{
-		super(image);
+		this( image, 1 );
+	}
+	
+	public SortedGrayLevelIteratorArrayContainerOnly( final Image< T > image, final int numThreads )
+	{
+		super( image, numThreads );
 		if (!Array.class.isInstance( image.getContainer() ) )
 			throw new RuntimeException( "Only array container is supported. Use class SortedGrayLevelIterator instead." );
 	}
@@ -69,6 +75,27 @@ public class SortedGrayLevelIteratorArrayContainerOnly< T extends IntegerType< T
 		this.arrayType = image.createCursor().getType();
 	}
 	
+	@Override
+	protected GrayLevelReader createGrayLevelReader()
+	{
+		// for an Array the linear index is the index in the storage
+		final Cursor<T> cursor = image.createCursor();
+		final T type = cursor.getType();
+		
+		return new GrayLevelReader()
+		{
+			@Override
+			public int getIntegerValueAtLinearIndex( final int p )
+			{
+				type.updateIndex( p );
+				return type.getInteger();
+			}
+
+			@Override
+			public void close() { cursor.close(); }
+		};
+	}
+	
 	@Override
 	protected int getIntegerValueAtLinearIndex(final int p)
 	{
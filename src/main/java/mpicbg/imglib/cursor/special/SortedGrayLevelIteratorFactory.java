@@ -70,6 +70,14 @@ public class SortedGrayLevelIteratorFactory<T extends IntegerType<T>> implements
 			return new SortedGrayLevelIteratorAllContainers<T>(image);
 	}
 	
+	public AbstractSortedGrayLevelIterator<T> createSortedGrayLevelIterator(Image<T> image, int numThreads)
+	{
+		if(isArrayContainer)
+			return new SortedGrayLevelIteratorArrayContainerOnly<T>(image, numThreads);
+		else
+			return new SortedGrayLevelIteratorAllContainers<T>(image, numThreads);
+	}
+	
 	public void printProperties()
 	{
 		
@@ -0,0 +1,276 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.special;
+
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.type.Type;
+
+/**
+ * A {@link RegionOfInterestCursor} that traverses the roi tile by tile instead of line by line. 
+ * The roi is divided into tiles of a given size (the tiles at the upper borders may be smaller), 
+ * every tile is traversed completely before the next one is entered. The tiles are visited either
+ * in raster order or in Morton order (Z-order), a tile size of 1 in all dimensions yields a pure
+ * Z-order traversal of the pixels.
+ * 
+ * As only the order differs, this is meant for algorithms whose result does not depend on the 
+ * order of visits (min/max, histograms, filters writing into a separate output) but that access 
+ * the neighborhood of each pixel, e.g. through a second cursor. Tiles that fit into the cache keep 
+ * the neighborhoods of consecutive pixels in memory, a raster traversal of a large 3d image will 
+ * load each plane again for every z-step.
+ * 
+ * Use {@link #TileOrderCursor(LocalizableByDimCursor, int[], boolean)} to traverse a whole image
+ * and {@link #create(LocalizableByDimCursor, int[], int[], int[], boolean)} for a roi, the position is 
+ * always relative to the offset of the roi.
+ *
+ * @param <T>
+ */
+public class TileOrderCursor<T extends Type<T>> extends RegionOfInterestCursor<T>
+{
+	final int[] tileSize, numTiles, tilePosition, currentTileSize, tmp;
+	final boolean mortonOrder;
+	
+	/* the number of bits of every dimension in the morton code, dimensions with fewer tiles drop out at the higher bits */
+	final int[] bits;
+	int maxBits;
+	long mortonCode, maxMortonCode;
+	
+	/* pixels left in the current tile */
+	int remainingTilePixels;
+	
+	/**
+	 * Traverses the whole image the cursor is defined on.
+	 * 
+	 * @param cursor - the {@link LocalizableByDimCursor} that is moved
+	 * @param tileSize - the size of the tiles
+	 * @param mortonOrder - visit the tiles in Morton order instead of raster order
+	 */
+	public TileOrderCursor( final LocalizableByDimCursor<T> cursor, final int[] tileSize, final boolean mortonOrder )
+	{
+		this( cursor, null, new int[ cursor.getImage().getNumDimensions() ], cursor.getImage().getDimensions(), tileSize, mortonOrder );
+	}
+	
+	/**
+	 * Traverses a roi, see {@link RegionOfInterestCursor#RegionOfInterestCursor(LocalizableByDimCursor, LocalizableByDimCursor, int[], int[])}.
+	 * 
+	 * @param cursor - the {@link LocalizableByDimCursor} that can leave the image
+	 * @param interiorCursor - a {@link LocalizableByDimCursor} on the same image that does not need to leave it, or null
+	 * @param offset - the offset of the roi
+	 * @param size - the size of the roi
+	 * @param tileSize - the size of the tiles
+	 * @param mortonOrder - visit the tiles in Morton order instead of raster order
+	 */
+	public TileOrderCursor( final LocalizableByDimCursor<T> cursor, final LocalizableByDimCursor<T> interiorCursor, 
+			final int[] offset, final int[] size, final int[] tileSize, final boolean mortonOrder )
+	{
+		super( cursor, interiorCursor, offset, size );
+		
+		this.tileSize = tileSize.clone();
+		this.numTiles = new int[ numDimensions ];
+		this.tilePosition = new int[ numDimensions ];
+		this.currentTileSize = new int[ numDimensions ];
+		this.tmp = new int[ numDimensions ];
+		this.bits = new int[ numDimensions ];
+		this.mortonOrder = mortonOrder;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			if ( tileSize[ d ] < 1 )
+				throw new IllegalArgumentException( "TileOrderCursor(): tile size must be at least 1, but is " + tileSize[ d ] + " in dimension " + d );
+		
+		reset();
+	}
+	
+	/**
+	 * Creates a {@link TileOrderCursor} for a roi of the image of a cursor. The cursor is only moved for rois
+	 * that are not completely inside the image, otherwise a new {@link LocalizableByDimCursor} on the image, 
+	 * which is closed together with the {@link TileOrderCursor}.
+	 * 
+	 * @param cursor - the {@link LocalizableByDimCursor}, with an out-of-bounds strategy if the roi can leave the image
+	 * @param offset - the offset of the roi
+	 * @param size - the size of the roi
+	 * @param tileSize - the size of the tiles
+	 * @param mortonOrder - visit the tiles in Morton order instead of raster order
+	 */
+	public static <T extends Type<T>> TileOrderCursor<T> create( final LocalizableByDimCursor<T> cursor, final int[] offset, final int[] size, final int[] tileSize, final boolean mortonOrder )
+	{
+		return new TileOrderCursor<T>( cursor, cursor.getImage().createLocalizableByDimCursor(), offset, size, tileSize, mortonOrder );
+	}
+	
+	public int[] getTileSize() { return tileSize.clone(); }
+	
+	public boolean isMortonOrder() { return mortonOrder; }
+
+	@Override
+	public void reset()
+	{
+		i = -1;
+		
+		if ( isInterior() )
+			cursor = interiorCursor;
+		else
+			cursor = outOfBoundsCursor;
+		
+		// called by the super constructor
+		if ( tileSize == null )
+			return;
+		
+		int numBits = 0;
+		maxBits = 0;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			numTiles[ d ] = ( size[ d ] + tileSize[ d ] - 1 ) / tileSize[ d ];
+			tilePosition[ d ] = 0;
+			
+			bits[ d ] = 0;
+			while ( ( 1 << bits[ d ] ) < numTiles[ d ] )
+				++bits[ d ];
+			
+			numBits += bits[ d ];
+			maxBits = Math.max( maxBits, bits[ d ] );
+		}
+		
+		if ( mortonOrder && numBits > 62 )
+			throw new RuntimeException( "TileOrderCursor.reset(): too many tiles for a morton code, use larger tiles." );
+		
+		maxMortonCode = 1l << numBits;
+		mortonCode = -1;
+		
+		// the first call of fwd() enters the first tile
+		tilePosition[ 0 ] = -1;
+		remainingTilePixels = 0;
+	}
+	
+	@Override
+	public void fwd()
+	{
+		++i;
+		
+		if ( remainingTilePixels == 0 )
+		{
+			nextTile();
+			return;
+		}
+		
+		--remainingTilePixels;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			final int tileStart = tilePosition[ d ] * tileSize[ d ];
+			
+			if ( roiPosition[ d ] < tileStart + currentTileSize[ d ] - 1 )
+			{
+				cursor.fwd( d );
+				++roiPosition[ d ];
+				return;
+			}
+			
+			// back to the start of the tile in this dimension
+			final int steps = roiPosition[ d ] - tileStart;
+			
+			if ( steps != 0 )
+			{
+				cursor.move( -steps, d );
+				roiPosition[ d ] = tileStart;
+			}
+		}
+	}
+	
+	/**
+	 * Moves to the first pixel of the next tile
+	 */
+	protected void nextTile()
+	{
+		if ( mortonOrder )
+		{
+			// skip the codes that decode to tiles outside of the roi, at most 2^n codes per tile as
+			// every dimension only has as many bits as its number of tiles needs
+			boolean inside;
+			
+			do
+			{
+				++mortonCode;
+				
+				for ( int d = 0; d < numDimensions; ++d )
+					tilePosition[ d ] = 0;
+				
+				int bit = 0;
+				
+				for ( int b = 0; b < maxBits; ++b )
+					for ( int d = 0; d < numDimensions; ++d )
+						if ( b < bits[ d ] )
+							tilePosition[ d ] |= (int)( ( mortonCode >>> bit++ ) & 1 ) << b;
+				
+				inside = true;
+				
+				for ( int d = 0; d < numDimensions; ++d )
+					if ( tilePosition[ d ] >= numTiles[ d ] )
+						inside = false;
+			}
+			while ( !inside && mortonCode < maxMortonCode );
+		}
+		else
+		{
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				if ( tilePosition[ d ] < numTiles[ d ] - 1 )
+				{
+					++tilePosition[ d ];
+					break;
+				}
+				
+				tilePosition[ d ] = 0;
+			}
+		}
+		
+		int numTilePixels = 1;
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			final int tileStart = tilePosition[ d ] * tileSize[ d ];
+			
+			currentTileSize[ d ] = Math.min( tileSize[ d ], size[ d ] - tileStart );
+			numTilePixels *= currentTileSize[ d ];
+			
+			roiPosition[ d ] = tileStart;
+			tmp[ d ] = offset[ d ] + tileStart;
+		}
+		
+		remainingTilePixels = numTilePixels - 1;
+		cursor.setPosition( tmp );
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Custom Java Flight Recorder events of ImgLib, i.e. algorithm runs and large container allocations.
+ * 
+ * ImgLib is compiled for Java 8 where the jdk.jfr API cannot be referenced, so the events are 
+ * defined at runtime through jdk.jfr.EventFactory using reflection. If the running JVM has no 
+ * Flight Recorder, all events are no-ops. Events only cost a few reflective calls per algorithm run
+ * or allocation and are dropped by the recorder unless a recording enabled them, e.g. with 
+ * <code>-XX:StartFlightRecording</code>. They appear in the category "ImgLib".
+ * 
+ * If registering an event type or one of the reflective calls fails, the events of ImgLib are 
+ * disabled for the rest of the session and the reason is printed once to System.err, the 
+ * algorithms are never affected.
+ */
+public class FlightRecorder 
+{
+	/**
+	 * One algorithm run: the algorithm, dimensions, type and container of its input, the number of threads and the duration
+	 */
+	public static final EventType ALGORITHM = new EventType( "mpicbg.imglib.Algorithm", "Algorithm", "An ImgLib algorithm run",
+			new String[] { "algorithm", "dimensions", "type", "container", "threads", "pixels" },
+			new Class<?>[] { String.class, String.class, String.class, String.class, int.class, long.class } );
+
+	/**
+	 * The allocation of a container that is larger than {@link #getAllocationThreshold()}
+	 */
+	public static final EventType ALLOCATION = new EventType( "mpicbg.imglib.ContainerAllocation", "Container Allocation", "Allocation of a large ImgLib container",
+			new String[] { "container", "dimensions", "type", "bytes" },
+			new Class<?>[] { String.class, String.class, String.class, long.class } );
+	
+	static long allocationThreshold = 16 * 1024 * 1024;
+	
+	/* set when a reflective call failed, all events are no-ops afterwards */
+	static volatile boolean disabled = false;
+	
+	/**
+	 * @param bytes - containers of at least this size emit an {@link #ALLOCATION} event, default is 16 MB
+	 */
+	public static void setAllocationThreshold( final long bytes ) { allocationThreshold = bytes; }
+	public static long getAllocationThreshold() { return allocationThreshold; }
+	
+	/**
+	 * @return true if the JVM supports custom Flight Recorder events and they were not disabled by an error
+	 */
+	public static boolean isAvailable() { return Reflection.available && !disabled; }
+	
+	/**
+	 * Disables all events after a reflective call failed, only the first failure is reported.
+	 * 
+	 * @param operation - what failed
+	 * @param e - the exception
+	 */
+	protected static synchronized void disable( final String operation, Throwable e )
+	{
+		if ( disabled )
+			return;
+		
+		disabled = true;
+		
+		if ( e instanceof InvocationTargetException && e.getCause() != null )
+			e = e.getCause();
+		
+		System.err.println( "FlightRecorder: " + operation + " failed, Flight Recorder events of ImgLib are disabled: " + e );
+	}
+	
+	/**
+	 * @param dimensions - the dimensions of an image
+	 * @return - e.g. "256x256x16"
+	 */
+	public static String toString( final int[] dimensions )
+	{
+		final StringBuilder out = new StringBuilder();
+		
+		for ( int d = 0; d < dimensions.length; ++d )
+		{
+			if ( d > 0 )
+				out.append( 'x' );
+			
+			out.append( dimensions[ d ] );
+		}
+		
+		return out.toString();
+	}
+	
+	/**
+	 * The definition of a Flight Recorder event with a fixed list of fields
+	 */
+	public static class EventType
+	{
+		final Object factory;
+		final int numFields;
+		
+		public EventType( final String name, final String label, final String description, final String[] fieldNames, final Class<?>[] fieldTypes )
+		{
+			this.numFields = fieldNames.length;
+			
+			Object f = null;
+			
+			if ( Reflection.available )
+			{
+				try
+				{
+					final List<Object> annotations = new ArrayList<Object>();
+					annotations.add( Reflection.annotation( "jdk.jfr.Name", name ) );
+					annotations.add( Reflection.annotation( "jdk.jfr.Label", label ) );
+					annotations.add( Reflection.annotation( "jdk.jfr.Description", description ) );
+					annotations.add( Reflection.annotation( "jdk.jfr.Category", new String[] { "ImgLib" } ) );
+					
+					final List<Object> fields = new ArrayList<Object>();
+					for ( int i = 0; i < numFields; ++i )
+						fields.add( Reflection.valueDescriptor.newInstance( fieldTypes[ i ], fieldNames[ i ] ) );
+					
+					f = Reflection.create.invoke( null, annotations, fields );
+				}
+				catch ( Exception e )
+				{
+					disable( "registering event " + name, e );
+					f = null;
+				}
+			}
+			
+			this.factory = f;
+		}
+		
+		/**
+		 * @return - a new {@link Event}, call {@link Event#begin()} at the start of the measured operation
+		 */
+		public Event newEvent()
+		{
+			if ( factory == null || disabled )
+				return new Event( null );
+			
+			try
+			{
+				final Object event = Reflection.newEvent.invoke( factory );
+				
+				if ( (Boolean)Reflection.isEnabled.invoke( event ) )
+					return new Event( event );
+				else
+					return new Event( null );
+			}
+			catch ( Exception e )
+			{
+				disable( "creating an event", e );
+				return new Event( null );
+			}
+		}
+	}
+	
+	/**
+	 * One instance of an {@link EventType}, a no-op if the Flight Recorder is not available or the event is not enabled
+	 */
+	public static class Event
+	{
+		final Object event;
+		
+		Event( final Object event ) { this.event = event; }
+		
+		/**
+		 * @return - true if the event will be recorded, use it to avoid computing the values of the fields otherwise
+		 */
+		public boolean isEnabled() { return event != null && !disabled; }
+		
+		public void begin() { invoke( Reflection.begin ); }
+		public void commit() { invoke( Reflection.commit ); }
+		
+		/**
+		 * @param index - the index of the field as given when the {@link EventType} was created
+		 * @param value - the value
+		 */
+		public void set( final int index, final Object value )
+		{
+			if ( isEnabled() )
+			{
+				try
+				{
+					Reflection.set.invoke( event, index, value );
+				}
+				catch ( Exception e )
+				{
+					disable( "setting field " + index, e );
+				}
+			}
+		}
+		
+		protected void invoke( final Method method )
+		{
+			if ( isEnabled() )
+			{
+				try
+				{
+					method.invoke( event );
+				}
+				catch ( Exception e )
+				{
+					disable( "calling " + method.getName() + "()", e );
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The reflective handles of the jdk.jfr API
+	 */
+	static class Reflection
+	{
+		static final boolean available;
+		static Constructor<?> annotationElement, valueDescriptor;
+		static Method create, newEvent, begin, commit, isEnabled, set;
+		
+		static
+		{
+			boolean a;
+			
+			try
+			{
+				final Class<?> eventFactory = Class.forName( "jdk.jfr.EventFactory" );
+				final Class<?> event = Class.forName( "jdk.jfr.Event" );
+				
+				annotationElement = Class.forName( "jdk.jfr.AnnotationElement" ).getConstructor( Class.class, Object.class );
+				valueDescriptor = Class.forName( "jdk.jfr.ValueDescriptor" ).getConstructor( Class.class, String.class );
+				create = eventFactory.getMethod( "create", List.class, List.class );
+				newEvent = eventFactory.getMethod( "newEvent" );
+				begin = event.getMethod( "begin" );
+				commit = event.getMethod( "commit" );
+				isEnabled = event.getMethod( "isEnabled" );
+				set = event.getMethod( "set", int.class, Object.class );
+				a = true;
+			}
+			catch ( Throwable e )
+			{
+				// no Flight Recorder in this JVM (e.g. Java 8), not an error
+				a = false;
+			}
+			
+			available = a;
+		}
+		
+		@SuppressWarnings( "unchecked" )
+		static Object annotation( final String className, final Object value ) throws Exception
+		{
+			final Class<? extends Annotation> type = (Class<? extends Annotation>)Class.forName( className );
+			return annotationElement.newInstance( type, value );
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorExpWindowingFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyPeriodicFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares every pixel of the padded image, interior and halo, with an out of bounds cursor on the input
+ */
+public class HaloImageTest
+{
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim, final long seed )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( seed );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	@SuppressWarnings( "unchecked" )
+	private static OutOfBoundsStrategyFactory<FloatType>[] createStrategies()
+	{
+		return new OutOfBoundsStrategyFactory[] {
+			new OutOfBoundsStrategyMirrorFactory<FloatType>(),
+			new OutOfBoundsStrategyPeriodicFactory<FloatType>(),
+			new OutOfBoundsStrategyValueFactory<FloatType>( new FloatType( -3 ) ),
+			new OutOfBoundsStrategyMirrorExpWindowingFactory<FloatType>( 0.3f ) };
+	}
+	
+	private static void assertHalo( final Image<FloatType> input, final OutOfBoundsStrategyFactory<FloatType> strategy, final HaloImage<FloatType> halo, final String name )
+	{
+		final Image<FloatType> padded = halo.getResult();
+		final int[] offset = halo.getOffset();
+		final int numDimensions = input.getNumDimensions();
+		
+		for ( int d = 0; d < numDimensions; ++d )
+			assertEquals( name, input.getDimension( d ) + 2 * offset[ d ], padded.getDimension( d ) );
+		
+		final LocalizableCursor<FloatType> cursor = padded.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> reference = input.createLocalizableByDimCursor( strategy );
+		final int[] position = new int[ numDimensions ];
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.getPosition( position );
+			
+			for ( int d = 0; d < numDimensions; ++d )
+				position[ d ] -= offset[ d ];
+			
+			reference.setPosition( position );
+			assertEquals( name + " " + cursor.getPositionAsString(), reference.getType().get(), cursor.getType().get(), 0 );
+		}
+		
+		cursor.close();
+		reference.close();
+	}
+	
+	private static void testContainer( final ContainerFactory containerFactory, final int[] dim, final int[] haloSize )
+	{
+		final Image<FloatType> input = createRandomImage( containerFactory, dim, 17 );
+		
+		for ( final OutOfBoundsStrategyFactory<FloatType> strategy : createStrategies() )
+			for ( final int numThreads : new int[] { 1, 3 } )
+			{
+				final String name = containerFactory.getClass().getSimpleName() + " " + strategy.getClass().getSimpleName() + " " + numThreads + " threads";
+				
+				final HaloImage<FloatType> halo = new HaloImage<FloatType>( input, haloSize, strategy );
+				halo.setNumThreads( numThreads );
+				
+				assertTrue( halo.getErrorMessage(), halo.checkInput() && halo.process() );
+				assertArrayEquals( name, haloSize, halo.getOffset() );
+				assertHalo( input, strategy, halo, name );
+				
+				halo.getResult().close();
+			}
+	}
+	
+	@Test
+	public void testArray2D()
+	{
+		testContainer( new ArrayContainerFactory(), new int[] { 17, 11 }, new int[] { 4, 2 } );
+	}
+	
+	@Test
+	public void testCell3D()
+	{
+		testContainer( new CellContainerFactory( 4 ), new int[] { 9, 7, 5 }, new int[] { 3, 0, 2 } );
+	}
+	
+	@Test
+	public void testUpdateHalo()
+	{
+		final Image<FloatType> input = createRandomImage( new ArrayContainerFactory(), new int[] { 13, 8 }, 17 );
+		final OutOfBoundsStrategyFactory<FloatType> strategy = new OutOfBoundsStrategyMirrorFactory<FloatType>();
+		final HaloImage<FloatType> halo = new HaloImage<FloatType>( input, 3, strategy );
+		
+		assertTrue( halo.getErrorMessage(), halo.checkInput() && halo.process() );
+		
+		// change the input and update the padded image
+		for ( final FloatType t : input )
+			t.set( t.get() + 1 );
+		
+		assertTrue( halo.getErrorMessage(), halo.process() );
+		assertHalo( input, strategy, halo, "process() again" );
+		
+		// only the halo follows the input after updateHalo()
+		for ( final FloatType t : input )
+			t.set( t.get() * 2 );
+		
+		assertTrue( halo.getErrorMessage(), halo.updateHalo() );
+		
+		final LocalizableByDimCursor<FloatType> cursor = halo.getResult().createLocalizableByDimCursor();
+		final LocalizableByDimCursor<FloatType> reference = input.createLocalizableByDimCursor( strategy );
+		
+		reference.setPosition( new int[] { 2, 5 } );
+		cursor.setPosition( new int[] { 5, 8 } );
+		assertEquals( reference.getType().get() / 2, cursor.getType().get(), 0 );
+		
+		reference.setPosition( new int[] { -2, 5 } );
+		cursor.setPosition( new int[] { 1, 8 } );
+		assertEquals( reference.getType().get(), cursor.getType().get(), 0 );
+		
+		cursor.close();
+		reference.close();
+	}
+	
+	@Test
+	public void testWrongHalo()
+	{
+		final Image<FloatType> input = createRandomImage( new ArrayContainerFactory(), new int[] { 13, 8 }, 17 );
+		final OutOfBoundsStrategyFactory<FloatType> strategy = new OutOfBoundsStrategyMirrorFactory<FloatType>();
+		
+		final HaloImage<FloatType> wrongDimensionality = new HaloImage<FloatType>( input, new int[] { 2 }, strategy );
+		assertFalse( wrongDimensionality.checkInput() );
+		assertEquals( "Halo is not of same dimensionality as input image", wrongDimensionality.getErrorMessage() );
+		
+		final HaloImage<FloatType> negative = new HaloImage<FloatType>( input, new int[] { 2, -1 }, strategy );
+		assertFalse( negative.checkInput() );
+		
+		final HaloImage<FloatType> noInput = new HaloImage<FloatType>( null, 2, strategy );
+		assertFalse( noInput.checkInput() );
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.complex.ComplexDoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that every user of the pooled {@link FFTCache} buffers overwrites a buffer before reading it:
+ * the pool is filled with NaN after every run and the results are compared against runs without
+ * the cache, alternating the image sizes and the number of threads
+ */
+public class FFTCacheTest
+{
+	final static int[][] sizes = new int[][] { { 40, 30 }, { 33, 27 }, { 40, 30 }, { 17, 12, 9 }, { 60, 7 }, { 17, 12, 9 } };
+	final static int[] numThreads = new int[] { 1, 3, 7, 2, 5, 1 };
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim, final long seed )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( seed );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	/**
+	 * Fills all buffers in the pool with NaN
+	 */
+	private static void poisonPool()
+	{
+		for ( final ConcurrentLinkedQueue< float[] > pool : FFTCache.buffers.values() )
+			for ( final float[] buffer : pool )
+				Arrays.fill( buffer, Float.NaN );
+		
+		for ( final ConcurrentLinkedQueue< double[] > pool : FFTCache.doubleBuffers.values() )
+			for ( final double[] buffer : pool )
+				Arrays.fill( buffer, Double.NaN );
+	}
+	
+	private static float[] toArray( final Image<FloatType> image )
+	{
+		final float[] data = new float[ image.getNumPixels() ];
+		final Cursor<FloatType> cursor = image.createCursor();
+		int i = 0;
+		
+		for ( final FloatType t : cursor )
+			data[ i++ ] = t.get();
+		
+		cursor.close();
+		
+		return data;
+	}
+	
+	private static float[] convolve( final Image<FloatType> image, final Image<FloatType> kernel, final PrecisionReal precision, final int numThreads )
+	{
+		final FourierConvolution<FloatType, FloatType> convolution = new FourierConvolution<FloatType, FloatType>( image, kernel );
+		convolution.setPrecision( precision );
+		convolution.setNumThreads( numThreads );
+		
+		assertTrue( convolution.getErrorMessage(), convolution.checkInput() && convolution.process() );
+		
+		return toArray( convolution.getResult() );
+	}
+	
+	private static float[] roundTripDouble( final Image<FloatType> image, final int numThreads )
+	{
+		final FourierTransform<FloatType, ComplexDoubleType> fft = new FourierTransform<FloatType, ComplexDoubleType>( image, new ComplexDoubleType() );
+		fft.setNumThreads( numThreads );
+		assertTrue( fft.getErrorMessage(), fft.checkInput() && fft.process() );
+		
+		final InverseFourierTransform<FloatType, ComplexDoubleType> ifft = new InverseFourierTransform<FloatType, ComplexDoubleType>( fft.getResult(), fft );
+		ifft.setNumThreads( numThreads );
+		assertTrue( ifft.getErrorMessage(), ifft.checkInput() && ifft.process() );
+		
+		return toArray( ifft.getResult() );
+	}
+	
+	/**
+	 * @return the results of all runs, concatenated
+	 */
+	private static float[][] runAll( final ContainerFactory containerFactory, final boolean poison )
+	{
+		final float[][] results = new float[ sizes.length * 3 ][];
+		
+		for ( int i = 0; i < sizes.length; ++i )
+		{
+			final Image<FloatType> image = createRandomImage( containerFactory, sizes[ i ], i );
+			final Image<FloatType> kernel = FourierConvolution.createGaussianKernel( containerFactory, 1.5, sizes[ i ].length );
+			
+			results[ 3 * i ] = convolve( image, kernel, PrecisionReal.Float, numThreads[ i ] );
+			
+			if ( poison )
+				poisonPool();
+			
+			results[ 3 * i + 1 ] = convolve( image, kernel, PrecisionReal.Double, numThreads[ i ] );
+			
+			if ( poison )
+				poisonPool();
+			
+			results[ 3 * i + 2 ] = roundTripDouble( image, numThreads[ i ] );
+			
+			if ( poison )
+				poisonPool();
+		}
+		
+		return results;
+	}
+	
+	private static void test( final ContainerFactory containerFactory )
+	{
+		final boolean enabled = FFTCache.isEnabled();
+		
+		try
+		{
+			FFTCache.setEnabled( false );
+			final float[][] expected = runAll( containerFactory, false );
+			
+			FFTCache.setEnabled( true );
+			FFTCache.clear();
+			final float[][] actual = runAll( containerFactory, true );
+			
+			assertTrue( "the pool was not used", FFTCache.getBufferBytes() > 0 );
+			
+			for ( int i = 0; i < expected.length; ++i )
+			{
+				assertEquals( expected[ i ].length, actual[ i ].length );
+				
+				for ( int j = 0; j < expected[ i ].length; ++j )
+					assertEquals( "run " + i + " pixel " + j, expected[ i ][ j ], actual[ i ][ j ], 0 );
+			}
+		}
+		finally
+		{
+			FFTCache.setEnabled( enabled );
+		}
+	}
+	
+	@Test
+	public void testArray()
+	{
+		test( new ArrayContainerFactory() );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		test( new CellContainerFactory( 8 ) );
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.container.dynamic.DynamicContainerFactory;
+import mpicbg.imglib.container.planar.PlanarContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.Type;
+import mpicbg.imglib.type.numeric.ComplexType;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.complex.ComplexDoubleType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.DoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares the direct line access of {@link FFTFunctions} for images in Array, Planar and Cell containers 
+ * ({@link FFTLineAccess}) against the cursor path, which is taken for the same data in a {@link DynamicContainerFactory}
+ * image. The results have to be identical.
+ */
+public class FFTFunctionsTest
+{
+	/**
+	 * the image sizes, the areas that are transformed and the areas that are cropped back in the inverse transform, 
+	 * they contain lines that need the outofbounds strategy and lines that are cropped
+	 */
+	final static int[][] sizes = new int[][] { { 14, 5 }, { 13, 9, 6 }, { 13, 9, 6 } };
+	final static int[][] offsets = new int[][] { { -3, -2 }, { 2, 1, 0 }, { -4, -1, -2 } };
+	final static int[][] fftSizes = new int[][] { { 20, 9 }, { 10, 7, 6 }, { 20, 10, 9 } };
+	final static int[][] cropOffsets = new int[][] { { 3, 2 }, { 1, 1, 0 }, { 4, 1, 2 } };
+	final static int[][] cropSizes = new int[][] { { 14, 5 }, { 8, 5, 6 }, { 13, 9, 6 } };
+	
+	// fewer and more threads than lines
+	final static int[] numThreads = new int[] { 1, 2, 3, 64 };
+	
+	final static ContainerFactory[] containerFactories = new ContainerFactory[] { 
+		new ArrayContainerFactory(), new PlanarContainerFactory(), new CellContainerFactory( new int[] { 4, 3, 5 } ), new CellContainerFactory( 7 ) };
+	
+	private static <T extends RealType<T>> Image<T> createRandomImage( final T type, final int[] dim, final long seed )
+	{
+		final Image<T> image = new ImageFactory<T>( type, new DynamicContainerFactory() ).createImage( dim );
+		final Random rnd = new Random( seed );
+		
+		for ( final T t : image )
+			t.setReal( rnd.nextFloat() * 100 - 20 );
+		
+		return image;
+	}
+	
+	private static <T extends Type<T>> Image<T> copy( final Image<T> image, final ContainerFactory containerFactory )
+	{
+		final Image<T> copy = new ImageFactory<T>( image.createType(), containerFactory ).createImage( image.getDimensions() );
+		final LocalizableCursor<T> cursor = copy.createLocalizableCursor();
+		final LocalizableByDimCursor<T> source = image.createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			source.setPosition( cursor );
+			cursor.getType().set( source.getType() );
+		}
+		
+		cursor.close();
+		source.close();
+		
+		return copy;
+	}
+	
+	private static <S extends ComplexType<S>> void assertIdentical( final String message, final Image<S> expected, final Image<S> actual )
+	{
+		assertEquals( message, expected.getNumDimensions(), actual.getNumDimensions() );
+		
+		for ( int d = 0; d < expected.getNumDimensions(); ++d )
+			assertEquals( message, expected.getDimension( d ), actual.getDimension( d ) );
+		
+		final LocalizableCursor<S> cursor = expected.createLocalizableCursor();
+		final LocalizableByDimCursor<S> cursorActual = actual.createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursorActual.setPosition( cursor );
+			
+			final String position = message + " at " + cursor.getPosition()[ 0 ] + "," + cursor.getPosition()[ 1 ];
+			assertEquals( position, cursor.getType().getRealDouble(), cursorActual.getType().getRealDouble(), 0 );
+			assertEquals( position, cursor.getType().getComplexDouble(), cursorActual.getType().getComplexDouble(), 0 );
+		}
+		
+		cursor.close();
+		cursorActual.close();
+	}
+	
+	private static <T extends RealType<T>, S extends ComplexType<S>> void test( final T type, final S complexType, final PrecisionReal precision )
+	{
+		for ( int i = 0; i < sizes.length; ++i )
+		{
+			final Image<T> image = createRandomImage( type, sizes[ i ], i );
+			final OutOfBoundsStrategyMirrorFactory<T> outOfBounds = new OutOfBoundsStrategyMirrorFactory<T>();
+			
+			// make sure that the reference takes the cursor path
+			assertNull( FFTLineAccess.create( image ) );
+			assertNull( FFTLineAccess.createDouble( image ) );
+			
+			for ( final boolean scale : new boolean[] { false, true } )
+			{
+				final Image<S> expected = FFTFunctions.computeFFT( image, complexType, outOfBounds, offsets[ i ], fftSizes[ i ], 1, scale, precision );
+				
+				for ( final ContainerFactory containerFactory : containerFactories )
+				{
+					final Image<T> input = copy( image, containerFactory );
+					final String name = containerFactory.getClass().getSimpleName() + " " + precision + " case " + i + " scale " + scale;
+					
+					// make sure that the image is accessed directly
+					assertNotNull( name, precision == PrecisionReal.Float ? FFTLineAccess.create( input ) : FFTLineAccess.createDouble( input ) );
+					
+					for ( final int threads : numThreads )
+					{
+						final Image<S> fft = FFTFunctions.computeFFT( input, complexType, outOfBounds, offsets[ i ], fftSizes[ i ], threads, scale, precision );
+						assertIdentical( name + " threads " + threads, expected, fft );
+						
+						testInverse( type, expected, fft, cropOffsets[ i ], cropSizes[ i ], threads, precision, name + " threads " + threads );
+					}
+				}
+			}
+		}
+	}
+	
+	private static <T extends RealType<T>, S extends ComplexType<S>> void testInverse( final T type, final Image<S> referenceFFT, final Image<S> fft, 
+	                                                                                  final int[] cropOffset, final int[] cropSize, final int threads, 
+	                                                                                  final PrecisionReal precision, final String name )
+	{
+		for ( final boolean cropBack : new boolean[] { false, true } )
+			for ( final boolean scale : new boolean[] { false, true } )
+			{
+				// the inverse transform overwrites the complex image
+				final Image<T> expected = FFTFunctions.computeInverseFFT( referenceFFT.clone(), type, 1, scale, cropBack, cropSize, cropOffset, 0.5f, precision );
+				final Image<T> actual = FFTFunctions.computeInverseFFT( fft.clone(), type, threads, scale, cropBack, cropSize, cropOffset, 0.5f, precision );
+				
+				final String message = name + " inverse cropBack " + cropBack + " scale " + scale;
+				
+				assertEquals( message, expected.getNumPixels(), actual.getNumPixels() );
+				
+				final LocalizableCursor<T> cursor = expected.createLocalizableCursor();
+				final LocalizableByDimCursor<T> cursorActual = actual.createLocalizableByDimCursor();
+				
+				while ( cursor.hasNext() )
+				{
+					cursor.fwd();
+					cursorActual.setPosition( cursor );
+					assertEquals( message, cursor.getType().getRealDouble(), cursorActual.getType().getRealDouble(), 0 );
+				}
+				
+				cursor.close();
+				cursorActual.close();
+			}
+	}
+	
+	@Test
+	public void testFloat()
+	{
+		test( new FloatType(), new ComplexFloatType(), PrecisionReal.Float );
+	}
+	
+	@Test
+	public void testDouble()
+	{
+		test( new DoubleType(), new ComplexDoubleType(), PrecisionReal.Double );
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.mines.jtk.dsp.FftComplex;
+
+/**
+ * Compares {@link FftComplexDouble} against a direct DFT and {@link FftComplex}
+ */
+public class FftComplexDoubleTest
+{
+	// the radices 2, 3 and 4, the directly computed primes and their products
+	final static int[] lengths = new int[] { 1, 2, 3, 4, 5, 7, 8, 11, 13, 16, 17, 6, 12, 30, 35, 64, 77, 143, 180, 208, 240, 1001, 720 };
+	
+	private static double[] createRandomArray( final int length, final long seed )
+	{
+		final Random rnd = new Random( seed );
+		final double[] data = new double[ length ];
+		
+		for ( int i = 0; i < length; ++i )
+			data[ i ] = rnd.nextDouble() * 2 - 1;
+		
+		return data;
+	}
+	
+	/**
+	 * cy[ k ] = sum_j cx[ j ] * exp( sign * i * 2 * pi * j * k / n )
+	 */
+	private static double[] dft( final int sign, final double[] cx )
+	{
+		final int n = cx.length / 2;
+		final double[] cy = new double[ 2 * n ];
+		
+		for ( int k = 0; k < n; ++k )
+		{
+			double re = 0, im = 0;
+			
+			for ( int j = 0; j < n; ++j )
+			{
+				final double angle = sign * 2 * Math.PI * ( ( (long)j * k ) % n ) / n;
+				final double c = Math.cos( angle );
+				final double s = Math.sin( angle );
+				
+				re += cx[ 2 * j ] * c - cx[ 2 * j + 1 ] * s;
+				im += cx[ 2 * j ] * s + cx[ 2 * j + 1 ] * c;
+			}
+			
+			cy[ 2 * k ] = re;
+			cy[ 2 * k + 1 ] = im;
+		}
+		
+		return cy;
+	}
+	
+	private static void assertArrayEquals( final String message, final double[] expected, final double[] actual, final int length, final double delta )
+	{
+		for ( int i = 0; i < length; ++i )
+			assertEquals( message + " at " + i, expected[ i ], actual[ i ], delta );
+	}
+	
+	@Test
+	public void testDFT()
+	{
+		for ( final int n : lengths )
+			for ( final int sign : new int[] { -1, 1 } )
+			{
+				final double[] cx = createRandomArray( 2 * n, n );
+				final double[] cy = new double[ 2 * n ];
+				
+				new FftComplexDouble( n ).complexToComplex( sign, cx, cy );
+				
+				// the error of the direct DFT and the FFT grows with the length
+				assertArrayEquals( "length " + n + " sign " + sign, dft( sign, cx ), cy, 2 * n, 1e-12 * n );
+			}
+	}
+	
+	@Test
+	public void testRoundTrip()
+	{
+		for ( final int n : lengths )
+		{
+			final FftComplexDouble fft = new FftComplexDouble( n );
+			final double[] cx = createRandomArray( 2 * n, n );
+			final double[] cy = new double[ 2 * n ];
+			final double[] cz = new double[ 2 * n ];
+			
+			fft.complexToComplex( -1, cx, cy );
+			fft.complexToComplex( 1, cy, cz );
+			
+			for ( int i = 0; i < 2 * n; ++i )
+				cz[ i ] /= n;
+			
+			assertArrayEquals( "length " + n, cx, cz, 2 * n, 1e-14 * n );
+		}
+	}
+	
+	@Test
+	public void testInPlace()
+	{
+		for ( final int n : lengths )
+			for ( final int sign : new int[] { -1, 1 } )
+			{
+				final FftComplexDouble fft = new FftComplexDouble( n );
+				final double[] cx = createRandomArray( 2 * n, n );
+				final double[] cy = new double[ 2 * n ];
+				
+				fft.complexToComplex( sign, cx, cy );
+				fft.complexToComplex( sign, cx, cx );
+				
+				assertArrayEquals( "length " + n + " sign " + sign, cy, cx, 2 * n, 0 );
+			}
+	}
+	
+	@Test
+	public void testFftComplex()
+	{
+		for ( final int size : new int[] { 10, 50, 100, 300, 1000 } )
+			for ( final int n : new int[] { FftComplex.nfftSmall( size ), FftComplex.nfftFast( size ) } )
+			{
+				final double[] cx = createRandomArray( 2 * n, n );
+				final float[] fx = new float[ 2 * n ];
+				final float[] fy = new float[ 2 * n ];
+				final double[] cy = new double[ 2 * n ];
+				
+				// the float input, so that both transform the same values
+				for ( int i = 0; i < 2 * n; ++i )
+				{
+					fx[ i ] = (float)cx[ i ];
+					cx[ i ] = fx[ i ];
+				}
+				
+				new FftComplex( n ).complexToComplex( -1, fx, fy );
+				new FftComplexDouble( n ).complexToComplex( -1, cx, cy );
+				
+				// float precision, the values are sums of n products of values in [-1,1]
+				for ( int i = 0; i < 2 * n; ++i )
+					assertEquals( "length " + n + " at " + i, cy[ i ], fy[ i ], 1e-6 * n );
+			}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.mines.jtk.dsp.FftReal;
+
+/**
+ * Compares {@link FftRealDouble} against a direct DFT and {@link FftReal}
+ */
+public class FftRealDoubleTest
+{
+	// even lengths, nfft / 2 has the radices 2, 3 and 4, directly computed primes or is odd
+	final static int[] lengths = new int[] { 2, 4, 6, 8, 10, 14, 16, 22, 26, 30, 32, 34, 24, 40, 56, 88, 104, 154, 286, 360, 416, 1440 };
+	
+	private static double[] createRandomArray( final int length, final long seed )
+	{
+		final Random rnd = new Random( seed );
+		final double[] data = new double[ length ];
+		
+		for ( int i = 0; i < length; ++i )
+			data[ i ] = rnd.nextDouble() * 2 - 1;
+		
+		return data;
+	}
+	
+	/**
+	 * cy[ k ] = sum_j rx[ j ] * exp( sign * i * 2 * pi * j * k / n ) for k = 0 ... n/2
+	 */
+	private static double[] dft( final int sign, final double[] rx, final int n )
+	{
+		final double[] cy = new double[ n + 2 ];
+		
+		for ( int k = 0; k <= n / 2; ++k )
+		{
+			double re = 0, im = 0;
+			
+			for ( int j = 0; j < n; ++j )
+			{
+				final double angle = sign * 2 * Math.PI * ( ( (long)j * k ) % n ) / n;
+				
+				re += rx[ j ] * Math.cos( angle );
+				im += rx[ j ] * Math.sin( angle );
+			}
+			
+			cy[ 2 * k ] = re;
+			cy[ 2 * k + 1 ] = im;
+		}
+		
+		return cy;
+	}
+	
+	private static void assertArrayEquals( final String message, final double[] expected, final double[] actual, final int length, final double delta )
+	{
+		for ( int i = 0; i < length; ++i )
+			assertEquals( message + " at " + i, expected[ i ], actual[ i ], delta );
+	}
+	
+	@Test
+	public void testDFT()
+	{
+		for ( final int n : lengths )
+			for ( final int sign : new int[] { -1, 1 } )
+			{
+				final double[] rx = createRandomArray( n, n );
+				final double[] cy = new double[ n + 2 ];
+				
+				new FftRealDouble( n ).realToComplex( sign, rx, cy );
+				
+				assertArrayEquals( "length " + n + " sign " + sign, dft( sign, rx, n ), cy, n + 2, 1e-12 * n );
+			}
+	}
+	
+	@Test
+	public void testRoundTrip()
+	{
+		for ( final int n : lengths )
+		{
+			final FftRealDouble fft = new FftRealDouble( n );
+			final double[] rx = createRandomArray( n, n );
+			final double[] cy = new double[ n + 2 ];
+			final double[] rz = new double[ n ];
+			
+			fft.realToComplex( -1, rx, cy );
+			fft.complexToReal( 1, cy, rz );
+			
+			for ( int i = 0; i < n; ++i )
+				rz[ i ] /= n;
+			
+			assertArrayEquals( "length " + n, rx, rz, n, 1e-14 * n );
+		}
+	}
+	
+	@Test
+	public void testInPlace()
+	{
+		for ( final int n : lengths )
+		{
+			final FftRealDouble fft = new FftRealDouble( n );
+			final double[] rx = createRandomArray( n, n );
+			final double[] cy = new double[ n + 2 ];
+			final double[] ry = new double[ n ];
+			
+			// real to complex
+			final double[] data = new double[ n + 2 ];
+			System.arraycopy( rx, 0, data, 0, n );
+			
+			fft.realToComplex( -1, rx, cy );
+			fft.realToComplex( -1, data, data );
+			
+			assertArrayEquals( "length " + n, cy, data, n + 2, 0 );
+			
+			// complex to real
+			fft.complexToReal( 1, cy, ry );
+			fft.complexToReal( 1, data, data );
+			
+			assertArrayEquals( "length " + n, ry, data, n, 0 );
+		}
+	}
+	
+	@Test
+	public void testFftReal()
+	{
+		for ( final int size : new int[] { 10, 50, 100, 300, 1000 } )
+			for ( final int n : new int[] { FftReal.nfftSmall( size ), FftReal.nfftFast( size ) } )
+			{
+				final double[] rx = createRandomArray( n, n );
+				final float[] fx = new float[ n ];
+				final float[] fy = new float[ n + 2 ];
+				final double[] cy = new double[ n + 2 ];
+				
+				// the float input, so that both transform the same values
+				for ( int i = 0; i < n; ++i )
+				{
+					fx[ i ] = (float)rx[ i ];
+					rx[ i ] = fx[ i ];
+				}
+				
+				new FftReal( n ).realToComplex( -1, fx, fy );
+				new FftRealDouble( n ).realToComplex( -1, rx, cy );
+				
+				// float precision, the values are sums of n values in [-1,1]
+				for ( int i = 0; i < n + 2; ++i )
+					assertEquals( "length " + n + " at " + i, cy[ i ], fy[ i ], 1e-6 * n );
+				
+				// back to the real sequence
+				final float[] fz = new float[ n ];
+				final double[] rz = new double[ n ];
+				
+				new FftReal( n ).complexToReal( 1, fy, fz );
+				new FftRealDouble( n ).complexToReal( 1, cy, rz );
+				
+				// without scaling the values are n times the input
+				for ( int i = 0; i < n; ++i )
+					assertEquals( "length " + n + " at " + i, rz[ i ], fz[ i ], 1e-5 * n );
+			}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares the block processing of {@link FourierConvolution} against the convolution of the whole image
+ */
+public class FourierConvolutionTest
+{
+	final static int[][] sizes = new int[][] { { 60, 45 }, { 25, 20, 15 } };
+	final static int[][] kernelSizes = new int[][] { { 5, 7 }, { 5, 3, 7 } };
+	
+	// null chooses the block size automatically
+	final static int[][][] blockSizes = new int[][][] { 
+		{ null, { 1, 1 }, { 8, 8 }, { 13, 5 }, { 100, 100 } }, 
+		{ null, { 1, 1, 1 }, { 6, 9, 4 }, { 30, 30, 30 } } };
+	
+	final static int[] numThreads = new int[] { 1, 3, 8 };
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim, final long seed )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( seed );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static Image<FloatType> convolve( final Image<FloatType> image, final Image<FloatType> kernel, final boolean blocks, final int[] blockSize, final int numThreads )
+	{
+		final FourierConvolution<FloatType, FloatType> convolution = new FourierConvolution<FloatType, FloatType>( image, kernel );
+		convolution.setNumThreads( numThreads );
+		convolution.setBlockProcessing( blocks );
+		
+		if ( blocks )
+		{
+			if ( blockSize == null )
+				convolution.setMaxBlockPixels( 1000 );
+			else
+				convolution.setBlockSize( blockSize );
+		}
+		
+		assertTrue( convolution.getErrorMessage(), convolution.checkInput() && convolution.process() );
+		
+		return convolution.getResult();
+	}
+	
+	private static void assertEqualImages( final String message, final Image<FloatType> expected, final Image<FloatType> actual, final double delta )
+	{
+		for ( int d = 0; d < expected.getNumDimensions(); ++d )
+			assertEquals( message, expected.getDimension( d ), actual.getDimension( d ) );
+		
+		final LocalizableCursor<FloatType> cursor = expected.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> cursorActual = actual.createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursorActual.setPosition( cursor );
+			assertEquals( message + " at " + cursor.getPosition()[ 0 ] + "," + cursor.getPosition()[ 1 ], cursor.getType().get(), cursorActual.getType().get(), delta );
+		}
+		
+		cursor.close();
+		cursorActual.close();
+	}
+	
+	private static void testBlocks( final ContainerFactory containerFactory )
+	{
+		for ( int i = 0; i < sizes.length; ++i )
+		{
+			final Image<FloatType> image = createRandomImage( containerFactory, sizes[ i ], i );
+			
+			// an asymmetric kernel, so that a mirrored kernel is noticed
+			final Image<FloatType> kernel = createRandomImage( containerFactory, kernelSizes[ i ], 100 + i );
+			
+			final Image<FloatType> expected = convolve( image, kernel, false, null, 1 );
+			
+			for ( final int[] blockSize : blockSizes[ i ] )
+				for ( final int threads : numThreads )
+				{
+					final Image<FloatType> actual = convolve( image, kernel, true, blockSize, threads );
+					
+					final String name = containerFactory.getClass().getSimpleName() + " " + sizes[ i ].length + "d block size " + 
+						( blockSize == null ? "auto" : Arrays.toString( blockSize ) ) + " threads " + threads;
+					
+					// the values are sums of up to 105 products of values in [0,100[, they differ by float rounding
+					assertEqualImages( name, expected, actual, 0.1 );
+				}
+		}
+	}
+	
+	@Test
+	public void testBlocksArray()
+	{
+		testBlocks( new ArrayContainerFactory() );
+	}
+	
+	@Test
+	public void testBlocksCell()
+	{
+		testBlocks( new CellContainerFactory( 8 ) );
+	}
+	
+	@Test
+	public void testBlocksCellUneven()
+	{
+		// the blocks are smaller than the cells, their containers must not shrink the cells of the result
+		testBlocks( new CellContainerFactory( new int[] { 7, 5, 6 } ) );
+	}
+}
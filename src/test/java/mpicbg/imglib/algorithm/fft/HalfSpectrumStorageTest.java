@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import mpicbg.imglib.algorithm.fft.FourierTransform.PreProcessing;
+import mpicbg.imglib.algorithm.fft.FourierTransform.Rearrangement;
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.ComplexType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares the transforms in a {@link HalfSpectrumStorage} against the allocating path of 
+ * {@link FourierTransform} and {@link InverseFourierTransform}, the results have to be identical
+ */
+public class HalfSpectrumStorageTest
+{
+	final static int[][] sizes = new int[][] { { 37, 21 }, { 20, 11, 6 } };
+	final static ContainerFactory[] containerFactories = new ContainerFactory[] { new ArrayContainerFactory(), new CellContainerFactory( 8 ) };
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( 1 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static <S extends ComplexType<S>> void assertIdentical( final String message, final Image<S> expected, final Image<S> actual, final double delta )
+	{
+		assertEquals( message, expected.getNumDimensions(), actual.getNumDimensions() );
+		
+		for ( int d = 0; d < expected.getNumDimensions(); ++d )
+			assertEquals( message, expected.getDimension( d ), actual.getDimension( d ) );
+		
+		final LocalizableCursor<S> cursor = expected.createLocalizableCursor();
+		final LocalizableByDimCursor<S> cursorActual = actual.createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursorActual.setPosition( cursor );
+			
+			assertEquals( message, cursor.getType().getRealDouble(), cursorActual.getType().getRealDouble(), delta );
+			assertEquals( message, cursor.getType().getComplexDouble(), cursorActual.getType().getComplexDouble(), delta );
+		}
+		
+		cursor.close();
+		cursorActual.close();
+	}
+	
+	private static FourierTransform<FloatType, ComplexFloatType> forward( final Image<FloatType> image, final Rearrangement rearrangement, final boolean halfSpectrumStorage )
+	{
+		final FourierTransform<FloatType, ComplexFloatType> fft = new FourierTransform<FloatType, ComplexFloatType>( image, new ComplexFloatType(), rearrangement );
+		fft.setHalfSpectrumStorage( halfSpectrumStorage );
+		fft.setNumThreads( 3 );
+		
+		assertTrue( fft.getErrorMessage(), fft.checkInput() && fft.process() );
+		
+		return fft;
+	}
+	
+	private static Image<FloatType> inverse( final InverseFourierTransform<FloatType, ComplexFloatType> ifft, final Rearrangement rearrangement, final boolean inSpectrumStorage )
+	{
+		ifft.setRearrangement( rearrangement );
+		ifft.setInPlaceTransform( inSpectrumStorage );
+		ifft.setOutputInSpectrumStorage( inSpectrumStorage );
+		ifft.setNumThreads( 3 );
+		
+		assertTrue( ifft.getErrorMessage(), ifft.checkInput() && ifft.process() );
+		
+		return ifft.getResult();
+	}
+	
+	@Test
+	public void testTransforms()
+	{
+		for ( final ContainerFactory containerFactory : containerFactories )
+			for ( final int[] size : sizes )
+				for ( final Rearrangement rearrangement : Rearrangement.values() )
+				{
+					final String name = containerFactory.getClass().getSimpleName() + " " + size.length + "d " + rearrangement;
+					final Image<FloatType> image = createRandomImage( containerFactory, size );
+					
+					final FourierTransform<FloatType, ComplexFloatType> expectedFFT = forward( image, rearrangement, false );
+					final FourierTransform<FloatType, ComplexFloatType> fft = forward( image, rearrangement, true );
+					
+					assertIdentical( name + " spectrum", expectedFFT.getResult(), fft.getResult(), 0 );
+					
+					// the spectrum without cropping back, the inverse overwrites it
+					final Image<ComplexFloatType> spectrum = fft.getResult().clone();
+					
+					// cropped back to the size of the image
+					final Image<FloatType> expected = inverse( new InverseFourierTransform<FloatType, ComplexFloatType>( expectedFFT.getResult(), expectedFFT ), rearrangement, false );
+					final Image<FloatType> actual = inverse( new InverseFourierTransform<FloatType, ComplexFloatType>( fft.getResult(), fft ), rearrangement, true );
+					
+					assertIdentical( name + " inverse", expected, actual, 0 );
+					
+					// the round trip reproduces the image
+					assertIdentical( name + " round trip", image, actual, 1e-4 );
+					
+					// the whole real image
+					final Image<FloatType> expectedUncropped = inverse( new InverseFourierTransform<FloatType, ComplexFloatType>( spectrum.clone(), new FloatType() ), rearrangement, false );
+					final Image<FloatType> actualUncropped = inverse( new InverseFourierTransform<FloatType, ComplexFloatType>( spectrum, new FloatType() ), rearrangement, true );
+					
+					assertIdentical( name + " inverse uncropped", expectedUncropped, actualUncropped, 0 );
+				}
+	}
+	
+	@Test
+	public void testInPlace()
+	{
+		final int[] size = new int[] { 32, 12, 5 };
+		final HalfSpectrumStorage storage = new HalfSpectrumStorage( size );
+		final Image<FloatType> image = createRandomImage( new ArrayContainerFactory(), size );
+		
+		// fill the real image of the storage
+		final LocalizableCursor<FloatType> cursor = image.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> cursorStorage = storage.getPaddedRealImage().createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursorStorage.setPosition( cursor );
+			cursorStorage.getType().set( cursor.getType() );
+		}
+		
+		cursor.close();
+		cursorStorage.close();
+		
+		storage.forward( 2, false );
+		
+		final FourierTransform<FloatType, ComplexFloatType> fft = new FourierTransform<FloatType, ComplexFloatType>( image, new ComplexFloatType(), PreProcessing.NONE );
+		fft.setRearrangement( Rearrangement.UNCHANGED );
+		assertTrue( fft.getErrorMessage(), fft.checkInput() && fft.process() );
+		
+		assertIdentical( "spectrum", fft.getResult(), storage.getSpectrum(), 0 );
+		
+		storage.inverse( 2, true, 1 );
+		assertIdentical( "round trip", image, storage.getRealImage( null, null ), 1e-5 );
+	}
+	
+	@Test
+	public void testCrop()
+	{
+		final int[] size = new int[] { 16, 10, 4 };
+		final Image<FloatType> image = createRandomImage( new ArrayContainerFactory(), size );
+		final int[] areaSize = new int[] { 5, 7, 2 };
+		final int[] areaOffset = new int[] { 9, 3, 1 };
+		
+		final HalfSpectrumStorage storage = new HalfSpectrumStorage( size );
+		final LocalizableCursor<FloatType> cursor = image.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> cursorStorage = storage.getPaddedRealImage().createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursorStorage.setPosition( cursor );
+			cursorStorage.getType().set( cursor.getType() );
+		}
+		
+		cursor.close();
+		cursorStorage.close();
+		
+		final Image<FloatType> area = storage.getRealImage( areaSize, areaOffset );
+		final LocalizableCursor<FloatType> cursorArea = area.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> cursorImage = image.createLocalizableByDimCursor();
+		final int[] position = new int[ size.length ];
+		
+		while ( cursorArea.hasNext() )
+		{
+			cursorArea.fwd();
+			cursorArea.getPosition( position );
+			
+			for ( int d = 0; d < size.length; ++d )
+				position[ d ] += areaOffset[ d ];
+			
+			cursorImage.setPosition( position );
+			assertEquals( cursorImage.getType().get(), cursorArea.getType().get(), 0 );
+		}
+		
+		cursorArea.close();
+		cursorImage.close();
+	}
+	
+	@Test
+	public void testInvalidArea()
+	{
+		final int[] size = new int[] { 16, 10 };
+		final int[][] areaSizes = new int[][] { { 16, 11 }, { 10, 10 }, { 0, 5 }, { 4, 4 }, { 4, 4, 1 } };
+		final int[][] areaOffsets = new int[][] { { 0, 0 }, { 7, 0 }, { 0, 0 }, { -1, 0 }, { 0, 0, 0 } };
+		
+		for ( int i = 0; i < areaSizes.length; ++i )
+		{
+			try
+			{
+				new HalfSpectrumStorage( size ).getRealImage( areaSizes[ i ], areaOffsets[ i ] );
+				fail( "area " + i + " is not inside the image" );
+			}
+			catch ( final RuntimeException e ) {}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link InverseFourierConvolution} divides by the kernel spectrum: the kernel is a 
+ * scaled delta, so the result is the image divided by the scale, a convolution would multiply it
+ */
+public class InverseFourierConvolutionTest
+{
+	final static int[] size = new int[] { 37, 29 };
+	final static int[][] kernelSizes = new int[][] { { 1, 1 }, { 3, 3 }, { 5, 1 } };
+	final static float scale = 2;
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( size );
+		final Random rnd = new Random( 1 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static Image<FloatType> createDelta( final int[] kernelSize )
+	{
+		final Image<FloatType> kernel = new ImageFactory<FloatType>( new FloatType(), new ArrayContainerFactory() ).createImage( kernelSize );
+		final LocalizableByDimCursor<FloatType> cursor = kernel.createLocalizableByDimCursor();
+		
+		cursor.setPosition( new int[] { kernelSize[ 0 ] / 2, kernelSize[ 1 ] / 2 } );
+		cursor.getType().set( scale );
+		cursor.close();
+		
+		return kernel;
+	}
+	
+	private static void test( final ContainerFactory containerFactory, final float regularization, final boolean blocks, final int numThreads )
+	{
+		final Image<FloatType> image = createRandomImage( containerFactory );
+		
+		// conj( K ) / ( |K|^2 + regularization )
+		final float factor = scale / ( scale * scale + regularization );
+		
+		for ( final int[] kernelSize : kernelSizes )
+		{
+			final InverseFourierConvolution<FloatType, FloatType> deconvolution = new InverseFourierConvolution<FloatType, FloatType>( image, createDelta( kernelSize ) );
+			deconvolution.setRegularization( regularization );
+			deconvolution.setBlockProcessing( blocks );
+			deconvolution.setNumThreads( numThreads );
+			
+			if ( blocks )
+				deconvolution.setBlockSize( new int[] { 8, 8 } );
+			
+			assertTrue( deconvolution.getErrorMessage(), deconvolution.checkInput() && deconvolution.process() );
+			
+			final LocalizableCursor<FloatType> cursor = image.createLocalizableCursor();
+			final LocalizableByDimCursor<FloatType> cursorResult = deconvolution.getResult().createLocalizableByDimCursor();
+			
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursorResult.setPosition( cursor );
+				
+				assertEquals( "kernel " + kernelSize[ 0 ] + "x" + kernelSize[ 1 ] + " blocks " + blocks + " threads " + numThreads, 
+				              cursor.getType().get() * factor, cursorResult.getType().get(), 1e-3 );
+			}
+			
+			cursor.close();
+			cursorResult.close();
+		}
+	}
+	
+	@Test
+	public void testDivide()
+	{
+		test( new ArrayContainerFactory(), 0, false, 1 );
+		test( new ArrayContainerFactory(), 0, false, 4 );
+		test( new CellContainerFactory( 8 ), 0, false, 3 );
+	}
+	
+	@Test
+	public void testRegularization()
+	{
+		test( new ArrayContainerFactory(), 1, false, 2 );
+		test( new CellContainerFactory( 8 ), 0.5f, false, 2 );
+	}
+	
+	@Test
+	public void testBlocks()
+	{
+		test( new ArrayContainerFactory(), 0, true, 1 );
+		test( new CellContainerFactory( 8 ), 1, true, 3 );
+	}
+}
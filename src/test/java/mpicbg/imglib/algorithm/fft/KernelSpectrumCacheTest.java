@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that a {@link KernelSpectrumCache} shared by many threads computes the kernel spectrum once per container layout
+ */
+public class KernelSpectrumCacheTest
+{
+	final static int[] size = new int[] { 45, 38 };
+	final static int numThreads = 8;
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim, final long seed )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( seed );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static float[] convolve( final Image<FloatType> image, final Image<FloatType> kernel, final KernelSpectrumCache cache )
+	{
+		final FourierConvolution<FloatType, FloatType> convolution = new FourierConvolution<FloatType, FloatType>( image, kernel );
+		convolution.setNumThreads( 1 );
+		convolution.setKernelSpectrumCache( cache );
+		
+		assertTrue( convolution.getErrorMessage(), convolution.checkInput() && convolution.process() );
+		
+		final float[] data = new float[ image.getNumPixels() ];
+		final Cursor<FloatType> cursor = convolution.getResult().createCursor();
+		int i = 0;
+		
+		for ( final FloatType t : cursor )
+			data[ i++ ] = t.get();
+		
+		cursor.close();
+		
+		return data;
+	}
+	
+	/**
+	 * Convolves images created by a new factory per thread, i.e. different factory instances of the same layout
+	 */
+	private static void testThreads( final ContainerFactory[] containerFactories, final int expectedNumComputed )
+	{
+		final Image<FloatType> kernel = createRandomImage( new ArrayContainerFactory(), new int[] { 7, 5 }, 1 );
+		final KernelSpectrumCache cache = new KernelSpectrumCache();
+		
+		final float[][] expected = new float[ containerFactories.length ][];
+		final float[][] results = new float[ containerFactories.length ][];
+		
+		for ( int i = 0; i < containerFactories.length; ++i )
+			expected[ i ] = convolve( createRandomImage( containerFactories[ i ], size, i ), kernel, null );
+		
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( containerFactories.length );
+		
+		for ( int ithread = 0; ithread < threads.length; ++ithread )
+			threads[ ithread ] = new Thread( new Runnable()
+			{
+				public void run()
+				{
+					final int myNumber = ai.getAndIncrement();
+					results[ myNumber ] = convolve( createRandomImage( containerFactories[ myNumber ], size, myNumber ), kernel, cache );
+				}
+			});
+		
+		SimpleMultiThreading.startAndJoin( threads );
+		
+		assertEquals( expectedNumComputed, cache.getNumComputed() );
+		
+		for ( int i = 0; i < containerFactories.length; ++i )
+		{
+			assertNotNull( "thread " + i + " failed", results[ i ] );
+			
+			for ( int j = 0; j < expected[ i ].length; ++j )
+				assertEquals( "thread " + i + " pixel " + j, expected[ i ][ j ], results[ i ][ j ], 0 );
+		}
+	}
+	
+	@Test
+	public void testArray()
+	{
+		final ContainerFactory[] containerFactories = new ContainerFactory[ numThreads ];
+		
+		for ( int i = 0; i < numThreads; ++i )
+			containerFactories[ i ] = new ArrayContainerFactory();
+		
+		testThreads( containerFactories, 1 );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		final ContainerFactory[] containerFactories = new ContainerFactory[ numThreads ];
+		
+		for ( int i = 0; i < numThreads; ++i )
+			containerFactories[ i ] = ( i % 2 == 0 ) ? new CellContainerFactory( 8 ) : new CellContainerFactory( new int[] { 8, 8 } );
+		
+		testThreads( containerFactories, 1 );
+	}
+	
+	@Test
+	public void testDifferentLayouts()
+	{
+		final ContainerFactory[] containerFactories = new ContainerFactory[ numThreads ];
+		
+		for ( int i = 0; i < numThreads; ++i )
+			containerFactories[ i ] = ( i % 2 == 0 ) ? new CellContainerFactory( 8 ) : new CellContainerFactory( 6 );
+		
+		testThreads( containerFactories, 2 );
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link PhaseCorrelationBatch} on a 3x3 grid of overlapping tiles with {@link PhaseCorrelation} 
+ * computed pair by pair
+ */
+public class PhaseCorrelationBatchTest
+{
+	final static int gridSize = 3;
+	final static int[] tileSize = new int[] { 40, 36 };
+	final static int[] tileStep = new int[] { 30, 27 };
+	
+	/**
+	 * @return the tiles of a random image in row-major order, neighboring tiles overlap by tileSize - tileStep
+	 */
+	private static List<Image<FloatType>> createTiles()
+	{
+		final Random rnd = new Random( 4353 );
+		final int width = tileStep[ 0 ] * ( gridSize - 1 ) + tileSize[ 0 ];
+		final int height = tileStep[ 1 ] * ( gridSize - 1 ) + tileSize[ 1 ];
+		
+		final float[] data = new float[ width * height ];
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = rnd.nextInt( 1000 );
+		
+		final ImageFactory<FloatType> factory = new ImageFactory<FloatType>( new FloatType(), new ArrayContainerFactory() );
+		final List<Image<FloatType>> tiles = new ArrayList<Image<FloatType>>();
+		final int[] position = new int[ 2 ];
+		
+		for ( int y = 0; y < gridSize; ++y )
+			for ( int x = 0; x < gridSize; ++x )
+			{
+				final Image<FloatType> tile = factory.createImage( tileSize );
+				final LocalizableCursor<FloatType> cursor = tile.createLocalizableCursor();
+				
+				while ( cursor.hasNext() )
+				{
+					cursor.fwd();
+					cursor.getPosition( position );
+					cursor.getType().set( data[ ( position[ 1 ] + y * tileStep[ 1 ] ) * width + position[ 0 ] + x * tileStep[ 0 ] ] );
+				}
+				
+				cursor.close();
+				tiles.add( tile );
+			}
+		
+		return tiles;
+	}
+	
+	/**
+	 * @return all pairs of horizontally, vertically and diagonally neighboring tiles, sorted by the first tile
+	 */
+	private static int[][] createPairs()
+	{
+		final ArrayList<int[]> pairs = new ArrayList<int[]>();
+		
+		for ( int y = 0; y < gridSize; ++y )
+			for ( int x = 0; x < gridSize; ++x )
+			{
+				final int tile = y * gridSize + x;
+				
+				if ( x + 1 < gridSize )
+					pairs.add( new int[] { tile, tile + 1 } );
+				if ( y + 1 < gridSize )
+					pairs.add( new int[] { tile, tile + gridSize } );
+				if ( x + 1 < gridSize && y + 1 < gridSize )
+					pairs.add( new int[] { tile, tile + gridSize + 1 } );
+			}
+		
+		return pairs.toArray( new int[ pairs.size() ][] );
+	}
+	
+	private static ArrayList<ArrayList<PhaseCorrelationPeak>> computePairwise( final List<Image<FloatType>> tiles, final int[][] pairs )
+	{
+		final ArrayList<ArrayList<PhaseCorrelationPeak>> peaks = new ArrayList<ArrayList<PhaseCorrelationPeak>>();
+		
+		for ( final int[] pair : pairs )
+		{
+			final PhaseCorrelation<FloatType, FloatType> phaseCorrelation = new PhaseCorrelation<FloatType, FloatType>( tiles.get( pair[ 0 ] ), tiles.get( pair[ 1 ] ) );
+			assertTrue( phaseCorrelation.getErrorMessage(), phaseCorrelation.checkInput() && phaseCorrelation.process() );
+			
+			peaks.add( phaseCorrelation.getAllShifts() );
+		}
+		
+		return peaks;
+	}
+	
+	private static PhaseCorrelationBatch<FloatType> computeBatch( final List<Image<FloatType>> tiles, final int[][] pairs, final int maxCachedSpectra, final int numThreads )
+	{
+		final PhaseCorrelationBatch<FloatType> batch = new PhaseCorrelationBatch<FloatType>( tiles, pairs );
+		batch.setMaxCachedSpectra( maxCachedSpectra );
+		batch.setNumThreads( numThreads );
+		
+		assertTrue( batch.getErrorMessage(), batch.checkInput() && batch.process() );
+		
+		return batch;
+	}
+	
+	/**
+	 * The batch must find the same peaks with identical phase correlation and cross correlation values
+	 */
+	private static void assertSameShifts( final ArrayList<ArrayList<PhaseCorrelationPeak>> expected, final PhaseCorrelationBatch<FloatType> batch )
+	{
+		for ( int i = 0; i < expected.size(); ++i )
+		{
+			final ArrayList<PhaseCorrelationPeak> peaks = batch.getAllShifts( i );
+			
+			assertEquals( expected.get( i ).size(), peaks.size() );
+			
+			for ( int j = 0; j < peaks.size(); ++j )
+			{
+				final PhaseCorrelationPeak e = expected.get( i ).get( j );
+				final PhaseCorrelationPeak p = peaks.get( j );
+				
+				assertArrayEquals( "pair " + i + " peak " + j, e.getPosition(), p.getPosition() );
+				assertArrayEquals( "pair " + i + " peak " + j, e.getOriginalInvPCMPosition(), p.getOriginalInvPCMPosition() );
+				assertEquals( "pair " + i + " peak " + j, e.getPhaseCorrelationPeak(), p.getPhaseCorrelationPeak(), 0 );
+				assertEquals( "pair " + i + " peak " + j, e.getCrossCorrelationPeak(), p.getCrossCorrelationPeak(), 0 );
+				assertEquals( "pair " + i + " peak " + j, e.getNumPixels(), p.getNumPixels() );
+			}
+		}
+	}
+	
+	@Test
+	public void testSameAsPairwise()
+	{
+		final List<Image<FloatType>> tiles = createTiles();
+		final int[][] pairs = createPairs();
+		
+		final ArrayList<ArrayList<PhaseCorrelationPeak>> expected = computePairwise( tiles, pairs );
+		final PhaseCorrelationBatch<FloatType> batch = computeBatch( tiles, pairs, 64, 1 );
+		
+		assertSameShifts( expected, batch );
+		
+		// every tile is transformed exactly once
+		assertEquals( gridSize * gridSize, batch.getNumComputedFFTs() );
+		
+		// the best shift of horizontal and vertical neighbors is the offset between the tiles, 
+		// the overlap of diagonal neighbors is too small to find it reliably
+		for ( int i = 0; i < pairs.length; ++i )
+		{
+			if ( pairs[ i ][ 1 ] == pairs[ i ][ 0 ] + gridSize + 1 )
+				continue;
+			
+			final int[] shift = batch.getShift( i ).getPosition();
+			
+			for ( int d = 0; d < 2; ++d )
+			{
+				final int tile1 = d == 0 ? pairs[ i ][ 0 ] % gridSize : pairs[ i ][ 0 ] / gridSize;
+				final int tile2 = d == 0 ? pairs[ i ][ 1 ] % gridSize : pairs[ i ][ 1 ] / gridSize;
+				
+				assertEquals( "pair " + i, ( tile2 - tile1 ) * tileStep[ d ], Math.abs( shift[ d ] ) );
+			}
+		}
+	}
+	
+	@Test
+	public void testEviction()
+	{
+		final List<Image<FloatType>> tiles = createTiles();
+		final int[][] pairs = createPairs();
+		
+		final ArrayList<ArrayList<PhaseCorrelationPeak>> expected = computePairwise( tiles, pairs );
+		
+		// the cache keeps at least two spectra per thread, less than the number of tiles
+		final PhaseCorrelationBatch<FloatType> batch = computeBatch( tiles, pairs, 2, 1 );
+		
+		assertSameShifts( expected, batch );
+		assertTrue( batch.getNumComputedFFTs() > gridSize * gridSize );
+	}
+	
+	@Test
+	public void testMultiThreaded()
+	{
+		final List<Image<FloatType>> tiles = createTiles();
+		final int[][] pairs = createPairs();
+		
+		final ArrayList<ArrayList<PhaseCorrelationPeak>> expected = computePairwise( tiles, pairs );
+		
+		for ( int i = 0; i < 5; ++i )
+		{
+			// all spectra fit into the cache, every tile is transformed only once although several threads need it
+			final PhaseCorrelationBatch<FloatType> batch = computeBatch( tiles, pairs, 64, 4 );
+			
+			assertSameShifts( expected, batch );
+			assertEquals( gridSize * gridSize, batch.getNumComputedFFTs() );
+			
+			// with eviction
+			assertSameShifts( expected, computeBatch( tiles, pairs, 1, 3 ) );
+		}
+	}
+}
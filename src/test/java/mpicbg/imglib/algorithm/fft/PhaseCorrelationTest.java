@@ -0,0 +1,316 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.Array;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.integer.UnsignedShortType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+import mpicbg.imglib.util.Util;
+
+import org.junit.Test;
+
+/**
+ * Compares the correlation coefficients of {@link PhaseCorrelation#testCrossCorrelation} on {@link Image}s 
+ * and on {@link CrossCorrelationBuffer}s with a direct computation
+ */
+public class PhaseCorrelationTest
+{
+	final static ContainerFactory[] containerFactories = new ContainerFactory[] { new ArrayContainerFactory(), new CellContainerFactory( 7 ) };
+	
+	/**
+	 * @return an image with the values of data at the same position, data is stored with dimension 0 varying fastest
+	 */
+	private static <T extends RealType<T>> Image<T> createImage( final T type, final ContainerFactory containerFactory, final int[] dim, final float[] data )
+	{
+		final Image<T> image = new ImageFactory<T>( type, containerFactory ).createImage( dim );
+		final int[] steps = Array.createAllocationSteps( dim );
+		final int[] position = new int[ dim.length ];
+		final LocalizableCursor<T> cursor = image.createLocalizableCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.getPosition( position );
+			
+			int i = 0;
+			for ( int d = 0; d < dim.length; ++d )
+				i += position[ d ] * steps[ d ];
+			
+			cursor.getType().setReal( data[ i ] );
+		}
+		
+		cursor.close();
+		
+		return image;
+	}
+	
+	private static float[] createRandomData( final int[] dim, final float min, final float range, final Random rnd )
+	{
+		int numPixels = 1;
+		for ( final int d : dim )
+			numPixels *= d;
+		
+		final float[] data = new float[ numPixels ];
+		
+		for ( int i = 0; i < numPixels; ++i )
+			data[ i ] = min + Math.round( rnd.nextFloat() * range );
+		
+		return data;
+	}
+	
+	/**
+	 * Two-pass correlation coefficient of the overlap in double precision, -2 if it is not defined
+	 */
+	private static double correlate( final float[] data1, final int[] dim1, final float[] data2, final int[] dim2, final int[] shift )
+	{
+		final int n = dim1.length;
+		final int[] steps1 = Array.createAllocationSteps( dim1 );
+		final int[] steps2 = Array.createAllocationSteps( dim2 );
+		final int[] position = new int[ n ];
+		
+		double sum1 = 0, sum2 = 0;
+		long numPx = 0;
+		
+		for ( int pass = 0; pass < 2; ++pass )
+		{
+			final double avg1 = sum1 / numPx, avg2 = sum2 / numPx;
+			double var1 = 0, var2 = 0, coVar = 0;
+			
+			for ( int i = 0; i < data1.length; ++i )
+			{
+				int i2 = 0;
+				boolean inside = true;
+				
+				for ( int d = 0; d < n; ++d )
+				{
+					position[ d ] = ( i / steps1[ d ] ) % dim1[ d ];
+					final int p2 = position[ d ] - shift[ d ];
+					
+					if ( p2 < 0 || p2 >= dim2[ d ] )
+						inside = false;
+					else
+						i2 += p2 * steps2[ d ];
+				}
+				
+				if ( !inside )
+					continue;
+				
+				if ( pass == 0 )
+				{
+					sum1 += data1[ i ];
+					sum2 += data2[ i2 ];
+					++numPx;
+				}
+				else
+				{
+					final double dist1 = data1[ i ] - avg1;
+					final double dist2 = data2[ i2 ] - avg2;
+					
+					var1 += dist1 * dist1;
+					var2 += dist2 * dist2;
+					coVar += dist1 * dist2;
+				}
+			}
+			
+			if ( pass == 1 )
+				return var1 == 0 || var2 == 0 ? -2 : coVar / Math.sqrt( var1 * var2 );
+		}
+		
+		return -2;
+	}
+	
+	private static <T extends RealType<T>, S extends RealType<S>> double testBoth( final int[] shift, final Image<T> image1, final Image<S> image2, final int[] minOverlapPx, final long[] numPixels )
+	{
+		final long[] numPixelsBuffer = new long[ 1 ];
+		
+		final double r = PhaseCorrelation.testCrossCorrelation( shift, image1, image2, minOverlapPx, numPixels );
+		final double rBuffer = PhaseCorrelation.testCrossCorrelation( shift, new CrossCorrelationBuffer( image1 ), new CrossCorrelationBuffer( image2 ), minOverlapPx, numPixelsBuffer );
+		
+		// the same sums, the region of interest cursors only visit the pixels in a different order
+		assertEquals( r, rBuffer, 1E-12 );
+		assertEquals( numPixels[ 0 ], numPixelsBuffer[ 0 ] );
+		
+		return r;
+	}
+	
+	@Test
+	public void testRandomShifts()
+	{
+		final Random rnd = new Random( 4353 );
+		final int[][] dims1 = new int[][] { { 31, 24 }, { 13, 9, 11 } };
+		final int[][] dims2 = new int[][] { { 27, 29 }, { 10, 12, 8 } };
+		
+		for ( int i = 0; i < dims1.length; ++i )
+		{
+			final int[] dim1 = dims1[ i ];
+			final int[] dim2 = dims2[ i ];
+			final int n = dim1.length;
+			
+			final float[] data1 = createRandomData( dim1, 0, 1000, rnd );
+			final float[] data2 = createRandomData( dim2, 0, 1000, rnd );
+			
+			// the overlap of image2 at shift ( 3, 2, ... ) is a noisy copy of image1
+			final int[] copyShift = Util.getArrayFromValue( 2, n );
+			copyShift[ 0 ] = 3;
+			
+			final int[] steps1 = Array.createAllocationSteps( dim1 );
+			final int[] steps2 = Array.createAllocationSteps( dim2 );
+			
+			for ( int j = 0; j < data2.length; ++j )
+			{
+				int j1 = 0;
+				boolean inside = true;
+				
+				for ( int d = 0; d < n; ++d )
+				{
+					final int p1 = ( j / steps2[ d ] ) % dim2[ d ] + copyShift[ d ];
+					if ( p1 >= dim1[ d ] )
+						inside = false;
+					j1 += p1 * steps1[ d ];
+				}
+				
+				if ( inside )
+					data2[ j ] = Math.round( data1[ j1 ] * 0.5f ) + rnd.nextInt( 50 );
+			}
+			
+			for ( final ContainerFactory containerFactory : containerFactories )
+			{
+				final Image<FloatType> image1 = createImage( new FloatType(), containerFactory, dim1, data1 );
+				final Image<UnsignedShortType> image2 = createImage( new UnsignedShortType(), containerFactory, dim2, data2 );
+				final long[] numPixels = new long[ 1 ];
+				
+				final double r = testBoth( copyShift, image1, image2, Util.getArrayFromValue( 5, n ), numPixels );
+				assertEquals( correlate( data1, dim1, data2, dim2, copyShift ), r, 1E-9 );
+				assertEquals( 1, r, 0.05 );
+				
+				for ( int k = 0; k < 50; ++k )
+				{
+					final int[] shift = new int[ n ];
+					for ( int d = 0; d < n; ++d )
+						shift[ d ] = rnd.nextInt( dim1[ d ] + dim2[ d ] - 4 ) - dim2[ d ] + 2;
+					
+					final double expected = correlate( data1, dim1, data2, dim2, shift );
+					
+					assertEquals( expected, testBoth( shift, image1, image2, Util.getArrayFromValue( 2, n ), numPixels ), 1E-9 );
+					
+					long numPx = 1;
+					for ( int d = 0; d < n; ++d )
+						numPx *= Math.min( dim1[ d ], shift[ d ] + dim2[ d ] ) - Math.max( 0, shift[ d ] );
+					
+					assertEquals( numPx, numPixels[ 0 ] );
+				}
+				
+				// less overlap than required
+				final int[] shift = new int[ n ];
+				shift[ 0 ] = dim1[ 0 ] - 4;
+				assertEquals( 0, testBoth( shift, image1, image2, Util.getArrayFromValue( 5, n ), numPixels ), 0 );
+				assertEquals( 0, numPixels[ 0 ] );
+			}
+		}
+	}
+	
+	@Test
+	public void testSmallContrast()
+	{
+		final Random rnd = new Random( 98 );
+		final int[] dim1 = new int[] { 40, 30 };
+		final int[] dim2 = new int[] { 35, 27 };
+		final int[] shift = new int[] { 10, 3 };
+		
+		// high contrast outside of the overlap, 1000 + a few ulps within
+		final float[] data1 = createRandomData( dim1, 0, 100000, rnd );
+		final float[] data2 = createRandomData( dim2, 0, 100000, rnd );
+		
+		for ( int y = 0; y < 27; ++y )
+			for ( int x = 0; x < 30; ++x )
+			{
+				final float value = 1000 + rnd.nextInt( 16 ) * Math.ulp( 1000f );
+				data1[ ( y + shift[ 1 ] ) * dim1[ 0 ] + x + shift[ 0 ] ] = value;
+				data2[ y * dim2[ 0 ] + x ] = value;
+			}
+		
+		for ( final ContainerFactory containerFactory : containerFactories )
+		{
+			final Image<FloatType> image1 = createImage( new FloatType(), containerFactory, dim1, data1 );
+			final Image<FloatType> image2 = createImage( new FloatType(), containerFactory, dim2, data2 );
+			final long[] numPixels = new long[ 1 ];
+			
+			assertEquals( 1, testBoth( shift, image1, image2, new int[] { 5, 5 }, numPixels ), 1E-9 );
+			assertEquals( 30 * 27, numPixels[ 0 ] );
+			
+			// the same low contrast area, but not aligned
+			final int[] shift2 = new int[] { 11, 3 };
+			assertEquals( correlate( data1, dim1, data2, dim2, shift2 ), testBoth( shift2, image1, image2, new int[] { 5, 5 }, numPixels ), 1E-9 );
+		}
+	}
+	
+	@Test
+	public void testConstantOverlap()
+	{
+		final Random rnd = new Random( 17 );
+		final int[] dim1 = new int[] { 20, 16 };
+		final int[] dim2 = new int[] { 12, 10 };
+		final int[] shift = new int[] { 8, 6 };
+		
+		final float[] data1 = createRandomData( dim1, 0, 100000, rnd );
+		final float[] data2 = new float[ dim2[ 0 ] * dim2[ 1 ] ];
+		
+		for ( int y = 0; y < dim2[ 1 ]; ++y )
+			for ( int x = 0; x < dim2[ 0 ]; ++x )
+				data1[ ( y + shift[ 1 ] ) * dim1[ 0 ] + x + shift[ 0 ] ] = 5.5f;
+		
+		final float[][] values2 = new float[][] { { 5.5f }, { Math.nextUp( 5.5f ) }, { 5.5f, 6.5f } };
+		final double[] expected = new double[] { 1, 0, 0 };
+		
+		for ( int i = 0; i < values2.length; ++i )
+		{
+			for ( int j = 0; j < data2.length; ++j )
+				data2[ j ] = values2[ i ][ j % values2[ i ].length ];
+			
+			for ( final ContainerFactory containerFactory : containerFactories )
+			{
+				final Image<FloatType> image1 = createImage( new FloatType(), containerFactory, dim1, data1 );
+				final Image<FloatType> image2 = createImage( new FloatType(), containerFactory, dim2, data2 );
+				final long[] numPixels = new long[ 1 ];
+				
+				assertEquals( expected[ i ], testBoth( shift, image1, image2, new int[] { 5, 5 }, numPixels ), 0 );
+				assertEquals( dim2[ 0 ] * dim2[ 1 ], numPixels[ 0 ] );
+			}
+		}
+	}
+}
@@ -0,0 +1,333 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.fft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link RichardsonLucyDeconvolution} against a direct implementation in double precision, 
+ * which convolves and correlates in the spatial domain on the same (periodic) extended domain
+ */
+public class RichardsonLucyDeconvolutionTest
+{
+	final static int[] size = new int[] { 21, 17 };
+	final static int[] kernelSize = new int[] { 5, 3 };
+	final static float epsilon = 1e-6f;
+	
+	final static ContainerFactory[] containerFactories = new ContainerFactory[] { new ArrayContainerFactory(), new CellContainerFactory( 4 ) };
+	final static int[] numThreads = new int[] { 1, 3 };
+	
+	/**
+	 * The result of the direct implementation
+	 */
+	static class Reference
+	{
+		double[][] result;
+		double[] changes;
+		int numIterations;
+	}
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim, final long seed )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( seed );
+		
+		for ( final FloatType t : image )
+			t.set( 10 + rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static Image<FloatType> copy( final Image<FloatType> image, final ContainerFactory containerFactory )
+	{
+		final Image<FloatType> copy = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( image.getDimensions() );
+		final LocalizableCursor<FloatType> cursor = copy.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> source = image.createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			source.setPosition( cursor );
+			cursor.getType().set( source.getType() );
+		}
+		
+		cursor.close();
+		source.close();
+		
+		return copy;
+	}
+	
+	private static double[][] toArray( final Image<FloatType> image, final int[] size, final int[] offset )
+	{
+		final double[][] data = new double[ size[ 0 ] ][ size[ 1 ] ];
+		final LocalizableByDimCursor<FloatType> cursor = image.createLocalizableByDimCursor( new OutOfBoundsStrategyMirrorFactory<FloatType>() );
+		final int[] position = new int[ 2 ];
+		
+		for ( int x = 0; x < size[ 0 ]; ++x )
+			for ( int y = 0; y < size[ 1 ]; ++y )
+			{
+				position[ 0 ] = x - offset[ 0 ];
+				position[ 1 ] = y - offset[ 1 ];
+				cursor.setPosition( position );
+				data[ x ][ y ] = cursor.getType().get();
+			}
+		
+		cursor.close();
+		
+		return data;
+	}
+	
+	/**
+	 * Periodic convolution (sign = -1) or correlation (sign = 1) with the kernel centered at kernelSize/2
+	 */
+	private static double[][] convolve( final double[][] u, final double[][] kernel, final int sign )
+	{
+		final int w = u.length, h = u[ 0 ].length;
+		final double[][] result = new double[ w ][ h ];
+		
+		for ( int x = 0; x < w; ++x )
+			for ( int y = 0; y < h; ++y )
+			{
+				double sum = 0;
+				
+				for ( int i = 0; i < kernel.length; ++i )
+					for ( int j = 0; j < kernel[ 0 ].length; ++j )
+					{
+						final int xi = ( ( x + sign * ( i - kernel.length / 2 ) ) % w + w ) % w;
+						final int yj = ( ( y + sign * ( j - kernel[ 0 ].length / 2 ) ) % h + h ) % h;
+						
+						sum += kernel[ i ][ j ] * u[ xi ][ yj ];
+					}
+				
+				result[ x ][ y ] = sum;
+			}
+		
+		return result;
+	}
+	
+	private static Reference deconvolve( final Image<FloatType> image, final Image<FloatType> kernel, final int numIterations, final double tolerance, final boolean acceleration )
+	{
+		final int[] fftSize = new int[ 2 ];
+		final int[] offset = new int[ 2 ];
+		
+		for ( int d = 0; d < 2; ++d )
+		{
+			fftSize[ d ] = FourierConvolution.getFFTSize( size[ d ] + kernelSize[ d ] - 1, d );
+			offset[ d ] = ( fftSize[ d ] - size[ d ] ) / 2;
+		}
+		
+		final int w = fftSize[ 0 ], h = fftSize[ 1 ];
+		final double[][] observed = toArray( image, fftSize, offset );
+		final double[][] k = toArray( kernel, kernelSize, new int[ 2 ] );
+		
+		double mean = 0;
+		for ( final double[] line : observed )
+			for ( final double v : line )
+				mean += v;
+		mean = Math.max( epsilon, mean / ( w * h ) );
+		
+		// u is the estimate (y if accelerated), p the last iterate and g the last step
+		final double[][] u = new double[ w ][ h ];
+		final double[][] p = new double[ w ][ h ];
+		final double[][] g = new double[ w ][ h ];
+		
+		for ( int x = 0; x < w; ++x )
+		{
+			Arrays.fill( u[ x ], mean );
+			Arrays.fill( p[ x ], mean );
+		}
+		
+		final Reference reference = new Reference();
+		reference.changes = new double[ numIterations ];
+		
+		for ( int it = 0; it < numIterations; ++it )
+		{
+			final double[][] ratio = convolve( u, k, -1 );
+			
+			for ( int x = 0; x < w; ++x )
+				for ( int y = 0; y < h; ++y )
+					ratio[ x ][ y ] = ratio[ x ][ y ] > epsilon ? observed[ x ][ y ] / ratio[ x ][ y ] : 0;
+			
+			final double[][] correction = convolve( ratio, k, 1 );
+			
+			double change = 0, sum = 0, gg = 0, gg1 = 0;
+			
+			for ( int x = 0; x < w; ++x )
+				for ( int y = 0; y < h; ++y )
+				{
+					final double next = Math.max( u[ x ][ y ] * correction[ x ][ y ], 0 );
+					
+					if ( acceleration )
+					{
+						gg += ( next - u[ x ][ y ] ) * g[ x ][ y ];
+						gg1 += g[ x ][ y ] * g[ x ][ y ];
+						change += Math.abs( next - p[ x ][ y ] );
+						sum += p[ x ][ y ];
+					}
+					else
+					{
+						change += Math.abs( next - u[ x ][ y ] );
+						sum += u[ x ][ y ];
+					}
+					
+					correction[ x ][ y ] = next;
+				}
+			
+			if ( acceleration )
+			{
+				final double alpha = gg1 > 0 ? Math.max( 0, Math.min( 1, gg / gg1 ) ) : 0;
+				
+				for ( int x = 0; x < w; ++x )
+					for ( int y = 0; y < h; ++y )
+					{
+						final double next = correction[ x ][ y ];
+						
+						g[ x ][ y ] = next - u[ x ][ y ];
+						u[ x ][ y ] = Math.max( next + alpha * ( next - p[ x ][ y ] ), 0 );
+						p[ x ][ y ] = next;
+					}
+			}
+			else
+			{
+				for ( int x = 0; x < w; ++x )
+					System.arraycopy( correction[ x ], 0, u[ x ], 0, h );
+			}
+			
+			reference.changes[ it ] = change / sum;
+			reference.numIterations = it + 1;
+			
+			if ( reference.changes[ it ] < tolerance )
+				break;
+		}
+		
+		// the area of the image
+		final double[][] extended = acceleration ? p : u;
+		reference.result = new double[ size[ 0 ] ][ size[ 1 ] ];
+		
+		for ( int x = 0; x < size[ 0 ]; ++x )
+			for ( int y = 0; y < size[ 1 ]; ++y )
+				reference.result[ x ][ y ] = extended[ x + offset[ 0 ] ][ y + offset[ 1 ] ];
+		
+		return reference;
+	}
+	
+	private static void test( final Image<FloatType> image, final Image<FloatType> kernel, final int numIterations, final double tolerance, final boolean acceleration, final Reference reference )
+	{
+		double max = 0;
+		for ( final double[] line : reference.result )
+			for ( final double v : line )
+				max = Math.max( max, v );
+		
+		for ( final ContainerFactory containerFactory : containerFactories )
+			for ( final int threads : numThreads )
+			{
+				final RichardsonLucyDeconvolution<FloatType, FloatType> rl = 
+					new RichardsonLucyDeconvolution<FloatType, FloatType>( copy( image, containerFactory ), kernel, numIterations );
+				rl.setNumThreads( threads );
+				rl.setTolerance( tolerance );
+				rl.setAcceleration( acceleration );
+				
+				assertTrue( rl.getErrorMessage(), rl.checkInput() && rl.process() );
+				
+				final String name = containerFactory.getClass().getSimpleName() + " threads " + threads;
+				
+				assertEquals( name, reference.numIterations, rl.getNumIterationsPerformed() );
+				assertEquals( name, reference.changes[ reference.numIterations - 1 ], rl.getLastChange(), 1e-4 * reference.changes[ reference.numIterations - 1 ] );
+				
+				final LocalizableByDimCursor<FloatType> cursor = rl.getResult().createLocalizableByDimCursor();
+				final int[] position = new int[ 2 ];
+				
+				for ( int x = 0; x < size[ 0 ]; ++x )
+					for ( int y = 0; y < size[ 1 ]; ++y )
+					{
+						position[ 0 ] = x;
+						position[ 1 ] = y;
+						cursor.setPosition( position );
+						
+						// float against double precision
+						assertEquals( name + " at " + x + "," + y, reference.result[ x ][ y ], cursor.getType().get(), 1e-5 * max );
+					}
+				
+				cursor.close();
+				rl.close();
+			}
+	}
+	
+	private static void test( final boolean acceleration )
+	{
+		final Image<FloatType> image = createRandomImage( new ArrayContainerFactory(), size, 1 );
+		final Image<FloatType> kernel = createRandomImage( new ArrayContainerFactory(), kernelSize, 2 );
+		
+		// all iterations
+		test( image, kernel, 6, 0, acceleration, deconvolve( image, kernel, 6, 0, acceleration ) );
+		
+		// stop early, the tolerance lies between the first change after the 2nd iteration that is clearly 
+		// smaller than all before and the smallest change before it
+		final double[] changes = deconvolve( image, kernel, 20, 0, acceleration ).changes;
+		
+		int k = 2;
+		double min = Math.min( changes[ 0 ], changes[ 1 ] );
+		
+		while ( changes[ k ] * 1.01 > min )
+			min = Math.min( min, changes[ k++ ] );
+		
+		final double tolerance = ( changes[ k ] + min ) / 2;
+		
+		final Reference reference = deconvolve( image, kernel, 20, tolerance, acceleration );
+		assertEquals( k + 1, reference.numIterations );
+		
+		test( image, kernel, 20, tolerance, acceleration, reference );
+	}
+	
+	@Test
+	public void testRichardsonLucy()
+	{
+		test( false );
+	}
+	
+	@Test
+	public void testAccelerated()
+	{
+		test( true );
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.function.RealTypeConverter;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.interpolation.Interpolator;
+import mpicbg.imglib.interpolation.nearestneighbor.NearestNeighborInterpolatorFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.integer.UnsignedByteType;
+import mpicbg.imglib.type.numeric.real.DoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link DownSample} against its previous implementation based on {@link GaussianConvolution3},
+ * the {@link KernelLineFilter} sums in a different order so the results agree only up to a tolerance
+ */
+public class DownSampleTest
+{
+	final static int[] dim2d = new int[] { 61, 45 };
+	final static int[] dim3d = new int[] { 29, 22, 17 };
+	
+	private static < T extends RealType<T> > Image<T> createRandomImage( final T type, final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<T> image = new ImageFactory<T>( type, containerFactory ).createImage( dim );
+		final Random rnd = new Random( 2707 );
+		
+		for ( final T t : image )
+			t.setReal( rnd.nextInt( 256 ) );
+		
+		return image;
+	}
+	
+	/**
+	 * The previous implementation of {@link DownSample#process()}
+	 */
+	private static < T extends RealType<T> > Image<T> downSampleGaussianConvolution3( final Image<T> input, final int[] newSize, final float sourceSigma, final float targetSigma )
+	{
+		final int numDimensions = input.getNumDimensions();
+		final double[] sigma = new double[ numDimensions ];
+		final float[] scaling = new float[ numDimensions ];
+		
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			scaling[ d ] = (float)input.getDimension( d ) / (float)newSize[ d ];
+			final double s = targetSigma * scaling[ d ]; 
+			sigma[ d ] = Math.sqrt( s * s - sourceSigma * sourceSigma );
+		}
+		
+		final ImageFactory<DoubleType> factory = new ImageFactory<DoubleType>( new DoubleType(), input.getContainerFactory() );
+		final GaussianConvolution3<T,DoubleType,T> gauss = new GaussianConvolution3<T,DoubleType,T>( input, factory, input.getImageFactory(), new OutOfBoundsStrategyMirrorFactory<DoubleType>(), 
+				new RealTypeConverter<T, DoubleType>(), new RealTypeConverter<DoubleType, T>(), sigma );
+		
+		assertTrue( gauss.getErrorMessage(), gauss.checkInput() && gauss.process() );
+		
+		final Image<T> gaussConvolved = gauss.getResult();
+		final Image<T> downSampled = input.createNewImage( newSize );
+		
+		final Interpolator<T> interpolator = gaussConvolved.createInterpolator( new NearestNeighborInterpolatorFactory<T>( new OutOfBoundsStrategyMirrorFactory<T>() ) );		
+		final LocalizableCursor<T> cursor = downSampled.createLocalizableCursor();
+		
+		final int[] pos = new int[ numDimensions ];
+		final float[] scaledPos = new float[ numDimensions ];		
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.getPosition( pos );
+			
+			for ( int d = 0; d < numDimensions; ++d )
+				scaledPos[ d ] = pos[ d ] * scaling[ d ];
+
+			interpolator.moveTo( scaledPos );
+			cursor.getType().set( interpolator.getType() );
+		}
+		
+		cursor.close();
+		interpolator.close();
+		gaussConvolved.close();
+		
+		return downSampled;
+	}
+	
+	private static < T extends RealType<T> > void test( final T type, final ContainerFactory containerFactory, final int[] dim, final double tolerance )
+	{
+		final Image<T> image = createRandomImage( type, containerFactory, dim );
+		final int[] newSize = new int[ dim.length ];
+		
+		for ( int d = 0; d < dim.length; ++d )
+			newSize[ d ] = dim[ d ] * 2 / ( 3 + d );
+		
+		final DownSample<T> downSample = new DownSample<T>( image, newSize, 0.5f, 0.7f );
+		downSample.setNumThreads( 3 );
+		assertTrue( downSample.getErrorMessage(), downSample.checkInput() && downSample.process() );
+		
+		final Image<T> result = downSample.getResult();
+		final Image<T> expected = downSampleGaussianConvolution3( image, newSize, 0.5f, 0.7f );
+		
+		final String name = type.getClass().getSimpleName() + " " + containerFactory.getClass().getSimpleName() + " " + dim.length + "d";
+		
+		for ( int d = 0; d < dim.length; ++d )
+			assertEquals( name, newSize[ d ], result.getDimension( d ) );
+		
+		final LocalizableCursor<T> cursor = expected.createLocalizableCursor();
+		final LocalizableByDimCursor<T> cursorResult = result.createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursorResult.setPosition( cursor );
+			assertEquals( name + " " + cursor.getPositionAsString(), cursor.getType().getRealDouble(), cursorResult.getType().getRealDouble(), tolerance );
+		}
+		
+		cursor.close();
+		cursorResult.close();
+	}
+	
+	@Test
+	public void testFloat()
+	{
+		test( new FloatType(), new ArrayContainerFactory(), dim2d, 1e-4 );
+		test( new FloatType(), new ArrayContainerFactory(), dim3d, 1e-4 );
+		test( new FloatType(), new CellContainerFactory( 8 ), dim2d, 1e-4 );
+		test( new FloatType(), new CellContainerFactory( 8 ), dim3d, 1e-4 );
+	}
+	
+	@Test
+	public void testUnsignedByte()
+	{
+		// a sum close to x.5 may be rounded to different integers
+		test( new UnsignedByteType(), new ArrayContainerFactory(), dim2d, 1 );
+		test( new UnsignedByteType(), new ArrayContainerFactory(), dim3d, 1 );
+		test( new UnsignedByteType(), new CellContainerFactory( 8 ), dim2d, 1 );
+		test( new UnsignedByteType(), new CellContainerFactory( 8 ), dim3d, 1 );
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.Array3D;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.integer.UnsignedByteType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares the line based {@link GaussianConvolution} of {@link RealType}s against the cursor based 
+ * {@link GaussianConvolutionReal}, which also sums in double and rounds once per dimension, and
+ * bounds the difference to the cursor based {@link GaussianConvolution}, which computes in the type.
+ * The default {@link GaussianConvolution.Mode#CURSOR} must give the results of the cursor based path.
+ */
+public class GaussianConvolutionTest
+{
+	final static int[] dim2d = new int[] { 47, 31 };
+	final static int[] dim3d = new int[] { 23, 19, 11 };
+	final static double[] sigma2d = new double[] { 1.7, 2.9 };
+	final static double[] sigma3d = new double[] { 1.2, 2.5, 0.8 };
+	
+	/**
+	 * {@link GaussianConvolutionReal} on the cursor based path of {@link GaussianConvolution3}
+	 */
+	static class CursorGaussianConvolutionReal< T extends RealType<T> > extends GaussianConvolutionReal<T>
+	{
+		public CursorGaussianConvolutionReal( final Image<T> image, final double[] sigma )
+		{
+			super( image, new OutOfBoundsStrategyMirrorFactory<T>(), sigma );
+		}
+		
+		@Override
+		protected boolean processWithOptimizedMethod() { return false; }
+	}
+	
+	/**
+	 * {@link GaussianConvolution} on the cursor based path of {@link GaussianConvolution3}, 
+	 * i.e. how all {@link RealType}s were convolved before the line based path
+	 */
+	static class CursorGaussianConvolution< T extends RealType<T> > extends GaussianConvolution<T>
+	{
+		public CursorGaussianConvolution( final Image<T> image, final double[] sigma )
+		{
+			super( image, new OutOfBoundsStrategyMirrorFactory<T>(), sigma );
+		}
+		
+		@Override
+		protected boolean processWithOptimizedMethod() { return false; }
+	}
+	
+	private static < T extends RealType<T> > Image<T> createRandomImage( final T type, final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<T> image = new ImageFactory<T>( type, containerFactory ).createImage( dim );
+		final Random rnd = new Random( 6151 );
+		
+		for ( final T t : image )
+			t.setReal( rnd.nextInt( 256 ) );
+		
+		return image;
+	}
+	
+	private static < T extends RealType<T> > Image<T> run( final GaussianConvolution<T> gauss, final GaussianConvolution.Mode mode )
+	{
+		gauss.setMode( mode );
+		gauss.setNumThreads( 3 );
+		assertTrue( gauss.getErrorMessage(), gauss.checkInput() && gauss.process() );
+		
+		return gauss.getResult();
+	}
+	
+	/**
+	 * @return the maximal absolute difference
+	 */
+	private static < T extends RealType<T> > double maxDifference( final Image<T> a, final Image<T> b )
+	{
+		final LocalizableCursor<T> cursorA = a.createLocalizableCursor();
+		final LocalizableByDimCursor<T> cursorB = b.createLocalizableByDimCursor();
+		
+		double max = 0;
+		
+		while ( cursorA.hasNext() )
+		{
+			cursorA.fwd();
+			cursorB.setPosition( cursorA );
+			max = Math.max( max, Math.abs( cursorA.getType().getRealDouble() - cursorB.getType().getRealDouble() ) );
+		}
+		
+		cursorA.close();
+		cursorB.close();
+		
+		return max;
+	}
+	
+	private static < T extends RealType<T> > void test( final T type, final ContainerFactory containerFactory, final int[] dim, final double[] sigma,
+			final double toleranceReal, final double toleranceGeneric )
+	{
+		final Image<T> image = createRandomImage( type, containerFactory, dim );
+		
+		final Image<T> lines = run( new GaussianConvolution<T>( image, new OutOfBoundsStrategyMirrorFactory<T>(), sigma ), GaussianConvolution.Mode.FIR );
+		final Image<T> real = run( new GaussianConvolutionReal<T>( image, new OutOfBoundsStrategyMirrorFactory<T>(), sigma ), GaussianConvolution.Mode.FIR );
+		final Image<T> cursorReal = run( new CursorGaussianConvolutionReal<T>( image, sigma ), GaussianConvolution.Mode.CURSOR );
+		final Image<T> cursor = run( new CursorGaussianConvolution<T>( image, sigma ), GaussianConvolution.Mode.CURSOR );
+		final Image<T> defaultMode = run( new GaussianConvolution<T>( image, new OutOfBoundsStrategyMirrorFactory<T>(), sigma ), GaussianConvolution.Mode.CURSOR );
+		final Image<T> defaultModeReal = run( new GaussianConvolutionReal<T>( image, new OutOfBoundsStrategyMirrorFactory<T>(), sigma ), GaussianConvolution.Mode.CURSOR );
+		
+		final String name = type.getClass().getSimpleName() + " " + containerFactory.getClass().getSimpleName() + " " + dim.length + "d";
+		
+		// the default mode is the cursor based path, except for float Array3D images which have their own path summing in double
+		final boolean floatArray3D = Array3D.class.isInstance( image.getContainer() ) && FloatType.class.isInstance( type );
+		
+		assertEquals( GaussianConvolution.Mode.CURSOR, new GaussianConvolution<T>( image, new OutOfBoundsStrategyMirrorFactory<T>(), sigma ).getMode() );
+		assertEquals( name + " default mode", 0, maxDifference( defaultMode, cursor ), floatArray3D ? toleranceGeneric : 0 );
+		assertEquals( name + " default mode GaussianConvolutionReal", 0, maxDifference( defaultModeReal, cursorReal ), 0 );
+		
+		// GaussianConvolution and GaussianConvolutionReal take the same line path
+		assertEquals( name, 0, maxDifference( lines, real ), 0 );
+		
+		assertEquals( name + " vs. cursor based GaussianConvolutionReal", 0, maxDifference( lines, cursorReal ), toleranceReal );
+		assertEquals( name + " vs. cursor based GaussianConvolution", 0, maxDifference( lines, cursor ), toleranceGeneric );
+	}
+	
+	@Test
+	public void testFloat()
+	{
+		test( new FloatType(), new ArrayContainerFactory(), dim2d, sigma2d, 1e-4, 1e-4 );
+		test( new FloatType(), new ArrayContainerFactory(), dim3d, sigma3d, 1e-4, 1e-4 );
+		test( new FloatType(), new CellContainerFactory( 8 ), dim2d, sigma2d, 1e-4, 1e-4 );
+		test( new FloatType(), new CellContainerFactory( 8 ), dim3d, sigma3d, 1e-4, 1e-4 );
+	}
+	
+	@Test
+	public void testUnsignedByte()
+	{
+		test( new UnsignedByteType(), new ArrayContainerFactory(), dim2d, sigma2d, 0, 8 );
+		test( new UnsignedByteType(), new ArrayContainerFactory(), dim3d, sigma3d, 0, 8 );
+		test( new UnsignedByteType(), new CellContainerFactory( 8 ), dim2d, sigma2d, 0, 8 );
+		test( new UnsignedByteType(), new CellContainerFactory( 8 ), dim3d, sigma3d, 0, 8 );
+	}
+}
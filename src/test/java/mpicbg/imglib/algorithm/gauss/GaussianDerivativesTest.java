@@ -0,0 +1,231 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares the gradient and Hessian channels of {@link GaussianDerivatives} with central differences 
+ * of the image blurred by {@link GaussianConvolution3}, at all pixels whose differences stay inside the image
+ */
+public class GaussianDerivativesTest
+{
+	final static double tolerance = 1e-3;
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( 2017 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextInt( 256 ) );
+		
+		return image;
+	}
+	
+	private static Image<FloatType> blur( final Image<FloatType> image, final double[] sigma )
+	{
+		final GaussianConvolutionReal<FloatType> gauss = new GaussianConvolutionReal<FloatType>( image, new OutOfBoundsStrategyMirrorFactory<FloatType>(), sigma );
+		assertTrue( gauss.getErrorMessage(), gauss.checkInput() && gauss.process() );
+		
+		return gauss.getResult();
+	}
+	
+	private static Image<FloatType> derivatives( final Image<FloatType> image, final double[] sigma, final boolean gradient, final boolean hessian, final int numThreads )
+	{
+		final GaussianDerivatives<FloatType> derivatives = new GaussianDerivatives<FloatType>( image, sigma );
+		derivatives.setComputeGradient( gradient );
+		derivatives.setComputeHessian( hessian );
+		derivatives.setNumThreads( numThreads );
+		
+		assertTrue( derivatives.getErrorMessage(), derivatives.checkInput() && derivatives.process() );
+		
+		final Image<FloatType> result = derivatives.getResult();
+		
+		assertEquals( image.getNumDimensions() + 1, result.getNumDimensions() );
+		assertEquals( derivatives.getNumChannels(), result.getDimension( image.getNumDimensions() ) );
+		
+		return result;
+	}
+	
+	/**
+	 * @return the value of the blurred image at position + a * e_d1 + b * e_d2
+	 */
+	private static double get( final LocalizableByDimCursor<FloatType> cursor, final int[] position, final int d1, final int a, final int d2, final int b )
+	{
+		final int[] p = position.clone();
+		p[ d1 ] += a;
+		p[ d2 ] += b;
+		
+		cursor.setPosition( p );
+		return cursor.getType().getRealDouble();
+	}
+	
+	/**
+	 * Compares every computed channel of the result with the central differences of the blurred image
+	 * 
+	 * @param gradient - the gradient is computed
+	 * @param hessian - the Hessian is computed
+	 */
+	private static void test( final ContainerFactory containerFactory, final int[] dim, final double[] sigma, final boolean gradient, final boolean hessian, final int numThreads )
+	{
+		final int n = dim.length;
+		final Image<FloatType> image = createRandomImage( containerFactory, dim );
+		final Image<FloatType> blurred = blur( image, sigma );
+		final Image<FloatType> result = derivatives( image, sigma, gradient, hessian, numThreads );
+		
+		// the channels of the computed parts, the same object computes the channel numbers
+		final GaussianDerivatives<FloatType> channels = new GaussianDerivatives<FloatType>( image, sigma );
+		channels.setComputeGradient( gradient );
+		channels.setComputeHessian( hessian );
+		
+		final LocalizableCursor<FloatType> cursor = image.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> blurredCursor = blurred.createLocalizableByDimCursor();
+		final LocalizableByDimCursor<FloatType> resultCursor = result.createLocalizableByDimCursor();
+		
+		final int[] position = new int[ n ];
+		final int[] channelPosition = new int[ n + 1 ];
+		final String name = containerFactory.getClass().getSimpleName() + " " + n + "d";
+		
+		int numTested = 0;
+		
+		Pixels:
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.getPosition( position );
+			
+			for ( int d = 0; d < n; ++d )
+				if ( position[ d ] < 1 || position[ d ] > dim[ d ] - 2 )
+					continue Pixels;
+			
+			System.arraycopy( position, 0, channelPosition, 0, n );
+			
+			for ( int d1 = 0; d1 < n; ++d1 )
+			{
+				if ( gradient )
+				{
+					final double expected = 0.5 * ( get( blurredCursor, position, d1, 1, d1, 0 ) - get( blurredCursor, position, d1, -1, d1, 0 ) );
+					
+					channelPosition[ n ] = channels.getGradientChannel( d1 );
+					resultCursor.setPosition( channelPosition );
+					assertEquals( name + " gradient " + d1, expected, resultCursor.getType().get(), tolerance );
+				}
+				
+				for ( int d2 = d1; d2 < n && hessian; ++d2 )
+				{
+					final double expected;
+					
+					if ( d1 == d2 )
+						expected = get( blurredCursor, position, d1, 1, d1, 0 ) - 2 * get( blurredCursor, position, d1, 0, d1, 0 ) + get( blurredCursor, position, d1, -1, d1, 0 );
+					else
+						expected = 0.25 * ( get( blurredCursor, position, d1, 1, d2, 1 ) - get( blurredCursor, position, d1, 1, d2, -1 ) 
+								- get( blurredCursor, position, d1, -1, d2, 1 ) + get( blurredCursor, position, d1, -1, d2, -1 ) );
+					
+					channelPosition[ n ] = channels.getHessianChannel( d1, d2 );
+					resultCursor.setPosition( channelPosition );
+					assertEquals( name + " hessian " + d1 + "," + d2, expected, resultCursor.getType().get(), tolerance );
+				}
+			}
+			
+			++numTested;
+		}
+		
+		assertTrue( numTested > 0 );
+		
+		cursor.close();
+		blurredCursor.close();
+		resultCursor.close();
+	}
+	
+	@Test
+	public void test2d()
+	{
+		test( new ArrayContainerFactory(), new int[] { 37, 29 }, new double[] { 1.5, 2.3 }, true, true, 1 );
+		test( new CellContainerFactory( 8 ), new int[] { 37, 29 }, new double[] { 1.5, 2.3 }, true, true, 3 );
+	}
+	
+	@Test
+	public void test3d()
+	{
+		test( new ArrayContainerFactory(), new int[] { 19, 15, 12 }, new double[] { 1.2, 0.9, 2.0 }, true, true, 3 );
+		test( new CellContainerFactory( 5 ), new int[] { 19, 15, 12 }, new double[] { 2.0, 1.2, 0.9 }, true, true, 2 );
+	}
+	
+	@Test
+	public void testGradientOnly()
+	{
+		test( new ArrayContainerFactory(), new int[] { 37, 29 }, new double[] { 2.3, 1.5 }, true, false, 2 );
+		test( new CellContainerFactory( 5 ), new int[] { 19, 15, 12 }, new double[] { 1.2, 0.9, 2.0 }, true, false, 3 );
+	}
+	
+	@Test
+	public void testHessianOnly()
+	{
+		test( new ArrayContainerFactory(), new int[] { 37, 29 }, new double[] { 2.3, 1.5 }, false, true, 2 );
+		test( new CellContainerFactory( 5 ), new int[] { 19, 15, 12 }, new double[] { 1.2, 0.9, 2.0 }, false, true, 3 );
+	}
+	
+	@Test
+	public void testChannels()
+	{
+		final Image<FloatType> image = createRandomImage( new ArrayContainerFactory(), new int[] { 5, 4, 3 } );
+		final GaussianDerivatives<FloatType> derivatives = new GaussianDerivatives<FloatType>( image, 1 );
+		
+		assertEquals( 9, derivatives.getNumChannels() );
+		assertEquals( 2, derivatives.getGradientChannel( 2 ) );
+		assertEquals( 3, derivatives.getHessianChannel( 0, 0 ) );
+		assertEquals( 5, derivatives.getHessianChannel( 2, 0 ) );
+		assertEquals( 6, derivatives.getHessianChannel( 1, 1 ) );
+		assertEquals( 8, derivatives.getHessianChannel( 2, 2 ) );
+		
+		derivatives.setComputeGradient( false );
+		assertEquals( 6, derivatives.getNumChannels() );
+		assertEquals( -1, derivatives.getGradientChannel( 0 ) );
+		assertEquals( 0, derivatives.getHessianChannel( 0, 0 ) );
+		
+		derivatives.setComputeGradient( true );
+		derivatives.setComputeHessian( false );
+		assertEquals( 3, derivatives.getNumChannels() );
+		assertEquals( -1, derivatives.getHessianChannel( 0, 1 ) );
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.gauss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.planar.PlanarContainerFactory;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Compares the recursive Gaussian against the kernel (FIR) based convolution
+ */
+public class RecursiveGaussianTest
+{
+	private static Image<FloatType> createImage( final ContainerFactory containerFactory, final int[] dim )
+	{
+		return new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+	}
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<FloatType> image = createImage( containerFactory, dim );
+		final Random rnd = new Random( 4353 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static Image<FloatType> gauss( final Image<FloatType> image, final double sigma, final GaussianConvolution.Mode mode )
+	{
+		final GaussianConvolution<FloatType> gauss = new GaussianConvolution<FloatType>( image, new OutOfBoundsStrategyMirrorFactory<FloatType>(), sigma );
+		gauss.setMode( mode );
+		
+		assertTrue( gauss.getErrorMessage(), gauss.checkInput() && gauss.process() );
+		
+		return gauss.getResult();
+	}
+	
+	/**
+	 * @return { max absolute difference, mean absolute difference }
+	 */
+	private static double[] difference( final Image<FloatType> a, final Image<FloatType> b )
+	{
+		final Cursor<FloatType> ca = a.createCursor();
+		final Cursor<FloatType> cb = b.createCursor();
+		
+		double max = 0, sum = 0;
+		
+		while ( ca.hasNext() )
+		{
+			ca.fwd();
+			cb.fwd();
+			
+			final double diff = Math.abs( ca.getType().get() - cb.getType().get() );
+			max = Math.max( max, diff );
+			sum += diff;
+		}
+		
+		ca.close();
+		cb.close();
+		
+		return new double[] { max, sum / a.getNumPixels() };
+	}
+	
+	@Test
+	public void testRandomImage()
+	{
+		final Image<FloatType> image = createRandomImage( new ArrayContainerFactory(), new int[] { 200, 150 } );
+		
+		// values are within [0, 100]
+		final double[] sigmas = new double[] { 2.5, 5, 10, 20 };
+		final double[] maxError = new double[] { 1.5, 0.5, 0.25, 0.15 };
+		
+		for ( int i = 0; i < sigmas.length; ++i )
+		{
+			final double[] diff = difference( gauss( image, sigmas[ i ], GaussianConvolution.Mode.FIR ), gauss( image, sigmas[ i ], GaussianConvolution.Mode.RECURSIVE ) );
+			
+			assertTrue( "sigma " + sigmas[ i ] + ": max error " + diff[ 0 ], diff[ 0 ] < maxError[ i ] );
+			assertTrue( "sigma " + sigmas[ i ] + ": mean error " + diff[ 1 ], diff[ 1 ] < maxError[ i ] / 4 );
+		}
+	}
+	
+	@Test
+	public void testImpulseResponse()
+	{
+		final int size = 401;
+		final double[] sigmas = new double[] { 2.5, 5, 10, 20 };
+		
+		for ( final double sigma : sigmas )
+		{
+			final Image<FloatType> image = createImage( new ArrayContainerFactory(), new int[] { size } );
+			final LocalizableByDimCursor<FloatType> c = image.createLocalizableByDimCursor();
+			c.setPosition( new int[] { size / 2 } );
+			c.getType().set( 1 );
+			c.close();
+			
+			final Image<FloatType> fir = gauss( image, sigma, GaussianConvolution.Mode.FIR );
+			final Image<FloatType> iir = gauss( image, sigma, GaussianConvolution.Mode.RECURSIVE );
+			
+			// the recursive filter preserves the integral
+			double sum = 0;
+			for ( final FloatType t : iir )
+				sum += t.get();
+			
+			assertEquals( "sigma " + sigma, 1.0, sum, 1e-3 );
+			
+			// the approximation of the 1d Gaussian deviates by up to ~5% of the peak
+			final double peak = 1 / ( Math.sqrt( 2 * Math.PI ) * sigma ); 
+			final double[] diff = difference( fir, iir );
+			
+			assertTrue( "sigma " + sigma + ": max error " + diff[ 0 ] / peak, diff[ 0 ] < 0.06 * peak );
+		}
+	}
+	
+	@Test
+	public void testConstantImage()
+	{
+		final Image<FloatType> image = createImage( new PlanarContainerFactory(), new int[] { 40, 30, 20 } );
+		
+		for ( final FloatType t : image )
+			t.set( 17 );
+		
+		for ( final FloatType t : gauss( image, 15, GaussianConvolution.Mode.RECURSIVE ) )
+			assertEquals( 17, t.get(), 1e-3 );
+	}
+	
+	@Test
+	public void testAutoMode()
+	{
+		final Image<FloatType> image = createRandomImage( new PlanarContainerFactory(), new int[] { 64, 48, 8 } );
+		
+		final GaussianConvolution<FloatType> gauss = new GaussianConvolution<FloatType>( image, new OutOfBoundsStrategyMirrorFactory<FloatType>(), new double[] { 12, 12, 1.5 } );
+		gauss.setMode( GaussianConvolution.Mode.AUTO );
+		
+		assertTrue( gauss.createLineFilter( 0 ) instanceof RecursiveGaussianLineFilter );
+		assertTrue( gauss.createLineFilter( 1 ) instanceof RecursiveGaussianLineFilter );
+		assertTrue( gauss.createLineFilter( 2 ) instanceof KernelLineFilter );
+		
+		// below the threshold AUTO is identical to FIR
+		final double[] diff = difference( gauss( image, 2, GaussianConvolution.Mode.FIR ), gauss( image, 2, GaussianConvolution.Mode.AUTO ) );
+		assertEquals( 0, diff[ 0 ], 0 );
+	}
+}
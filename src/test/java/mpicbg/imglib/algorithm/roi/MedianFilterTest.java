@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.algorithm.roi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Runs the {@link MedianFilter} as an example of a {@link mpicbg.imglib.algorithm.ROIAlgorithm}, 
+ * whose checkInput() requires an active {@link mpicbg.imglib.cursor.special.RegionOfInterestCursor}
+ */
+public class MedianFilterTest
+{
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( 1234 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	/**
+	 * The median of the 3x3 neighborhood, zero outside of the image
+	 */
+	private static float median3x3( final Image<FloatType> image, final int[] position )
+	{
+		final LocalizableByDimCursor<FloatType> cursor = image.createLocalizableByDimCursor();
+		final float[] values = new float[ 9 ];
+		int i = 0;
+		
+		for ( int y = -1; y <= 1; ++y )
+			for ( int x = -1; x <= 1; ++x )
+			{
+				final int px = position[ 0 ] + x;
+				final int py = position[ 1 ] + y;
+				
+				if ( px < 0 || py < 0 || px >= image.getDimension( 0 ) || py >= image.getDimension( 1 ) )
+				{
+					values[ i++ ] = 0;
+				}
+				else
+				{
+					cursor.setPosition( new int[] { px, py } );
+					values[ i++ ] = cursor.getType().get();
+				}
+			}
+		
+		cursor.close();
+		Arrays.sort( values );
+		
+		return values[ 4 ];
+	}
+	
+	private static void testMedian( final ContainerFactory containerFactory )
+	{
+		final Image<FloatType> image = createRandomImage( containerFactory, new int[] { 23, 17 } );
+		final MedianFilter<FloatType> median = new MedianFilter<FloatType>( image, StructuringElement.createCube( 2, 3 ) );
+		
+		assertTrue( median.getErrorMessage(), median.checkInput() );
+		assertTrue( median.getErrorMessage(), median.process() );
+		
+		final LocalizableCursor<FloatType> cursor = median.getResult().createLocalizableCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			assertEquals( cursor.getPositionAsString(), median3x3( image, cursor.getPosition() ), cursor.getType().get(), 0 );
+		}
+		
+		cursor.close();
+	}
+	
+	@Test
+	public void testArray()
+	{
+		testMedian( new ArrayContainerFactory() );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		testMedian( new CellContainerFactory( 8 ) );
+	}
+}
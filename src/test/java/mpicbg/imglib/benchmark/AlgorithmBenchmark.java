@@ -0,0 +1,347 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.imglib.algorithm.Algorithm;
+import mpicbg.imglib.algorithm.MultiThreaded;
+import mpicbg.imglib.algorithm.OutputAlgorithm;
+import mpicbg.imglib.algorithm.fft.FourierConvolution;
+import mpicbg.imglib.algorithm.fft.FourierTransform;
+import mpicbg.imglib.algorithm.fft.PhaseCorrelation;
+import mpicbg.imglib.algorithm.gauss.GaussianConvolution;
+import mpicbg.imglib.algorithm.gauss.GaussianConvolutionReal;
+import mpicbg.imglib.algorithm.gauss.GaussianDerivatives;
+import mpicbg.imglib.algorithm.integral.IntegralImageDouble;
+import mpicbg.imglib.algorithm.labeling.AllConnectedComponents;
+import mpicbg.imglib.algorithm.labeling.Watershed;
+import mpicbg.imglib.algorithm.roi.MedianFilter;
+import mpicbg.imglib.algorithm.roi.MorphDilate;
+import mpicbg.imglib.algorithm.roi.StructuringElement;
+import mpicbg.imglib.algorithm.scalespace.DifferenceOfGaussianReal1;
+import mpicbg.imglib.algorithm.scalespace.ScaleSpace;
+import mpicbg.imglib.algorithm.transformation.ImageTransform;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.function.RealTypeConverter;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.interpolation.InterpolatorFactory;
+import mpicbg.imglib.interpolation.dct.DCTInterpolatorFactory;
+import mpicbg.imglib.interpolation.lanczos.LanczosInterpolatorFactory;
+import mpicbg.imglib.interpolation.linear.LinearInterpolatorFactory;
+import mpicbg.imglib.interpolation.nearestneighbor.NearestNeighborInterpolatorFactory;
+import mpicbg.imglib.labeling.Labeling;
+import mpicbg.imglib.labeling.LabelingType;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.DoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+import mpicbg.models.AffineModel2D;
+import mpicbg.models.AffineModel3D;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runtime of complete algorithm runs, parameterized by container, type, image size (and therefore
+ * dimensionality) and number of threads. The number of threads is only applied to algorithms
+ * that implement {@link MultiThreaded}, the others always run single-threaded. One operation is 
+ * one call of process() including the allocation of the output.
+ * 
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=AlgorithmBenchmark</code>, the 
+ * results are written as JSON to target/jmh-result.json (see the benchmark profile in the pom). To
+ * follow the scaling with the number of threads use e.g. <code>-Dbenchmark.args="-p threads=1,2,4,8"</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@SuppressWarnings( { "unchecked", "rawtypes" } )
+public class AlgorithmBenchmark
+{
+	@Param( { "array", "cell", "planar" } )
+	public String container;
+	
+	@Param( { "float", "ubyte" } )
+	public String type;
+	
+	@Param( { "256x256", "64x64x32" } )
+	public String size;
+	
+	@Param( { "1", "4" } )
+	public int threads;
+	
+	/* the distance of the seeds of the watershed */
+	final static int seedDistance = 16;
+	
+	Image image, image2, kernel;
+	
+	/* the first plane of the image for the interpolators that only support 2d */
+	Image plane;
+	StructuringElement strel;
+	Labeling< Integer > seeds;
+	int[][] neighborhood;
+	
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		image = BenchmarkImages.createImage( container, type, size );
+		image2 = image.clone();
+		
+		if ( image.getNumDimensions() == 2 )
+			plane = image;
+		else
+			plane = BenchmarkImages.createImage( container, type, image.getDimension( 0 ) + "x" + image.getDimension( 1 ) );
+		
+		final int numDimensions = image.getNumDimensions();
+		
+		kernel = FourierConvolution.createGaussianKernel( image.getContainerFactory(), 2.0, numDimensions );
+		strel = StructuringElement.createCube( numDimensions, 3 );
+		
+		neighborhood = AllConnectedComponents.getStructuringElement( numDimensions );
+		seeds = createLabeling( image.getDimensions() );
+		
+		// one seed every seedDistance pixels in every dimension
+		final LocalizableByDimCursor< LabelingType< Integer > > cursor = seeds.createLocalizableByDimCursor();
+		final int[] position = new int[ numDimensions ];
+		int label = 0;
+		
+		while ( true )
+		{
+			cursor.setPosition( position );
+			cursor.getType().setLabel( label++ );
+			
+			int d = 0;
+			for ( ; d < numDimensions; ++d )
+			{
+				position[ d ] += seedDistance;
+				
+				if ( position[ d ] < image.getDimension( d ) )
+					break;
+				
+				position[ d ] = 0;
+			}
+			
+			if ( d == numDimensions )
+				break;
+		}
+		
+		cursor.close();
+	}
+	
+	protected static Labeling< Integer > createLabeling( final int[] dim )
+	{
+		final ImageFactory< LabelingType< Integer > > factory = new ImageFactory< LabelingType< Integer > >( new LabelingType< Integer >(), new ArrayContainerFactory() );
+		return new Labeling< Integer >( factory, dim, "labeling" );
+	}
+	
+	protected Object run( final Algorithm algorithm )
+	{
+		if ( MultiThreaded.class.isInstance( algorithm ) )
+			( (MultiThreaded)algorithm ).setNumThreads( threads );
+		
+		if ( !algorithm.checkInput() || !algorithm.process() )
+			throw new RuntimeException( algorithm.getClass().getSimpleName() + ": " + algorithm.getErrorMessage() );
+		
+		if ( OutputAlgorithm.class.isInstance( algorithm ) )
+			return ( (OutputAlgorithm)algorithm ).getResult();
+		else
+			return algorithm;
+	}
+	
+	@Benchmark
+	public Object gaussianConvolution()
+	{
+		return run( new GaussianConvolution( image, new OutOfBoundsStrategyMirrorFactory(), 2.0 ) );
+	}
+
+	@Benchmark
+	public Object gaussianConvolutionLines()
+	{
+		final GaussianConvolution gauss = new GaussianConvolution( image, new OutOfBoundsStrategyMirrorFactory(), 2.0 );
+		gauss.setMode( GaussianConvolution.Mode.FIR );
+		
+		return run( gauss );
+	}
+
+	@Benchmark
+	public Object gaussianConvolutionReal()
+	{
+		return run( new GaussianConvolutionReal( image, new OutOfBoundsStrategyMirrorFactory(), 2.0 ) );
+	}
+
+	@Benchmark
+	public Object gaussianDerivatives()
+	{
+		return run( new GaussianDerivatives( image, 2.0 ) );
+	}
+
+	@Benchmark
+	public Object fourierTransform()
+	{
+		return run( new FourierTransform( image, new ComplexFloatType() ) );
+	}
+
+	@Benchmark
+	public Object fourierConvolution()
+	{
+		return run( new FourierConvolution( image, kernel ) );
+	}
+
+	@Benchmark
+	public Object fourierConvolutionBlocks()
+	{
+		final FourierConvolution fourierConvolution = new FourierConvolution( image, kernel );
+		fourierConvolution.setBlockProcessing( true );
+		fourierConvolution.setMaxBlockPixels( 1 << 14 );
+		
+		return run( fourierConvolution );
+	}
+
+	@Benchmark
+	public Object phaseCorrelation()
+	{
+		return run( new PhaseCorrelation( image, image2 ) );
+	}
+
+	@Benchmark
+	public Object differenceOfGaussian()
+	{
+		return run( new DifferenceOfGaussianReal1( image, new OutOfBoundsStrategyMirrorFactory(), 1.4, 1.8, 0.01, 1.0 ) );
+	}
+
+	@Benchmark
+	public Object scaleSpace()
+	{
+		final ImageFactory< FloatType > factory = new ImageFactory< FloatType >( new FloatType(), image.getContainerFactory() );
+		return run( new ScaleSpace( image, factory, new RealTypeConverter(), 1.6 ) );
+	}
+
+	@Benchmark
+	public Object medianFilter()
+	{
+		return run( new MedianFilter( image, strel ) );
+	}
+
+	@Benchmark
+	public Object morphDilate()
+	{
+		return run( new MorphDilate( image, strel ) );
+	}
+
+	@Benchmark
+	public Object watershed()
+	{
+		final Labeling< Integer > output = createLabeling( image.getDimensions() );
+		Watershed.seededWatershed( image, seeds, neighborhood, output );
+		return output;
+	}
+
+	@Benchmark
+	public Object integralImage()
+	{
+		return run( new IntegralImageDouble( image, new RealTypeConverter< FloatType, DoubleType >() ) );
+	}
+
+	@Benchmark
+	public Object imageTransformNearestNeighbor()
+	{
+		return transform( image, new NearestNeighborInterpolatorFactory( new OutOfBoundsStrategyMirrorFactory() ) );
+	}
+
+	@Benchmark
+	public Object imageTransformLinear()
+	{
+		return transform( image, new LinearInterpolatorFactory( new OutOfBoundsStrategyMirrorFactory() ) );
+	}
+
+	@Benchmark
+	public Object imageTransformLanczos()
+	{
+		return transform( image, new LanczosInterpolatorFactory( new OutOfBoundsStrategyMirrorFactory() ) );
+	}
+
+	/**
+	 * The DCTInterpolator only supports 2d images, for 3d sizes the first plane is transformed
+	 */
+	@Benchmark
+	public Object imageTransformDCT()
+	{
+		return transform( plane, new DCTInterpolatorFactory( new OutOfBoundsStrategyMirrorFactory() ) );
+	}
+	
+	/**
+	 * Rotates the image by 15 degrees around the first axis pair
+	 */
+	protected Object transform( final Image image, final InterpolatorFactory interpolatorFactory )
+	{
+		final double c = Math.cos( Math.toRadians( 15 ) );
+		final double s = Math.sin( Math.toRadians( 15 ) );
+		
+		if ( image.getNumDimensions() == 2 )
+		{
+			final AffineModel2D model = new AffineModel2D();
+			model.set( c, s, -s, c, 0, 0 );
+			return run( new ImageTransform( image, model, interpolatorFactory ) );
+		}
+		else if ( image.getNumDimensions() == 3 )
+		{
+			final AffineModel3D model = new AffineModel3D();
+			model.set( c, -s, 0, 0, s, c, 0, 0, 0, 0, 1, 0 );
+			return run( new ImageTransform( image, model, interpolatorFactory ) );
+		}
+		else
+		{
+			throw new IllegalArgumentException( "ImageTransform is only supported for 2d and 3d images." );
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.benchmark;
+
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.container.dynamic.DynamicContainerFactory;
+import mpicbg.imglib.container.imageplus.ImagePlusContainerFactory;
+import mpicbg.imglib.container.planar.PlanarContainerFactory;
+import mpicbg.imglib.container.shapelist.ShapeList;
+import mpicbg.imglib.container.shapelist.ShapeListContainerFactory;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.integer.UnsignedByteType;
+import mpicbg.imglib.type.numeric.integer.UnsignedShortType;
+import mpicbg.imglib.type.numeric.real.DoubleType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+/**
+ * Creates the images the benchmarks run on from the String parameters of JMH.
+ * 
+ * Containers: array, array3d, nio, cell, planar, imageplus, dynamic, shapelist<br>
+ * Types: ubyte, ushort, float, double<br>
+ * Sizes: e.g. 256x256x16
+ */
+public class BenchmarkImages
+{
+	public static ContainerFactory createContainerFactory( final String container )
+	{
+		if ( container.equals( "array" ) )
+		{
+			final ArrayContainerFactory factory = new ArrayContainerFactory();
+			factory.setOptimizedContainerUse( false );
+			return factory;
+		}
+		else if ( container.equals( "array3d" ) )
+		{
+			// an Array3D is only created for 3d images
+			final ArrayContainerFactory factory = new ArrayContainerFactory();
+			factory.setOptimizedContainerUse( true );
+			return factory;
+		}
+		else if ( container.equals( "nio" ) )
+		{
+			final ArrayContainerFactory factory = new ArrayContainerFactory();
+			factory.setNIOUse( true );
+			return factory;
+		}
+		else if ( container.equals( "cell" ) )
+		{
+			return new CellContainerFactory( 32 );
+		}
+		else if ( container.equals( "planar" ) )
+		{
+			return new PlanarContainerFactory();
+		}
+		else if ( container.equals( "imageplus" ) )
+		{
+			return new ImagePlusContainerFactory();
+		}
+		else if ( container.equals( "dynamic" ) )
+		{
+			return new DynamicContainerFactory();
+		}
+		else if ( container.equals( "shapelist" ) )
+		{
+			return new ShapeListContainerFactory();
+		}
+		else
+		{
+			throw new IllegalArgumentException( "Unknown container: " + container );
+		}
+	}
+	
+	public static RealType< ? > createType( final String type )
+	{
+		if ( type.equals( "ubyte" ) )
+			return new UnsignedByteType();
+		else if ( type.equals( "ushort" ) )
+			return new UnsignedShortType();
+		else if ( type.equals( "float" ) )
+			return new FloatType();
+		else if ( type.equals( "double" ) )
+			return new DoubleType();
+		else
+			throw new IllegalArgumentException( "Unknown type: " + type );
+	}
+	
+	public static int[] parseSize( final String size )
+	{
+		final String[] entries = size.split( "x" );
+		final int[] dim = new int[ entries.length ];
+		
+		for ( int d = 0; d < dim.length; ++d )
+			dim[ d ] = Integer.parseInt( entries[ d ].trim() );
+		
+		return dim;
+	}
+
+	/**
+	 * Creates an image and fills it with random values (a few shapes per plane for a {@link ShapeList})
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static Image createImage( final String container, final String type, final String size )
+	{
+		final Image image = new ImageFactory( createType( type ), createContainerFactory( container ) ).createImage( parseSize( size ), container + " " + type + " " + size );
+		
+		fill( image, 42 );
+		
+		return image;
+	}
+	
+	protected static < T extends RealType< T > > void fill( final Image< T > image, final long seed )
+	{
+		final Random rnd = new Random( seed );
+		final double max = Math.min( 255, image.createType().getMaxValue() );
+		
+		if ( ShapeList.class.isInstance( image.getContainer() ) )
+		{
+			final ShapeList< T > shapeList = (ShapeList< T >)image.getContainer();
+			final int numDimensions = image.getNumDimensions();
+			final int w = image.getDimension( 0 );
+			final int h = numDimensions > 1 ? image.getDimension( 1 ) : 1;
+			
+			int numPlanes = 1;
+			for ( int d = 2; d < numDimensions; ++d )
+				numPlanes *= image.getDimension( d );
+			
+			final int[] planePosition = new int[ Math.max( 0, numDimensions - 2 ) ];
+			
+			for ( int p = 0; p < numPlanes; ++p )
+			{
+				final T value1 = image.createType();
+				final T value2 = image.createType();
+				value1.setReal( rnd.nextDouble() * max );
+				value2.setReal( rnd.nextDouble() * max );
+				
+				shapeList.addShape( new Rectangle( w / 4, h / 4, w / 2, h / 2 ), value1, planePosition );
+				shapeList.addShape( new Ellipse2D.Double( w / 8, h / 8, w / 3, h / 3 ), value2, planePosition );
+				
+				for ( int d = 0; d < planePosition.length; ++d )
+				{
+					if ( planePosition[ d ] < image.getDimension( d + 2 ) - 1 )
+					{
+						++planePosition[ d ];
+						break;
+					}
+					planePosition[ d ] = 0;
+				}
+			}
+		}
+		else
+		{
+			final Cursor< T > cursor = image.createCursor();
+			
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.getType().setReal( rnd.nextDouble() * max );
+			}
+			
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.cursor.LocalizablePlaneCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.type.numeric.RealType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of reading (get) and writing (set) all pixels of an image with the different
+ * cursors of every container and some primitive types. One operation is one pass over all
+ * pixels, the cursors are created once per trial and only reset for each pass.
+ * 
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=CursorBenchmark</code>,
+ * parameters can be restricted, e.g. <code>-Dbenchmark.args="-p container=array,cell -p type=float"</code>.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@SuppressWarnings( { "unchecked", "rawtypes" } )
+public class CursorBenchmark
+{
+	@Param( { "array", "array3d", "nio", "cell", "planar", "imageplus", "dynamic", "shapelist" } )
+	public String container;
+	
+	@Param( { "ubyte", "ushort", "float", "double" } )
+	public String type;
+	
+	@Param( { "256x256x16" } )
+	public String size;
+	
+	/* the number of pixels the out of bounds cursor reads outside on both sides of each line */
+	final static int border = 8;
+	
+	Image image;
+	Cursor cursor;
+	LocalizableCursor localizableCursor;
+	LocalizableByDimCursor byDimCursor, outOfBoundsCursor;
+	LocalizablePlaneCursor planeCursor;
+	
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		image = BenchmarkImages.createImage( container, type, size );
+		
+		cursor = image.createCursor();
+		localizableCursor = image.createLocalizableCursor();
+		byDimCursor = image.createLocalizableByDimCursor();
+		outOfBoundsCursor = image.createLocalizableByDimCursor( new OutOfBoundsStrategyMirrorFactory() );
+		planeCursor = image.createLocalizablePlaneCursor();
+	}
+	
+	@TearDown( Level.Trial )
+	public void tearDown()
+	{
+		image.close();
+	}
+	
+	@Benchmark
+	public double readCursor() { return read( cursor ); }
+
+	@Benchmark
+	public double writeCursor() { return write( cursor ); }
+
+	@Benchmark
+	public double readLocalizableCursor() { return readLocalized( localizableCursor ); }
+
+	@Benchmark
+	public double writeLocalizableCursor() { return write( localizableCursor ); }
+
+	@Benchmark
+	public double readByDimCursor() { return readLines( byDimCursor, 0 ); }
+
+	@Benchmark
+	public double writeByDimCursor() { return writeLines( byDimCursor ); }
+
+	@Benchmark
+	public double readOutOfBoundsCursor() { return readLines( outOfBoundsCursor, border ); }
+
+	@Benchmark
+	public double readPlaneCursor() { return readPlanes( planeCursor ); }
+
+	protected static < T extends RealType< T > > double read( final Cursor< T > cursor )
+	{
+		double sum = 0;
+		
+		cursor.reset();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			sum += cursor.getType().getRealDouble();
+		}
+		
+		return sum;
+	}
+
+	protected static < T extends RealType< T > > double write( final Cursor< T > cursor )
+	{
+		double value = 0;
+		
+		cursor.reset();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.getType().setReal( value );
+			value = 1 - value;
+		}
+		
+		return value;
+	}
+
+	protected static < T extends RealType< T > > double readLocalized( final LocalizableCursor< T > cursor )
+	{
+		double sum = 0;
+		
+		cursor.reset();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			sum += cursor.getType().getRealDouble() + cursor.getPosition( 0 );
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Places the cursor at the start of every line in dimension 0 (border pixels before it) 
+	 * and moves it along the line by fwd( 0 )
+	 */
+	protected static < T extends RealType< T > > double readLines( final LocalizableByDimCursor< T > cursor, final int border )
+	{
+		final int numDimensions = cursor.getImage().getNumDimensions();
+		final int[] dim = cursor.getImage().getDimensions();
+		final int[] position = new int[ numDimensions ];
+		final int numLines = cursor.getImage().getNumPixels() / dim[ 0 ];
+		final int length = dim[ 0 ] + 2 * border;
+		
+		double sum = 0;
+		
+		for ( int line = 0; line < numLines; ++line )
+		{
+			position[ 0 ] = -border;
+			cursor.setPosition( position );
+			
+			sum += cursor.getType().getRealDouble();
+			
+			for ( int x = 1; x < length; ++x )
+			{
+				cursor.fwd( 0 );
+				sum += cursor.getType().getRealDouble();
+			}
+			
+			nextLine( position, dim );
+		}
+		
+		return sum;
+	}
+
+	protected static < T extends RealType< T > > double writeLines( final LocalizableByDimCursor< T > cursor )
+	{
+		final int numDimensions = cursor.getImage().getNumDimensions();
+		final int[] dim = cursor.getImage().getDimensions();
+		final int[] position = new int[ numDimensions ];
+		final int numLines = cursor.getImage().getNumPixels() / dim[ 0 ];
+		
+		double value = 0;
+		
+		for ( int line = 0; line < numLines; ++line )
+		{
+			position[ 0 ] = 0;
+			cursor.setPosition( position );
+			cursor.getType().setReal( value );
+			
+			for ( int x = 1; x < dim[ 0 ]; ++x )
+			{
+				cursor.fwd( 0 );
+				cursor.getType().setReal( value );
+				value = 1 - value;
+			}
+			
+			nextLine( position, dim );
+		}
+		
+		return value;
+	}
+
+	protected static < T extends RealType< T > > double readPlanes( final LocalizablePlaneCursor< T > cursor )
+	{
+		final int numDimensions = cursor.getImage().getNumDimensions();
+		final int[] dim = cursor.getImage().getDimensions();
+		final int[] position = new int[ numDimensions ];
+		final int numPlanes = cursor.getImage().getNumPixels() / ( dim[ 0 ] * dim[ 1 ] );
+		
+		double sum = 0;
+		
+		for ( int plane = 0; plane < numPlanes; ++plane )
+		{
+			cursor.reset( 0, 1, position );
+			
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				sum += cursor.getType().getRealDouble();
+			}
+			
+			// next plane
+			for ( int d = 2; d < numDimensions; ++d )
+			{
+				if ( position[ d ] < dim[ d ] - 1 )
+				{
+					++position[ d ];
+					break;
+				}
+				position[ d ] = 0;
+			}
+		}
+		
+		return sum;
+	}
+	
+	protected static void nextLine( final int[] position, final int[] dim )
+	{
+		for ( int d = 1; d < dim.length; ++d )
+		{
+			if ( position[ d ] < dim[ d ] - 1 )
+			{
+				++position[ d ];
+				return;
+			}
+			position[ d ] = 0;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import edu.mines.jtk.dsp.FftComplex;
+import edu.mines.jtk.dsp.FftReal;
+import mpicbg.imglib.algorithm.fft.FFTCache;
+import mpicbg.imglib.algorithm.fft.FFTFunctions;
+import mpicbg.imglib.algorithm.fft.PhaseCorrelation;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The setup cost of FFTs of small tiles with and without the {@link FFTCache}, i.e. the case of 
+ * stitching that computes thousands of FFTs of the same size. One operation is one forward and 
+ * inverse FFT of a tile, or one phase correlation of two tiles.
+ * 
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=FFTCacheBenchmark</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@SuppressWarnings( "unchecked" )
+public class FFTCacheBenchmark
+{
+	@Param( { "true", "false" } )
+	public String cache;
+	
+	@Param( { "32x32", "64x64", "32x32x16" } )
+	public String size;
+	
+	@Param( { "1", "4" } )
+	public int threads;
+	
+	Image< FloatType > tile, tile2;
+	int[] offset, dimensions;
+	
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		FFTCache.setEnabled( Boolean.parseBoolean( cache ) );
+		
+		tile = BenchmarkImages.createImage( "array", "float", size );
+		tile2 = tile.clone();
+		
+		// the tile is zero-padded to valid FFT sizes
+		dimensions = tile.getDimensions();
+		dimensions[ 0 ] = FftReal.nfftSmall( dimensions[ 0 ] );
+		for ( int d = 1; d < dimensions.length; ++d )
+			dimensions[ d ] = FftComplex.nfftSmall( dimensions[ d ] );
+		
+		offset = new int[ dimensions.length ];
+	}
+	
+	@TearDown( Level.Trial )
+	public void tearDown()
+	{
+		FFTCache.setEnabled( true );
+	}
+	
+	@Benchmark
+	public Object fftRoundTrip()
+	{
+		final Image< ComplexFloatType > fft = FFTFunctions.computeFFT( tile, new ComplexFloatType(), new OutOfBoundsStrategyValueFactory< FloatType >(), 
+				offset, dimensions, threads, false );
+		
+		final Image< FloatType > inverse = FFTFunctions.computeInverseFFT( fft, new FloatType(), threads, true, false, null, null, 1 );
+		
+		fft.close();
+		
+		return inverse;
+	}
+	
+	@Benchmark
+	public Object phaseCorrelation()
+	{
+		final PhaseCorrelation< FloatType, FloatType > pc = new PhaseCorrelation< FloatType, FloatType >( tile, tile2 );
+		pc.setNumThreads( threads );
+		
+		if ( !pc.checkInput() || !pc.process() )
+			throw new RuntimeException( pc.getErrorMessage() );
+		
+		return pc.getShift();
+	}
+}
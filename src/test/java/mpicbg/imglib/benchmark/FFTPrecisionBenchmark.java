@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import edu.mines.jtk.dsp.FftComplex;
+import edu.mines.jtk.dsp.FftReal;
+import mpicbg.imglib.algorithm.Precision.PrecisionReal;
+import mpicbg.imglib.algorithm.fft.FFTFunctions;
+import mpicbg.imglib.algorithm.fft.FourierConvolution;
+import mpicbg.imglib.algorithm.fft.RichardsonLucyDeconvolution;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.ComplexType;
+import mpicbg.imglib.type.numeric.complex.ComplexDoubleType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The throughput of the Fourier transforms in float and double precision ({@link PrecisionReal}). 
+ * The spectrum of the round trip is a {@link ComplexFloatType} for Float and a {@link ComplexDoubleType} 
+ * for Double; the convolution and the deconvolution store their spectra as {@link ComplexFloatType} 
+ * and only compute the FFTs in the given precision. One operation is one forward and inverse FFT, 
+ * one convolution or all iterations of the deconvolution.
+ * 
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=FFTPrecisionBenchmark</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@SuppressWarnings( { "unchecked", "rawtypes" } )
+public class FFTPrecisionBenchmark
+{
+	@Param( { "Float", "Double" } )
+	public String precision;
+	
+	@Param( { "array", "cell" } )
+	public String container;
+	
+	@Param( { "256x256", "64x64x64" } )
+	public String size;
+	
+	@Param( { "1", "4" } )
+	public int threads;
+	
+	Image< FloatType > image, psf;
+	PrecisionReal precisionReal;
+	ComplexType complexType;
+	int[] offset, dimensions;
+	
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		precisionReal = PrecisionReal.valueOf( precision );
+		complexType = ( precisionReal == PrecisionReal.Double ) ? new ComplexDoubleType() : new ComplexFloatType();
+		
+		image = BenchmarkImages.createImage( container, "float", size );
+		psf = FourierConvolution.createGaussianKernel( new ArrayContainerFactory(), 2.0, image.getNumDimensions() );
+		
+		// the image is zero-padded to valid FFT sizes
+		dimensions = image.getDimensions();
+		dimensions[ 0 ] = FftReal.nfftSmall( dimensions[ 0 ] );
+		for ( int d = 1; d < dimensions.length; ++d )
+			dimensions[ d ] = FftComplex.nfftSmall( dimensions[ d ] );
+		
+		offset = new int[ dimensions.length ];
+	}
+	
+	@Benchmark
+	public Object fftRoundTrip()
+	{
+		final Image fft = FFTFunctions.computeFFT( image, complexType, new OutOfBoundsStrategyValueFactory< FloatType >(), 
+				offset, dimensions, threads, false, precisionReal );
+		
+		final Image< FloatType > inverse = FFTFunctions.computeInverseFFT( fft, new FloatType(), threads, true, false, null, null, 1, precisionReal );
+		
+		fft.close();
+		
+		return inverse;
+	}
+	
+	@Benchmark
+	public Object convolve()
+	{
+		final FourierConvolution< FloatType, FloatType > convolution = new FourierConvolution< FloatType, FloatType >( image, psf );
+		convolution.setNumThreads( threads );
+		convolution.setPrecision( precisionReal );
+		
+		if ( !convolution.checkInput() || !convolution.process() )
+			throw new RuntimeException( convolution.getErrorMessage() );
+		
+		final Image< FloatType > result = convolution.getResult();
+		convolution.close();
+		
+		return result;
+	}
+	
+	@Benchmark
+	public Object deconvolve()
+	{
+		final RichardsonLucyDeconvolution< FloatType, FloatType > deconvolution = new RichardsonLucyDeconvolution< FloatType, FloatType >( image, psf, 10 );
+		deconvolution.setNumThreads( threads );
+		deconvolution.setPrecision( precisionReal );
+		
+		if ( !deconvolution.checkInput() || !deconvolution.process() )
+			throw new RuntimeException( deconvolution.getErrorMessage() );
+		
+		final Image< FloatType > result = deconvolution.getResult();
+		deconvolution.close();
+		
+		return result;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.imglib.algorithm.fft.PhaseCorrelation;
+import mpicbg.imglib.algorithm.fft.PhaseCorrelationBatch;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Phase correlation of all neighboring tiles (including diagonals) of a grid, once pair by pair 
+ * with {@link PhaseCorrelation} and once with {@link PhaseCorrelationBatch} that transforms every 
+ * tile only once. One operation is the whole grid.
+ * 
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PhaseCorrelationBatchBenchmark</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 2 )
+@Measurement( iterations = 3, time = 2 )
+@Fork( 1 )
+@SuppressWarnings( "unchecked" )
+public class PhaseCorrelationBatchBenchmark
+{
+	@Param( { "3", "5" } )
+	public int grid;
+	
+	@Param( { "64x64", "32x32x16" } )
+	public String size;
+	
+	@Param( { "1", "4" } )
+	public int threads;
+	
+	ArrayList< Image< FloatType > > tiles;
+	int[][] pairs;
+	
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		tiles = new ArrayList< Image< FloatType > >();
+		
+		for ( int i = 0; i < grid * grid; ++i )
+			tiles.add( BenchmarkImages.createImage( "array", "float", size ) );
+		
+		final ArrayList< int[] > pairList = new ArrayList< int[] >();
+		
+		for ( int y = 0; y < grid; ++y )
+			for ( int x = 0; x < grid; ++x )
+			{
+				final int i = y * grid + x;
+				
+				if ( x + 1 < grid )
+					pairList.add( new int[] { i, i + 1 } );
+				
+				if ( y + 1 < grid )
+					pairList.add( new int[] { i, i + grid } );
+				
+				if ( x + 1 < grid && y + 1 < grid )
+					pairList.add( new int[] { i, i + grid + 1 } );
+				
+				if ( x > 0 && y + 1 < grid )
+					pairList.add( new int[] { i, i + grid - 1 } );
+			}
+		
+		pairs = pairList.toArray( new int[ pairList.size() ][] );
+	}
+	
+	@Benchmark
+	public Object pairwise()
+	{
+		final ArrayList< Object > shifts = new ArrayList< Object >();
+		
+		for ( final int[] pair : pairs )
+		{
+			final PhaseCorrelation< FloatType, FloatType > pc = new PhaseCorrelation< FloatType, FloatType >( tiles.get( pair[ 0 ] ), tiles.get( pair[ 1 ] ) );
+			pc.setNumThreads( threads );
+			
+			if ( !pc.checkInput() || !pc.process() )
+				throw new RuntimeException( pc.getErrorMessage() );
+			
+			shifts.add( pc.getShift() );
+		}
+		
+		return shifts;
+	}
+	
+	@Benchmark
+	public Object batch()
+	{
+		final PhaseCorrelationBatch< FloatType > pc = new PhaseCorrelationBatch< FloatType >( tiles, pairs );
+		pc.setNumThreads( threads );
+		
+		if ( !pc.checkInput() || !pc.process() )
+			throw new RuntimeException( pc.getErrorMessage() );
+		
+		return pc.getShift( pairs.length - 1 );
+	}
+}
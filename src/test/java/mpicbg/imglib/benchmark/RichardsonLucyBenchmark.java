@@ -0,0 +1,206 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package mpicbg.imglib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.imglib.algorithm.fft.FourierConvolution;
+import mpicbg.imglib.algorithm.fft.RichardsonLucyDeconvolution;
+import mpicbg.imglib.algorithm.math.ImageCalculator;
+import mpicbg.imglib.algorithm.math.ImageCalculatorInPlace;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.function.Function;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Richardson-Lucy deconvolution with a Gaussian point spread function, once as a loop of {@link FourierConvolution} 
+ * and {@link ImageCalculator} calls and once with {@link RichardsonLucyDeconvolution}. One operation is all iterations.
+ * 
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=RichardsonLucyBenchmark</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 2 )
+@Measurement( iterations = 3, time = 2 )
+@Fork( 1 )
+@SuppressWarnings( "unchecked" )
+public class RichardsonLucyBenchmark
+{
+	@Param( { "256x256", "128x128x32" } )
+	public String size;
+	
+	@Param( { "10" } )
+	public int iterations;
+	
+	@Param( { "1", "4" } )
+	public int threads;
+	
+	Image< FloatType > image, psf, flippedPsf;
+	
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		image = BenchmarkImages.createImage( "array", "float", size );
+		psf = FourierConvolution.createGaussianKernel( new ArrayContainerFactory(), 2.0, image.getNumDimensions() );
+		
+		// the mirrored kernel for the correlation
+		flippedPsf = psf.createNewImage();
+		final LocalizableCursor< FloatType > cursor = psf.createLocalizableCursor();
+		final LocalizableByDimCursor< FloatType > flippedCursor = flippedPsf.createLocalizableByDimCursor();
+		final int[] position = new int[ psf.getNumDimensions() ];
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.getPosition( position );
+			
+			for ( int d = 0; d < position.length; ++d )
+				position[ d ] = psf.getDimension( d ) - 1 - position[ d ];
+			
+			flippedCursor.setPosition( position );
+			flippedCursor.getType().set( cursor.getType() );
+		}
+		
+		cursor.close();
+		flippedCursor.close();
+	}
+	
+	@Benchmark
+	public Object scripted()
+	{
+		final ImageFactory< FloatType > factory = new ImageFactory< FloatType >( new FloatType(), image.getContainerFactory() );
+		
+		// start with the mean intensity
+		double sum = 0;
+		final Cursor< FloatType > cursor = image.createCursor();
+		while ( cursor.hasNext() )
+			sum += cursor.next().get();
+		cursor.close();
+		
+		Image< FloatType > estimate = factory.createImage( image.getDimensions() );
+		for ( final FloatType t : estimate )
+			t.set( (float)( sum / image.getNumPixels() ) );
+		
+		for ( int i = 0; i < iterations; ++i )
+		{
+			final Image< FloatType > blurred = convolve( estimate, psf );
+			
+			final ImageCalculator< FloatType, FloatType, FloatType > ratio = new ImageCalculator< FloatType, FloatType, FloatType >( image, blurred, factory, new Function< FloatType, FloatType, FloatType >()
+			{
+				@Override
+				public void compute( final FloatType input1, final FloatType input2, final FloatType output )
+				{
+					output.set( input2.get() > 1e-6f ? input1.get() / input2.get() : 0 );
+				}
+			});
+			ratio.setNumThreads( threads );
+			
+			if ( !ratio.checkInput() || !ratio.process() )
+				throw new RuntimeException( ratio.getErrorMessage() );
+			
+			final Image< FloatType > correction = convolve( ratio.getResult(), flippedPsf );
+			
+			final ImageCalculatorInPlace< FloatType, FloatType > update = new ImageCalculatorInPlace< FloatType, FloatType >( estimate, correction, new Function< FloatType, FloatType, FloatType >()
+			{
+				@Override
+				public void compute( final FloatType input1, final FloatType input2, final FloatType output )
+				{
+					output.set( Math.max( input1.get() * input2.get(), 0 ) );
+				}
+			});
+			update.setNumThreads( threads );
+			
+			if ( !update.checkInput() || !update.process() )
+				throw new RuntimeException( update.getErrorMessage() );
+			
+			blurred.close();
+			ratio.getResult().close();
+			correction.close();
+		}
+		
+		return estimate;
+	}
+	
+	protected Image< FloatType > convolve( final Image< FloatType > img, final Image< FloatType > kernel )
+	{
+		final FourierConvolution< FloatType, FloatType > fc = new FourierConvolution< FloatType, FloatType >( img, kernel );
+		fc.setNumThreads( threads );
+		
+		if ( !fc.checkInput() || !fc.process() )
+			throw new RuntimeException( fc.getErrorMessage() );
+		
+		final Image< FloatType > result = fc.getResult();
+		fc.close();
+		
+		return result;
+	}
+	
+	@Benchmark
+	public Object deconvolution()
+	{
+		final RichardsonLucyDeconvolution< FloatType, FloatType > rl = new RichardsonLucyDeconvolution< FloatType, FloatType >( image, psf, iterations );
+		rl.setNumThreads( threads );
+		
+		if ( !rl.checkInput() || !rl.process() )
+			throw new RuntimeException( rl.getErrorMessage() );
+		
+		final Image< FloatType > result = rl.getResult();
+		rl.close();
+		
+		return result;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.link;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.container.planar.PlanarContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link MultiImageCursor} computes the same result whether the images are driven 
+ * by one index (fused) or every image has its own cursor
+ */
+public class MultiImageCursorTest
+{
+	final static int[] dim = new int[] { 13, 10, 7 };
+	
+	private static Image<FloatType> createImage( final ContainerFactory containerFactory, final long seed )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		
+		if ( seed != 0 )
+		{
+			final Random rnd = new Random( seed );
+			final LocalizableCursor<FloatType> cursor = image.createLocalizableCursor();
+			final int[] position = new int[ dim.length ];
+			
+			// the values only depend on the position, not on the container
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.getPosition( position );
+				rnd.setSeed( seed + position[ 0 ] + 100 * position[ 1 ] + 10000 * position[ 2 ] );
+				cursor.getType().set( rnd.nextFloat() * 100 );
+			}
+			
+			cursor.close();
+		}
+		
+		return image;
+	}
+	
+	/**
+	 * Computes out = a * b + a through the cursors returned by {@link MultiImageCursor#getCursor(int)}
+	 */
+	@SuppressWarnings("unchecked")
+	private static Image<FloatType> compute( final ContainerFactory factoryA, final ContainerFactory factoryB, final ContainerFactory factoryOut, final boolean expectFused )
+	{
+		final Image<FloatType> a = createImage( factoryA, 11 );
+		final Image<FloatType> b = createImage( factoryB, 29 );
+		final Image<FloatType> out = createImage( factoryOut, 0 );
+		
+		final MultiImageCursor<FloatType> multiCursor = new MultiImageCursor<FloatType>( new Image[] { a, b, out } );
+		assertEquals( expectFused, multiCursor.isFused() );
+		
+		final LocalizableCursor<FloatType> ca = multiCursor.getCursor( 0 );
+		final LocalizableCursor<FloatType> cb = multiCursor.getCursor( 1 );
+		final LocalizableCursor<FloatType> cOut = multiCursor.getCursor( 2 );
+		
+		final LocalizableByDimCursor<FloatType> refA = a.createLocalizableByDimCursor();
+		final LocalizableByDimCursor<FloatType> refB = b.createLocalizableByDimCursor();
+		final int[] position = new int[ dim.length ];
+		final int[] positionOut = new int[ dim.length ];
+		
+		int numPixels = 0;
+		
+		// moved through the cursor of the output image, which moves all images
+		while ( cOut.hasNext() )
+		{
+			cOut.fwd();
+			
+			multiCursor.getPosition( position );
+			cOut.getPosition( positionOut );
+			
+			for ( int d = 0; d < dim.length; ++d )
+				assertEquals( position[ d ], positionOut[ d ] );
+			
+			refA.setPosition( position );
+			refB.setPosition( position );
+			
+			assertEquals( refA.getType().get(), ca.getType().get(), 0 );
+			assertEquals( refB.getType().get(), multiCursor.getType( 1 ).get(), 0 );
+			
+			cOut.getType().set( ca.getType().get() * cb.getType().get() + ca.getType().get() );
+			++numPixels;
+		}
+		
+		assertEquals( a.getNumPixels(), numPixels );
+		assertFalse( multiCursor.hasNext() );
+		
+		// reset through a linked cursor
+		cb.reset();
+		assertTrue( multiCursor.hasNext() );
+		multiCursor.fwd();
+		
+		refA.close();
+		refB.close();
+		multiCursor.close();
+		
+		return out;
+	}
+	
+	private static void assertEqualImages( final Image<FloatType> expected, final Image<FloatType> actual )
+	{
+		final LocalizableCursor<FloatType> cursor = expected.createLocalizableCursor();
+		final LocalizableByDimCursor<FloatType> cursorActual = actual.createLocalizableByDimCursor();
+		
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursorActual.setPosition( cursor );
+			assertEquals( cursor.getPositionAsString(), cursor.getType().get(), cursorActual.getType().get(), 0 );
+		}
+		
+		cursor.close();
+		cursorActual.close();
+	}
+	
+	@Test
+	public void testArray()
+	{
+		final Image<FloatType> fused = compute( new ArrayContainerFactory(), new ArrayContainerFactory(), new ArrayContainerFactory(), true );
+		final Image<FloatType> notFused = compute( new ArrayContainerFactory(), new CellContainerFactory( 4 ), new ArrayContainerFactory(), false );
+		
+		assertEqualImages( fused, notFused );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		final Image<FloatType> fused = compute( new CellContainerFactory( 4 ), new CellContainerFactory( 4 ), new CellContainerFactory( 4 ), true );
+		final Image<FloatType> notFused = compute( new CellContainerFactory( 4 ), new CellContainerFactory( 5 ), new CellContainerFactory( 4 ), false );
+		final Image<FloatType> array = compute( new ArrayContainerFactory(), new ArrayContainerFactory(), new ArrayContainerFactory(), true );
+		
+		assertEqualImages( fused, notFused );
+		assertEqualImages( fused, array );
+	}
+	
+	@Test
+	public void testPlanar()
+	{
+		final Image<FloatType> fused = compute( new PlanarContainerFactory(), new PlanarContainerFactory(), new PlanarContainerFactory(), true );
+		final Image<FloatType> notFused = compute( new PlanarContainerFactory(), new ArrayContainerFactory(), new PlanarContainerFactory(), false );
+		
+		assertEqualImages( fused, notFused );
+	}
+}
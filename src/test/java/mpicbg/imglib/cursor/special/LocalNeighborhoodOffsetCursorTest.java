@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.special;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.container.planar.PlanarContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link LocalNeighborhoodOffsetCursor} visits the same pixels as the {@link LocalNeighborhoodCursor}
+ * everywhere in the image, including the out of bounds border and the fast linear path for Array and Cell images
+ */
+public class LocalNeighborhoodOffsetCursorTest
+{
+	final static float outside = -7;
+	final static int[] dim2d = new int[] { 13, 10 };
+	final static int[] dim3d = new int[] { 9, 7, 6 };
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( 523 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static float getValue( final LocalizableByDimCursor<FloatType> cursor, final int[] position, final int[] dim )
+	{
+		for ( int d = 0; d < dim.length; ++d )
+			if ( position[ d ] < 0 || position[ d ] >= dim[ d ] )
+				return outside;
+		
+		cursor.setPosition( position );
+		return cursor.getType().get();
+	}
+	
+	/**
+	 * Compares the 3^n-1 neighborhood against the {@link LocalNeighborhoodCursor} at every position of the image
+	 */
+	private static void compareToLocalNeighborhoodCursor( final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<FloatType> image = createRandomImage( containerFactory, dim );
+		final int n = dim.length;
+		final String name = containerFactory.getClass().getSimpleName() + " " + n + "d";
+		
+		final LocalizableByDimCursor<FloatType> referenceParent = image.createLocalizableByDimCursor( new OutOfBoundsStrategyValueFactory<FloatType>( new FloatType( outside ) ) );
+		final LocalNeighborhoodCursor<FloatType> reference = new LocalNeighborhoodCursor<FloatType>( referenceParent );
+		
+		final LocalizableByDimCursor<FloatType> parent = image.createLocalizableByDimCursor( new OutOfBoundsStrategyValueFactory<FloatType>( new FloatType( outside ) ) );
+		final LocalNeighborhoodOffsetCursor<FloatType> cursor = new LocalNeighborhoodOffsetCursor<FloatType>( parent, LocalNeighborhoodOffsetCursor.createHyperCubeOffsets( n, 1, false ) );
+		
+		assertEquals( name, (int)Math.round( Math.pow( 3, n ) ) - 1, cursor.getNumNeighbors() );
+		
+		final LocalizableCursor<FloatType> it = image.createLocalizableCursor();
+		final int[] center = new int[ n ];
+		final int[] expected = new int[ n ];
+		final int[] actual = new int[ n ];
+		
+		while ( it.hasNext() )
+		{
+			it.fwd();
+			it.getPosition( center );
+			
+			referenceParent.setPosition( center );
+			parent.setPosition( center );
+			reference.update();
+			cursor.update();
+			
+			int numNeighbors = 0;
+			
+			while ( reference.hasNext() )
+			{
+				assertTrue( name + " " + it.getPositionAsString(), cursor.hasNext() );
+				
+				reference.fwd();
+				cursor.fwd();
+				
+				referenceParent.getPosition( expected );
+				cursor.getPosition( actual );
+				
+				for ( int d = 0; d < n; ++d )
+				{
+					assertEquals( name, expected[ d ], actual[ d ] );
+					assertEquals( name, expected[ d ], cursor.getPosition( d ) );
+					assertEquals( name, reference.getRelativePosition( d ), cursor.getRelativePosition( d ) );
+				}
+				
+				assertEquals( name + " " + it.getPositionAsString(), reference.getType().get(), cursor.getType().get(), 0 );
+				++numNeighbors;
+			}
+			
+			assertFalse( name, cursor.hasNext() );
+			assertEquals( name, cursor.getNumNeighbors(), numNeighbors );
+			
+			// the parent cursor has to be back on the center
+			cursor.reset();
+			parent.getPosition( actual );
+			
+			for ( int d = 0; d < n; ++d )
+				assertEquals( name, center[ d ], actual[ d ] );
+		}
+		
+		it.close();
+		cursor.close();
+		reference.close();
+		referenceParent.close();
+		parent.close();
+	}
+	
+	/**
+	 * Compares a radius 2 hypercube including the center, which exceeds the cells of a CellContainer, against direct access
+	 */
+	private static void compareToDirectAccess( final ContainerFactory containerFactory, final int[] dim )
+	{
+		final Image<FloatType> image = createRandomImage( containerFactory, dim );
+		final int n = dim.length;
+		final String name = containerFactory.getClass().getSimpleName() + " " + n + "d";
+		
+		final LocalizableByDimCursor<FloatType> direct = image.createLocalizableByDimCursor();
+		final LocalizableByDimCursor<FloatType> parent = image.createLocalizableByDimCursor( new OutOfBoundsStrategyValueFactory<FloatType>( new FloatType( outside ) ) );
+		final int[][] offsets = LocalNeighborhoodOffsetCursor.createHyperCubeOffsets( n, 2, true );
+		final LocalNeighborhoodOffsetCursor<FloatType> cursor = LocalNeighborhoodCursorFactory.createLocalNeighborhoodCursor( parent, offsets );
+		
+		assertEquals( name, (int)Math.round( Math.pow( 5, n ) ), cursor.getNumNeighbors() );
+		
+		final LocalizableCursor<FloatType> it = image.createLocalizableCursor();
+		final int[] center = new int[ n ];
+		final int[] position = new int[ n ];
+		
+		while ( it.hasNext() )
+		{
+			it.fwd();
+			it.getPosition( center );
+			
+			parent.setPosition( center );
+			cursor.update();
+			
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				
+				final int[] offset = offsets[ cursor.getNeighborIndex() ];
+				
+				for ( int d = 0; d < n; ++d )
+				{
+					position[ d ] = center[ d ] + offset[ d ];
+					assertEquals( name, offset[ d ], cursor.getOffset( d ) );
+				}
+				
+				assertEquals( name + " " + it.getPositionAsString(), getValue( direct, position, dim ), cursor.getType().get(), 0 );
+			}
+			
+			cursor.reset();
+		}
+		
+		it.close();
+		cursor.close();
+		direct.close();
+		parent.close();
+	}
+	
+	@Test
+	public void testArray()
+	{
+		compareToLocalNeighborhoodCursor( new ArrayContainerFactory(), dim2d );
+		compareToLocalNeighborhoodCursor( new ArrayContainerFactory(), dim3d );
+		compareToDirectAccess( new ArrayContainerFactory(), dim2d );
+		compareToDirectAccess( new ArrayContainerFactory(), dim3d );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		compareToLocalNeighborhoodCursor( new CellContainerFactory( 4 ), dim2d );
+		compareToLocalNeighborhoodCursor( new CellContainerFactory( 4 ), dim3d );
+		compareToDirectAccess( new CellContainerFactory( 5 ), dim2d );
+		compareToDirectAccess( new CellContainerFactory( 5 ), dim3d );
+	}
+	
+	@Test
+	public void testPlanar()
+	{
+		compareToLocalNeighborhoodCursor( new PlanarContainerFactory(), dim3d );
+		compareToDirectAccess( new PlanarContainerFactory(), dim3d );
+	}
+}
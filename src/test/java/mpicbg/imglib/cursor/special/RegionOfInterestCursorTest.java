@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.special;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.container.dynamic.DynamicContainerFactory;
+import mpicbg.imglib.container.planar.PlanarContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that a {@link RegionOfInterestCursor} on an out-of-bounds cursor visits the same values whether it 
+ * takes the interior path or not, for rois inside, straddling and outside of the image, and that it is active 
+ * and stays inside the image on a cursor without out-of-bounds strategy
+ */
+public class RegionOfInterestCursorTest
+{
+	final static float outside = -7;
+	final static int[] dim = new int[] { 12, 9, 5 };
+	final static int[] size = new int[] { 3, 4, 2 };
+	
+	// { offset, expected result of isInterior() }
+	final static int[][] offsets = new int[][] {
+		{ 2, 2, 1 },   // inside
+		{ 9, 5, 3 },   // inside, touching the upper borders
+		{ 1, 0, 0 },   // inside, touching the lower borders
+		{ 0, 3, 1 },   // inside, dimension 0 starts at the border
+		{ -1, 2, 1 },  // straddling
+		{ 10, 7, 4 },  // straddling
+		{ 4, -2, -1 }, // straddling
+		{ 20, 3, 1 },  // outside
+		{ -9, -9, -9 } // outside
+	};
+	final static boolean[] interior = new boolean[] { true, true, true, true, false, false, false, false, false };
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( 91 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static float getValue( final LocalizableByDimCursor<FloatType> cursor, final int[] position )
+	{
+		for ( int d = 0; d < dim.length; ++d )
+			if ( position[ d ] < 0 || position[ d ] >= dim[ d ] )
+				return outside;
+		
+		cursor.setPosition( position );
+		return cursor.getType().get();
+	}
+	
+	private static void testContainer( final ContainerFactory containerFactory )
+	{
+		final Image<FloatType> image = createRandomImage( containerFactory );
+		final LocalizableByDimCursor<FloatType> reference = image.createLocalizableByDimCursor();
+		
+		final LocalizableByDimCursor<FloatType> cursor = image.createLocalizableByDimCursor( new OutOfBoundsStrategyValueFactory<FloatType>( new FloatType( outside ) ) );
+		final RegionOfInterestCursor<FloatType> roiCursor = cursor.createRegionOfInterestCursor( offsets[ 0 ], size );
+		
+		final int[] roiPosition = new int[ dim.length ];
+		final int[] position = new int[ dim.length ];
+		final String name = containerFactory.getClass().getSimpleName();
+		
+		// twice, so the cursor switches between the interior and the out of bounds path in both directions
+		for ( int run = 0; run < 2; ++run )
+			for ( int o = 0; o < offsets.length; ++o )
+			{
+				final int[] offset = offsets[ o ];
+				final String roi = name + " roi " + o;
+				
+				roiCursor.reset( offset );
+				assertEquals( roi, interior[ o ], roiCursor.isInterior() );
+				
+				int numPixels = 0;
+				
+				while ( roiCursor.hasNext() )
+				{
+					roiCursor.fwd();
+					roiCursor.getPosition( roiPosition );
+					
+					for ( int d = 0; d < dim.length; ++d )
+						position[ d ] = offset[ d ] + roiPosition[ d ];
+					
+					assertEquals( roi + " " + roiCursor.getPositionAsString(), getValue( reference, position ), roiCursor.getType().get(), 0 );
+					++numPixels;
+				}
+				
+				assertEquals( roi, size[ 0 ] * size[ 1 ] * size[ 2 ], numPixels );
+			}
+		
+		roiCursor.close();
+		cursor.close();
+		reference.close();
+	}
+	
+	@Test
+	public void testActive()
+	{
+		final Image<FloatType> image = createRandomImage( new CellContainerFactory( 4 ) );
+		final LocalizableByDimCursor<FloatType> reference = image.createLocalizableByDimCursor();
+		
+		// no out-of-bounds strategy, a cell cursor cannot step outside of the image
+		final LocalizableByDimCursor<FloatType> cursor = image.createLocalizableByDimCursor();
+		final RegionOfInterestCursor<FloatType> roiCursor = cursor.createRegionOfInterestCursor( new int[ dim.length ], size );
+		
+		// ROIAlgorithm.checkInput() depends on it
+		assertTrue( roiCursor.isActive() );
+		
+		final int[] position = new int[ dim.length ];
+		int numPixels = 0;
+		
+		while ( roiCursor.hasNext() )
+		{
+			roiCursor.fwd();
+			roiCursor.getPosition( position );
+			
+			assertEquals( roiCursor.getPositionAsString(), getValue( reference, position ), roiCursor.getType().get(), 0 );
+			++numPixels;
+		}
+		
+		assertEquals( size[ 0 ] * size[ 1 ] * size[ 2 ], numPixels );
+		
+		roiCursor.close();
+		assertFalse( roiCursor.isActive() );
+		
+		cursor.close();
+		reference.close();
+	}
+	
+	@Test
+	public void testArray()
+	{
+		testContainer( new ArrayContainerFactory() );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		testContainer( new CellContainerFactory( 4 ) );
+	}
+	
+	@Test
+	public void testDynamic()
+	{
+		testContainer( new DynamicContainerFactory() );
+	}
+	
+	@Test
+	public void testPlanar()
+	{
+		testContainer( new PlanarContainerFactory() );
+	}
+}
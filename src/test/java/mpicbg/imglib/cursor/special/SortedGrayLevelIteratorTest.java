@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.special;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.IntegerType;
+import mpicbg.imglib.type.numeric.integer.ByteType;
+import mpicbg.imglib.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+/**
+ * Checks the order of the {@link AbstractSortedGrayLevelIterator} implementations against the 
+ * single-threaded counting sort they used before, for images with many ties and any number of threads
+ */
+public class SortedGrayLevelIteratorTest
+{
+	// large enough to be sorted by several threads
+	final static int[] dimLarge = new int[] { 96, 80, 70 };
+	final static int[] dimSmall = new int[] { 3, 2 };
+	
+	final static int[] numThreads = new int[] { 1, 2, 3, 8, 16 };
+	
+	private static < T extends IntegerType< T > > Image< T > createRandomImage( final T type, final ContainerFactory containerFactory, final int[] dim, final int min, final int numLevels )
+	{
+		final Image< T > image = new ImageFactory< T >( type, containerFactory ).createImage( dim );
+		final Random rnd = new Random( 4711 );
+		
+		for ( final T t : image )
+			t.setInteger( min + rnd.nextInt( numLevels ) );
+		
+		return image;
+	}
+	
+	/**
+	 * The counting sort as it was implemented before, shifted to support negative gray levels: 
+	 * decreasing gray level, decreasing linear index within a gray level
+	 */
+	private static < T extends IntegerType< T > > int[] sortSingleThreaded( final Image< T > image )
+	{
+		final int[] dim = image.getDimensions();
+		final int n = image.getNumPixels();
+		final int[] levels = new int[ n ];
+		final int[] position = new int[ dim.length ];
+		final LocalizableByDimCursor< T > cursor = image.createLocalizableByDimCursor();
+		
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		
+		for ( int p = 0; p < n; ++p )
+		{
+			AbstractSortedGrayLevelIterator.indexToPosition( p, dim, position );
+			cursor.setPosition( position );
+			levels[ p ] = cursor.getType().getInteger();
+			min = Math.min( min, levels[ p ] );
+			max = Math.max( max, levels[ p ] );
+		}
+		
+		cursor.close();
+		
+		final int[] c = new int[ max - min + 1 ];
+		final int[] idx = new int[ n ];
+		
+		for ( int p = 0; p < n; ++p )
+			c[ levels[ p ] - min ]++;
+		
+		for ( int i = 1; i < c.length; ++i )
+			c[ i ] += c[ i - 1 ];
+		
+		for ( int p = n - 1; p >= 0; --p )
+		{
+			final int level = levels[ p ] - min;
+			idx[ n - c[ level ] ] = p;
+			c[ level ]--;
+		}
+		
+		return idx;
+	}
+	
+	private static < T extends IntegerType< T > > void testImage( final Image< T > image, final String name )
+	{
+		final int[] expected = sortSingleThreaded( image );
+		final SortedGrayLevelIteratorFactory< T > factory = new SortedGrayLevelIteratorFactory< T >( image );
+		final LocalizableByDimCursor< T > cursor = image.createLocalizableByDimCursor();
+		final int[] position = image.createPositionArray();
+		
+		for ( int t = -1; t < numThreads.length; ++t )
+		{
+			// -1 is the default constructor
+			final AbstractSortedGrayLevelIterator< T > it = ( t < 0 ) ? 
+					factory.createSortedGrayLevelIterator( image ) : factory.createSortedGrayLevelIterator( image, numThreads[ t ] );
+			final String test = name + " " + it.getClass().getSimpleName() + ( t < 0 ? " default" : " threads=" + numThreads[ t ] );
+			
+			for ( int i = 0; i < expected.length; ++i )
+			{
+				assertTrue( test, it.hasNext() );
+				it.fwd();
+				
+				assertEquals( test + " index " + i, expected[ i ], it.getArrayIndex() );
+				
+				// the iterator has to be placed on the pixel it reports
+				it.getPosition( position );
+				cursor.setPosition( position );
+				assertEquals( test + " index " + i, cursor.getType().getInteger(), it.getType().getInteger() );
+			}
+			
+			assertFalse( test, it.hasNext() );
+			it.close();
+		}
+		
+		cursor.close();
+	}
+	
+	@Test
+	public void testArray()
+	{
+		testImage( createRandomImage( new UnsignedByteType(), new ArrayContainerFactory(), dimLarge, 0, 8 ), "Array large" );
+		testImage( createRandomImage( new UnsignedByteType(), new ArrayContainerFactory(), dimSmall, 3, 2 ), "Array small" );
+		testImage( createRandomImage( new ByteType(), new ArrayContainerFactory(), dimLarge, -100, 200 ), "Array signed" );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		testImage( createRandomImage( new UnsignedByteType(), new CellContainerFactory( 16 ), dimLarge, 0, 8 ), "Cell large" );
+		testImage( createRandomImage( new UnsignedByteType(), new CellContainerFactory( 16 ), dimSmall, 3, 2 ), "Cell small" );
+		testImage( createRandomImage( new ByteType(), new CellContainerFactory( 16 ), dimLarge, -100, 200 ), "Cell signed" );
+	}
+	
+	@Test
+	public void testConstantImage()
+	{
+		testImage( createRandomImage( new UnsignedByteType(), new ArrayContainerFactory(), dimLarge, 5, 1 ), "Array constant" );
+	}
+}
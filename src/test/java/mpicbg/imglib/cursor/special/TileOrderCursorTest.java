@@ -0,0 +1,281 @@
+/*
+ * #%L
+ * ImgLib: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package mpicbg.imglib.cursor.special;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.container.planar.PlanarContainerFactory;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks the order of the {@link TileOrderCursor} for raster and Morton order on sizes that are no 
+ * power of two and on tiles that do not divide the roi, inside the image and across its border
+ */
+public class TileOrderCursorTest
+{
+	final static float outside = -7;
+	final static int[] dim = new int[] { 13, 10, 7 };
+	
+	final static int[][] tileSizes = new int[][] { { 4, 3, 2 }, { 1, 1, 1 }, { 5, 10, 7 }, { 13, 1, 3 } };
+	
+	// { offset, size }
+	final static int[][][] rois = new int[][][] {
+		{ { 0, 0, 0 }, dim },
+		{ { 2, 1, 3 }, { 9, 5, 3 } },
+		{ { -2, 3, 1 }, { 9, 11, 6 } }
+	};
+	
+	private static Image<FloatType> createRandomImage( final ContainerFactory containerFactory )
+	{
+		final Image<FloatType> image = new ImageFactory<FloatType>( new FloatType(), containerFactory ).createImage( dim );
+		final Random rnd = new Random( 17 );
+		
+		for ( final FloatType t : image )
+			t.set( rnd.nextFloat() * 100 );
+		
+		return image;
+	}
+	
+	private static float getValue( final LocalizableByDimCursor<FloatType> cursor, final int[] position )
+	{
+		for ( int d = 0; d < dim.length; ++d )
+			if ( position[ d ] < 0 || position[ d ] >= dim[ d ] )
+				return outside;
+		
+		cursor.setPosition( position );
+		return cursor.getType().get();
+	}
+	
+	private static long mortonCode( final int[] tile )
+	{
+		long code = 0;
+		
+		for ( int b = 0; b < 31; ++b )
+			for ( int d = 0; d < tile.length; ++d )
+				code |= (long)( ( tile[ d ] >>> b ) & 1 ) << ( b * tile.length + d );
+		
+		return code;
+	}
+	
+	/**
+	 * The expected sequence of positions relative to the roi, computed independently from the cursor: 
+	 * the tiles sorted by their raster index or Morton code, the pixels within a tile in raster order 
+	 */
+	private static ArrayList<int[]> createExpectedOrder( final int[] size, final int[] tileSize, final boolean mortonOrder )
+	{
+		final int n = size.length;
+		final int[] numTiles = new int[ n ];
+		int numAllTiles = 1;
+		
+		for ( int d = 0; d < n; ++d )
+		{
+			numTiles[ d ] = ( size[ d ] + tileSize[ d ] - 1 ) / tileSize[ d ];
+			numAllTiles *= numTiles[ d ];
+		}
+		
+		// all tiles in raster order
+		final ArrayList<int[]> tiles = new ArrayList<int[]>();
+		
+		for ( int t = 0; t < numAllTiles; ++t )
+		{
+			final int[] tile = new int[ n ];
+			AbstractSortedGrayLevelIterator.indexToPosition( t, numTiles, tile );
+			tiles.add( tile );
+		}
+		
+		if ( mortonOrder )
+		{
+			Collections.sort( tiles, new Comparator<int[]>()
+			{
+				@Override
+				public int compare( final int[] tile1, final int[] tile2 )
+				{
+					final long code1 = mortonCode( tile1 ), code2 = mortonCode( tile2 );
+					return code1 < code2 ? -1 : ( code1 == code2 ? 0 : 1 );
+				}
+			});
+		}
+		
+		final ArrayList<int[]> positions = new ArrayList<int[]>();
+		
+		for ( final int[] tile : tiles )
+		{
+			final int[] start = new int[ n ];
+			final int[] currentTileSize = new int[ n ];
+			int numPixels = 1;
+			
+			for ( int d = 0; d < n; ++d )
+			{
+				start[ d ] = tile[ d ] * tileSize[ d ];
+				currentTileSize[ d ] = Math.min( tileSize[ d ], size[ d ] - start[ d ] );
+				numPixels *= currentTileSize[ d ];
+			}
+			
+			for ( int i = 0; i < numPixels; ++i )
+			{
+				final int[] position = new int[ n ];
+				AbstractSortedGrayLevelIterator.indexToPosition( i, currentTileSize, position );
+				
+				for ( int d = 0; d < n; ++d )
+					position[ d ] += start[ d ];
+				
+				positions.add( position );
+			}
+		}
+		
+		return positions;
+	}
+	
+	private static void testContainer( final ContainerFactory containerFactory )
+	{
+		final Image<FloatType> image = createRandomImage( containerFactory );
+		final LocalizableByDimCursor<FloatType> reference = image.createLocalizableByDimCursor();
+		
+		final int[] roiPosition = new int[ dim.length ];
+		final int[] position = new int[ dim.length ];
+		final String name = containerFactory.getClass().getSimpleName();
+		
+		for ( final int[] tileSize : tileSizes )
+			for ( int order = 0; order < 2; ++order )
+				for ( int r = 0; r < rois.length; ++r )
+				{
+					final boolean mortonOrder = order == 1;
+					final int[] offset = rois[ r ][ 0 ];
+					final int[] size = rois[ r ][ 1 ];
+					final String test = name + " roi " + r + " tile " + tileSize[ 0 ] + "x" + tileSize[ 1 ] + "x" + tileSize[ 2 ] + ( mortonOrder ? " morton" : " raster" );
+					
+					// the roi across the border needs an out of bounds strategy
+					final LocalizableByDimCursor<FloatType> cursor = ( r == 2 ) ? 
+							image.createLocalizableByDimCursor( new OutOfBoundsStrategyValueFactory<FloatType>( new FloatType( outside ) ) ) : image.createLocalizableByDimCursor();
+					final TileOrderCursor<FloatType> tileCursor = TileOrderCursor.create( cursor, offset, size, tileSize, mortonOrder );
+					
+					final ArrayList<int[]> expected = createExpectedOrder( size, tileSize, mortonOrder );
+					
+					// twice to test reset()
+					for ( int run = 0; run < 2; ++run )
+					{
+						tileCursor.reset();
+						
+						for ( final int[] expectedPosition : expected )
+						{
+							assertTrue( test, tileCursor.hasNext() );
+							tileCursor.fwd();
+							tileCursor.getPosition( roiPosition );
+							
+							for ( int d = 0; d < dim.length; ++d )
+							{
+								assertEquals( test, expectedPosition[ d ], roiPosition[ d ] );
+								position[ d ] = offset[ d ] + roiPosition[ d ];
+							}
+							
+							assertEquals( test + " " + tileCursor.getPositionAsString(), getValue( reference, position ), tileCursor.getType().get(), 0 );
+						}
+						
+						assertFalse( test, tileCursor.hasNext() );
+					}
+					
+					tileCursor.close();
+					cursor.close();
+				}
+		
+		reference.close();
+	}
+	
+	/**
+	 * Many tiles in one dimension only, a morton code with the same number of bits for every dimension 
+	 * would have to skip about 2^36 codes
+	 */
+	@Test
+	public void testElongatedMorton()
+	{
+		final Image<FloatType> image = createRandomImage( new ArrayContainerFactory() );
+		final LocalizableByDimCursor<FloatType> reference = image.createLocalizableByDimCursor();
+		final LocalizableByDimCursor<FloatType> cursor = image.createLocalizableByDimCursor( new OutOfBoundsStrategyValueFactory<FloatType>( new FloatType( outside ) ) );
+		
+		final int[] offset = new int[] { -5, 4, 2 };
+		final int[] size = new int[] { 3000, 2, 1 };
+		final TileOrderCursor<FloatType> tileCursor = TileOrderCursor.create( cursor, offset, size, new int[] { 1, 1, 1 }, true );
+		
+		final int[] roiPosition = new int[ dim.length ];
+		final int[] position = new int[ dim.length ];
+		
+		for ( final int[] expectedPosition : createExpectedOrder( size, new int[] { 1, 1, 1 }, true ) )
+		{
+			assertTrue( tileCursor.hasNext() );
+			tileCursor.fwd();
+			tileCursor.getPosition( roiPosition );
+			
+			for ( int d = 0; d < dim.length; ++d )
+			{
+				assertEquals( expectedPosition[ d ], roiPosition[ d ] );
+				position[ d ] = offset[ d ] + roiPosition[ d ];
+			}
+			
+			assertEquals( tileCursor.getPositionAsString(), getValue( reference, position ), tileCursor.getType().get(), 0 );
+		}
+		
+		assertFalse( tileCursor.hasNext() );
+		
+		tileCursor.close();
+		cursor.close();
+		reference.close();
+	}
+	
+	@Test
+	public void testArray()
+	{
+		testContainer( new ArrayContainerFactory() );
+	}
+	
+	@Test
+	public void testCell()
+	{
+		testContainer( new CellContainerFactory( 4 ) );
+	}
+	
+	@Test
+	public void testPlanar()
+	{
+		testContainer( new PlanarContainerFactory() );
+	}
+}